@@ -69,4 +69,11 @@ public interface AddOnSocketContext {
      * @return the handshake request
      */
     Request getHandshakeRequest();
+
+    /**
+     * Return count of written bytes, which socket didn't accept yet. Used to detect slow consumers
+     */
+    default long getQueuedBytes() {
+        return 0;
+    }
 }
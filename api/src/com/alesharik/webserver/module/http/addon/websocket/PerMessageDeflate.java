@@ -0,0 +1,180 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.addon.websocket;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * permessage-deflate WebSocket extension(RFC 7692). Server instance holds server preferences, {@link #negotiate(List)} returns settings, accepted for one connection.
+ * <code>java.util.zip</code> always uses 32K window, so offers, which limit server window below it, are declined
+ */
+@Getter
+@EqualsAndHashCode
+public final class PerMessageDeflate {
+    public static final String NAME = "permessage-deflate";
+    /**
+     * Handshake request data key with negotiated settings
+     */
+    public static final String DATA_KEY = "websocket.permessage-deflate";
+    private static final int MAX_WINDOW_BITS = 15;
+    private static final int MIN_WINDOW_BITS = 8;
+    private static final List<String> PARAMETERS = Arrays.asList("server_no_context_takeover", "client_no_context_takeover", "server_max_window_bits", "client_max_window_bits");
+
+    /**
+     * Reset compression context after each message. Allows to share deflaters between connections
+     */
+    private final boolean serverNoContextTakeover;
+    /**
+     * Ask client to reset compression context after each message. Allows to share inflaters between connections
+     */
+    private final boolean clientNoContextTakeover;
+    /**
+     * Messages shorter than this are sent uncompressed
+     */
+    private final int threshold;
+    private final int level;
+    /**
+     * Server window size, accepted from client offer. It must be echoed in response. <code>0</code> - offer doesn't limit server window
+     */
+    private final int serverMaxWindowBits;
+
+    /**
+     * @param threshold minimal message length in bytes to compress
+     * @param level     deflate compression level
+     */
+    public PerMessageDeflate(boolean serverNoContextTakeover, boolean clientNoContextTakeover, int threshold, int level) {
+        this(serverNoContextTakeover, clientNoContextTakeover, threshold, level, 0);
+    }
+
+    private PerMessageDeflate(boolean serverNoContextTakeover, boolean clientNoContextTakeover, int threshold, int level, int serverMaxWindowBits) {
+        if(threshold < 0)
+            throw new IllegalArgumentException("Threshold must be non-negative");
+        if((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        this.threshold = threshold;
+        this.level = level;
+        this.serverMaxWindowBits = serverMaxWindowBits;
+    }
+
+    /**
+     * Context takeover is disabled on both sides: it costs two 32K windows per connection
+     */
+    public PerMessageDeflate() {
+        this(true, true, 256, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Accept first offer, which server can satisfy
+     *
+     * @param extensions <code>Sec-WebSocket-Extensions</code> values
+     * @return negotiated settings or <code>null</code> if there is no acceptable offer
+     */
+    @Nullable
+    public PerMessageDeflate negotiate(@Nonnull List<String> extensions) {
+        for(String extension : extensions) {
+            for(String offer : extension.split(",")) {
+                PerMessageDeflate accepted = accept(offer);
+                if(accepted != null)
+                    return accepted;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private PerMessageDeflate accept(String offer) {
+        String[] parts = offer.split(";");
+        if(!NAME.equalsIgnoreCase(parts[0].trim()))
+            return null;
+
+        boolean serverNoContext = serverNoContextTakeover;
+        boolean clientNoContext = clientNoContextTakeover;
+        int serverWindowBits = 0;
+        int seen = 0;
+        for(int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            String value = null;
+            int eq = param.indexOf('=');
+            if(eq != -1) {
+                value = param.substring(eq + 1).trim();
+                if(value.length() > 1 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"')
+                    value = value.substring(1, value.length() - 1);
+                param = param.substring(0, eq).trim();
+            }
+            int index = PARAMETERS.indexOf(param.toLowerCase());
+            if(index == -1 || (seen & (1 << index)) != 0)//Unknown or duplicate parameter
+                return null;
+            seen |= 1 << index;
+            switch (index) {
+                case 0://server_no_context_takeover
+                    if(value != null)
+                        return null;
+                    serverNoContext = true;
+                    break;
+                case 1://client_no_context_takeover
+                    if(value != null)
+                        return null;
+                    clientNoContext = true;
+                    break;
+                case 2://server_max_window_bits
+                    if(windowBits(value) != MAX_WINDOW_BITS)
+                        return null;
+                    serverWindowBits = MAX_WINDOW_BITS;
+                    break;
+                default://client_max_window_bits, any client window is supported by inflater
+                    if(value != null && windowBits(value) == -1)
+                        return null;
+            }
+        }
+        return new PerMessageDeflate(serverNoContext, clientNoContext, threshold, level, serverWindowBits);
+    }
+
+    private static int windowBits(@Nullable String value) {
+        if(value == null || value.isEmpty() || value.length() > 2)
+            return -1;
+        for(int i = 0; i < value.length(); i++)
+            if(!Character.isDigit(value.charAt(i)))
+                return -1;
+        int bits = Integer.parseInt(value);
+        return bits < MIN_WINDOW_BITS || bits > MAX_WINDOW_BITS ? -1 : bits;
+    }
+
+    /**
+     * Return <code>Sec-WebSocket-Extensions</code> response value
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(NAME);
+        if(serverNoContextTakeover)
+            sb.append("; server_no_context_takeover");
+        if(clientNoContextTakeover)
+            sb.append("; client_no_context_takeover");
+        if(serverMaxWindowBits != 0)
+            sb.append("; server_max_window_bits=").append(serverMaxWindowBits);
+        return sb.toString();
+    }
+}
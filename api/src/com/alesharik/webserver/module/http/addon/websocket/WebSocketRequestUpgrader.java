@@ -29,10 +29,14 @@ import com.alesharik.webserver.module.http.http.header.ListHeader;
 import com.alesharik.webserver.module.http.http.header.StringHeader;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
 
 //TODO Origin header check
 @Prefixes({"[HTTP]", "[WebSocket]", "[WebSocketRequestUpgrader]"})
@@ -44,6 +48,8 @@ public final class WebSocketRequestUpgrader implements Handler {
     private static final IntHeader WS_VERSION_HEADER = HeaderManager.getHeaderByName("Sec-WebSocket-Version");
     private static final StringHeader WS_KEY_HEADER = HeaderManager.getHeaderByName("Sec-WebSocket-Key");
     private static final StringHeader WS_ACCEPT_HEADER = HeaderManager.getHeaderByName("Sec-WebSocket-Accept");
+    @SuppressWarnings("unchecked")
+    private static final ListHeader<String> WS_EXTENSIONS_HEADER = HeaderManager.getHeaderByName("Sec-WebSocket-Extensions");
     private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
         try {
             return MessageDigest.getInstance("SHA-1");
@@ -52,6 +58,7 @@ public final class WebSocketRequestUpgrader implements Handler {
         }
     });//TODO replace with Hasher
     private final int supportedVersion;
+    private final PerMessageDeflate deflate;
 
     public WebSocketRequestUpgrader() {
         this(13);
@@ -61,7 +68,16 @@ public final class WebSocketRequestUpgrader implements Handler {
      * @param supportedVersion current version - 13
      */
     public WebSocketRequestUpgrader(int supportedVersion) {
+        this(supportedVersion, null);
+    }
+
+    /**
+     * @param supportedVersion current version - 13
+     * @param deflate          server permessage-deflate settings, <code>null</code> disables compression
+     */
+    public WebSocketRequestUpgrader(int supportedVersion, @Nullable PerMessageDeflate deflate) {
         this.supportedVersion = supportedVersion;
+        this.deflate = deflate;
     }
 
     @Override
@@ -77,6 +93,16 @@ public final class WebSocketRequestUpgrader implements Handler {
         response.addHeader(CONNECTION_HEADER, new String[]{"Upgrade"});
         response.addHeader(UPGRADE_HEADER, "websocket");
         response.addHeader(WS_ACCEPT_HEADER, magic(key));
+        if(deflate != null && request.containsHeader("Sec-WebSocket-Extensions")) {
+            List<String> offers = new ArrayList<>();
+            for(String[] extensions : request.getHeaders(WS_EXTENSIONS_HEADER))
+                Collections.addAll(offers, extensions);
+            PerMessageDeflate accepted = deflate.negotiate(offers);
+            if(accepted != null) {
+                response.addHeader(WS_EXTENSIONS_HEADER, new String[]{accepted.toString()});
+                request.setData(PerMessageDeflate.DATA_KEY, accepted);
+            }
+        }
         response.upgrade("websocket");
     }
 
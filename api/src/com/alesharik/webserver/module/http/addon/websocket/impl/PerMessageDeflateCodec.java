@@ -0,0 +1,193 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.addon.websocket.impl;
+
+import com.alesharik.webserver.module.http.addon.websocket.PerMessageDeflate;
+import org.jctools.queues.atomic.MpmcAtomicArrayQueue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses messages of one connection. Sides without context takeover borrow deflater/inflater from shared pool only for one message
+ */
+final class PerMessageDeflateCodec {
+    private static final int POOL_SIZE;
+    private static final byte[] TAIL = {0, 0, (byte) 0xff, (byte) 0xff};
+    private static final Queue<Deflater> DEFLATERS;
+    private static final Queue<Inflater> INFLATERS;
+
+    static {
+        if(System.getProperty("module.http.addon.websocket.DEFLATE_POOL_SIZE") != null)
+            POOL_SIZE = Integer.parseInt(System.getProperty("module.http.addon.websocket.DEFLATE_POOL_SIZE"));
+        else
+            POOL_SIZE = 64;
+        DEFLATERS = new MpmcAtomicArrayQueue<>(POOL_SIZE);
+        INFLATERS = new MpmcAtomicArrayQueue<>(POOL_SIZE);
+    }
+
+    private final PerMessageDeflate settings;
+    /**
+     * Connection deflater, <code>null</code> if server doesn't take over context
+     */
+    private Deflater deflater;
+    /**
+     * Current message inflater
+     */
+    private Inflater inflater;
+    private byte[] deflateBuffer = new byte[256];
+    private byte[] inflateBuffer = new byte[256];
+    private long inflated;
+
+    PerMessageDeflateCodec(@Nonnull PerMessageDeflate settings) {
+        this.settings = settings;
+        if(!settings.isServerNoContextTakeover())
+            deflater = borrowDeflater();
+    }
+
+    /**
+     * Return <code>true</code> if message should be compressed
+     */
+    boolean shouldCompress(int length) {
+        return length >= settings.getThreshold();
+    }
+
+    /**
+     * Compress whole message
+     *
+     * @return compressed payload without trailing <code>0x00 0x00 0xff 0xff</code>
+     */
+    @Nonnull
+    synchronized byte[] compress(@Nonnull byte[] data, int length) {
+        Deflater deflater = this.deflater == null ? borrowDeflater() : this.deflater;
+        try {
+            deflater.setInput(data, 0, length);
+            int count = 0;
+            while(true) {
+                count += deflater.deflate(deflateBuffer, count, deflateBuffer.length - count, Deflater.SYNC_FLUSH);
+                if(count < deflateBuffer.length && deflater.needsInput())//Level change can stop deflater before all input is consumed
+                    break;
+                if(count == deflateBuffer.length)
+                    deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+            }
+            byte[] buffer = deflateBuffer;
+            if(count >= TAIL.length && buffer[count - 1] == (byte) 0xff && buffer[count - 2] == (byte) 0xff && buffer[count - 3] == 0 && buffer[count - 4] == 0)
+                count -= TAIL.length;
+            return Arrays.copyOf(buffer, count);
+        } finally {
+            if(this.deflater == null)
+                release(deflater);
+        }
+    }
+
+    /**
+     * Decompress next fragment of compressed message. Must be called from one thread
+     *
+     * @param fin   last fragment
+     * @param limit max decompressed message length
+     * @return decompressed data or <code>null</code> if message is longer than limit
+     * @throws DataFormatException if payload is not valid deflate stream
+     */
+    @Nullable
+    byte[] decompress(@Nonnull byte[] payload, boolean fin, long limit) throws DataFormatException {
+        if(inflater == null)
+            inflater = borrowInflater();
+        inflater.setInput(payload);
+        int count = inflate(0, limit);
+        if(count != -1 && fin) {
+            inflater.setInput(TAIL);
+            count = inflate(count, limit);
+        }
+        if(count == -1) {
+            endMessage(true);
+            return null;
+        }
+        byte[] ret = Arrays.copyOf(inflateBuffer, count);
+        if(fin)
+            endMessage(false);
+        return ret;
+    }
+
+    private int inflate(int count, long limit) throws DataFormatException {
+        while(true) {
+            if(count == inflateBuffer.length)
+                inflateBuffer = Arrays.copyOf(inflateBuffer, inflateBuffer.length * 2);
+            int read = inflater.inflate(inflateBuffer, count, inflateBuffer.length - count);
+            count += read;
+            inflated += read;
+            if(inflated > limit)
+                return -1;
+            if(count < inflateBuffer.length)//Inflater has no more output for current input
+                return count;
+        }
+    }
+
+    private void endMessage(boolean force) {
+        inflated = 0;
+        if(force || settings.isClientNoContextTakeover()) {
+            release(inflater);
+            inflater = null;
+        }
+    }
+
+    /**
+     * Return deflater and inflater into the pool. Codec can still be used after this method, but without context takeover
+     */
+    synchronized void close() {
+        if(deflater != null) {
+            release(deflater);
+            deflater = null;
+        }
+        if(inflater != null) {
+            release(inflater);
+            inflater = null;
+        }
+        inflated = 0;
+    }
+
+    private Deflater borrowDeflater() {
+        Deflater deflater = DEFLATERS.poll();
+        if(deflater == null)
+            deflater = new Deflater(settings.getLevel(), true);
+        else
+            deflater.setLevel(settings.getLevel());
+        return deflater;
+    }
+
+    private static Inflater borrowInflater() {
+        Inflater inflater = INFLATERS.poll();
+        return inflater == null ? new Inflater(true) : inflater;
+    }
+
+    private static void release(Deflater deflater) {
+        deflater.reset();
+        if(!DEFLATERS.offer(deflater))
+            deflater.end();
+    }
+
+    private static void release(Inflater inflater) {
+        inflater.reset();
+        if(!INFLATERS.offer(inflater))
+            inflater.end();
+    }
+}
@@ -21,19 +21,21 @@ package com.alesharik.webserver.module.http.addon.websocket.impl;
 import com.alesharik.webserver.api.cache.object.CachedObjectFactory;
 import com.alesharik.webserver.api.cache.object.Recyclable;
 import com.alesharik.webserver.api.cache.object.SmartCachedObjectFactory;
-import com.alesharik.webserver.api.memory.impl.ByteOffHeapVector;
 import com.alesharik.webserver.module.http.addon.AddOnSocketContext;
 import com.alesharik.webserver.module.http.addon.AddOnSocketHandler;
 import com.alesharik.webserver.module.http.addon.MessageProcessor;
+import com.alesharik.webserver.module.http.addon.websocket.PerMessageDeflate;
 import com.alesharik.webserver.module.http.addon.websocket.processor.WebSocketMessage;
 import com.alesharik.webserver.module.http.addon.websocket.processor.WebSocketMessageProcessor;
 import com.alesharik.webserver.module.http.addon.websocket.processor.WebSocketMessageProcessorContext;
 import lombok.RequiredArgsConstructor;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DataFormatException;
 
 import static com.alesharik.webserver.module.http.addon.websocket.impl.WebSocketConstants.*;
 
@@ -52,7 +54,9 @@ final class WebSocketAddOnSocketHandler implements AddOnSocketHandler {
 
     @Override
     public void init(@Nonnull AddOnSocketContext context) {
-        Ctx ctx = Ctx.create(processor, new WebSocketBroadcaster(context), new WebSocketMessageProcessorContext(context.getHandshakeRequest()));
+        PerMessageDeflate deflate = context.getHandshakeRequest().getData(PerMessageDeflate.DATA_KEY);
+        PerMessageDeflateCodec codec = deflate == null ? null : new PerMessageDeflateCodec(deflate);
+        Ctx ctx = Ctx.create(processor, new WebSocketBroadcaster(context, codec), new WebSocketMessageProcessorContext(context.getHandshakeRequest()), codec);
         ctx.open();
         context.setParameter("context", ctx);
     }
@@ -73,33 +77,32 @@ final class WebSocketAddOnSocketHandler implements AddOnSocketHandler {
 
     private static final class Ctx implements Recyclable {
         private static final CachedObjectFactory<Ctx> FACTORY = new SmartCachedObjectFactory<>(Ctx::new);
-        private static final ByteOffHeapVector vector = ByteOffHeapVector.instance();
-        private static final ThreadLocal<ByteBuffer> primitiveBuilder = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(8));
 
         private final AtomicBoolean closed = new AtomicBoolean();
         private final AtomicBoolean reading = new AtomicBoolean();
+        private final WebSocketFrameDecoder decoder = new WebSocketFrameDecoder(MAX_MESSAGE_LENGTH);
 
         private MessageProcessor<WebSocketMessage, WebSocketBroadcaster, WebSocketMessageProcessorContext> processor;
         private WebSocketBroadcaster broadcaster;
         private WebSocketMessageProcessorContext context;
-        private long buffer;
+        private PerMessageDeflateCodec codec;
 
-        //====================State machine====================\\
-        private ReadingState state;
-        private boolean fin;
+        /**
+         * Opcode of current data message
+         */
         private byte opcode;
-        private boolean maskEnabled;
-        private int length;
-        private byte[] mask;
         private boolean fragmented;
+        /**
+         * Current data message is compressed
+         */
+        private boolean compressed;
 
-        public static Ctx create(MessageProcessor<WebSocketMessage, WebSocketBroadcaster, WebSocketMessageProcessorContext> processor, WebSocketBroadcaster broadcaster, WebSocketMessageProcessorContext context) {
+        public static Ctx create(MessageProcessor<WebSocketMessage, WebSocketBroadcaster, WebSocketMessageProcessorContext> processor, WebSocketBroadcaster broadcaster, WebSocketMessageProcessorContext context, @Nullable PerMessageDeflateCodec codec) {
             Ctx ctx = FACTORY.getInstance();
             ctx.processor = processor;
             ctx.broadcaster = broadcaster;
             ctx.context = context;
-            ctx.buffer = vector.allocate();
-            ctx.state = ReadingState.NONE;
+            ctx.codec = codec;
             return ctx;
         }
 
@@ -112,18 +115,16 @@ final class WebSocketAddOnSocketHandler implements AddOnSocketHandler {
             processor = null;
             broadcaster = null;
             context = null;
+            if(codec != null)
+                codec.close();
+            codec = null;
             closed.set(false);
             reading.set(false);
-            ByteOffHeapVector.instance().free(buffer);
-            buffer = -1;
+            decoder.reset();
 
-            state = ReadingState.NONE;
-            fin = false;
             opcode = -1;
-            maskEnabled = false;
-            length = -1;
-            mask = null;
             fragmented = false;
+            compressed = false;
         }
 
         public void open() {
@@ -138,7 +139,6 @@ final class WebSocketAddOnSocketHandler implements AddOnSocketHandler {
             while(reading.get()) ;
             if(closed.compareAndSet(false, true))
                 return;
-            publish();
             byte[] data = Integer.toString(WebSocketMessage.CloseReason.NONE.getCode()).getBytes(StandardCharsets.UTF_8);
             WebSocketMessage message = WebSocketMessage.create(WebSocketMessage.Type.CLOSE, WebSocketMessage.DataType.STRING, false, false, data);
             processor.processMessage(message, broadcaster, context);
@@ -153,95 +153,54 @@ final class WebSocketAddOnSocketHandler implements AddOnSocketHandler {
             while(!reading.compareAndSet(false, true))
                 while(reading.get()) ;
 
-            byte[] buf = new byte[Math.min(data.remaining(), MAX_MESSAGE_LENGTH + 14)]; //14 - maximum size of meta information
-            int lastRemaining = 0;
-            while(data.hasRemaining()) {
-                lastRemaining = data.remaining();
-                data.get(buf);
-                buffer = vector.write(buffer, buf);
-                while(canDoMove())
-                    publish();
-            }
-            if(lastRemaining > 0) {
-                buffer = vector.write(buffer, buf, 0, lastRemaining);
-                while(canDoMove())
-                    publish();
-            }
-            reading.set(false);
-        }
-
-        private boolean canDoMove() {
-            switch (state) {
-                case NONE:
-                    return true;
-                case FIRST_BYTE:
-                case SECOND_BYTE:
-                    return vector.size(buffer) > 0;
-                case MASK:
-                    return vector.size(buffer) >= 4;
-                case DATA:
-                    return vector.size(buffer) >= length;
-                case LENGTH:
-                    return length == 126 ? vector.size(buffer) >= 2 : vector.size(buffer) >= 8;
-                default:
-                    throw new IllegalArgumentException("Unknown state: " + state.name());
-            }
-        }
-
-        private void publish() {
-            if(state == ReadingState.NONE)
-                state = ReadingState.FIRST_BYTE;
-            if(state == ReadingState.FIRST_BYTE && vector.size(buffer) > 0) {
-                byte cut = vector.cut(buffer, 1)[0];
-                fin = (byte) (cut & CUT_FIN) == CUT_FIN;//Here you need to handle extensions
-                byte opcode = (byte) (cut & CUT_OPCODE);
-                if(opcode != CONTINUE)
-                    this.opcode = opcode;
-                state = ReadingState.SECOND_BYTE;
-            }
-            if(state == ReadingState.SECOND_BYTE && vector.size(buffer) > 0) {
-                byte cut = vector.cut(buffer, 1)[0];
-                maskEnabled = (cut & CUT_MASK) == CUT_MASK;
-                length = cut & CUT_LENGTH;
-                if(length < 126)
-                    state = ReadingState.MASK;
-                else
-                    state = ReadingState.LENGTH;
-            }
-            if(state == ReadingState.LENGTH && length == 126 && vector.size(buffer) >= 2) {
-                ByteBuffer builder = primitiveBuilder.get();
-                builder.clear();
-                builder.put(vector.cut(buffer, 2));
-                length += builder.getShort();
-                state = maskEnabled ? ReadingState.MASK : ReadingState.DATA;
-            }
-            if(state == ReadingState.LENGTH && length == 127 && vector.size(buffer) >= 8) {
-                ByteBuffer builder = primitiveBuilder.get();
-                builder.clear();
-                builder.put(vector.cut(buffer, 8));
-                length += builder.getLong();
-                if(length > MAX_MESSAGE_LENGTH) {
-                    System.err.println("Max message length error! Context: " + context);
-                    broadcaster.close(WebSocketMessage.CloseReason.TOO_BIG_1009);
-                    return;
+            try {
+                while(data.hasRemaining()) {
+                    WebSocketFrameDecoder.Result result = decoder.next(data);
+                    if(result == WebSocketFrameDecoder.Result.NEED_MORE)
+                        break;
+                    else if(result == WebSocketFrameDecoder.Result.TOO_BIG) {
+                        System.err.println("Max message length error! Context: " + context);
+                        broadcaster.close(WebSocketMessage.CloseReason.TOO_BIG_1009);
+                        return;
+                    } else if(result == WebSocketFrameDecoder.Result.ERROR) {
+                        broadcaster.close(WebSocketMessage.CloseReason.PROTOCOL_ERROR_1002);
+                        return;
+                    }
+                    byte frameOpcode = decoder.getOpcode();
+                    int rsv = decoder.getRsv();
+                    if(rsv != 0 && (rsv != RSV_COMPRESSED || codec == null || frameOpcode == CONTINUE || frameOpcode >= CLOSE)) {
+                        broadcaster.close(WebSocketMessage.CloseReason.PROTOCOL_ERROR_1002);
+                        return;
+                    }
+                    if(frameOpcode == CONTINUE)
+                        frameOpcode = opcode;
+                    else if(frameOpcode < CLOSE) {//Control frames can be sent between fragments
+                        opcode = frameOpcode;
+                        compressed = rsv == RSV_COMPRESSED;
+                    }
+                    byte[] payload = decoder.getPayload();
+                    if(compressed && frameOpcode < CLOSE) {
+                        try {
+                            payload = codec.decompress(payload, decoder.isFin(), MAX_MESSAGE_LENGTH);
+                        } catch (DataFormatException e) {
+                            System.err.println("Invalid compressed message! Context: " + context);
+                            broadcaster.close(WebSocketMessage.CloseReason.NOT_CONSISTENT_1007);
+                            return;
+                        }
+                        if(payload == null) {
+                            System.err.println("Max message length error! Context: " + context);
+                            broadcaster.close(WebSocketMessage.CloseReason.TOO_BIG_1009);
+                            return;
+                        }
+                    }
+                    flush(frameOpcode, decoder.isFin(), payload);
                 }
-                state = maskEnabled ? ReadingState.MASK : ReadingState.DATA;
-            }
-            if(state == ReadingState.MASK && vector.size(buffer) >= 4) {
-                mask = vector.cut(buffer, 4);
-                state = ReadingState.DATA;
-            }
-            if(state == ReadingState.DATA && vector.size(buffer) >= length) {
-                byte[] msg = vector.cut(buffer, length);
-                if(maskEnabled)
-                    for(int i = 0; i < msg.length; i++)
-                        msg[i] = (byte) (msg[i] ^ mask[i % 4]);
-                flush(msg);
-                state = ReadingState.NONE;
+            } finally {
+                reading.set(false);
             }
         }
 
-        private void flush(byte[] data) {
+        private void flush(byte opcode, boolean fin, byte[] data) {
             boolean isText = (opcode & TEXT) == TEXT;
             boolean isByte = (opcode & BYTE) == BYTE;
             boolean isClose = (opcode & CLOSE) == CLOSE;
@@ -265,18 +224,10 @@ final class WebSocketAddOnSocketHandler implements AddOnSocketHandler {
             else
                 dataType = WebSocketMessage.DataType.UNKNOWN;
             WebSocketMessage message = WebSocketMessage.create(type, dataType, !fin || fragmented, fin, data);
-            fragmented = !fin;
+            if(type == WebSocketMessage.Type.MESSAGE)
+                fragmented = !fin;
             processor.processMessage(message, broadcaster, context);
             WebSocketMessage.recycle(message);
         }
-
-        private enum ReadingState {
-            NONE,
-            FIRST_BYTE,
-            SECOND_BYTE,
-            LENGTH,
-            MASK,
-            DATA
-        }
     }
 }
@@ -36,24 +36,31 @@
 
 package com.alesharik.webserver.module.http.addon.websocket.impl;
 
-import com.alesharik.webserver.api.qt.QDataStream;
 import com.alesharik.webserver.module.http.addon.AddOnSocketContext;
 import com.alesharik.webserver.module.http.addon.MessageSender;
 import com.alesharik.webserver.module.http.addon.websocket.processor.WebSocketMessage;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import static com.alesharik.webserver.module.http.addon.websocket.impl.WebSocketConstants.*;
 
 public class WebSocketBroadcaster implements MessageSender<WebSocketMessage> {
-    private static final ThreadLocal<QDataStream> dataStreams = ThreadLocal.withInitial(QDataStream::new);
-
     private final AddOnSocketContext context;
+    /**
+     * Negotiated permessage-deflate codec, can be <code>null</code>
+     */
+    private final PerMessageDeflateCodec codec;
 
     public WebSocketBroadcaster(AddOnSocketContext context) {
+        this(context, null);
+    }
+
+    WebSocketBroadcaster(AddOnSocketContext context, @Nullable PerMessageDeflateCodec codec) {
         this.context = context;
+        this.codec = codec;
     }
 
     @Override
@@ -87,11 +94,17 @@ public class WebSocketBroadcaster implements MessageSender<WebSocketMessage> {
 
     public void sendMessage(String message) {
         byte[] data = message.getBytes(StandardCharsets.UTF_8);
-        sendMessage(true, TEXT, data.length, data);
+        if(codec != null && codec.shouldCompress(data.length))
+            sendCompressed(TEXT, data);
+        else
+            sendMessage(true, TEXT, data.length, data);
     }
 
     public void sendMessage(byte[] message) {
-        sendMessage(true, BYTE, message.length, message);
+        if(codec != null && codec.shouldCompress(message.length))
+            sendCompressed(BYTE, message);
+        else
+            sendMessage(true, BYTE, message.length, message);
     }
 
     public void sendFragment(boolean last, boolean first, byte[] fragment) {
@@ -115,42 +128,45 @@ public class WebSocketBroadcaster implements MessageSender<WebSocketMessage> {
         sendMessage(true, CLOSE, c.length, c);
     }
 
-    private void sendMessage(boolean fin, byte opcode, int length, byte[] data) {//server can't mask any frames
+    /**
+     * Write encoded frame. Frame buffer is not modified, so one frame can be sent to many sockets
+     */
+    public void sendFrame(@Nonnull ByteBuffer frame) {
         if(!context.getChannel().isOpen()) {
             System.err.println("WebSocket closed!");
             return;
         }
-        QDataStream stream = dataStreams.get();
-        try {
-            int size = 1;
-            int first = fin ? CUT_FIN : 0;
-            first |= opcode;
-            stream.writeByte(first);
-            int second = 0;
-            if(length < 125) {
-                second |= length;
-                stream.writeByte(second);
-                size++;
-            } else if(length < 65536) {
-                second |= 126;
-                stream.writeByte(second);
-                stream.writeUnsignedShort((int) (length - 126));
-                size += 3;
-            } else {
-                second |= 127;
-                stream.writeByte(second);
-                stream.writeUnsignedLong(length);
-                size += 9;
-            }
-            byte[] header = new byte[size];//Can't overflow
-            stream.readFully(header);
-            context.writeBytes(ByteBuffer.wrap(header));
-        } finally {
-            stream.recycle();
+        context.writeBytes(frame.duplicate());
+    }
+
+    public boolean isOpen() {
+        return context.getChannel().isOpen();
+    }
+
+    /**
+     * Return count of bytes, which client didn't receive yet
+     */
+    public long getQueuedBytes() {
+        return context.getQueuedBytes();
+    }
+
+    private void sendCompressed(byte opcode, byte[] data) {
+        //Frames must be written in compression order when server takes over context
+        synchronized (codec) {
+            byte[] compressed = codec.compress(data, data.length);
+            sendMessage(true, opcode, RSV_COMPRESSED, compressed.length, compressed);
         }
-        if(length == 0)
+    }
+
+    private void sendMessage(boolean fin, byte opcode, int length, byte[] data) {
+        sendMessage(fin, opcode, 0, length, data);
+    }
+
+    private void sendMessage(boolean fin, byte opcode, int rsv, int length, byte[] data) {//server can't mask any frames
+        if(!context.getChannel().isOpen()) {
+            System.err.println("WebSocket closed!");
             return;
-        //Write data:
-        context.writeBytes(ByteBuffer.wrap(data, 0, length));
+        }
+        context.writeBytes(WebSocketFrameEncoder.encode(fin, opcode, rsv, data, 0, length));
     }
 }
@@ -39,4 +39,8 @@ class WebSocketConstants {
     public static final byte CUT_OPCODE = 0b00001111;
     public static final int CUT_MASK = 0b10000000;
     public static final byte CUT_LENGTH = 0b01111111;
+    /**
+     * RSV1 in decoded RSV bits, marks permessage-deflate messages
+     */
+    public static final int RSV_COMPRESSED = 0b100;
 }
@@ -0,0 +1,206 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.addon.websocket.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Incremental WebSocket frame decoder. Frame header is parsed directly from the incoming buffer and copied only if it is split between reads.
+ * Masked payload is unmasked in the incoming buffer 8 bytes at a time and copied once into the payload array
+ */
+@NotThreadSafe
+final class WebSocketFrameDecoder {
+    private static final int MAX_HEADER_SIZE = 14;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final long maxPayloadLength;
+    private final byte[] header = new byte[MAX_HEADER_SIZE];
+    private final ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+    private int headerRead;
+    private boolean readingPayload;
+
+    private boolean fin;
+    private int rsv;
+    private byte opcode;
+    private boolean masked;
+    private int mask;
+    private byte[] payload = EMPTY;
+    private int payloadRead;
+
+    WebSocketFrameDecoder(long maxPayloadLength) {
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    /**
+     * Consume frame data from buffer's position. Masked payload bytes are changed in the buffer, if it isn't read-only
+     */
+    @Nonnull
+    public Result next(@Nonnull ByteBuffer src) {
+        if(!readingPayload) {
+            Result result = readHeader(src);
+            if(result != null)
+                return result;
+        }
+        int count = Math.min(payload.length - payloadRead, src.remaining());
+        if(masked && !src.isReadOnly())
+            unmask(src, src.position(), count, payloadRead);
+        src.get(payload, payloadRead, count);
+        if(masked && src.isReadOnly())
+            unmask(payload, payloadRead, count);
+        payloadRead += count;
+        if(payloadRead < payload.length)
+            return Result.NEED_MORE;
+        readingPayload = false;
+        return Result.FRAME;
+    }
+
+    /**
+     * @return <code>null</code> - header is read
+     */
+    private Result readHeader(ByteBuffer src) {
+        if(headerRead == 0 && src.remaining() >= 2) {
+            int size = headerSize(src.get(src.position() + 1));
+            if(src.remaining() >= size) {
+                Result result = parseHeader(src, src.position());
+                src.position(src.position() + size);
+                return result;
+            }
+        }
+        while(src.hasRemaining()) {
+            header[headerRead++] = src.get();
+            if(headerRead >= 2 && headerRead == headerSize(header[1])) {
+                headerRead = 0;
+                return parseHeader(headerBuffer, 0);
+            }
+        }
+        return Result.NEED_MORE;
+    }
+
+    private static int headerSize(byte second) {
+        int length = second & 0x7F;
+        int size = 2 + ((second & 0x80) != 0 ? 4 : 0);
+        if(length == 126)
+            size += 2;
+        else if(length == 127)
+            size += 8;
+        return size;
+    }
+
+    private Result parseHeader(ByteBuffer buffer, int offset) {
+        byte first = buffer.get(offset);
+        byte second = buffer.get(offset + 1);
+        fin = (first & 0x80) != 0;
+        rsv = (first & 0x70) >>> 4;
+        opcode = (byte) (first & 0x0F);
+        masked = (second & 0x80) != 0;
+        long length = second & 0x7F;
+        offset += 2;
+        if(length == 126) {
+            length = buffer.getShort(offset) & 0xFFFF;
+            offset += 2;
+        } else if(length == 127) {
+            length = buffer.getLong(offset);
+            offset += 8;
+            if(length < 0)
+                return Result.ERROR;
+        }
+        if(length > maxPayloadLength || length > Integer.MAX_VALUE - 8)
+            return Result.TOO_BIG;
+        if(masked)
+            mask = buffer.getInt(offset);
+        payload = length == 0 ? EMPTY : new byte[(int) length];
+        payloadRead = 0;
+        readingPayload = true;
+        return null;
+    }
+
+    /**
+     * Unmask buffer region in place
+     *
+     * @param index index of the first byte in the payload
+     */
+    private void unmask(ByteBuffer buffer, int position, int count, int index) {
+        int rotated = Integer.rotateLeft(mask, (index & 3) * 8);
+        long wide = ((long) rotated << 32) | (rotated & 0xFFFFFFFFL);
+        if(buffer.order() == ByteOrder.LITTLE_ENDIAN)
+            wide = Long.reverseBytes(wide);
+        int end = position + count;
+        int i = position;
+        for(; i + 8 <= end; i += 8)
+            buffer.putLong(i, buffer.getLong(i) ^ wide);
+        for(; i < end; i++)
+            buffer.put(i, (byte) (buffer.get(i) ^ (rotated >>> (24 - ((i - position) & 3) * 8))));
+    }
+
+    private void unmask(byte[] data, int offset, int count) {
+        for(int i = offset; i < offset + count; i++)
+            data[i] ^= mask >>> (24 - (i & 3) * 8);
+    }
+
+    public boolean isFin() {
+        return fin;
+    }
+
+    /**
+     * Return RSV1-RSV3 bits of the frame, RSV1 is the highest
+     */
+    public int getRsv() {
+        return rsv;
+    }
+
+    public byte getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Return payload of decoded frame. Array is not reused by decoder
+     */
+    @Nonnull
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void reset() {
+        headerRead = 0;
+        readingPayload = false;
+        payload = EMPTY;
+        payloadRead = 0;
+    }
+
+    enum Result {
+        /**
+         * Buffer is consumed, frame is not finished
+         */
+        NEED_MORE,
+        /**
+         * Frame is decoded
+         */
+        FRAME,
+        /**
+         * Frame payload is larger than limit
+         */
+        TOO_BIG,
+        /**
+         * Frame is malformed
+         */
+        ERROR
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.addon.websocket.impl;
+
+import lombok.experimental.UtilityClass;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+import static com.alesharik.webserver.module.http.addon.websocket.impl.WebSocketConstants.CUT_FIN;
+
+/**
+ * Encodes server frames. Server frames are never masked
+ */
+@UtilityClass
+class WebSocketFrameEncoder {
+    /**
+     * Encode frame header and payload into one buffer
+     *
+     * @param rsv RSV1-RSV3 bits, RSV1 is the highest
+     * @return flipped buffer with the frame
+     */
+    @Nonnull
+    public static ByteBuffer encode(boolean fin, byte opcode, int rsv, @Nullable byte[] data, int offset, int length) {
+        int headerSize = length < 126 ? 2 : length < 65536 ? 4 : 10;
+        ByteBuffer frame = ByteBuffer.allocate(headerSize + length);
+        frame.put((byte) ((fin ? CUT_FIN : 0) | (rsv << 4) | opcode));
+        if(length < 126)
+            frame.put((byte) length);
+        else if(length < 65536) {
+            frame.put((byte) 126);
+            frame.putShort((short) length);
+        } else {
+            frame.put((byte) 127);
+            frame.putLong(length);
+        }
+        if(length > 0)
+            frame.put(data, offset, length);
+        frame.flip();
+        return frame;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.addon.websocket.impl;
+
+import com.alesharik.webserver.api.cache.object.CachedObjectFactory;
+import com.alesharik.webserver.api.cache.object.Recyclable;
+import com.alesharik.webserver.api.cache.object.SmartCachedObjectFactory;
+import com.alesharik.webserver.module.http.server.BatchingRunnableTask;
+import com.alesharik.webserver.module.http.server.ExecutorPool;
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.alesharik.webserver.module.http.addon.websocket.impl.WebSocketConstants.BYTE;
+import static com.alesharik.webserver.module.http.addon.websocket.impl.WebSocketConstants.TEXT;
+
+/**
+ * Group of WebSocket connections, which receive same messages. Message is encoded once and the read-only frame is written to all members.
+ * Members are divided into partitions. With {@link ExecutorPool} every partition is sent by one worker task, batched by the partition, so
+ * members receive messages in broadcast order if pool supports batching. Without pool messages are sent by calling thread
+ */
+@ThreadSafe
+public final class WebSocketGroup {
+    private final Map<WebSocketBroadcaster, Member> members = new ConcurrentHashMap<>();
+    private final Partition[] partitions;
+    private final AtomicInteger nextPartition = new AtomicInteger();
+    @Getter
+    private final SlowConsumerPolicy policy;
+    /**
+     * Member with more queued bytes is slow
+     */
+    @Getter
+    private final long slowConsumerLimit;
+    @Nullable
+    private final ExecutorPool executorPool;
+    private final LongAdder dropped = new LongAdder();
+
+    public WebSocketGroup(@Nonnull SlowConsumerPolicy policy, long slowConsumerLimit) {
+        this(policy, slowConsumerLimit, null, 1);
+    }
+
+    /**
+     * @param executorPool pool for fan-out, <code>null</code> - use calling thread
+     * @param partitions   partition count, usually equals to worker count
+     */
+    public WebSocketGroup(@Nonnull SlowConsumerPolicy policy, long slowConsumerLimit, @Nullable ExecutorPool executorPool, int partitions) {
+        if(partitions < 1)
+            throw new IllegalArgumentException("Partition count must be positive");
+        this.policy = policy;
+        this.slowConsumerLimit = slowConsumerLimit;
+        this.executorPool = executorPool;
+        this.partitions = new Partition[partitions];
+        for(int i = 0; i < partitions; i++)
+            this.partitions[i] = new Partition();
+    }
+
+    public void add(@Nonnull WebSocketBroadcaster broadcaster) {
+        members.computeIfAbsent(broadcaster, b -> {
+            Partition partition = partitions[Math.abs(nextPartition.getAndIncrement() % partitions.length)];
+            Member member = new Member(b, partition);
+            partition.members.put(b, member);
+            return member;
+        });
+    }
+
+    public void remove(@Nonnull WebSocketBroadcaster broadcaster) {
+        Member member = members.remove(broadcaster);
+        if(member != null)
+            member.partition.members.remove(broadcaster);
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Return count of messages, which weren't sent to slow members
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public void broadcast(@Nonnull String message) {
+        byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        broadcastFrame(WebSocketFrameEncoder.encode(true, TEXT, 0, data, 0, data.length));
+    }
+
+    public void broadcast(@Nonnull byte[] message) {
+        broadcastFrame(WebSocketFrameEncoder.encode(true, BYTE, 0, message, 0, message.length));
+    }
+
+    /**
+     * Send encoded frame to all members
+     */
+    public void broadcastFrame(@Nonnull ByteBuffer frame) {
+        ByteBuffer shared = frame.asReadOnlyBuffer();
+        for(Partition partition : partitions) {
+            if(partition.members.isEmpty())
+                continue;
+            if(executorPool == null)
+                send(partition, shared, false);
+            else
+                executorPool.executeWorkerTask(SendTask.create(this, partition, shared, false));
+        }
+    }
+
+    /**
+     * Send latest skipped frames to members, which are not slow now. Used only with {@link SlowConsumerPolicy#COALESCE} policy
+     */
+    public void flushPending() {
+        if(policy != SlowConsumerPolicy.COALESCE)
+            return;
+        for(Partition partition : partitions) {
+            if(partition.members.isEmpty())
+                continue;
+            if(executorPool == null)
+                send(partition, null, true);
+            else
+                executorPool.executeWorkerTask(SendTask.create(this, partition, null, true));
+        }
+    }
+
+    /**
+     * @param pending send only pending frames of {@link SlowConsumerPolicy#COALESCE} policy
+     */
+    private void send(Partition partition, @Nullable ByteBuffer frame, boolean pending) {
+        for(Member member : partition.members.values()) {
+            WebSocketBroadcaster broadcaster = member.broadcaster;
+            if(!broadcaster.isOpen()) {
+                remove(broadcaster);
+                continue;
+            }
+            boolean slow = policy != SlowConsumerPolicy.QUEUE && broadcaster.getQueuedBytes() > slowConsumerLimit;
+            if(pending) {
+                ByteBuffer pendingFrame = member.pending;
+                if(pendingFrame != null && !slow) {
+                    member.pending = null;
+                    broadcaster.sendFrame(pendingFrame);
+                }
+                continue;
+            }
+
+            if(member.pending != null) {//Pending frame is replaced by the new one
+                member.pending = null;
+                dropped.increment();
+            }
+            if(!slow)
+                broadcaster.sendFrame(frame);
+            else if(policy == SlowConsumerPolicy.DROP)
+                dropped.increment();
+            else
+                member.pending = frame;
+        }
+    }
+
+    public enum SlowConsumerPolicy {
+        /**
+         * Queue all messages
+         */
+        QUEUE,
+        /**
+         * Skip messages for slow members
+         */
+        DROP,
+        /**
+         * Keep only latest skipped message for slow member. It is sent by {@link #flushPending()}, or replaced by next message
+         */
+        COALESCE
+    }
+
+    private static final class Partition {
+        private final Map<WebSocketBroadcaster, Member> members = new ConcurrentHashMap<>();
+    }
+
+    private static final class Member {
+        private final WebSocketBroadcaster broadcaster;
+        private final Partition partition;
+        /**
+         * Latest skipped frame. Changed only by partition's tasks
+         */
+        private volatile ByteBuffer pending;
+
+        Member(WebSocketBroadcaster broadcaster, Partition partition) {
+            this.broadcaster = broadcaster;
+            this.partition = partition;
+        }
+    }
+
+    private static final class SendTask implements BatchingRunnableTask<Object>, Recyclable {
+        private static final CachedObjectFactory<SendTask> FACTORY = new SmartCachedObjectFactory<>(SendTask::new);
+
+        private WebSocketGroup group;
+        private Partition partition;
+        private ByteBuffer frame;
+        private boolean pending;
+
+        public static SendTask create(WebSocketGroup group, Partition partition, @Nullable ByteBuffer frame, boolean pending) {
+            SendTask task = FACTORY.getInstance();
+            task.group = group;
+            task.partition = partition;
+            task.frame = frame;
+            task.pending = pending;
+            return task;
+        }
+
+        @Override
+        public Object getKey() {
+            return partition;
+        }
+
+        @Override
+        public void run() {
+            group.send(partition, frame, pending);
+            FACTORY.putInstance(this);
+        }
+
+        @Override
+        public void recycle() {
+            group = null;
+            partition = null;
+            frame = null;
+            pending = false;
+        }
+    }
+}
@@ -38,6 +38,16 @@ public interface HttpHandlerBundle {
     @Nonnull
     HttpProcessor getProcessor();
 
+    /**
+     * Return <code>true</code> if bundle processors never block(no I/O, locks or sleeps). Such bundles can be handled right in the selector thread.
+     * Their processors must not stream responses with {@link com.alesharik.webserver.module.http.http.Response#stream()}, including file and range responses:
+     * stream waits for the selector thread, so it throws {@link IllegalStateException} there. Requests with streamed body are always handled
+     * in worker pool, because their body is received by the selector thread, and reading it there throws {@link IllegalStateException} too
+     */
+    default boolean isNonBlocking() {
+        return false;
+    }
+
     @Nullable
     default MessageProcessor<?, ?, ?> getMessageProcessor(String name, MessageProcessorParameters parameters) {
         return null;
@@ -0,0 +1,75 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.bundle.impl.validator;
+
+import com.alesharik.webserver.module.http.bundle.Validator;
+import com.alesharik.webserver.module.http.http.Request;
+import com.alesharik.webserver.module.http.http.data.Host;
+import com.alesharik.webserver.module.http.util.RouteTree;
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * This validator accepts requests to the host, which path matches the template. Template syntax is described in {@link RouteTree}.
+ * Bundles with this validator are selected by one route table lookup instead of checking them one by one
+ */
+public final class RouteValidator implements Validator {
+    /**
+     * <code>null</code> means any host
+     */
+    @Getter
+    @Nullable
+    private final String host;
+    @Getter
+    @Nonnull
+    private final String template;
+    private final RouteTree<Boolean> tree = new RouteTree<>();
+
+    /**
+     * @param host     the host, <code>null</code> means any host
+     * @param template path template
+     * @throws IllegalArgumentException if template is invalid
+     */
+    public RouteValidator(@Nullable String host, @Nonnull String template) {
+        this.host = host;
+        this.template = template;
+        tree.add(template, Boolean.TRUE);
+    }
+
+    /**
+     * Create validator for any host
+     *
+     * @param template path template
+     * @throws IllegalArgumentException if template is invalid
+     */
+    public RouteValidator(@Nonnull String template) {
+        this(null, template);
+    }
+
+    @Override
+    public boolean isRequestValid(@Nonnull Request request) {
+        if(host != null) {
+            Host requestHost = request.getHeader("Host");
+            if(requestHost == null || !host.equalsIgnoreCase(requestHost.getHost()))
+                return false;
+        }
+        return tree.find(request.getContextPath(), request) != null;
+    }
+}
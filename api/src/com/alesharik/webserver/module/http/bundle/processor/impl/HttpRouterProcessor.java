@@ -20,20 +20,23 @@ package com.alesharik.webserver.module.http.bundle.processor.impl;
 
 import com.alesharik.webserver.module.http.bundle.processor.HttpErrorHandler;
 import com.alesharik.webserver.module.http.bundle.processor.HttpProcessor;
+import com.alesharik.webserver.module.http.http.HeaderManager;
+import com.alesharik.webserver.module.http.http.HttpStatus;
+import com.alesharik.webserver.module.http.http.Method;
 import com.alesharik.webserver.module.http.http.Request;
 import com.alesharik.webserver.module.http.http.Response;
-import org.apache.commons.collections4.Trie;
-import org.apache.commons.collections4.trie.PatriciaTrie;
+import com.alesharik.webserver.module.http.util.RouteTree;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
 
 /**
- * This class represent router for requests
+ * This class represent router for requests. Paths are templates, compiled into {@link RouteTree}: <code>/users/{id}/orders/*</code>.
+ * Captured parameters are available through {@link Request#getPathParameter(String)}
  */
 @ThreadSafe
 public class HttpRouterProcessor implements HttpProcessor {
-    protected final Trie<String, HttpProcessor> processors = new PatriciaTrie<>();
+    protected final RouteTree<HttpProcessor> processors = new RouteTree<>();
     protected volatile HttpErrorHandler errorHandler;
     protected volatile HttpProcessor def;
 
@@ -49,12 +52,18 @@ public class HttpRouterProcessor implements HttpProcessor {
     @Override
     public void process(@Nonnull Request request, @Nonnull Response response) {
         try {
-            String contextPath = request.getContextPath();
-            if(contextPath.endsWith("/"))
-                contextPath = contextPath.substring(0, contextPath.length() - 1);
-            HttpProcessor processor = processors.get(contextPath);
-            if(processor == null)
+            RouteTree.Route<HttpProcessor> route = processors.find(request.getContextPath(), request);
+            HttpProcessor processor;
+            if(route == null)
                 processor = def;
+            else {
+                processor = route.get(request.getMethod());
+                if(processor == null) {
+                    response.respond(HttpStatus.METHOD_NOT_ALLOWED_405);
+                    response.addHeader(HeaderManager.getHeaderByName("Allow"), route.getMethods());
+                    return;
+                }
+            }
             if(processor == null)
                 return;
             processor.process(request, response);
@@ -74,13 +83,29 @@ public class HttpRouterProcessor implements HttpProcessor {
     /**
      * Add processor to router
      *
-     * @param path      the path
+     * @param path      the path template
      * @param processor the processor
      * @return this instance
+     * @throws IllegalArgumentException if path template is invalid
      */
     @Nonnull
     public HttpRouterProcessor path(@Nonnull String path, @Nonnull HttpProcessor processor) {
-        processors.put(path, processor);
+        processors.add(path, processor);
+        return this;
+    }
+
+    /**
+     * Add processor for the method to router. Requests with other methods to this path will get 405 Method Not Allowed
+     *
+     * @param method    the method
+     * @param path      the path template
+     * @param processor the processor
+     * @return this instance
+     * @throws IllegalArgumentException if path template is invalid
+     */
+    @Nonnull
+    public HttpRouterProcessor path(@Nonnull Method method, @Nonnull String path, @Nonnull HttpProcessor processor) {
+        processors.add(path, method, processor);
         return this;
     }
 
@@ -0,0 +1,213 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.http;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+
+/**
+ * Decoder for <code>Transfer-Encoding: chunked</code> request bodies. It skips chunk framing in place and reports payload
+ * ranges without copying them. Decoder keeps it's state between calls, so chunks can be split across any number of reads.
+ * Chunk extensions and trailers are ignored
+ */
+@NotThreadSafe
+public final class ChunkedDecoder {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final long MAX_CHUNK_SIZE = Long.MAX_VALUE >> 4;
+
+    private final int maxLineSize;
+    private State state = State.SIZE;
+    private long chunkSize = 0;
+    private boolean hasDigits = false;
+    private long remaining = 0;
+    private int available = 0;
+    private int lineSize = 0;
+
+    /**
+     * @param maxLineSize max size of chunk size line with extensions and trailer section in bytes
+     */
+    public ChunkedDecoder(int maxLineSize) {
+        this.maxLineSize = maxLineSize;
+    }
+
+    /**
+     * Skip framing bytes from buffer's position until payload or end of body. If decoder returns {@link Result#DATA},
+     * {@link #getAvailable()} payload bytes start from buffer's position and caller must consume all of them before next call
+     *
+     * @param src the buffer
+     * @return decode result
+     */
+    @Nonnull
+    public Result next(@Nonnull ByteBuffer src) {
+        available = 0;
+        while(src.hasRemaining()) {
+            if(state == State.DATA) {
+                int count = (int) Math.min(remaining, src.remaining());
+                remaining -= count;
+                if(remaining == 0)
+                    state = State.DATA_CR;
+                available = count;
+                return Result.DATA;
+            }
+
+            byte b = src.get();
+            if(state != State.DATA_CR && state != State.DATA_LF && ++lineSize > maxLineSize)
+                return fail();
+            switch (state) {
+                case SIZE:
+                    int digit = Character.digit(b, 16);
+                    if(digit != -1) {
+                        if(chunkSize > MAX_CHUNK_SIZE)
+                            return fail();
+                        chunkSize = (chunkSize << 4) | digit;
+                        hasDigits = true;
+                    } else if(b == ';' || b == ' ' || b == '\t')
+                        state = State.EXTENSION;
+                    else if(b == CR)
+                        state = State.SIZE_LF;
+                    else if(b == LF) {
+                        if(!endSizeLine())
+                            return fail();
+                    } else
+                        return fail();
+                    break;
+                case EXTENSION:
+                    if(b == LF && !endSizeLine())
+                        return fail();
+                    break;
+                case SIZE_LF:
+                    if(b != LF || !endSizeLine())
+                        return fail();
+                    break;
+                case DATA_CR:
+                    if(b == CR)
+                        state = State.DATA_LF;
+                    else if(b == LF)
+                        state = State.SIZE;
+                    else
+                        return fail();
+                    break;
+                case DATA_LF:
+                    if(b != LF)
+                        return fail();
+                    state = State.SIZE;
+                    break;
+                case TRAILER_START:
+                    if(b == CR)
+                        state = State.TRAILER_END;
+                    else if(b == LF)
+                        return done();
+                    else
+                        state = State.TRAILER;
+                    break;
+                case TRAILER:
+                    if(b == LF)
+                        state = State.TRAILER_START;
+                    break;
+                case TRAILER_END:
+                    if(b != LF)
+                        return fail();
+                    return done();
+                default:
+                    return fail();
+            }
+        }
+        return Result.NEED_MORE;
+    }
+
+    /**
+     * Return payload size, reported by last {@link Result#DATA}
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * Prepare decoder for next body
+     */
+    public void reset() {
+        state = State.SIZE;
+        chunkSize = 0;
+        hasDigits = false;
+        remaining = 0;
+        available = 0;
+        lineSize = 0;
+    }
+
+    private boolean endSizeLine() {
+        if(!hasDigits)
+            return false;
+        if(chunkSize == 0) {
+            state = State.TRAILER_START;
+        } else {
+            remaining = chunkSize;
+            lineSize = 0;
+            state = State.DATA;
+        }
+        chunkSize = 0;
+        hasDigits = false;
+        return true;
+    }
+
+    private Result done() {
+        reset();
+        return Result.DONE;
+    }
+
+    private Result fail() {
+        state = State.ERROR;
+        return Result.ERROR;
+    }
+
+    public enum Result {
+        /**
+         * Body is incomplete, decoder waits for more data
+         */
+        NEED_MORE,
+        /**
+         * Payload is available from buffer's position
+         */
+        DATA,
+        /**
+         * Last chunk and trailers received
+         */
+        DONE,
+        /**
+         * Body is malformed or chunk line is bigger than allowed
+         */
+        ERROR
+    }
+
+    private enum State {
+        SIZE,
+        SIZE_LF,
+        EXTENSION,
+        DATA,
+        /**
+         * Line end after chunk data
+         */
+        DATA_CR,
+        DATA_LF,
+        TRAILER_START,
+        TRAILER,
+        TRAILER_END,
+        ERROR
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.alesharik.webserver.module.http.http;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * HeaderIndex stores raw request head bytes and offsets of parsed header names and values. Strings are created only when
+ * someone asks for them, so untouched headers never produce any garbage. Instances are reused with their {@link Request}
+ */
+@NotThreadSafe
+public final class HeaderIndex {
+    private static final int FIELDS = 4;
+
+    private byte[] data = new byte[512];
+    private int length = 0;
+    /**
+     * nameStart, nameEnd, valueStart, valueEnd for each header
+     */
+    private int[] offsets = new int[FIELDS * 32];
+    private int count = 0;
+
+    /**
+     * Return stored byte count
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Return header count
+     */
+    public int size() {
+        return count;
+    }
+
+    public byte byteAt(int i) {
+        return data[i];
+    }
+
+    /**
+     * Copy <code>len</code> bytes from buffer's position into the index
+     */
+    void append(@Nonnull ByteBuffer src, int len) {
+        ensureCapacity(length + len);
+        src.get(data, length, len);
+        length += len;
+    }
+
+    void addHeader(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        int off = count * FIELDS;
+        if(off + FIELDS > offsets.length)
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        offsets[off] = nameStart;
+        offsets[off + 1] = nameEnd;
+        offsets[off + 2] = valueStart;
+        offsets[off + 3] = valueEnd;
+        count++;
+    }
+
+    /**
+     * Compare header name with given name ignoring ASCII case. Doesn't allocate anything
+     */
+    public boolean nameEquals(int i, @Nonnull String name) {
+        int start = offsets[i * FIELDS];
+        int end = offsets[i * FIELDS + 1];
+        if(end - start != name.length())
+            return false;
+        for(int j = 0; j < name.length(); j++) {
+            int a = data[start + j];
+            int b = name.charAt(j);
+            if(a != b && toLower(a) != toLower(b))
+                return false;
+        }
+        return true;
+    }
+
+    @Nonnull
+    public String getName(int i) {
+        return string(offsets[i * FIELDS], offsets[i * FIELDS + 1]);
+    }
+
+    @Nonnull
+    public String getValue(int i) {
+        return string(offsets[i * FIELDS + 2], offsets[i * FIELDS + 3]);
+    }
+
+    /**
+     * Return header in <code>Name: value</code> form, understood by {@link Header#getValue(String)}
+     */
+    @Nonnull
+    public String getLine(int i) {
+        return getName(i) + ": " + getValue(i);
+    }
+
+    @Nonnull
+    String string(int start, int end) {
+        return new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Copy all data from other index
+     */
+    public void copyFrom(@Nonnull HeaderIndex other) {
+        ensureCapacity(other.length);
+        System.arraycopy(other.data, 0, data, 0, other.length);
+        length = other.length;
+        if(offsets.length < other.offsets.length)
+            offsets = new int[other.offsets.length];
+        System.arraycopy(other.offsets, 0, offsets, 0, other.count * FIELDS);
+        count = other.count;
+    }
+
+    public void clear() {
+        length = 0;
+        count = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > data.length)
+            data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+    }
+
+    private static int toLower(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("HeaderIndex{");
+        for(int i = 0; i < count; i++) {
+            if(i > 0)
+                builder.append(", ");
+            builder.append(getLine(i));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -236,6 +236,11 @@ import java.util.TreeMap;
  * <td>URI MUST be relative!</td>
  * </tr>
  * <tr>
+ * <td>Transfer-Encoding</td>
+ * <td>{@link String}[]</td>
+ * <td>Transfer-Encoding: gzip, chunked</td>
+ * </tr>
+ * <tr>
  * <td colspan="5" scope="colgroup"><center>Response context</center></td>
  * </tr>
  * <tr>
@@ -346,6 +351,12 @@ import java.util.TreeMap;
  * <td>Sec-WebSocket-Accept: hsBlbuDTkk24srzEOTBUlZAlC2g=</td>
  * <td>Allow browser to manage WS connections</td>
  * </tr>
+ * <tr>
+ * <td>Sec-WebSocket-Extensions</td>
+ * <td>String[]</td>
+ * <td>Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits</td>
+ * <td>Negotiate WS extensions</td>
+ * </tr>
  * </tbody>
  * </table>
  * DO not support AWS4-HMAC-SHA256 authorization header<br>
@@ -411,6 +422,7 @@ public class HeaderManager {
         headers.put("Content-Encoding", new ObjectHeader<>("Content-Encoding", new EncodingFactory()));
         headers.put("Content-Location", new ObjectHeader<>("Content-Location", new UriFactory()));
         headers.put("Content-Language", new ListHeader<>("Content-Language", new LocaleFactory()));
+        headers.put("Transfer-Encoding", new ListHeader<>("Transfer-Encoding", new StringFactory()));
 
         //Request context
         headers.put("From", new StringHeader("From"));//Store email address as string
@@ -437,6 +449,7 @@ public class HeaderManager {
         headers.put("Sec-WebSocket-Version", new IntHeader("Sec-WebSocket-Version"));
         headers.put("Sec-WebSocket-Key", new StringHeader("Sec-WebSocket-Key"));
         headers.put("Sec-WebSocket-Accept", new StringHeader("Sec-WebSocket-Accept"));
+        headers.put("Sec-WebSocket-Extensions", new ListHeader<>("Sec-WebSocket-Extensions", new StringFactory()));
     }
 
     public static <T extends Header> T getHeaderByName(String name) {
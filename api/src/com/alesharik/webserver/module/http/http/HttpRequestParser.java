@@ -0,0 +1,230 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.alesharik.webserver.module.http.http;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+
+/**
+ * Byte-level HTTP/1.1 request head parser. It scans incoming buffer for line ends and copies bytes into request's {@link HeaderIndex}
+ * in bulk, recording offsets of header names and values. Parser keeps it's state between calls, so request head can be split
+ * across any number of reads. One parser must be used by one connection only
+ */
+@NotThreadSafe
+public final class HttpRequestParser {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte SP = ' ';
+    private static final byte HT = '\t';
+    private static final byte COLON = ':';
+
+    private static final Method[] METHODS = Method.values();
+    private static final HttpVersion[] VERSIONS = HttpVersion.values();
+
+    private final int maxHeaderSize;
+    private State state = State.EMPTY;
+    private int lineStart = 0;
+
+    /**
+     * @param maxHeaderSize max size of request line and headers in bytes
+     */
+    public HttpRequestParser(int maxHeaderSize) {
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    /**
+     * Parse request head from buffer's position. Buffer position will be set after last consumed byte. If parser returns
+     * {@link Result#DONE}, buffer position points to the first body byte
+     *
+     * @param src     the buffer
+     * @param request the request to fill
+     * @return parse result
+     */
+    @Nonnull
+    public Result parse(@Nonnull ByteBuffer src, @Nonnull Request.Builder request) {
+        HeaderIndex index = request.headerIndex;
+        while(src.hasRemaining()) {
+            if(state == State.EMPTY) {
+                byte b = src.get(src.position());
+                if(b == CR || b == LF) {//Cut empty lines at start
+                    src.position(src.position() + 1);
+                    continue;
+                }
+                index.clear();
+                lineStart = 0;
+                state = State.REQUEST_LINE;
+            }
+
+            int position = src.position();
+            int limit = src.limit();
+            int end = position;
+            while(end < limit && src.get(end) != LF)
+                end++;
+            boolean found = end < limit;
+            if(found)
+                end++;//Consume LF
+            if(index.length() + end - position > maxHeaderSize)
+                return Result.TOO_LARGE;
+            index.append(src, end - position);
+            if(!found)
+                return Result.NEED_MORE;
+
+            int lineEnd = index.length() - 1;
+            if(lineEnd > lineStart && index.byteAt(lineEnd - 1) == CR)
+                lineEnd--;
+
+            if(state == State.REQUEST_LINE) {
+                if(!parseRequestLine(request, index, lineStart, lineEnd))
+                    return Result.ERROR;
+                state = State.HEADERS;
+            } else if(lineEnd == lineStart) {//Body start
+                state = State.EMPTY;
+                return Result.DONE;
+            } else if(!parseHeader(index, lineStart, lineEnd))
+                return Result.ERROR;
+            lineStart = index.length();
+        }
+        return Result.NEED_MORE;
+    }
+
+    /**
+     * Drop all state. Must be called if request parsing was aborted
+     */
+    public void reset() {
+        state = State.EMPTY;
+        lineStart = 0;
+    }
+
+    private static boolean parseRequestLine(Request.Builder request, HeaderIndex index, int start, int end) {
+        int methodEnd = indexOf(index, SP, start, end);
+        if(methodEnd == -1)
+            return false;
+        int versionStart = lastIndexOf(index, SP, methodEnd + 1, end);
+        if(versionStart == -1 || versionStart == methodEnd + 1)
+            return false;
+
+        Method method = null;
+        for(Method m : METHODS) {
+            if(regionEquals(index, start, methodEnd, m.name())) {
+                method = m;
+                break;
+            }
+        }
+        HttpVersion version = null;
+        for(HttpVersion v : VERSIONS) {
+            if(regionEquals(index, versionStart + 1, end, v.getValue())) {
+                version = v;
+                break;
+            }
+        }
+        if(method == null || version == null)
+            return false;
+
+        int uriStart = methodEnd + 1;
+        int schemeEnd = indexOf(index, COLON, uriStart, versionStart);
+        if(schemeEnd != -1 && schemeEnd + 2 < versionStart && index.byteAt(schemeEnd + 1) == '/' && index.byteAt(schemeEnd + 2) == '/') {//Absolute form
+            int pathStart = indexOf(index, (byte) '/', schemeEnd + 3, versionStart);
+            if(pathStart == -1)
+                return false;
+            uriStart = pathStart;
+        }
+
+        request.method = method;
+        request.rawUri = index.string(uriStart, versionStart);
+        request.httpVersion = version;
+        return true;
+    }
+
+    private static boolean parseHeader(HeaderIndex index, int start, int end) {
+        byte first = index.byteAt(start);
+        if(first == SP || first == HT)//Obsolete line folding isn't supported
+            return false;
+        int colon = indexOf(index, COLON, start, end);
+        if(colon == -1 || colon == start)
+            return false;
+        byte beforeColon = index.byteAt(colon - 1);
+        if(beforeColon == SP || beforeColon == HT)
+            return false;
+
+        int valueStart = colon + 1;
+        while(valueStart < end && isWhitespace(index.byteAt(valueStart)))
+            valueStart++;
+        int valueEnd = end;
+        while(valueEnd > valueStart && isWhitespace(index.byteAt(valueEnd - 1)))
+            valueEnd--;
+        index.addHeader(start, colon, valueStart, valueEnd);
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == SP || b == HT;
+    }
+
+    private static boolean regionEquals(HeaderIndex index, int start, int end, String s) {
+        if(end - start != s.length())
+            return false;
+        for(int i = 0; i < s.length(); i++)
+            if(index.byteAt(start + i) != s.charAt(i))
+                return false;
+        return true;
+    }
+
+    private static int indexOf(HeaderIndex index, byte b, int start, int end) {
+        for(int i = start; i < end; i++)
+            if(index.byteAt(i) == b)
+                return i;
+        return -1;
+    }
+
+    private static int lastIndexOf(HeaderIndex index, byte b, int start, int end) {
+        for(int i = end - 1; i >= start; i--)
+            if(index.byteAt(i) == b)
+                return i;
+        return -1;
+    }
+
+    public enum Result {
+        /**
+         * Request head is incomplete, parser waits for more data
+         */
+        NEED_MORE,
+        /**
+         * Request head successfully parsed
+         */
+        DONE,
+        /**
+         * Request head is malformed
+         */
+        ERROR,
+        /**
+         * Request head is bigger than allowed
+         */
+        TOO_LARGE
+    }
+
+    private enum State {
+        /**
+         * Empty lines before request line
+         */
+        EMPTY,
+        REQUEST_LINE,
+        HEADERS
+    }
+}
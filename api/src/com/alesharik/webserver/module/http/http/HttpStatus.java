@@ -18,18 +18,38 @@
 
 package com.alesharik.webserver.module.http.http;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
+import java.nio.charset.StandardCharsets;
+
 @EqualsAndHashCode
 @Getter
 public class HttpStatus {
     private final int code;
     private final String status;
+    /**
+     * Pre-encoded HTTP/1.1 status line
+     */
+    @Getter(AccessLevel.NONE)
+    private final transient byte[] statusLine;
 
     private HttpStatus(int code, String status) {
         this.code = code;
         this.status = status;
+        this.statusLine = encodeStatusLine(HttpVersion.HTTP_1_1);
+    }
+
+    /**
+     * Return status line with CRLF in ISO-8859-1 encoding. HTTP/1.1 line is pre-encoded, so returned array must not be modified
+     */
+    byte[] getStatusLine(HttpVersion version) {
+        return version == HttpVersion.HTTP_1_1 ? statusLine : encodeStatusLine(version);
+    }
+
+    private byte[] encodeStatusLine(HttpVersion version) {
+        return (version.getValue() + ' ' + code + ' ' + status + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
     }
 
     public static final HttpStatus CONTINUE_100 = new HttpStatus(100, "Continue");
@@ -74,4 +94,5 @@ public class HttpStatus {
     public static final HttpStatus GATEWAY_TIMEOUT_504 = new HttpStatus(504, "Gateway Timeout");
     public static final HttpStatus HTTP_VERSION_NOT_SUPPORTED_505 = new HttpStatus(505, "HTTP Version Not Supported");
     public static final HttpStatus TOO_MANY_REQUESTS_429 = new HttpStatus(429, "Too Many Requests");
+    public static final HttpStatus REQUEST_HEADER_FIELDS_TOO_LARGE_431 = new HttpStatus(431, "Request Header Fields Too Large");
 }
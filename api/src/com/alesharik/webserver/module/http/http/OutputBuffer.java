@@ -19,6 +19,7 @@
 package com.alesharik.webserver.module.http.http;
 
 import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.concurrent.locks.StampedLock;
 
@@ -99,6 +100,26 @@ public class OutputBuffer {
         return cpy;
     }
 
+    /**
+     * Return written byte count
+     */
+    public int size() {
+        return full;
+    }
+
+    /**
+     * Return buffer, which wraps written data without copying. Buffer content is undefined if someone writes into this OutputBuffer
+     * after this method call
+     */
+    public ByteBuffer toByteBuffer() {
+        long stamp = stampedLock.readLock();
+        try {
+            return ByteBuffer.wrap(arr, 0, full);
+        } finally {
+            stampedLock.unlockRead(stamp);
+        }
+    }
+
     public void clear() {
         long stamp = stampedLock.writeLock();
         try {
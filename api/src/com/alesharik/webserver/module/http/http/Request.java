@@ -41,6 +41,7 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -62,6 +63,7 @@ public class Request implements Recyclable, Cloneable {
     public static final int CACHE_STRING_BODY = 2;
     public static final int CACHE_MULTIPART = 4;
     public static final int CACHE_MULTIPART_STRING = 8;
+    private static final String[] EMPTY_NAMES = new String[0];
 
     protected final Map<String, Object> data = new ConcurrentHashMap<>();
     //====================Parsed data====================\\
@@ -76,6 +78,15 @@ public class Request implements Recyclable, Cloneable {
     protected byte[] processedBody;
     protected Map<ContentDisposition, byte[]> multipart;
     protected Map<ContentDisposition, String> stringMultipart;
+    /**
+     * Path parameter names, set by router. Values are stored as bounds in {@link #pathParameterBounds}
+     */
+    protected String[] pathParameterNames = EMPTY_NAMES;
+    protected int[] pathParameterBounds = new int[8];
+    /**
+     * The path, which was matched by router
+     */
+    protected String pathParameterSource = null;
     //====================Metadata====================\\
     @Getter
     protected InetSocketAddress remote = null;
@@ -87,11 +98,19 @@ public class Request implements Recyclable, Cloneable {
     @Getter
     protected String rawUri = null;
     protected String[] headers = new String[0];
+    /**
+     * Raw headers, parsed by {@link HttpRequestParser}. Header strings are created lazily
+     */
+    protected final HeaderIndex headerIndex = new HeaderIndex();
     @Getter
     protected Method method = null;
     @Getter
     protected HttpVersion httpVersion = null;
     protected byte[] body = new byte[0];
+    /**
+     * Body, which is still receiving. Null means that body is fully received and stored in {@link #body}
+     */
+    protected RequestBodyStream bodyStream = null;
 
     //====================Cache control====================\\
     /**
@@ -113,6 +132,7 @@ public class Request implements Recyclable, Cloneable {
         clone.method = method;
         clone.httpVersion = httpVersion;
         clone.body = body != null ? Arrays.copyOf(body, body.length) : null;
+        clone.bodyStream = bodyStream;
         clone.rawUri = rawUri;
         clone.remote = remote;
         clone.local = local;
@@ -120,12 +140,16 @@ public class Request implements Recyclable, Cloneable {
         clone.uri = uri;
         clone.headerMap.putAll(headerMap);
         clone.headers = headers;
+        clone.headerIndex.copyFrom(headerIndex);
         clone.data.putAll(data);
         clone.cacheControl = cacheControl;
         clone.stringBody = stringBody;
         clone.multipart = multipart == null ? null : new HashMap<>(multipart);
         clone.stringMultipart = stringMultipart == null ? null : new HashMap<>(stringMultipart);
         clone.processedBody = processedBody == null ? null : Arrays.copyOf(processedBody, processedBody.length);
+        clone.pathParameterNames = pathParameterNames;
+        clone.pathParameterBounds = Arrays.copyOf(pathParameterBounds, pathParameterBounds.length);
+        clone.pathParameterSource = pathParameterSource;
         return clone;
     }
 
@@ -138,14 +162,20 @@ public class Request implements Recyclable, Cloneable {
 
         rawUri = null;
         headers = new String[0];
+        headerIndex.clear();
         method = null;
         httpVersion = null;
         body = new byte[0];
+        if(bodyStream != null)
+            bodyStream.discard();
+        bodyStream = null;
 
         cookies = new Cookie[0];
         parameters.clear();
         uri = null;
         headerMap.clear();
+        pathParameterNames = EMPTY_NAMES;
+        pathParameterSource = null;
 
         stringBody = null;
         multipart = null;
@@ -246,8 +276,43 @@ public class Request implements Recyclable, Cloneable {
         return stringMultipart;
     }
 
+    /**
+     * Return <code>true</code> if request was dispatched before it's body is fully received
+     */
+    public boolean isBodyStreamed() {
+        return bodyStream != null;
+    }
+
+    /**
+     * Return raw body as stream. Streamed body is read while it is receiving, so handler can process it without waiting for the last byte
+     */
+    @Nonnull
+    public InputStream getBodyStream() {
+        RequestBodyStream bodyStream = this.bodyStream;
+        return bodyStream != null ? bodyStream : new ByteArrayInputStream(body);
+    }
+
+    /**
+     * Streamed body will be fully read before return
+     *
+     * @throws IllegalStateException with IOException
+     */
     @Nonnull
     public byte[] getRawBody() {
+        RequestBodyStream bodyStream = this.bodyStream;
+        if(bodyStream != null) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            try {
+                int read;
+                while((read = bodyStream.read(buf)) != -1)
+                    stream.write(buf, 0, read);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            body = stream.toByteArray();
+            this.bodyStream = null;
+        }
         return body;
     }
 
@@ -256,6 +321,7 @@ public class Request implements Recyclable, Cloneable {
         byte[] processedBody = this.processedBody;
         if(processedBody != null)
             return processedBody;
+        byte[] body = getRawBody();
         Encoding header = getHeader("Content-Encoding");
         if(header != null)
             processedBody = ContentEncodingHelper.decode(body, header);
@@ -273,6 +339,13 @@ public class Request implements Recyclable, Cloneable {
             if(s.toLowerCase().startsWith(header.toLowerCase()))
                 return true;
         }
+        String name = header.trim();
+        if(name.endsWith(":"))
+            name = name.substring(0, name.length() - 1);
+        for(int i = 0; i < headerIndex.size(); i++) {
+            if(headerIndex.nameEquals(i, name))
+                return true;
+        }
         return false;
     }
 
@@ -291,10 +364,7 @@ public class Request implements Recyclable, Cloneable {
     public <T> T getHeader(@Nonnull Header<T> header) {
         if(headerMap.containsKey(header))
             return (T) headerMap.get(header).iterator().next();
-        String headerName = header.name.toLowerCase();
-        for(String s : headers)
-            if(s.toLowerCase().startsWith(headerName))
-                headerMap.put(header, header.getValue(s));
+        parseHeader(header);
 
         return headerMap.containsKey(header) ? (T) headerMap.get(header).iterator().next() : null;
     }
@@ -308,10 +378,7 @@ public class Request implements Recyclable, Cloneable {
                 ret.add((T) o);
             return ret;
         }
-        String headerName = header.name.toLowerCase();
-        for(String s : headers)
-            if(s.toLowerCase().startsWith(headerName))
-                headerMap.put(header, header.getValue(s));
+        parseHeader(header);
 
         List<T> ret = new ArrayList<>();
         for(Object o : headerMap.get(header))
@@ -319,6 +386,16 @@ public class Request implements Recyclable, Cloneable {
         return ret;
     }
 
+    private void parseHeader(Header<?> header) {
+        String headerName = header.name.toLowerCase();
+        for(String s : headers)
+            if(s.toLowerCase().startsWith(headerName))
+                headerMap.put(header, header.getValue(s));
+        for(int i = 0; i < headerIndex.size(); i++)
+            if(headerIndex.nameEquals(i, header.name))
+                headerMap.put(header, header.getValue(headerIndex.getLine(i)));
+    }
+
     //====================Header helpers====================\\
 
     public ContentType getContentType() {
@@ -383,6 +460,47 @@ public class Request implements Recyclable, Cloneable {
         }
     }
 
+    //====================Path parameters====================\\
+
+    /**
+     * Return parameter, captured by router from path template
+     *
+     * @param name parameter name. Wildcard has <code>*</code> name
+     * @return <code>null</code> - parameter not found
+     */
+    @Nullable
+    public String getPathParameter(@Nonnull String name) {
+        String[] names = pathParameterNames;
+        for(int i = 0; i < names.length; i++) {
+            if(names[i].equals(name))
+                return pathParameterSource.substring(pathParameterBounds[i * 2], pathParameterBounds[i * 2 + 1]);
+        }
+        return null;
+    }
+
+    /**
+     * Return reusable array for path parameter bounds. Used by routers
+     *
+     * @param size min array size
+     */
+    @Nonnull
+    public int[] getPathParameterBuffer(int size) {
+        if(pathParameterBounds.length < size)
+            pathParameterBounds = new int[size];
+        return pathParameterBounds;
+    }
+
+    /**
+     * Set parameters, which bounds are written into {@link #getPathParameterBuffer(int)}. Used by routers
+     *
+     * @param path  matched path
+     * @param names parameter names
+     */
+    public void setPathParameters(@Nonnull String path, @Nonnull String[] names) {
+        this.pathParameterSource = path;
+        this.pathParameterNames = names;
+    }
+
     //====================Data storage====================\\
 
     public void setData(String key, Object value) {
@@ -408,6 +526,13 @@ public class Request implements Recyclable, Cloneable {
             buildHeaders.clear();
         }
 
+        /**
+         * Return empty builder, which must be filled by {@link HttpRequestParser}
+         */
+        public static Builder start() {
+            return factory.getInstance();
+        }
+
         public static Builder start(String firstLine) {
             return factory.getInstance().parse(firstLine);
         }
@@ -443,6 +568,14 @@ public class Request implements Recyclable, Cloneable {
             return this;
         }
 
+        /**
+         * Set body, which will be filled while request is processing
+         */
+        public Builder withBodyStream(RequestBodyStream bodyStream) {
+            this.bodyStream = bodyStream;
+            return this;
+        }
+
         public Builder withInfo(InetSocketAddress remote, InetAddress local, boolean secure) {
             this.remote = remote;
             this.local = local;
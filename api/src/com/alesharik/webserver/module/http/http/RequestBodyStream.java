@@ -0,0 +1,209 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.http;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Request body, which is filled by selector thread while request handler reads it. When buffered data exceeds the capacity,
+ * selector must stop reading the socket until resume callback is called. Callback is called after handler has read a half
+ * of buffered data. Stream can't be read by selector thread: it would wait for data, which only that thread can write
+ */
+@ThreadSafe
+public final class RequestBodyStream extends InputStream {
+    private final int capacity;
+    private final Runnable resume;
+    @Nullable
+    private final Thread selectorThread;
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private final byte[] single = new byte[1];
+
+    private int offset = 0;
+    private int buffered = 0;
+    private boolean finished = false;
+    private boolean discarded = false;
+    private boolean suspended = false;
+    private IOException error = null;
+
+    /**
+     * @param capacity max buffered data size in bytes
+     * @param resume   will be called when selector can continue reading
+     */
+    public RequestBodyStream(int capacity, @Nonnull Runnable resume) {
+        this(capacity, resume, null);
+    }
+
+    /**
+     * @param capacity       max buffered data size in bytes
+     * @param resume         will be called when selector can continue reading
+     * @param selectorThread thread, which writes the stream
+     */
+    public RequestBodyStream(int capacity, @Nonnull Runnable resume, @Nullable Thread selectorThread) {
+        this.capacity = capacity;
+        this.resume = resume;
+        this.selectorThread = selectorThread;
+    }
+
+    /**
+     * Append data from buffer's position to it's limit. Used by selector thread
+     *
+     * @param src the buffer
+     * @return <code>false</code> - socket reading must be suspended until resume callback
+     */
+    public boolean write(@Nonnull ByteBuffer src) {
+        int length = src.remaining();
+        if(length == 0)
+            return true;
+        byte[] chunk = new byte[length];
+        src.get(chunk);
+        synchronized (this) {
+            if(discarded || finished)
+                return true;
+            chunks.add(chunk);
+            buffered += length;
+            notifyAll();
+            if(buffered >= capacity) {
+                suspended = true;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Mark body as fully received
+     */
+    public synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Fail reading after all buffered data is read
+     *
+     * @param e the reason
+     */
+    public synchronized void abort(@Nonnull IOException e) {
+        if(finished)
+            return;
+        finished = true;
+        error = e;
+        notifyAll();
+    }
+
+    /**
+     * Drop buffered and all following data. Socket reading will be resumed if it was suspended
+     */
+    public void discard() {
+        boolean wasSuspended;
+        synchronized (this) {
+            discarded = true;
+            chunks.clear();
+            offset = 0;
+            buffered = 0;
+            wasSuspended = suspended;
+            suspended = false;
+            notifyAll();
+        }
+        if(wasSuspended)
+            resume.run();
+    }
+
+    /**
+     * Return <code>true</code> if selector must not read the socket now
+     */
+    public synchronized boolean isSuspended() {
+        return suspended;
+    }
+
+    @Override
+    public int read() throws IOException {
+        synchronized (single) {
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if called from selector thread
+     */
+    @Override
+    public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+        if(Thread.currentThread() == selectorThread)
+            throw new IllegalStateException("Request body can't be read from selector thread");
+        if(off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if(len == 0)
+            return 0;
+
+        int read = 0;
+        boolean resumeReading;
+        synchronized (this) {
+            while(chunks.isEmpty()) {
+                if(error != null)
+                    throw new IOException("Request body is not fully received", error);
+                if(finished || discarded)
+                    return -1;
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            while(read < len && !chunks.isEmpty()) {
+                byte[] chunk = chunks.peek();
+                int count = Math.min(len - read, chunk.length - offset);
+                System.arraycopy(chunk, offset, b, off + read, count);
+                read += count;
+                offset += count;
+                if(offset == chunk.length) {
+                    chunks.poll();
+                    offset = 0;
+                }
+            }
+            buffered -= read;
+            resumeReading = suspended && buffered <= capacity / 2;
+            if(resumeReading)
+                suspended = false;
+        }
+        if(resumeReading)
+            resume.run();
+        return read;
+    }
+
+    @Override
+    public synchronized int available() {
+        return buffered;
+    }
+
+    /**
+     * Discard the rest of the body
+     */
+    @Override
+    public void close() {
+        discard();
+    }
+}
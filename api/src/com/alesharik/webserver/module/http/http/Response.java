@@ -29,9 +29,12 @@ import lombok.Setter;
 import lombok.ToString;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -66,9 +69,13 @@ public class Response implements Recyclable {
     /**
      * 0 - is Content-Length header set
      * 1 - Upgrade
+     * 2 - body length is unknown, Content-Length header must not be sent
      */
     protected final BitSet marks = new BitSet(8);
 
+    protected StreamProvider streamProvider;
+    protected ResponseStream stream;
+
     protected Response() {
         buffer = new OutputBuffer();
         writer = new EncodedWriter(buffer, StandardCharsets.ISO_8859_1);
@@ -117,6 +124,36 @@ public class Response implements Recyclable {
         return marks.get(1);
     }
 
+    /**
+     * Send status line and headers now and return stream for the body. Data, already written into the response, will be sent first.
+     * Body is sent with chunked transfer coding if Content-Length is not set. Response is finished when stream is closed
+     *
+     * @throws IOException           if connection is closed
+     * @throws IllegalStateException if sender doesn't support streaming or response is handled in selector thread
+     */
+    @Nonnull
+    public ResponseStream stream() throws IOException {
+        if(stream != null)
+            return stream;
+        if(streamProvider == null)
+            throw new IllegalStateException("Response streaming is not supported");
+        stream = streamProvider.openStream(this);
+        return stream;
+    }
+
+    public boolean isStreamed() {
+        return stream != null;
+    }
+
+    @Nullable
+    public ResponseStream getStream() {
+        return stream;
+    }
+
+    public void setStreamProvider(@Nullable StreamProvider streamProvider) {
+        this.streamProvider = streamProvider;
+    }
+
     //====================Builders====================\\
 
     public String toStringResponse() {
@@ -138,26 +175,38 @@ public class Response implements Recyclable {
     }
 
     public byte[] toByteArray() {
+        ByteBuffer[] buffers = toByteBuffers();
+        ByteBuffer head = buffers[0];
+        ByteBuffer body = buffers[1];
+        byte[] ret = new byte[head.remaining() + body.remaining()];
+        head.get(ret, 0, head.remaining());
+        body.get(ret, ret.length - body.remaining(), body.remaining());
+        return ret;
+    }
+
+    /**
+     * Encode response for gathering write. First buffer contains status line and headers, second one wraps response body without copying
+     */
+    @Nonnull
+    public ByteBuffer[] toByteBuffers() {
         buildUtilsHeaders();
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(version.getValue());
-        stringBuilder.append(' ');
-        stringBuilder.append(status.getCode());
-        stringBuilder.append(' ');
-        stringBuilder.append(status.getStatus());
-        stringBuilder.append("\r\n");
+        byte[] statusLine = status.getStatusLine(version);
+        int size = statusLine.length + 2;
+        for(String header : headers)
+            size += header.length() + 2;
+
+        byte[] head = new byte[size];
+        System.arraycopy(statusLine, 0, head, 0, statusLine.length);
+        int off = statusLine.length;
         for(String header : headers) {
-            stringBuilder.append(header);
-            stringBuilder.append("\r\n");
+            for(int i = 0; i < header.length(); i++)
+                head[off++] = (byte) header.charAt(i);
+            head[off++] = '\r';
+            head[off++] = '\n';
         }
-        stringBuilder.append("\r\n");
-        byte[] header = stringBuilder.toString().getBytes(StandardCharsets.ISO_8859_1);
-        byte[] bytes = buffer.toByteArray();
-
-        byte[] ret = new byte[header.length + bytes.length];
-        System.arraycopy(header, 0, ret, 0, header.length);
-        System.arraycopy(bytes, 0, ret, header.length, bytes.length);
-        return ret;
+        head[off++] = '\r';
+        head[off] = '\n';
+        return new ByteBuffer[]{ByteBuffer.wrap(head), buffer.toByteBuffer()};
     }
 
     private void buildUtilsHeaders() {
@@ -166,8 +215,8 @@ public class Response implements Recyclable {
                 addHeader(HeaderManager.getHeaderByName("Set-Cookie"), cookie);
             }
         }
-        if(!marks.get(0)) {
-            setContentLength(buffer.toByteArray().length);
+        if(!marks.get(0) && !marks.get(2)) {
+            setContentLength(buffer.size());
         }
     }
 
@@ -192,6 +241,26 @@ public class Response implements Recyclable {
         marks.set(0, true);
     }
 
+    public boolean isContentLengthSet() {
+        return marks.get(0);
+    }
+
+    /**
+     * Send body with chunked transfer coding
+     */
+    public void setChunked() {
+        addHeader(HeaderManager.getHeaderByName("Transfer-Encoding"), new String[]{"chunked"});
+        marks.set(2, true);
+    }
+
+    /**
+     * Send body without length and close connection after it. Used for HTTP/1.0 clients, which don't support chunked transfer coding
+     */
+    public void setCloseDelimited() {
+        addHeader(HeaderManager.getHeaderByName("Connection"), new String[]{"close"});
+        marks.set(2, true);
+    }
+
     public void addCookie(Cookie cookie) {
         cookies.add(cookie);
     }
@@ -227,5 +296,23 @@ public class Response implements Recyclable {
         status = HttpStatus.NOT_IMPLEMENTED_501;
         creationTime = -1;
         marks.clear();
+        streamProvider = null;
+        stream = null;
+    }
+
+    /**
+     * Opens body stream for the response
+     */
+    @FunctionalInterface
+    public interface StreamProvider {
+        /**
+         * Send response head and create body stream
+         *
+         * @param response the response
+         * @return body stream
+         * @throws IOException if connection is closed
+         */
+        @Nonnull
+        ResponseStream openStream(@Nonnull Response response) throws IOException;
     }
 }
@@ -0,0 +1,213 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.http;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Body of streamed response. Data is buffered and passed to the transport in chunks, framed with chunked transfer coding if
+ * response has no Content-Length. Transport blocks writer until previous chunk is accepted by the socket, so slow clients
+ * slow down the handler instead of growing server memory. Response is finished when stream is closed
+ */
+@NotThreadSafe
+public abstract class ResponseStream extends OutputStream {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    private static final int MAP_SLICE_SIZE = 4 * 1024 * 1024;
+
+    private final boolean chunked;
+    private final byte[] buffer;
+    private final byte[] chunkHeader = new byte[18];
+    private int count = 0;
+    private boolean closed = false;
+
+    /**
+     * @param bufferSize max size of data, buffered before send
+     * @param chunked    use chunked transfer coding
+     */
+    protected ResponseStream(int bufferSize, boolean chunked) {
+        this.buffer = new byte[bufferSize];
+        this.chunked = chunked;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if(count == buffer.length)
+            flushBuffer();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+        if(off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        ensureOpen();
+        if(len == 0)
+            return;
+        if(len >= buffer.length) {
+            flushBuffer();
+            sendChunk(b, off, len);
+            return;
+        }
+        if(len > buffer.length - count)
+            flushBuffer();
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * Send buffered data. Used by server-sent events and other protocols, which need to deliver data immediately
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+    }
+
+    /**
+     * Send buffered data and finish the response
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+        closed = true;
+        try {
+            flushBuffer();
+            if(chunked)
+                send(new ByteBuffer[]{ByteBuffer.wrap(LAST_CHUNK)});
+        } finally {
+            complete();
+        }
+    }
+
+    /**
+     * Send file region without copying it into the heap
+     *
+     * @param file     the file
+     * @param position region start
+     * @param count    region length
+     * @throws IOException if connection is closed or file can't be read
+     */
+    public void transferFrom(@Nonnull FileChannel file, long position, long count) throws IOException {
+        ensureOpen();
+        flushBuffer();
+        if(count <= 0)
+            return;
+        if(position + count > file.size())
+            throw new EOFException("File region is out of file");
+        if(chunked) {
+            int start = encodeChunkHeader(count);
+            send(new ByteBuffer[]{ByteBuffer.wrap(chunkHeader, start, chunkHeader.length - start)});
+        }
+        sendFile(file, position, count);
+        if(chunked)
+            send(new ByteBuffer[]{ByteBuffer.wrap(CRLF)});
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * Close the connection without finishing the response. Used when handler fails in the middle of the body
+     */
+    public abstract void abort();
+
+    /**
+     * Write data to the transport. Method must return only after data is accepted by the socket, because buffers are reused after return
+     *
+     * @param data data to send
+     * @throws IOException if connection is closed
+     */
+    protected abstract void send(@Nonnull ByteBuffer[] data) throws IOException;
+
+    /**
+     * Called once after stream is closed
+     */
+    protected abstract void complete();
+
+    /**
+     * Write file region to the transport. Default implementation maps the file by slices and sends them with {@link #send(ByteBuffer[])},
+     * so data never enters the heap. Transports, which can write file directly to the socket, should override it
+     *
+     * @param file     the file
+     * @param position region start
+     * @param count    region length
+     * @throws IOException if connection is closed or file can't be read
+     */
+    protected void sendFile(@Nonnull FileChannel file, long position, long count) throws IOException {
+        while(count > 0) {
+            long size = Math.min(count, MAP_SLICE_SIZE);
+            send(new ByteBuffer[]{file.map(FileChannel.MapMode.READ_ONLY, position, size)});
+            position += size;
+            count -= size;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+    }
+
+    private void flushBuffer() throws IOException {
+        if(count == 0)
+            return;
+        int length = count;
+        count = 0;
+        sendChunk(buffer, 0, length);
+    }
+
+    /**
+     * Write chunk size line into the chunk header
+     *
+     * @return start of the line in the chunk header
+     */
+    private int encodeChunkHeader(long length) {
+        int start = chunkHeader.length - 2;
+        chunkHeader[start] = '\r';
+        chunkHeader[start + 1] = '\n';
+        long value = length;
+        do {
+            chunkHeader[--start] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        } while(value != 0);
+        return start;
+    }
+
+    private void sendChunk(byte[] b, int off, int len) throws IOException {
+        if(!chunked) {
+            send(new ByteBuffer[]{ByteBuffer.wrap(b, off, len)});
+            return;
+        }
+        int start = encodeChunkHeader(len);
+        send(new ByteBuffer[]{ByteBuffer.wrap(chunkHeader, start, chunkHeader.length - start), ByteBuffer.wrap(b, off, len), ByteBuffer.wrap(CRLF)});
+    }
+}
@@ -50,6 +50,13 @@ public interface ExecutorPool extends ExecutorPoolMXBean {
 
     void executeWorkerTask(@Nonnull BatchingRunnableTask task);
 
+    /**
+     * Execute task, which never blocks. Pool can run it in current selector thread
+     */
+    default void executeNonBlockingTask(@Nonnull BatchingRunnableTask task) {
+        executeWorkerTask(task);
+    }
+
     @Start
     void start();
 
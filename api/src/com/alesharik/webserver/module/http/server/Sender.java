@@ -20,10 +20,32 @@ package com.alesharik.webserver.module.http.server;
 
 import com.alesharik.webserver.module.http.http.Request;
 import com.alesharik.webserver.module.http.http.Response;
+import com.alesharik.webserver.module.http.http.ResponseStream;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
 
 /**
  * This class sends response to client socket
  */
 public interface Sender {
+    /**
+     * Send response. If response is streamed, it will be finished after both this call and stream closing
+     */
     void send(Request request, Response response);
+
+    /**
+     * Send response head and return stream for it's body
+     *
+     * @param request  the request
+     * @param response the response
+     * @return body stream
+     * @throws IOException                   if connection is closed
+     * @throws UnsupportedOperationException if sender can't stream responses
+     * @throws IllegalStateException         if called from selector thread, which must send the stream's data
+     */
+    @Nonnull
+    default ResponseStream stream(Request request, Response response) throws IOException {
+        throw new UnsupportedOperationException();
+    }
 }
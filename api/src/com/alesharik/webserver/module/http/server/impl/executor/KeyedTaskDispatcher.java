@@ -0,0 +1,165 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.impl.executor;
+
+import com.alesharik.webserver.module.http.server.BatchingRunnableTask;
+import org.jctools.queues.atomic.MpscLinkedAtomicQueue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs {@link BatchingRunnableTask}s with same key one by one in submission order. Every key has own MPSC queue, which is drained by one executor task at a time.
+ * Draining task yields after {@link #BATCH_SIZE} tasks, so busy keys don't starve others
+ */
+@ThreadSafe
+public final class KeyedTaskDispatcher {
+    private static final int BATCH_SIZE;
+
+    static {
+        if(System.getProperty("module.http.executor.BATCH_SIZE") != null)
+            BATCH_SIZE = Integer.parseInt(System.getProperty("module.http.executor.BATCH_SIZE"));
+        else
+            BATCH_SIZE = 64;
+    }
+
+    private final ConcurrentMap<Object, KeyQueue> queues = new ConcurrentHashMap<>();
+    private final Executor executor;
+    private final LongAdder queued = new LongAdder();
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    /**
+     * @param executor executor for draining tasks
+     */
+    public KeyedTaskDispatcher(@Nonnull Executor executor) {
+        this.executor = executor;
+    }
+
+    public void execute(@Nonnull BatchingRunnableTask task) {
+        Object key = task.getKey();
+        queued.increment();
+        while(true) {
+            KeyQueue queue = queues.get(key);
+            if(queue == null) {
+                KeyQueue created = new KeyQueue(key);
+                queue = queues.putIfAbsent(key, created);
+                if(queue == null)
+                    queue = created;
+            }
+            int depth = queue.offer(task);
+            if(depth > 0) {
+                long max;
+                while(depth > (max = maxDepth.get()) && !maxDepth.compareAndSet(max, depth)) ;
+                if(depth == 1)
+                    executor.execute(queue);
+                return;
+            }
+            queues.remove(key, queue);//Queue retired, but drainer hasn't removed it yet
+        }
+    }
+
+    /**
+     * Return <code>true</code> if key has no queued or running tasks
+     */
+    public boolean isIdle(@Nonnull Object key) {
+        return !queues.containsKey(key);
+    }
+
+    /**
+     * Return count of keys with queued or running tasks
+     */
+    public int getKeyCount() {
+        return queues.size();
+    }
+
+    /**
+     * Return count of not started tasks
+     */
+    public long getQueuedTaskCount() {
+        return queued.sum();
+    }
+
+    public long getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * Forget all queued tasks
+     */
+    public void clear() {
+        queues.clear();
+        queued.reset();
+    }
+
+    private final class KeyQueue implements Runnable {
+        private static final int RETIRED = -1;
+
+        private final Object key;
+        private final Queue<Runnable> tasks = new MpscLinkedAtomicQueue<>();
+        /**
+         * Count of queued and running tasks. Queue is retired by drainer when its last task is done
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        KeyQueue(Object key) {
+            this.key = key;
+        }
+
+        /**
+         * @return queue depth with the task or 0 if queue is retired
+         */
+        int offer(Runnable task) {
+            int c;
+            do {
+                c = count.get();
+                if(c == RETIRED)
+                    return 0;
+            } while(!count.compareAndSet(c, c + 1));
+            tasks.offer(task);
+            return c + 1;
+        }
+
+        @Override
+        public void run() {
+            for(int i = 0; i < BATCH_SIZE; i++) {
+                Runnable task;
+                //noinspection StatementWithEmptyBody producer has counted the task, but hasn't added it yet
+                while((task = tasks.poll()) == null) ;
+                queued.decrement();
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+                if(count.compareAndSet(1, RETIRED)) {
+                    queues.remove(key, this);
+                    return;
+                }
+                count.decrementAndGet();
+            }
+            executor.execute(this);
+        }
+    }
+}
@@ -19,43 +19,41 @@
 package com.alesharik.webserver.module.http.server.impl.executor;
 
 import com.alesharik.webserver.api.ThreadFactories;
-import com.alesharik.webserver.api.cache.object.Recyclable;
-import com.alesharik.webserver.api.cache.object.SmartCachedObjectFactory;
+import com.alesharik.webserver.api.mx.bean.MXBeanManager;
 import com.alesharik.webserver.api.name.Named;
 import com.alesharik.webserver.extension.module.layer.SubModule;
 import com.alesharik.webserver.module.http.server.BatchingRunnableTask;
 import com.alesharik.webserver.module.http.server.ExecutorPool;
 import com.alesharik.webserver.module.http.server.SelectorContext;
+import com.alesharik.webserver.module.http.server.mx.BatchingExecutorMXBean;
 import com.alesharik.webserver.module.http.server.socket.ServerSocketWrapper;
-import org.jctools.queues.atomic.MpscLinkedAtomicQueue;
 
 import javax.annotation.Nonnull;
+import javax.management.ObjectName;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SocketChannel;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * This class uses separated {@link ForkJoinPool} for provide {@link ExecutorPool} functionality
+ * This class uses separated {@link ForkJoinPool} for provide {@link ExecutorPool} functionality. Batches are run by {@link KeyedTaskDispatcher},
+ * their tasks are forked into worker queues, so idle workers steal them
  */
 @SuppressWarnings("WeakerAccess") //protected allow customize this class
 @Named("separated-executor-pool")
 @SubModule("separated-executor-pool")
-public class SeparatedExecutorPool implements ExecutorPool {
+public class SeparatedExecutorPool implements ExecutorPool, BatchingExecutorMXBean {
     protected final int selectorParallelism;
     protected final int workerParallelism;
     protected final ThreadGroup group;
     protected final ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory;
-    protected final Map<Object, BatchingTask> workerBatches = new ConcurrentHashMap<>();
+    protected final KeyedTaskDispatcher dispatcher = new KeyedTaskDispatcher(this::schedule);
 
     protected volatile List<SelectorWorkerThread> selectorPool;
     protected volatile ForkJoinPool workerPool;
-    protected final AtomicBoolean writeLock = new AtomicBoolean();
 
     public SeparatedExecutorPool(int selector, int worker, ThreadGroup threadGroup) {
         this.selectorParallelism = selector;
@@ -109,6 +107,31 @@ public class SeparatedExecutorPool implements ExecutorPool {
         return -1;
     }
 
+    @Override
+    public int getBatchKeyCount() {
+        return dispatcher.getKeyCount();
+    }
+
+    @Override
+    public long getBatchedTaskCount() {
+        return dispatcher.getQueuedTaskCount();
+    }
+
+    @Override
+    public long getMaxBatchDepth() {
+        return dispatcher.getMaxDepth();
+    }
+
+    @Override
+    public long getStealCount() {
+        return workerPool == null ? 0 : workerPool.getStealCount();
+    }
+
+    @Override
+    public long getWorkerQueuedTaskCount() {
+        return workerPool == null ? 0 : workerPool.getQueuedTaskCount();
+    }
+
     @Nonnull
     public String getName() {
         return "separated-executor-pool";
@@ -118,134 +141,101 @@ public class SeparatedExecutorPool implements ExecutorPool {
     public void start() {
         System.out.println("Starting separated FJP based executor pool (selector: " + selectorParallelism + " threads, worker: " + workerParallelism + " threads)");
         this.selectorPool = new CopyOnWriteArrayList<>();
-        this.workerPool = new ForkJoinPool(workerParallelism, threadFactory, null, false);
+        this.workerPool = new ForkJoinPool(workerParallelism, threadFactory, null, true);
+        dispatcher.clear();
+        MXBeanManager.registerMXBean(this, BatchingExecutorMXBean.class, getMXBeanName());
         System.out.println("Separated executor pool in " + group.getName() + " thread group successfully started");
     }
 
     @Override
     public void shutdownNow() {
         System.out.println("Emergency shutdown pool in " + group.getName() + " thread group");
-        selectorPool.forEach(SelectorWorkerThread::shutdown);
+        shutdownSelectors();
         workerPool.shutdownNow();
+        MXBeanManager.unregisterMXBean(getMXBeanName());
     }
 
     @Override
     public void shutdown() {
         System.out.println("Shutdown pool in " + group.getName() + " thread group");
-        selectorPool.forEach(SelectorWorkerThread::shutdown);
+        shutdownSelectors();
         workerPool.shutdown();
+        MXBeanManager.unregisterMXBean(getMXBeanName());
         System.out.println("Shutdown successful of pool in " + group.getName() + " thread group");
     }
 
+    /**
+     * Return <code>true</code> if current thread is selector thread of this pool
+     */
+    protected boolean isSelectorThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof SelectorWorkerThread && ((SelectorWorkerThread) thread).pool == this;
+    }
+
+    protected void shutdownSelectors() {
+        selectorPool.forEach(SelectorWorkerThread::shutdown);
+    }
+
+    protected String getMXBeanName() {
+        return "com.alesharik.webserver.module.http.server.impl.executor:type=" + getName() + ",group=" + ObjectName.quote(group.getName());
+    }
+
     public boolean isRunning() {
         return workerPool != null && !workerPool.isShutdown() && selectorPool != null;
     }
 
     @Override
     public void setSelectorContexts(SelectorContext.Factory factory) {
-        selectorPool.forEach(SelectorWorkerThread::shutdown);
+        shutdownSelectors();
         selectorPool.clear();
         for(int i = 0; i < selectorParallelism; i++) {
-            SelectorWorkerThread workerThread = new SelectorWorkerThread(factory.newInstance(), group);
+            SelectorWorkerThread workerThread = new SelectorWorkerThread(this, factory.newInstance(), group);
             workerThread.start();
             selectorPool.add(workerThread);
         }
     }
 
+    /**
+     * Register socket in less loaded of two random selector threads. Load is balanced nearly as well as with the least loaded thread, but without scanning all threads
+     */
     @Override
     public void selectSocket(SelectableChannel socket, SocketChannel socketChannel, ServerSocketWrapper.SocketManager socketManager) {
-        SelectorWorkerThread lower = selectorPool.get(0);
-        for(SelectorWorkerThread workerThread : selectorPool) {
-            if(workerThread.getSocketCount() < lower.getSocketCount())
-                lower = workerThread;
+        List<SelectorWorkerThread> selectorPool = this.selectorPool;
+        int size = selectorPool.size();
+        SelectorWorkerThread selected = selectorPool.get(0);
+        if(size > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            SelectorWorkerThread first = selectorPool.get(random.nextInt(size));
+            SelectorWorkerThread second = selectorPool.get(random.nextInt(size));
+            selected = first.getSocketCount() <= second.getSocketCount() ? first : second;
         }
-        lower.registerSocket(socket, socketChannel, socketManager);
+        selected.registerSocket(socket, socketChannel, socketManager);
     }
 
     @Override
     public void executeWorkerTask(@Nonnull BatchingRunnableTask task) {
-        BatchingTask t = workerBatches.get(task.getKey());
-        if(t == null || t.closed) {
-            while(!writeLock.compareAndSet(false, true))
-                //noinspection StatementWithEmptyBody
-                while(writeLock.get()) ;
-            t = BatchingTask.create(workerBatches, task.getKey());
-            BatchingTask removedTask = workerBatches.put(task.getKey(), t);
-            if(removedTask != null) {
-                workerBatches.put(task.getKey(), removedTask);
-                removedTask.queue.add(task);
-                BatchingTask.FACTORY.putInstance(t);
-                return;
-            }
-            writeLock.set(false);
-            t.queue.add(task);
-            workerPool.execute(t);
-        } else {
-            while(!t.closeLock.compareAndSet(false, true))
-                //noinspection StatementWithEmptyBody
-                while(t.closeLock.get()) ;
-            if(t.closed) {
-                while(!writeLock.compareAndSet(false, true))
-                    //noinspection StatementWithEmptyBody
-                    while(writeLock.get()) ;
-                t = BatchingTask.create(workerBatches, task.getKey());
-                workerBatches.put(task.getKey(), t);
-                writeLock.set(false);
-                workerPool.execute(t);
-            } else
-                t.queue.add(task);
-            t.closeLock.set(false);
-        }
+        dispatcher.execute(task);
     }
 
-    protected static final class BatchingTask implements Runnable, Recyclable {
-        private static final SmartCachedObjectFactory<BatchingTask> FACTORY = new SmartCachedObjectFactory<>(BatchingTask::new);
-
-        private final Queue<Runnable> queue = new MpscLinkedAtomicQueue<>();
-        private Map<Object, BatchingTask> toRemove;
-        private Object object;
-        private volatile boolean closed;
-        private final AtomicBoolean closeLock = new AtomicBoolean(false);
-
-        public static BatchingTask create(Map<Object, BatchingTask> toRemove, Object o) {
-            BatchingTask task = FACTORY.getInstance();
-            task.toRemove = toRemove;
-            task.object = o;
-            return task;
-        }
-
-        @Override
-        public void recycle() {
-            queue.clear();
-            toRemove = null;
-            object = null;
-            closed = false;
-        }
-
-        @Override
-        public void run() {
-            Runnable poll;
-            while((poll = queue.poll()) != null)
-                poll.run();
-            toRemove.remove(object);
-            while(!closeLock.compareAndSet(false, true))
-                //noinspection StatementWithEmptyBody
-                while(closeLock.get()) ;
-            closed = true;
-            closeLock.set(false);
-            Runnable poll1;
-            while((poll1 = queue.poll()) != null)
-                poll1.run();
-            FACTORY.putInstance(this);
-        }
+    /**
+     * Fork task into current worker queue, where idle workers can steal it, or submit it from outside
+     */
+    protected void schedule(Runnable task) {
+        ForkJoinPool workerPool = this.workerPool;
+        if(ForkJoinTask.getPool() == workerPool)
+            ForkJoinTask.adapt(task).fork();
+        else
+            workerPool.execute(task);
     }
 
     private static final class SelectorWorkerThread extends Thread {
+        private final SeparatedExecutorPool pool;
         private final SelectorContext context;
         private volatile boolean isRunning;
 
-        public SelectorWorkerThread(SelectorContext context, ThreadGroup threadGroup) {
+        public SelectorWorkerThread(SeparatedExecutorPool pool, SelectorContext context, ThreadGroup threadGroup) {
             super(threadGroup, "SelectorThread");
+            this.pool = pool;
             this.context = context;
         }
 
@@ -0,0 +1,65 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.impl.executor;
+
+import com.alesharik.webserver.api.name.Named;
+import com.alesharik.webserver.extension.module.layer.SubModule;
+import com.alesharik.webserver.module.http.server.BatchingRunnableTask;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared-nothing mode: every selector thread owns its connections and runs their non-blocking tasks itself, so these requests never leave the thread.
+ * Blocking tasks and tasks for connections with queued worker tasks go to the worker pool.
+ * Selector count less than 1 means one selector per core
+ */
+@Named("thread-per-core-executor-pool")
+@SubModule("thread-per-core-executor-pool")
+public class ThreadPerCoreExecutorPool extends SeparatedExecutorPool {
+    protected final LongAdder inlineTasks = new LongAdder();
+
+    public ThreadPerCoreExecutorPool(int selector, int worker, ThreadGroup threadGroup) {
+        super(selector < 1 ? Runtime.getRuntime().availableProcessors() : selector, worker, threadGroup);
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "thread-per-core-executor-pool";
+    }
+
+    @Override
+    public long getSelectorPoolTaskCount() {
+        return inlineTasks.sum();
+    }
+
+    @Override
+    public void executeNonBlockingTask(@Nonnull BatchingRunnableTask task) {
+        if(!isSelectorThread() || !dispatcher.isIdle(task.getKey())) {//Keep order with tasks in worker pool
+            executeWorkerTask(task);
+            return;
+        }
+        inlineTasks.increment();
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
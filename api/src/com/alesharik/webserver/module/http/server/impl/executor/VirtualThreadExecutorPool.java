@@ -0,0 +1,122 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.impl.executor;
+
+import com.alesharik.webserver.api.ThreadFactories;
+import com.alesharik.webserver.api.mx.bean.MXBeanManager;
+import com.alesharik.webserver.api.name.Named;
+import com.alesharik.webserver.extension.module.layer.SubModule;
+import com.alesharik.webserver.module.http.server.mx.BatchingExecutorMXBean;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This pool runs every batch on own thread, so blocking handlers(JDBC, file reads) don't starve other requests.
+ * It uses virtual threads if JVM supports them, otherwise it uses cached platform threads. Worker thread count is count of always alive platform threads
+ */
+@Named("virtual-thread-executor-pool")
+@SubModule("virtual-thread-executor-pool")
+public class VirtualThreadExecutorPool extends SeparatedExecutorPool {
+    protected final AtomicInteger runningTasks = new AtomicInteger();
+    protected volatile ExecutorService workerExecutor;
+
+    public VirtualThreadExecutorPool(int selector, int worker, ThreadGroup threadGroup) {
+        super(selector, worker, threadGroup);
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "virtual-thread-executor-pool";
+    }
+
+    @Override
+    public int getWorkerPoolAliveThreadCount() {
+        return runningTasks.get();
+    }
+
+    @Override
+    public long getWorkerPoolTaskCount() {
+        return dispatcher.getQueuedTaskCount();
+    }
+
+    @Override
+    public void start() {
+        System.out.println("Starting virtual thread executor pool (selector: " + selectorParallelism + " threads, worker: " + workerParallelism + " threads)");
+        this.selectorPool = new CopyOnWriteArrayList<>();
+        this.workerExecutor = newWorkerExecutor();
+        dispatcher.clear();
+        MXBeanManager.registerMXBean(this, BatchingExecutorMXBean.class, getMXBeanName());
+        System.out.println("Virtual thread executor pool in " + group.getName() + " thread group successfully started");
+    }
+
+    @Override
+    public void shutdownNow() {
+        System.out.println("Emergency shutdown pool in " + group.getName() + " thread group");
+        shutdownSelectors();
+        workerExecutor.shutdownNow();
+        MXBeanManager.unregisterMXBean(getMXBeanName());
+    }
+
+    @Override
+    public void shutdown() {
+        System.out.println("Shutdown pool in " + group.getName() + " thread group");
+        shutdownSelectors();
+        workerExecutor.shutdown();
+        MXBeanManager.unregisterMXBean(getMXBeanName());
+        System.out.println("Shutdown successful of pool in " + group.getName() + " thread group");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return workerExecutor != null && !workerExecutor.isShutdown() && selectorPool != null;
+    }
+
+    @Override
+    protected void schedule(Runnable task) {
+        workerExecutor.execute(() -> {
+            runningTasks.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                runningTasks.decrementAndGet();
+            }
+        });
+    }
+
+    protected ExecutorService newWorkerExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) method.invoke(null);
+            System.out.println("Worker tasks will be run on virtual threads");
+            return executor;
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {//Not supported or preview isn't enabled
+            System.out.println("Virtual threads are not supported, worker tasks will be run on cached threads");
+            return new ThreadPoolExecutor(workerParallelism, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), ThreadFactories.newThreadFactory(group));
+        }
+    }
+}
@@ -32,22 +32,36 @@ import com.alesharik.webserver.module.http.addon.MessageProcessorParameters;
 import com.alesharik.webserver.module.http.addon.MessageSender;
 import com.alesharik.webserver.module.http.bundle.ErrorHandler;
 import com.alesharik.webserver.module.http.bundle.HttpHandlerBundle;
-import com.alesharik.webserver.module.http.bundle.processor.HttpProcessor;
+import com.alesharik.webserver.module.http.bundle.Validator;
+import com.alesharik.webserver.module.http.bundle.impl.validator.RouteValidator;
 import com.alesharik.webserver.module.http.bundle.processor.impl.ReThrowException;
+import com.alesharik.webserver.module.http.http.HttpStatus;
 import com.alesharik.webserver.module.http.http.Request;
 import com.alesharik.webserver.module.http.http.Response;
+import com.alesharik.webserver.module.http.http.ResponseStream;
+import com.alesharik.webserver.module.http.http.data.Host;
 import com.alesharik.webserver.module.http.server.BatchingRunnableTask;
 import com.alesharik.webserver.module.http.server.ExecutorPool;
 import com.alesharik.webserver.module.http.server.HttpRequestHandler;
 import com.alesharik.webserver.module.http.server.Sender;
-import lombok.Getter;
+import com.alesharik.webserver.module.http.util.RouteTree;
 import lombok.RequiredArgsConstructor;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * Bundles with {@link RouteValidator} are selected by host and path in one route table lookup, the most specific route wins.
+ * Bundles with other validators are checked in list order
+ */
 @Named("default")
 public class DefaultHttpRequestHandler implements HttpRequestHandler {
     private final List<HttpHandlerBundle> bundles;
+    private volatile BundleTable table;
 
     public DefaultHttpRequestHandler(List<HttpHandlerBundle> bundles) {
         this.bundles = bundles;
@@ -55,18 +69,16 @@ public class DefaultHttpRequestHandler implements HttpRequestHandler {
 
     @Override
     public void handleRequest(Request request, ExecutorPool executorPool, Sender sender) {
-        executorPool.executeWorkerTask(BundleSelectTask.create(bundles, request, executorPool, sender));
+        HttpHandlerBundle bundle = selectBundle(request);
+        if(bundle != null && bundle.isNonBlocking() && !request.isBodyStreamed())//Streamed body is filled by selector thread
+            executorPool.executeNonBlockingTask(HandleTask.create(bundle, request, sender));
+        else
+            executorPool.executeWorkerTask(HandleTask.create(bundle, request, sender));
     }
 
     @Override
     public AddOnSocketHandler getAddOnSocketHandler(Request request, ExecutorPool executorPool, AddOn addOn) {
-        HttpHandlerBundle bundle = null;
-        for(HttpHandlerBundle httpHandlerBundle : bundles) {
-            if(httpHandlerBundle.getValidator().isRequestValid(request)) {
-                bundle = httpHandlerBundle;
-                break;
-            }
-        }
+        HttpHandlerBundle bundle = selectBundle(request);
         if(bundle != null)
             //noinspection unchecked
             return addOn.getHandler(bundle.getMessageProcessor(addOn.getName(), new MessageProcessorParametersImpl(request)));
@@ -84,97 +96,166 @@ public class DefaultHttpRequestHandler implements HttpRequestHandler {
         executorPool.executeWorkerTask(MessageTaskImpl.create(task, sync));
     }
 
-    private static final class BundleSelectTask implements BatchingRunnableTask<Object>, Recyclable {
-        private static final CachedObjectFactory<BundleSelectTask> FACTORY = new SmartCachedObjectFactory<>(BundleSelectTask::new);
-        @Getter
-        private final Object key = new Object();
-
-        private List<HttpHandlerBundle> bundles;
-        private Request request;
-        private ExecutorPool executorPool;
-        private Sender sender;
+    /**
+     * Select bundle for the request. Bundle table is rebuilt when bundle list changes
+     *
+     * @return <code>null</code> - bundle not found
+     */
+    @Nullable
+    protected HttpHandlerBundle selectBundle(Request request) {
+        BundleTable table = this.table;
+        if(table == null || !table.isActual(bundles)) {
+            table = new BundleTable(bundles);
+            this.table = table;
+        }
+        return table.select(request);
+    }
 
-        public static BatchingRunnableTask create(List<HttpHandlerBundle> bundles, Request request, ExecutorPool executorPool, Sender sender) {
-            BundleSelectTask task = FACTORY.getInstance();
-            task.bundles = bundles;
-            task.request = request;
-            task.executorPool = executorPool;
-            task.sender = sender;
-            return task;
+    /**
+     * Snapshot of bundle list with compiled route table
+     */
+    private static final class BundleTable {
+        private final HttpHandlerBundle[] bundles;
+        private final RouteTree<Integer> anyHost = new RouteTree<>();
+        private final Map<String, RouteTree<Integer>> hosts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        /**
+         * Indexes of bundles without {@link RouteValidator}
+         */
+        private final int[] others;
+
+        BundleTable(List<HttpHandlerBundle> list) {
+            bundles = list.toArray(new HttpHandlerBundle[0]);
+            int[] others = new int[bundles.length];
+            int otherCount = 0;
+            for(int i = bundles.length - 1; i >= 0; i--) {//First bundle wins on equal routes
+                Validator validator = bundles[i].getValidator();
+                if(validator instanceof RouteValidator) {
+                    RouteValidator routeValidator = (RouteValidator) validator;
+                    RouteTree<Integer> tree = routeValidator.getHost() == null ? anyHost : hosts.computeIfAbsent(routeValidator.getHost(), s -> new RouteTree<>());
+                    tree.add(routeValidator.getTemplate(), i);
+                } else
+                    others[otherCount++] = i;
+            }
+            this.others = new int[otherCount];
+            for(int i = 0; i < otherCount; i++)
+                this.others[i] = others[otherCount - i - 1];
         }
 
-        @Override
-        public void run() {
-            HttpHandlerBundle bundle = null;
-            for(HttpHandlerBundle httpHandlerBundle : bundles) {
-                if(httpHandlerBundle.getValidator().isRequestValid(request)) {
-                    bundle = httpHandlerBundle;
-                    break;
+        boolean isActual(List<HttpHandlerBundle> list) {
+            if(list.size() != bundles.length)
+                return false;
+            try {
+                for(int i = 0; i < bundles.length; i++) {
+                    if(list.get(i) != bundles[i])
+                        return false;
                 }
+            } catch (IndexOutOfBoundsException e) {
+                return false;
             }
-            Debug.log("Request from " + request.getRemote().toString() + ": " + request.getRawUri());
-            if(bundle == null) {
-                System.err.println("Bundle not found for " + request.getContextPath());
-                return;
-            }
+            return true;
+        }
 
-            executorPool.executeWorkerTask(HandleTask.create(sender, request, bundle.getErrorHandler(), bundle.getProcessor()));
+        @Nullable
+        HttpHandlerBundle select(Request request) {
+            int index = Integer.MAX_VALUE;
+            if(!hosts.isEmpty()) {
+                Host host = request.getHeader("Host");
+                RouteTree<Integer> tree = host == null ? null : hosts.get(host.getHost());
+                if(tree != null)
+                    index = find(tree, request);
+            }
+            if(index == Integer.MAX_VALUE)
+                index = find(anyHost, request);
 
-            FACTORY.putInstance(this);
+            for(int other : others) {
+                if(other > index)
+                    break;
+                if(bundles[other].getValidator().isRequestValid(request))
+                    return bundles[other];
+            }
+            return index == Integer.MAX_VALUE ? null : bundles[index];
         }
 
-        @Override
-        public void recycle() {
-            bundles = null;
-            request = null;
-            executorPool = null;
-            sender = null;
+        private static int find(RouteTree<Integer> tree, Request request) {
+            RouteTree.Route<Integer> route = tree.find(request.getContextPath(), request);
+            Integer index = route == null ? null : route.get(null);
+            return index == null ? Integer.MAX_VALUE : index;
         }
     }
 
-    private static final class HandleTask implements BatchingRunnableTask<Object>, Recyclable {
+    /**
+     * Selects bundle and processes the request in one worker task. Tasks are batched by connection, so requests from one connection are handled in order
+     */
+    private static final class HandleTask implements BatchingRunnableTask<Object>, Recyclable, Response.StreamProvider {
         private static final CachedObjectFactory<HandleTask> FACTORY = new SmartCachedObjectFactory<>(HandleTask::new);
-        @Getter
-        private final Object key = new Object();
+        private HttpHandlerBundle bundle;
         private Sender sender;
         private Request request;
-        private ErrorHandler errorHandler;
-        private HttpProcessor processor;
 
-        public static HandleTask create(Sender sender, Request request, ErrorHandler errorHandler, HttpProcessor processor) {
+        public static HandleTask create(@Nullable HttpHandlerBundle bundle, Request request, Sender sender) {
             HandleTask task = FACTORY.getInstance();
+            task.bundle = bundle;
             task.sender = sender;
             task.request = request;
-            task.errorHandler = errorHandler;
-            task.processor = processor;
             return task;
         }
 
+        @Override
+        public Object getKey() {
+            return sender;
+        }
+
         @Override
         public void run() {
+            Debug.log("Request from " + request.getRemote().toString() + ": " + request.getRawUri());
+            if(bundle == null) {
+                Debug.log("Bundle not found for " + request.getContextPath());
+                Response response = Response.getResponse();
+                response.respond(HttpStatus.NOT_FOUND_404);
+                sender.send(request, response);
+                FACTORY.putInstance(this);
+                return;
+            }
+
+            ErrorHandler errorHandler = bundle.getErrorHandler();
             Response response = null;
             try {
                 response = Response.getResponse();
-                processor.process(request, response);
+                response.setStreamProvider(this);
+                bundle.getProcessor().process(request, response);
             } catch (ReThrowException e) {
-                response = Response.getResponse();
-                errorHandler.handleException(e.getCause(), request, response, ErrorHandler.Pool.WORKER);
+                if(response != null && response.isStreamed())
+                    response.getStream().abort();
+                else {
+                    response = Response.getResponse();
+                    errorHandler.handleException(e.getCause(), request, response, ErrorHandler.Pool.WORKER);
+                }
             } catch (Exception e) {
-                response = Response.getResponse();
-                errorHandler.handleException(e, request, response, ErrorHandler.Pool.WORKER);
+                if(response != null && response.isStreamed())
+                    response.getStream().abort();
+                else {
+                    response = Response.getResponse();
+                    errorHandler.handleException(e, request, response, ErrorHandler.Pool.WORKER);
+                }
             } finally {
+                response.setStreamProvider(null);
                 Debug.log("Response sent to " + request.getRemote().toString() + ": " + response.getResponseCode());
                 sender.send(request, response);
             }
             FACTORY.putInstance(this);
         }
 
+        @Nonnull
+        @Override
+        public ResponseStream openStream(@Nonnull Response response) throws IOException {
+            return sender.stream(request, response);
+        }
+
         @Override
         public void recycle() {
+            bundle = null;
             sender = null;
             request = null;
-            errorHandler = null;
-            processor = null;
         }
     }
 
@@ -0,0 +1,48 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.mx;
+
+/**
+ * Per-key batching and work stealing metrics of {@link com.alesharik.webserver.module.http.server.ExecutorPool}
+ */
+public interface BatchingExecutorMXBean {
+    /**
+     * Return count of keys, which have queued or running tasks
+     */
+    int getBatchKeyCount();
+
+    /**
+     * Return count of tasks, waiting in per-key queues
+     */
+    long getBatchedTaskCount();
+
+    /**
+     * Return the deepest per-key queue since pool start
+     */
+    long getMaxBatchDepth();
+
+    /**
+     * Return count of tasks, stolen by one worker from another
+     */
+    long getStealCount();
+
+    /**
+     * Return count of tasks, waiting in worker queues
+     */
+    long getWorkerQueuedTaskCount();
+}
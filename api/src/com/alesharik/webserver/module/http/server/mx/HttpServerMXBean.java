@@ -26,4 +26,7 @@ public interface HttpServerMXBean {
 
     @Nonnull
     HttpServerStatistics getStatistics();
+
+    @Nonnull
+    SessionPoolStatistics getSessionPoolStatistics();
 }
@@ -0,0 +1,64 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.mx;
+
+/**
+ * This is MXBean interface! Shows memory, used by connection sessions. Sessions share read buffer of their selector thread and
+ * hold pooled chunks only for data, which is processed outside of selector thread
+ */
+public interface SessionPoolStatistics {
+    /**
+     * Return alive session count
+     */
+    long getSessionCount();
+
+    /**
+     * Return shared read buffer count. Every selector thread has one buffer
+     */
+    long getReadBufferCount();
+
+    /**
+     * Return memory, used by shared read buffers, in bytes
+     */
+    long getReadBufferMemory();
+
+    /**
+     * Return allocated slab count
+     */
+    long getSlabCount();
+
+    /**
+     * Return memory, used by pooled chunks, in bytes
+     */
+    long getSlabMemory();
+
+    /**
+     * Return count of chunks, held by sessions
+     */
+    long getUsedChunkCount();
+
+    /**
+     * Return count of free chunks, kept by pools
+     */
+    long getFreeChunkCount();
+
+    /**
+     * Return count of released chunks, dropped because pool had enough free chunks. Slab memory is freed when all its chunks are dropped
+     */
+    long getDroppedChunkCount();
+}
@@ -0,0 +1,73 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.mx;
+
+/**
+ * This is MXBean interface! Shows TLS handshakes and buffer usage of secured network listener
+ */
+public interface TlsStatistics {
+    /**
+     * Return count of open TLS connections
+     */
+    long getConnectionCount();
+
+    /**
+     * Return count of handshakes in progress
+     */
+    long getActiveHandshakeCount();
+
+    /**
+     * Return count of finished handshakes
+     */
+    long getHandshakeCount();
+
+    /**
+     * Return count of finished handshakes, which resumed cached session
+     */
+    long getResumedHandshakeCount();
+
+    /**
+     * Return count of handshakes, which failed or were not finished before connection close
+     */
+    long getFailedHandshakeCount();
+
+    /**
+     * Return count of handshakes, which wait for delegated tasks in handshake executor
+     */
+    long getQueuedHandshakeCount();
+
+    /**
+     * Return average time of finished handshakes in microseconds
+     */
+    long getAverageHandshakeTime();
+
+    /**
+     * Return max time of finished handshake in microseconds
+     */
+    long getMaxHandshakeTime();
+
+    /**
+     * Return count of free pooled buffers
+     */
+    long getPooledBufferCount();
+
+    /**
+     * Return memory, used by pooled and in-use network/application buffers, in bytes. Records, queued by delayed writes, are not counted
+     */
+    long getBufferMemory();
+}
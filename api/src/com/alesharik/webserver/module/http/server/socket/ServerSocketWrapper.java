@@ -76,12 +76,53 @@ public interface ServerSocketWrapper {
          */
         void init(SocketChannel socketChannel) throws IOException;
 
+        /**
+         * Called before first socket read. Managers, which finish work outside of selector thread, use <code>readRequest</code> to make selector
+         * call {@link #read(SocketChannel, ByteBuffer)} without new socket data
+         */
+        default void init(SocketChannel socketChannel, Runnable readRequest) throws IOException {
+            init(socketChannel);
+        }
+
+        /**
+         * Called before first socket read. Managers, which send their own data, like handshake messages, should pass it to <code>writer</code>,
+         * so data, which socket can't accept now, is sent when socket becomes writable
+         */
+        default void init(SocketChannel socketChannel, Runnable readRequest, SocketWriter writer) throws IOException {
+            init(socketChannel, readRequest);
+        }
+
         void close(SocketChannel socketChannel) throws IOException;
 
         void read(SocketChannel socketChannel, ByteBuffer byteBuffer) throws IOException;
 
+        /**
+         * Return <code>true</code> if manager holds received data, which {@link #read(SocketChannel, ByteBuffer)} can return without new socket data.
+         * Such data doesn't make socket readable, so selector must read it after suspended reading is resumed
+         */
+        default boolean hasBufferedData(SocketChannel socketChannel) {
+            return false;
+        }
+
+        /**
+         * Return <code>true</code> if manager doesn't read the socket until it calls <code>readRequest</code>. Selector removes read interest
+         * meanwhile, so ready socket doesn't wake it up
+         */
+        default boolean isReadPaused(SocketChannel socketChannel) {
+            return false;
+        }
+
         void write(SocketChannel socketChannel, ByteBuffer data, SocketWriter writer) throws IOException;
 
+        /**
+         * Write all buffers in order. Implementations without encryption should pass buffers to {@link SocketWriter#write(SocketChannel, ByteBuffer[])}
+         * to use gathering write
+         */
+        default void write(SocketChannel socketChannel, ByteBuffer[] data, SocketWriter writer) throws IOException {
+            for(ByteBuffer byteBuffer : data)
+                write(socketChannel, byteBuffer, writer);
+        }
+
         default boolean isSecure(SocketChannel socketChannel) {
             return false;
         }
@@ -41,4 +41,12 @@ import java.nio.channels.SocketChannel;
 
 public interface SocketWriter {
     void write(SocketChannel socketChannel, ByteBuffer byteBuffer);
+
+    /**
+     * Write all buffers with gathering write
+     */
+    default void write(SocketChannel socketChannel, ByteBuffer[] byteBuffers) {
+        for(ByteBuffer byteBuffer : byteBuffers)
+            write(socketChannel, byteBuffer);
+    }
 }
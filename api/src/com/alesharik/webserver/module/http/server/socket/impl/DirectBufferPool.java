@@ -0,0 +1,95 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.socket.impl;
+
+import org.jctools.queues.atomic.MpmcAtomicArrayQueue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct buffers with one size. Buffers with other capacity and buffers over the pool limit are left to GC. Only buffers with pool size
+ * are counted in {@link #getMemory()}
+ */
+@ThreadSafe
+final class DirectBufferPool {
+    private final int bufferSize;
+    private final Queue<ByteBuffer> buffers;
+    private final AtomicLong allocated = new AtomicLong();
+
+    DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.buffers = new MpmcAtomicArrayQueue<>(maxPooled);
+    }
+
+    /**
+     * Return clear buffer
+     */
+    @Nonnull
+    ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if(buffer != null)
+            return buffer;
+        allocated.incrementAndGet();
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Return clear buffer with at least <code>size</code> bytes. Buffers, larger than pool size, are not pooled
+     */
+    @Nonnull
+    ByteBuffer acquire(int size) {
+        if(size <= bufferSize)
+            return acquire();
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    void release(@Nonnull ByteBuffer buffer) {
+        if(buffer.capacity() != bufferSize)//Not pooled
+            return;
+        buffer.clear();
+        if(!buffers.offer(buffer))
+            allocated.decrementAndGet();
+    }
+
+    /**
+     * Stop counting buffer, which is kept by someone else and will never be released. Buffer is left to GC
+     */
+    void detach(@Nonnull ByteBuffer buffer) {
+        if(buffer.capacity() == bufferSize)
+            allocated.decrementAndGet();
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    long getPooledCount() {
+        return buffers.size();
+    }
+
+    /**
+     * Return memory, used by buffers, which are pooled or in use
+     */
+    long getMemory() {
+        return allocated.get() * bufferSize;
+    }
+}
@@ -132,6 +132,11 @@ public class NetworkListener implements ServerSocketWrapper {
         public void write(SocketChannel socketChannel, ByteBuffer data, SocketWriter writer) {
             writer.write(socketChannel, data);
         }
+
+        @Override
+        public void write(SocketChannel socketChannel, ByteBuffer[] data, SocketWriter writer) {
+            writer.write(socketChannel, data);
+        }
     }
 
     private static final class ServerSocketConfig {
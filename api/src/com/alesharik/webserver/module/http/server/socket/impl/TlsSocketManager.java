@@ -0,0 +1,612 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.socket.impl;
+
+import com.alesharik.webserver.module.http.server.CloseSocketException;
+import com.alesharik.webserver.module.http.server.mx.TlsStatistics;
+import com.alesharik.webserver.module.http.server.socket.ServerSocketWrapper;
+import com.alesharik.webserver.module.http.server.socket.SocketWriter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Non-blocking TLS socket manager. Handshake is driven by socket reads on selector thread, network and application buffers are taken
+ * from shared direct buffer pools only while they hold data. Delegated handshake tasks run in task executor, and the selector is asked
+ * to continue the handshake when they are done, reading is paused until then. If executor rejects tasks, they are run by selector thread. Handshake messages are sent
+ * through session writer, given on init, and are never waited for
+ */
+@ThreadSafe
+final class TlsSocketManager implements ServerSocketWrapper.SocketManager, TlsStatistics {
+    private static final int BUFFER_POOL_SIZE;
+    /**
+     * Max count of records, wrapped before single gathering write
+     */
+    private static final int WRITE_BATCH = 16;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    static {
+        BUFFER_POOL_SIZE = Integer.parseInt(System.getProperty("module.http.tls.BUFFER_POOL_SIZE", "256"));
+    }
+
+    private final SSLContext sslContext;
+    @Nullable
+    private final Executor taskExecutor;
+    private final Map<Socket, Connection> connections = new ConcurrentHashMap<>();
+    private final DirectBufferPool packetPool;
+    private final DirectBufferPool applicationPool;
+
+    private final LongAdder activeHandshakes = new LongAdder();
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+    private final LongAdder failedHandshakes = new LongAdder();
+    private final LongAdder queuedHandshakes = new LongAdder();
+    private final LongAdder handshakeTime = new LongAdder();
+    private final AtomicLong maxHandshakeTime = new AtomicLong();
+
+    TlsSocketManager(SSLContext sslContext) {
+        this(sslContext, null);
+    }
+
+    /**
+     * @param taskExecutor executor for delegated tasks, <code>null</code> - run tasks in caller thread
+     */
+    TlsSocketManager(SSLContext sslContext, @Nullable Executor taskExecutor) {
+        this.sslContext = sslContext;
+        this.taskExecutor = taskExecutor;
+        SSLSession session = sslContext.createSSLEngine().getSession();
+        this.packetPool = new DirectBufferPool(session.getPacketBufferSize(), BUFFER_POOL_SIZE);
+        this.applicationPool = new DirectBufferPool(session.getApplicationBufferSize(), BUFFER_POOL_SIZE);
+    }
+
+    @Override
+    public void init(SocketChannel socketChannel) throws IOException {
+        init(socketChannel, null);
+    }
+
+    @Override
+    public void init(SocketChannel socketChannel, @Nullable Runnable readRequest) throws IOException {
+        init(socketChannel, readRequest, null);
+    }
+
+    /**
+     * @param writer writer for handshake messages, <code>null</code> - unsent messages are kept until next read or write
+     */
+    @Override
+    public void init(SocketChannel socketChannel, @Nullable Runnable readRequest, @Nullable SocketWriter writer) throws IOException {
+        InetSocketAddress address = (InetSocketAddress) socketChannel.getRemoteAddress();
+        SSLEngine engine = sslContext.createSSLEngine(address.getHostString(), address.getPort());
+        engine.setUseClientMode(false);
+        engine.setWantClientAuth(true);
+        try {
+            engine.beginHandshake();
+        } catch (SSLException e) {
+            failedHandshakes.increment();
+            throw e;
+        }
+        activeHandshakes.increment();
+        connections.put(socketChannel.socket(), new Connection(socketChannel, engine, taskExecutor == null ? null : readRequest, writer));
+    }
+
+    @Override
+    public void close(SocketChannel socketChannel) {
+        Connection connection = connections.remove(socketChannel.socket());
+        if(connection != null)
+            connection.close();
+    }
+
+    @Override
+    public void read(SocketChannel socketChannel, ByteBuffer byteBuffer) throws IOException {
+        getConnection(socketChannel).read(byteBuffer);
+    }
+
+    @Override
+    public boolean hasBufferedData(SocketChannel socketChannel) {
+        Connection connection = connections.get(socketChannel.socket());
+        return connection != null && connection.hasBufferedData();
+    }
+
+    @Override
+    public boolean isReadPaused(SocketChannel socketChannel) {
+        Connection connection = connections.get(socketChannel.socket());
+        return connection != null && connection.taskPending;
+    }
+
+    @Override
+    public void write(SocketChannel socketChannel, ByteBuffer data, SocketWriter writer) throws IOException {
+        write(socketChannel, new ByteBuffer[]{data}, writer);
+    }
+
+    @Override
+    public void write(SocketChannel socketChannel, ByteBuffer[] data, SocketWriter writer) throws IOException {
+        getConnection(socketChannel).write(data, writer);
+    }
+
+    @Override
+    public boolean isSecure(SocketChannel socketChannel) {
+        return connections.containsKey(socketChannel.socket());
+    }
+
+    @Nonnull
+    private Connection getConnection(SocketChannel socketChannel) throws CloseSocketException {
+        Connection connection = connections.get(socketChannel.socket());
+        if(connection == null)
+            throw new CloseSocketException();
+        return connection;
+    }
+
+    @Override
+    public long getConnectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public long getActiveHandshakeCount() {
+        return activeHandshakes.sum();
+    }
+
+    @Override
+    public long getHandshakeCount() {
+        return handshakes.sum();
+    }
+
+    @Override
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.sum();
+    }
+
+    @Override
+    public long getFailedHandshakeCount() {
+        return failedHandshakes.sum();
+    }
+
+    @Override
+    public long getQueuedHandshakeCount() {
+        return queuedHandshakes.sum();
+    }
+
+    @Override
+    public long getAverageHandshakeTime() {
+        long count = handshakes.sum();
+        return count == 0 ? 0 : handshakeTime.sum() / count / 1000;
+    }
+
+    @Override
+    public long getMaxHandshakeTime() {
+        return maxHandshakeTime.get() / 1000;
+    }
+
+    @Override
+    public long getPooledBufferCount() {
+        return packetPool.getPooledCount() + applicationPool.getPooledCount();
+    }
+
+    @Override
+    public long getBufferMemory() {
+        return packetPool.getMemory() + applicationPool.getMemory();
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        for(ByteBuffer buffer : buffers) {
+            if(buffer.hasRemaining())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copy buffer's data into bigger buffer. Old buffer is returned into pool
+     */
+    private static ByteBuffer grow(DirectBufferPool pool, ByteBuffer buffer, int size) {
+        ByteBuffer ret = pool.acquire(Math.max(size, buffer.capacity() * 2));
+        buffer.flip();
+        ret.put(buffer);
+        pool.release(buffer);
+        return ret;
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SSLEngine engine;
+        private final Object readLock = new Object();
+        private final Object wrapLock = new Object();
+        private final long handshakeStart = System.currentTimeMillis();
+        private final long handshakeStartNanos = System.nanoTime();
+        /**
+         * Asks selector to continue the handshake after delegated tasks. <code>null</code> - tasks are run by selector thread
+         */
+        @Nullable
+        private final Runnable readRequest;
+        /**
+         * Received network data in write mode, <code>null</code> if nothing left
+         */
+        private ByteBuffer netIn;
+        /**
+         * Decrypted data, not consumed by session, in write mode, <code>null</code> if nothing left
+         */
+        private ByteBuffer appIn;
+        private final AtomicBoolean handshaking = new AtomicBoolean(true);
+        /**
+         * Session writer, given on init or captured on first write. Handshake messages must go through it to keep record order with delayed writes
+         */
+        private volatile SocketWriter writer;
+        /**
+         * Handshake messages, which socket didn't accept before session writer was known. Guarded by {@link #wrapLock}
+         */
+        private final ArrayDeque<ByteBuffer> pendingOutput = new ArrayDeque<>();
+        private boolean closed;
+        /**
+         * Delegated tasks are running in executor, engine must not be used for handshake
+         */
+        private volatile boolean taskPending;
+
+        Connection(SocketChannel channel, SSLEngine engine, @Nullable Runnable readRequest, @Nullable SocketWriter writer) {
+            this.channel = channel;
+            this.engine = engine;
+            this.readRequest = readRequest;
+            this.writer = writer;
+        }
+
+        /**
+         * Called from selector thread only
+         */
+        void read(ByteBuffer dst) throws IOException {
+            synchronized (readLock) {
+                if(closed)
+                    throw new CloseSocketException();
+                flushOutput(writer);
+                if(drain(dst))
+                    return;
+
+                if(netIn == null)
+                    netIn = packetPool.acquire();
+                if(taskPending) {//Only buffer data, selector pauses reading and is called again when tasks are done
+                    if(netIn.hasRemaining() && channel.read(netIn) == -1)
+                        throw new CloseSocketException();
+                    return;
+                }
+                if(channel.read(netIn) == -1)
+                    throw new CloseSocketException();
+                netIn.flip();
+                try {
+                    unwrap(dst);
+                } finally {
+                    if(netIn.hasRemaining())
+                        netIn.compact();
+                    else {
+                        packetPool.release(netIn);
+                        netIn = null;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Return <code>true</code> if decrypted data or received records are left after session buffer was filled. Records are left
+         * for selector while delegated tasks are running
+         */
+        boolean hasBufferedData() {
+            synchronized (readLock) {
+                return (appIn != null && appIn.position() > 0) || (!taskPending && netIn != null && netIn.position() > 0);
+            }
+        }
+
+        private void unwrap(ByteBuffer dst) throws IOException {
+            boolean stalled = false;
+            while(netIn.hasRemaining() && !taskPending) {
+                if(appIn == null)
+                    appIn = applicationPool.acquire();
+                SSLEngineResult result = engine.unwrap(netIn, appIn);
+                switch (result.getStatus()) {
+                    case BUFFER_UNDERFLOW:
+                        if(netIn.remaining() == netIn.capacity()) {//Record is bigger than pooled buffer
+                            netIn.position(netIn.limit());
+                            netIn = grow(packetPool, netIn, engine.getSession().getPacketBufferSize());
+                            netIn.flip();
+                        }
+                        return;
+                    case BUFFER_OVERFLOW:
+                        if(appIn.position() == 0)
+                            appIn = grow(applicationPool, appIn, engine.getSession().getApplicationBufferSize());
+                        else if(drain(dst))
+                            return;
+                        continue;
+                    case CLOSED:
+                        drain(dst);
+                        throw new CloseSocketException();
+                    default:
+                }
+                handshake(result.getHandshakeStatus());
+                if(drain(dst))
+                    return;
+                if(result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                    if(stalled)
+                        return;
+                    stalled = true;
+                } else
+                    stalled = false;
+            }
+            if(!taskPending)
+                handshake(engine.getHandshakeStatus());
+        }
+
+        /**
+         * Move decrypted data into session buffer
+         *
+         * @return <code>true</code> if session buffer is full
+         */
+        private boolean drain(ByteBuffer dst) {
+            if(appIn == null)
+                return !dst.hasRemaining();
+            appIn.flip();
+            if(appIn.remaining() <= dst.remaining()) {
+                dst.put(appIn);
+                applicationPool.release(appIn);
+                appIn = null;
+            } else {
+                ByteBuffer part = appIn.duplicate();
+                part.limit(part.position() + dst.remaining());
+                dst.put(part);
+                appIn.position(part.position());
+                appIn.compact();
+            }
+            return !dst.hasRemaining();
+        }
+
+        private void handshake(SSLEngineResult.HandshakeStatus status) throws IOException {
+            while(true) {
+                switch (status) {
+                    case NEED_TASK:
+                        if(submitTasks())
+                            return;
+                        runTasks();
+                        status = engine.getHandshakeStatus();
+                        break;
+                    case NEED_WRAP:
+                        status = wrapHandshake();
+                        break;
+                    case FINISHED:
+                        handshakeFinished();
+                        status = engine.getHandshakeStatus();
+                        if(status == SSLEngineResult.HandshakeStatus.FINISHED)
+                            return;
+                        break;
+                    default:
+                        return;
+                }
+            }
+        }
+
+        /**
+         * @return <code>false</code> - tasks must be run in current thread
+         */
+        private boolean submitTasks() {
+            if(readRequest == null || taskExecutor == null)
+                return false;
+            taskPending = true;
+            queuedHandshakes.increment();
+            try {
+                taskExecutor.execute(this::runDelegatedTasks);
+                return true;
+            } catch (RejectedExecutionException e) {
+                taskPending = false;
+                queuedHandshakes.decrement();
+                return false;
+            }
+        }
+
+        private void runDelegatedTasks() {
+            try {
+                runTasks();
+            } finally {
+                queuedHandshakes.decrement();
+                taskPending = false;
+                readRequest.run();
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while((task = engine.getDelegatedTask()) != null)
+                task.run();
+        }
+
+        private void handshakeFinished() {
+            if(!handshaking.compareAndSet(true, false))
+                return;
+            activeHandshakes.decrement();
+            handshakes.increment();
+            long time = System.nanoTime() - handshakeStartNanos;
+            handshakeTime.add(time);
+            maxHandshakeTime.accumulateAndGet(time, Math::max);
+            if(engine.getSession().getCreationTime() < handshakeStart)
+                resumedHandshakes.increment();
+        }
+
+        private SSLEngineResult.HandshakeStatus wrapHandshake() throws IOException {
+            synchronized (wrapLock) {
+                ByteBuffer out = packetPool.acquire();
+                SSLEngineResult result = engine.wrap(EMPTY, out);
+                out.flip();
+                send(out);
+                if(result.getStatus() == SSLEngineResult.Status.CLOSED)
+                    throw new CloseSocketException();
+                return result.getHandshakeStatus();
+            }
+        }
+
+        /**
+         * Send handshake data. Without session writer data is written directly, and unsent part is kept in {@link #pendingOutput}.
+         * Must be called under {@link #wrapLock}
+         */
+        private void send(ByteBuffer out) throws IOException {
+            SocketWriter writer = this.writer;
+            flushOutput(writer);
+            if(writer != null)
+                writer.write(channel, out);
+            else {
+                if(pendingOutput.isEmpty())
+                    channel.write(out);
+                if(out.hasRemaining()) {
+                    pendingOutput.add(out);
+                    return;
+                }
+            }
+            recycle(out);
+        }
+
+        /**
+         * Send handshake data, kept in {@link #pendingOutput}. Session writer takes all of it
+         *
+         * @param writer session writer, <code>null</code> - write directly
+         */
+        private void flushOutput(@Nullable SocketWriter writer) throws IOException {
+            synchronized (wrapLock) {
+                ByteBuffer out;
+                while((out = pendingOutput.peek()) != null) {
+                    if(writer != null)
+                        writer.write(channel, out);
+                    else {
+                        channel.write(out);
+                        if(out.hasRemaining())
+                            return;
+                    }
+                    pendingOutput.poll();
+                    recycle(out);
+                }
+            }
+        }
+
+        void write(ByteBuffer[] data, SocketWriter writer) throws IOException {
+            this.writer = writer;
+            synchronized (wrapLock) {
+                flushOutput(writer);
+                ByteBuffer[] records = new ByteBuffer[WRITE_BATCH];
+                int count = 0;
+                try {
+                    do {
+                        ByteBuffer out = packetPool.acquire();
+                        records[count++] = out;
+                        SSLEngineResult result = engine.wrap(data, out);
+                        if(result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                            packetPool.release(out);
+                            records[count - 1] = out = packetPool.acquire(engine.getSession().getPacketBufferSize());
+                            result = engine.wrap(data, out);
+                        }
+                        if(result.getStatus() == SSLEngineResult.Status.CLOSED)
+                            throw new CloseSocketException();
+                        if(result.bytesConsumed() == 0 && result.bytesProduced() == 0)
+                            throw new SSLException("Can't write data while handshake waits for peer");
+                        out.flip();
+                        if(result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK)
+                            runTasks();
+
+                        if(count == records.length) {
+                            flush(records, count, writer);
+                            count = 0;
+                        }
+                    } while(hasRemaining(data));
+                } finally {
+                    if(count > 0)
+                        flush(records, count, writer);
+                }
+            }
+        }
+
+        private void flush(ByteBuffer[] records, int count, SocketWriter writer) {
+            if(count == records.length)
+                writer.write(channel, records);
+            else {
+                ByteBuffer[] part = new ByteBuffer[count];
+                System.arraycopy(records, 0, part, 0, count);
+                writer.write(channel, part);
+            }
+            for(int i = 0; i < count; i++) {
+                recycle(records[i]);
+                records[i] = null;
+            }
+        }
+
+        /**
+         * Return written record into pool. Record, which is not fully written, is kept by session delayed write, so it is detached from pool
+         */
+        private void recycle(ByteBuffer record) {
+            if(record.hasRemaining())
+                packetPool.detach(record);
+            else
+                packetPool.release(record);
+        }
+
+        void close() {
+            if(handshaking.compareAndSet(true, false)) {
+                activeHandshakes.decrement();
+                failedHandshakes.increment();
+            }
+            engine.closeOutbound();
+            synchronized (wrapLock) {
+                ByteBuffer out;
+                while((out = pendingOutput.poll()) != null)
+                    packetPool.release(out);
+            }
+            if(channel.isOpen()) {
+                synchronized (wrapLock) {
+                    ByteBuffer out = packetPool.acquire();
+                    try {
+                        engine.wrap(EMPTY, out);
+                        out.flip();
+                        channel.write(out);
+                    } catch (IOException e) {
+                        //Ok, close_notify is best-effort
+                    } finally {
+                        packetPool.release(out);
+                    }
+                }
+            }
+            synchronized (readLock) {
+                closed = true;
+                if(netIn != null) {
+                    packetPool.release(netIn);
+                    netIn = null;
+                }
+                if(appIn != null) {
+                    applicationPool.release(appIn);
+                    appIn = null;
+                }
+            }
+        }
+    }
+}
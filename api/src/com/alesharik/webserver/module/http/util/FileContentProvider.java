@@ -21,6 +21,9 @@ package com.alesharik.webserver.module.http.util;
 import com.alesharik.webserver.module.http.http.Request;
 import com.alesharik.webserver.module.http.http.data.MimeType;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 //TODO refactor
 public interface FileContentProvider {
@@ -36,4 +39,15 @@ public interface FileContentProvider {
     byte[] getRangedData(Request request, long start, long size);
 
     MimeType getMimeType(Request request);
+
+    /**
+     * Open file for zero-copy sending. Channel is closed by caller after response is sent
+     *
+     * @return <code>null</code> - file isn't available as channel, {@link #getRangedData(Request, long, long)} will be used
+     * @throws IOException if file can't be opened
+     */
+    @Nullable
+    default FileChannel openChannel(Request request) throws IOException {
+        return null;
+    }
 }
@@ -15,34 +15,18 @@
  *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
  *
  */
-
-/*
- *  This file is part of AlesharikWebServer.
- *
- *     AlesharikWebServer is free software: you can redistribute it and/or modify
- *     it under the terms of the GNU General Public License as published by
- *     the Free Software Foundation, either version 3 of the License, or
- *     (at your option) any later version.
- *
- *     AlesharikWebServer is distributed in the hope that it will be useful,
- *     but WITHOUT ANY WARRANTY; without even the implied warranty of
- *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- *     GNU General Public License for more details.
- *
- *     You should have received a copy of the GNU General Public License
- *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
- *
- */
-
 package com.alesharik.webserver.module.http.util;
 
 import com.alesharik.webserver.module.http.bundle.processor.HttpProcessor;
+import com.alesharik.webserver.module.http.bundle.processor.impl.ReThrowException;
 import com.alesharik.webserver.module.http.http.Header;
 import com.alesharik.webserver.module.http.http.HeaderManager;
 import com.alesharik.webserver.module.http.http.HttpStatus;
 import com.alesharik.webserver.module.http.http.Method;
+import com.alesharik.webserver.module.http.http.OutputBuffer;
 import com.alesharik.webserver.module.http.http.Request;
 import com.alesharik.webserver.module.http.http.Response;
+import com.alesharik.webserver.module.http.http.ResponseStream;
 import com.alesharik.webserver.module.http.http.data.ContentRange;
 import com.alesharik.webserver.module.http.http.data.ContentType;
 import com.alesharik.webserver.module.http.http.data.MimeType;
@@ -51,11 +35,16 @@ import com.alesharik.webserver.module.http.http.header.AcceptRangesHeader;
 import com.alesharik.webserver.module.http.http.header.ObjectHeader;
 
 import javax.annotation.Nonnull;
-import java.util.HashMap;
-import java.util.Map;
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 
 /**
- * This {@link HttpProcessor} wraps ranged request logic
+ * This {@link HttpProcessor} wraps ranged request logic. If {@link FileContentProvider} can open the file as channel, ranges are
+ * sent directly from the file: with sendfile for plain sockets and with mapped slices for secure ones
  */
 //TODO refactor
 @SuppressWarnings("unchecked")
@@ -66,6 +55,8 @@ public class RangeFileHttpProvider implements HttpProcessor {
     protected static final Header<ContentRange> contentRangeHeader = HeaderManager.getHeaderByName("Content-Range");
     protected static final Header<Range[]> rangeHeader = HeaderManager.getHeaderByName("Range");
     protected static final ObjectHeader<ContentType> contentTypeHeader = HeaderManager.getHeaderByName("Content-Type");
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] MULTIPART_END = ("--" + DEFAULT_MULTIPART_BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
 
     protected final FileContentProvider provider;
 
@@ -86,46 +77,144 @@ public class RangeFileHttpProvider implements HttpProcessor {
             response.setContentLength(provider.getLength(request));
         } else if(request.getMethod() == Method.GET) {
             Range[] ranges = request.getHeader(rangeHeader);
-            ContentType contentType = new ContentType(provider.getMimeType(request));
-            if(ranges == null) {
+            if(ranges == null || ranges.length == 0) {
+                response.respond(HttpStatus.REQUEST_RANGE_NOT_SATISFIABLE_416);
+                return;
+            }
+            try (FileChannel channel = provider.openChannel(request)) {
+                if(channel == null)
+                    processData(request, response, ranges);
+                else
+                    processChannel(request, response, ranges, channel);
+            } catch (IOException e) {
+                throw new ReThrowException(e);
+            }
+        } else
+            response.respond(HttpStatus.METHOD_NOT_ALLOWED_405);
+    }
+
+    /**
+     * Send ranges from the channel without reading them into the heap
+     */
+    protected void processChannel(Request request, Response response, Range[] ranges, FileChannel channel) throws IOException {
+        long size = channel.size();
+        long[] bounds = new long[ranges.length * 2];
+        for(int i = 0; i < ranges.length; i++) {
+            Range range = ranges[i];
+            long start = range.getStart();
+            long end = range.hasEnd() ? Math.min(range.getEnd(), size - 1) : size - 1;
+            if(start < 0 || start > end) {
                 response.respond(HttpStatus.REQUEST_RANGE_NOT_SATISFIABLE_416);
-            } else if(ranges.length == 1) {
-                Range range = ranges[0];
-                byte[] data = provider.getRangedData(request, range.getStart(), range.getEnd());
+                return;
+            }
+            bounds[i * 2] = start;
+            bounds[i * 2 + 1] = end;
+        }
+
+        ContentType contentType = new ContentType(provider.getMimeType(request));
+        response.respond(HttpStatus.PARTIAL_CONTENT_206);
+        byte[][] partHeaders = null;
+        if(ranges.length == 1) {
+            response.addHeader(contentRangeHeader, new ContentRange(ranges[0].getRangeType(), bounds[0], bounds[1], size));
+            response.addHeader(contentTypeHeader, contentType);
+            response.setContentLength(bounds[1] - bounds[0] + 1);
+        } else {
+            partHeaders = new byte[ranges.length][];
+            long length = MULTIPART_END.length;
+            for(int i = 0; i < ranges.length; i++) {
+                ContentRange contentRange = new ContentRange(ranges[i].getRangeType(), bounds[i * 2], bounds[i * 2 + 1], size);
+                partHeaders[i] = buildPartHeader(contentRange, contentType);
+                length += partHeaders[i].length + (bounds[i * 2 + 1] - bounds[i * 2] + 1) + CRLF.length;
+            }
+            response.addHeader(contentTypeHeader, DEFAULT_MULTIPART_CONTENT_TYPE);
+            response.setContentLength(length);
+        }
+
+        ResponseStream stream;
+        try {
+            stream = response.stream();
+        } catch (IllegalStateException e) {//Sender can't stream, read ranges into the body
+            stream = null;
+        }
+        for(int i = 0; i < ranges.length; i++) {
+            if(partHeaders != null)
+                write(stream, response.getOutputBuffer(), partHeaders[i]);
+            long start = bounds[i * 2];
+            long count = bounds[i * 2 + 1] - start + 1;
+            if(stream != null)
+                stream.transferFrom(channel, start, count);
+            else
+                readRegion(response.getOutputBuffer(), channel, start, count);
+            if(partHeaders != null)
+                write(stream, response.getOutputBuffer(), CRLF);
+        }
+        if(partHeaders != null)
+            write(stream, response.getOutputBuffer(), MULTIPART_END);
+        if(stream != null)
+            stream.close();
+    }
+
+    /**
+     * Send ranges, provided by {@link FileContentProvider#getRangedData(Request, long, long)}
+     */
+    protected void processData(Request request, Response response, Range[] ranges) {
+        long size = provider.getLength(request);
+        ContentType contentType = new ContentType(provider.getMimeType(request));
+        if(ranges.length == 1) {
+            Range range = ranges[0];
+            long end = range.hasEnd() ? Math.min(range.getEnd(), size - 1) : size - 1;
+            byte[] data = provider.getRangedData(request, range.getStart(), end - range.getStart() + 1);
+            if(data.length == 0) {
+                response.respond(HttpStatus.REQUEST_RANGE_NOT_SATISFIABLE_416);
+                return;
+            }
+            ContentRange contentRange = new ContentRange(range.getRangeType(), range.getStart(), end, size);
+            response.respond(HttpStatus.PARTIAL_CONTENT_206);
+            response.addHeader(contentRangeHeader, contentRange);
+            response.setContentLength(data.length);
+            response.addHeader(contentTypeHeader, contentType);
+            response.getOutputBuffer().write(data);
+        } else {
+            OutputBuffer buffer = response.getOutputBuffer();
+            for(Range range : ranges) {
+                long end = range.hasEnd() ? Math.min(range.getEnd(), size - 1) : size - 1;
+                byte[] data = provider.getRangedData(request, range.getStart(), end - range.getStart() + 1);
                 if(data.length == 0) {
+                    buffer.clear();
                     response.respond(HttpStatus.REQUEST_RANGE_NOT_SATISFIABLE_416);
                     return;
                 }
-                long size = provider.getLength(request);
-                ContentRange contentRange = new ContentRange(range.getRangeType(), range.getStart(), range.getEnd(), size);
-                response.respond(HttpStatus.PARTIAL_CONTENT_206);
-                response.addHeader(contentRangeHeader, contentRange);
-                response.setContentLength(data.length);
-                response.addHeader(contentTypeHeader, contentType);
-                response.getOutputBuffer().write(data);
-            } else {
-                long size = provider.getLength(request);
-                response.addHeader(contentTypeHeader, DEFAULT_MULTIPART_CONTENT_TYPE);
-                response.respond(HttpStatus.PARTIAL_CONTENT_206);
-                Map<String, byte[]> resp = new HashMap<>();
-                for(Range range : ranges) {
-                    byte[] data = provider.getRangedData(request, range.getStart(), range.getEnd());
-                    if(data.length == 0) {
-                        response.respond(HttpStatus.REQUEST_RANGE_NOT_SATISFIABLE_416);
-                        return;
-                    }
-                    ContentRange contentRange = new ContentRange(range.getRangeType(), range.getStart(), range.getEnd(), size);
-                    String headers = contentRangeHeader.build(contentRange) + "\r\n" + contentTypeHeader.build(contentType) + "\r\n\r\n";
-                    resp.put(headers, data);
-                }
-                Map.Entry<String, byte[]>[] entries = resp.entrySet().toArray(new Map.Entry[0]);
-                for(int i = 0; i < entries.length; i++) {
-                    response.getWriter().write("--" + DEFAULT_MULTIPART_BOUNDARY + ((i + 1 == entries.length) ? "--" : "") + "\r\n");
-                    response.getWriter().write(entries[i].getKey());
-                    response.getOutputBuffer().write(entries[i].getValue());
-                }
+                ContentRange contentRange = new ContentRange(range.getRangeType(), range.getStart(), end, size);
+                buffer.write(buildPartHeader(contentRange, contentType));
+                buffer.write(data);
+                buffer.write(CRLF);
             }
-        } else
-            response.respond(HttpStatus.METHOD_NOT_ALLOWED_405);
+            buffer.write(MULTIPART_END);
+            response.addHeader(contentTypeHeader, DEFAULT_MULTIPART_CONTENT_TYPE);
+            response.respond(HttpStatus.PARTIAL_CONTENT_206);
+        }
+    }
+
+    private static byte[] buildPartHeader(ContentRange contentRange, ContentType contentType) {
+        String header = "--" + DEFAULT_MULTIPART_BOUNDARY + "\r\n" + contentRangeHeader.build(contentRange) + "\r\n" + contentTypeHeader.build(contentType) + "\r\n\r\n";
+        return header.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void write(@Nullable ResponseStream stream, OutputBuffer buffer, byte[] data) throws IOException {
+        if(stream != null)
+            stream.write(data);
+        else
+            buffer.write(data);
+    }
+
+    private static void readRegion(OutputBuffer buffer, FileChannel channel, long position, long count) throws IOException {
+        if(count > Integer.MAX_VALUE)
+            throw new IOException("Range is too big to be buffered");
+        ByteBuffer data = ByteBuffer.allocate((int) count);
+        while(data.hasRemaining()) {
+            if(channel.read(data, position + data.position()) == -1)
+                throw new EOFException();
+        }
+        buffer.write(data.array());
     }
 }
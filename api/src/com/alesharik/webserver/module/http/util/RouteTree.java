@@ -0,0 +1,277 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.util;
+
+import com.alesharik.webserver.module.http.http.Method;
+import com.alesharik.webserver.module.http.http.Request;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled route table. Route templates are divided by <code>/</code> into segments. Segment can be a literal, a <code>{name}</code>
+ * parameter, which matches exactly one segment, or <code>*</code>, which matches the rest of the path(including empty one) and must be the last.
+ * Literal segments are preferred over parameters and parameters are preferred over wildcards. Empty segments are ignored, so
+ * <code>/a//b/</code> is equal to <code>/a/b</code>.
+ * Lookup doesn't allocate: captured parameters are written as bounds into request's reusable array.
+ * Routes can be added at any time, but lookups are optimized for rarely changing tables
+ *
+ * @param <T> route value type
+ */
+@ThreadSafe
+public final class RouteTree<T> {
+    private static final int[] EMPTY_BOUNDS = new int[0];
+    private static final Method[] METHODS = Method.values();
+
+    private final Node<T> root = new Node<>(null);
+    private volatile int maxParameters = 0;
+
+    /**
+     * Add route for all methods
+     *
+     * @param template route template
+     * @param value    route value
+     * @throws IllegalArgumentException if template is invalid
+     */
+    public void add(@Nonnull String template, @Nonnull T value) {
+        add(template, null, value);
+    }
+
+    /**
+     * Add route. If route already exists, it's value for the method is replaced
+     *
+     * @param template route template
+     * @param method   route method, <code>null</code> means all methods
+     * @param value    route value
+     * @throws IllegalArgumentException if template is invalid
+     */
+    public synchronized void add(@Nonnull String template, @Nullable Method method, @Nonnull T value) {
+        Node<T> node = root;
+        List<String> names = new ArrayList<>();
+        String[] segments = template.split("/");
+        boolean wildcard = false;
+        for(int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if(segment.isEmpty())
+                continue;
+            if(wildcard)
+                throw new IllegalArgumentException("Wildcard must be the last segment of " + template);
+            if("*".equals(segment)) {
+                names.add("*");
+                wildcard = true;
+            } else if(segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}') {
+                names.add(segment.substring(1, segment.length() - 1));
+                if(node.parameter == null)
+                    node.parameter = new Node<>(null);
+                node = node.parameter;
+            } else
+                node = node.getOrAddChild(segment);
+        }
+
+        Route<T> route = wildcard ? node.wildcard : node.route;
+        if(route == null) {
+            route = new Route<>();
+            if(wildcard)
+                node.wildcard = route;
+            else
+                node.route = route;
+        }
+        route.set(template, names.toArray(new String[0]), method, value);
+        if(names.size() > maxParameters)
+            maxParameters = names.size();
+    }
+
+    /**
+     * Find route for the path
+     *
+     * @param path    the path
+     * @param request request, which receives captured parameters. Can be <code>null</code>
+     * @return matched route or <code>null</code>
+     */
+    @Nullable
+    public Route<T> find(@Nonnull String path, @Nullable Request request) {
+        int size = maxParameters * 2;
+        int[] bounds = null;
+        if(size == 0)
+            bounds = EMPTY_BOUNDS;
+        else if(request != null)
+            bounds = request.getPathParameterBuffer(size);
+        if(bounds == null)
+            bounds = new int[size];
+
+        Route<T> route = match(root, path, 0, bounds, 0);
+        if(route != null && request != null)
+            request.setPathParameters(path, route.names);
+        return route;
+    }
+
+    private static <T> Route<T> match(Node<T> node, String path, int position, int[] bounds, int parameter) {
+        int length = path.length();
+        while(position < length && path.charAt(position) == '/')
+            position++;
+        if(position == length) {
+            if(node.route != null)
+                return node.route;
+            if(node.wildcard != null) {
+                bounds[parameter * 2] = position;
+                bounds[parameter * 2 + 1] = position;
+                return node.wildcard;
+            }
+            return null;
+        }
+
+        int end = path.indexOf('/', position);
+        if(end == -1)
+            end = length;
+        int segmentLength = end - position;
+        for(Node<T> child : node.children) {
+            if(child.segment.length() == segmentLength && path.regionMatches(position, child.segment, 0, segmentLength)) {
+                Route<T> route = match(child, path, end, bounds, parameter);
+                if(route != null)
+                    return route;
+                break;
+            }
+        }
+        Node<T> param = node.parameter;
+        if(param != null) {
+            bounds[parameter * 2] = position;
+            bounds[parameter * 2 + 1] = end;
+            Route<T> route = match(param, path, end, bounds, parameter + 1);
+            if(route != null)
+                return route;
+        }
+        if(node.wildcard != null) {
+            bounds[parameter * 2] = position;
+            bounds[parameter * 2 + 1] = length;
+            return node.wildcard;
+        }
+        return null;
+    }
+
+    /**
+     * Route with values for methods
+     *
+     * @param <T> value type
+     */
+    @ThreadSafe
+    public static final class Route<T> {
+        private volatile String template;
+        private volatile String[] names;
+        private volatile Object[] methods = new Object[METHODS.length];
+        private volatile T any;
+
+        Route() {
+        }
+
+        synchronized void set(String template, String[] names, Method method, T value) {
+            this.template = template;
+            this.names = names;
+            if(method == null)
+                any = value;
+            else {
+                Object[] methods = Arrays.copyOf(this.methods, this.methods.length);
+                methods[method.ordinal()] = value;
+                this.methods = methods;
+            }
+        }
+
+        /**
+         * Return value for the method
+         *
+         * @param method the method. <code>null</code> means value for all methods
+         * @return <code>null</code> - route doesn't accept this method
+         */
+        @SuppressWarnings("unchecked")
+        @Nullable
+        public T get(@Nullable Method method) {
+            if(method != null) {
+                Object value = methods[method.ordinal()];
+                if(value != null)
+                    return (T) value;
+            }
+            return any;
+        }
+
+        /**
+         * Return methods, accepted by this route. Empty array means that route accepts all methods
+         */
+        @Nonnull
+        public Method[] getMethods() {
+            if(any != null)
+                return new Method[0];
+            List<Method> ret = new ArrayList<>();
+            Object[] methods = this.methods;
+            for(int i = 0; i < methods.length; i++) {
+                if(methods[i] != null)
+                    ret.add(METHODS[i]);
+            }
+            return ret.toArray(new Method[0]);
+        }
+
+        /**
+         * Return last template, added for this route
+         */
+        @Nonnull
+        public String getTemplate() {
+            return template;
+        }
+
+        /**
+         * Return parameter names in template order. Wildcard has <code>*</code> name
+         */
+        @Nonnull
+        public String[] getParameterNames() {
+            return names.clone();
+        }
+    }
+
+    private static final class Node<T> {
+        @SuppressWarnings("unchecked")
+        private static final Node[] EMPTY = new Node[0];
+
+        private final String segment;
+        @SuppressWarnings("unchecked")
+        private volatile Node<T>[] children = EMPTY;
+        private volatile Node<T> parameter;
+        private volatile Route<T> route;
+        private volatile Route<T> wildcard;
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+
+        /**
+         * Must be called under tree lock
+         */
+        Node<T> getOrAddChild(String segment) {
+            for(Node<T> child : children) {
+                if(child.segment.equals(segment))
+                    return child;
+            }
+            Node<T> node = new Node<>(segment);
+            Node<T>[] children = Arrays.copyOf(this.children, this.children.length + 1);
+            children[children.length - 1] = node;
+            this.children = children;
+            return node;
+        }
+    }
+}
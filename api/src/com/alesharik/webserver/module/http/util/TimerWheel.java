@@ -0,0 +1,190 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel. Timeouts are linked into the bucket of their deadline tick, so scheduling, cancelling and expiration don't scan all timeouts.
+ * Timeouts fire not earlier than their deadline and not later than one tick after it.
+ * Deadline can be moved forward without relinking: timeout is relinked only when it's bucket comes
+ *
+ * @param <T> timeout value type
+ */
+@NotThreadSafe
+public final class TimerWheel<T> {
+    private final Timeout<T>[] buckets;
+    private final int mask;
+    private final long tick;
+    /**
+     * Last processed tick
+     */
+    private long current;
+    private int size;
+
+    /**
+     * @param slots bucket count, rounded up to power of 2
+     * @param tick  tick duration in milliseconds
+     * @param now   current time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(int slots, long tick, long now) {
+        if(slots <= 0 || tick <= 0)
+            throw new IllegalArgumentException();
+        int length = Integer.highestOneBit(slots);
+        if(length < slots)
+            length <<= 1;
+        this.buckets = new Timeout[length];
+        this.mask = length - 1;
+        this.tick = tick;
+        this.current = now / tick;
+    }
+
+    /**
+     * Schedule timeout or change it's deadline. Deadlines in the past expire on next {@link #expire(long, Consumer)} call
+     *
+     * @param deadline time in milliseconds
+     */
+    public void schedule(@Nonnull Timeout<T> timeout, long deadline) {
+        if(timeout.wheel == this) {
+            if(deadline >= timeout.deadline) {
+                timeout.deadline = deadline;
+                return;
+            }
+            unlink(timeout);
+        } else if(timeout.wheel != null)
+            throw new IllegalStateException("Timeout is scheduled in other wheel");
+        else
+            size++;
+        timeout.deadline = deadline;
+        link(timeout);
+    }
+
+    public void cancel(@Nonnull Timeout<T> timeout) {
+        if(timeout.wheel != this)
+            return;
+        unlink(timeout);
+        timeout.wheel = null;
+        size--;
+    }
+
+    /**
+     * Return scheduled timeout count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Process all ticks up to <code>now</code>. Consumer can reschedule expired timeout
+     *
+     * @param now      current time in milliseconds
+     * @param consumer receives values of expired timeouts
+     * @return expired timeout count
+     */
+    public int expire(long now, @Nonnull Consumer<T> consumer) {
+        long target = now / tick;
+        int expired = 0;
+        for(long t = current + 1; t <= target && size > 0; t++) {
+            current = t;
+            int index = (int) (t & mask);
+            Timeout<T> timeout = buckets[index];
+            buckets[index] = null;
+            while(timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.prev = null;
+                timeout.next = null;
+                if(expirationTick(timeout) > t)//Deadline was moved or is in next rounds
+                    link(timeout);
+                else {
+                    timeout.wheel = null;
+                    size--;
+                    expired++;
+                    consumer.accept(timeout.value);
+                }
+                timeout = next;
+            }
+        }
+        current = target;
+        return expired;
+    }
+
+    private void link(Timeout<T> timeout) {
+        long t = Math.max(expirationTick(timeout), current + 1);
+        int index = (int) (t & mask);
+        Timeout<T> head = buckets[index];
+        timeout.next = head;
+        timeout.prev = null;
+        if(head != null)
+            head.prev = timeout;
+        buckets[index] = timeout;
+        timeout.bucket = index;
+        timeout.wheel = this;
+    }
+
+    /**
+     * Timeout expires after the end of it's deadline tick, so it never fires before the deadline
+     */
+    private long expirationTick(Timeout<T> timeout) {
+        return timeout.deadline / tick + 1;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if(timeout.prev == null)
+            buckets[timeout.bucket] = timeout.next;
+        else
+            timeout.prev.next = timeout.next;
+        if(timeout.next != null)
+            timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    /**
+     * Timeout node. It is intended to be created once per owner and reused
+     *
+     * @param <T> value type
+     */
+    public static final class Timeout<T> {
+        private final T value;
+        private TimerWheel<T> wheel;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private long deadline;
+        private int bucket;
+
+        public Timeout(@Nonnull T value) {
+            this.value = value;
+        }
+
+        @Nonnull
+        public T getValue() {
+            return value;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isScheduled() {
+            return wheel != null;
+        }
+    }
+}
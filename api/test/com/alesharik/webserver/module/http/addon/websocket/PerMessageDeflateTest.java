@@ -0,0 +1,79 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.addon.websocket;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PerMessageDeflateTest {
+    private final PerMessageDeflate server = new PerMessageDeflate(false, false, 0, 6);
+
+    @Test
+    public void acceptSimpleOffer() throws Exception {
+        PerMessageDeflate accepted = server.negotiate(Collections.singletonList("permessage-deflate; client_max_window_bits"));
+        assertNotNull(accepted);
+        assertFalse(accepted.isServerNoContextTakeover());
+        assertFalse(accepted.isClientNoContextTakeover());
+        assertEquals("permessage-deflate", accepted.toString());
+    }
+
+    @Test
+    public void acceptContextTakeoverParameters() throws Exception {
+        PerMessageDeflate accepted = server.negotiate(Collections.singletonList("permessage-deflate; server_no_context_takeover; client_no_context_takeover"));
+        assertNotNull(accepted);
+        assertTrue(accepted.isServerNoContextTakeover());
+        assertTrue(accepted.isClientNoContextTakeover());
+        assertEquals("permessage-deflate; server_no_context_takeover; client_no_context_takeover", accepted.toString());
+
+        assertEquals("permessage-deflate; server_no_context_takeover; client_no_context_takeover", new PerMessageDeflate().negotiate(Collections.singletonList("permessage-deflate")).toString());
+    }
+
+    @Test
+    public void declineUnsupportedOffers() throws Exception {
+        assertNull(server.negotiate(Collections.singletonList("permessage-deflate; server_max_window_bits=10")));
+        assertNull(server.negotiate(Collections.singletonList("permessage-deflate; client_max_window_bits=16")));
+        assertNull(server.negotiate(Collections.singletonList("permessage-deflate; server_no_context_takeover; server_no_context_takeover")));
+        assertNull(server.negotiate(Collections.singletonList("permessage-deflate; foo")));
+        assertNull(server.negotiate(Collections.singletonList("x-webkit-deflate-frame")));
+    }
+
+    @Test
+    public void selectFirstAcceptableOffer() throws Exception {
+        PerMessageDeflate accepted = server.negotiate(Arrays.asList("permessage-deflate; server_max_window_bits=10", "permessage-deflate; server_max_window_bits=\"15\",permessage-deflate"));
+        assertNotNull(accepted);
+        assertEquals("permessage-deflate; server_max_window_bits=15", accepted.toString());
+    }
+
+    @Test
+    public void echoServerMaxWindowBits() throws Exception {
+        PerMessageDeflate accepted = server.negotiate(Collections.singletonList("permessage-deflate; server_max_window_bits=15; client_no_context_takeover"));
+        assertNotNull(accepted);
+        assertEquals(15, accepted.getServerMaxWindowBits());
+        assertEquals("permessage-deflate; client_no_context_takeover; server_max_window_bits=15", accepted.toString());
+
+        assertEquals(0, server.negotiate(Collections.singletonList("permessage-deflate")).getServerMaxWindowBits());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.addon.websocket.impl;
+
+import com.alesharik.webserver.module.http.addon.websocket.PerMessageDeflate;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PerMessageDeflateCodecTest {
+    private static final byte[] MESSAGE = "Hello, Hello, Hello, Hello, Hello, Hello!".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void rfcExample() throws Exception {
+        PerMessageDeflateCodec codec = new PerMessageDeflateCodec(new PerMessageDeflate(true, true, 0, 6));
+        byte[] payload = {(byte) 0xf2, 0x48, (byte) 0xcd, (byte) 0xc9, (byte) 0xc9, 0x07, 0x00};
+        assertArrayEquals("Hello".getBytes(StandardCharsets.UTF_8), codec.decompress(payload, true, 1024));
+        codec.close();
+    }
+
+    @Test
+    public void roundTripWithContextTakeover() throws Exception {
+        PerMessageDeflateCodec server = new PerMessageDeflateCodec(new PerMessageDeflate(false, false, 0, 6));
+        PerMessageDeflateCodec client = new PerMessageDeflateCodec(new PerMessageDeflate(false, false, 0, 6));
+        byte[] first = server.compress(MESSAGE, MESSAGE.length);
+        byte[] second = server.compress(MESSAGE, MESSAGE.length);
+        assertTrue(second.length < first.length);//Second message uses first as dictionary
+        assertFalse(endsWithTail(first));
+
+        assertArrayEquals(MESSAGE, client.decompress(first, true, 1024));
+        assertArrayEquals(MESSAGE, client.decompress(second, true, 1024));
+        server.close();
+        client.close();
+    }
+
+    @Test
+    public void decompressFragments() throws Exception {
+        PerMessageDeflateCodec server = new PerMessageDeflateCodec(new PerMessageDeflate(true, true, 0, 6));
+        byte[] compressed = server.compress(MESSAGE, MESSAGE.length);
+        int half = compressed.length / 2;
+        byte[] a = server.decompress(Arrays.copyOfRange(compressed, 0, half), false, 1024);
+        byte[] b = server.decompress(Arrays.copyOfRange(compressed, half, compressed.length), true, 1024);
+
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        assertArrayEquals(MESSAGE, result);
+        server.close();
+    }
+
+    @Test
+    public void limitDecompressedLength() throws Exception {
+        PerMessageDeflateCodec codec = new PerMessageDeflateCodec(new PerMessageDeflate(true, true, 0, 9));
+        byte[] data = new byte[1024 * 1024];
+        byte[] compressed = codec.compress(data, data.length);
+        assertNull(codec.decompress(compressed, true, 1024));
+        assertEquals(data.length, codec.decompress(compressed, true, data.length).length);
+        codec.close();
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void invalidData() throws Exception {
+        PerMessageDeflateCodec codec = new PerMessageDeflateCodec(new PerMessageDeflate(true, true, 0, 6));
+        codec.decompress(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff}, true, 1024);
+    }
+
+    @Test
+    public void threshold() throws Exception {
+        PerMessageDeflateCodec codec = new PerMessageDeflateCodec(new PerMessageDeflate(true, true, 128, 6));
+        assertFalse(codec.shouldCompress(127));
+        assertTrue(codec.shouldCompress(128));
+    }
+
+    private static boolean endsWithTail(byte[] data) {
+        int l = data.length;
+        return l >= 4 && data[l - 4] == 0 && data[l - 3] == 0 && data[l - 2] == (byte) 0xff && data[l - 1] == (byte) 0xff;
+    }
+}
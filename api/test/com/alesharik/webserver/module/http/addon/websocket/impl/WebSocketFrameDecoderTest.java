@@ -0,0 +1,114 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.addon.websocket.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WebSocketFrameDecoderTest {
+    private static final byte[] MASK = {0x37, (byte) 0xfa, 0x21, 0x3d};
+
+    private WebSocketFrameDecoder decoder;
+
+    @Before
+    public void setUp() throws Exception {
+        decoder = new WebSocketFrameDecoder(1024 * 1024);
+    }
+
+    @Test
+    public void decodeMaskedFrame() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(frame(0x1, true, "Hello".getBytes(StandardCharsets.UTF_8), true));
+        assertEquals(WebSocketFrameDecoder.Result.FRAME, decoder.next(buffer));
+        assertTrue(decoder.isFin());
+        assertEquals(0x1, decoder.getOpcode());
+        assertEquals("Hello", new String(decoder.getPayload(), StandardCharsets.UTF_8));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void decodeFramesSplitByteByByte() throws Exception {
+        byte[] payload = new byte[300];//Extended length and long-wide unmasking
+        for(int i = 0; i < payload.length; i++)
+            payload[i] = (byte) i;
+        byte[] first = frame(0x2, false, payload, true);
+        byte[] second = frame(0x0, true, new byte[0], false);
+        byte[] data = new byte[first.length + second.length];
+        System.arraycopy(first, 0, data, 0, first.length);
+        System.arraycopy(second, 0, data, first.length, second.length);
+
+        int frames = 0;
+        for(byte b : data) {
+            WebSocketFrameDecoder.Result result = decoder.next(ByteBuffer.wrap(new byte[]{b}));
+            if(result == WebSocketFrameDecoder.Result.FRAME) {
+                frames++;
+                if(frames == 1) {
+                    assertFalse(decoder.isFin());
+                    assertArrayEquals(payload, decoder.getPayload());
+                } else {
+                    assertTrue(decoder.isFin());
+                    assertEquals(0, decoder.getPayload().length);
+                }
+            } else
+                assertEquals(WebSocketFrameDecoder.Result.NEED_MORE, result);
+        }
+        assertEquals(2, frames);
+    }
+
+    @Test
+    public void decodeReadOnlyBuffer() throws Exception {
+        byte[] payload = "read-only data of several longs".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(frame(0x1, true, payload, true)).asReadOnlyBuffer();
+        assertEquals(WebSocketFrameDecoder.Result.FRAME, decoder.next(buffer));
+        assertArrayEquals(payload, decoder.getPayload());
+    }
+
+    @Test
+    public void tooBig() throws Exception {
+        decoder = new WebSocketFrameDecoder(10);
+        assertEquals(WebSocketFrameDecoder.Result.TOO_BIG, decoder.next(ByteBuffer.wrap(frame(0x2, true, new byte[11], false))));
+    }
+
+    private static byte[] frame(int opcode, boolean fin, byte[] payload, boolean masked) {
+        int lengthSize = payload.length < 126 ? 0 : payload.length < 65536 ? 2 : 8;
+        ByteBuffer buffer = ByteBuffer.allocate(2 + lengthSize + (masked ? 4 : 0) + payload.length);
+        buffer.put((byte) ((fin ? 0x80 : 0) | opcode));
+        int maskBit = masked ? 0x80 : 0;
+        if(lengthSize == 0)
+            buffer.put((byte) (maskBit | payload.length));
+        else if(lengthSize == 2) {
+            buffer.put((byte) (maskBit | 126));
+            buffer.putShort((short) payload.length);
+        } else {
+            buffer.put((byte) (maskBit | 127));
+            buffer.putLong(payload.length);
+        }
+        if(masked)
+            buffer.put(MASK);
+        for(int i = 0; i < payload.length; i++)
+            buffer.put((byte) (masked ? payload[i] ^ MASK[i % 4] : payload[i]));
+        return buffer.array();
+    }
+}
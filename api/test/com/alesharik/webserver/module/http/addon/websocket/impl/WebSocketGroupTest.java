@@ -0,0 +1,150 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.addon.websocket.impl;
+
+import com.alesharik.webserver.module.http.addon.AddOnSocketContext;
+import com.alesharik.webserver.module.http.server.BatchingRunnableTask;
+import com.alesharik.webserver.module.http.server.ExecutorPool;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WebSocketGroupTest {
+    private final List<SocketChannel> channels = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        for(SocketChannel channel : channels)
+            channel.close();
+    }
+
+    @Test
+    public void broadcastEncodesOnce() throws Exception {
+        WebSocketGroup group = new WebSocketGroup(WebSocketGroup.SlowConsumerPolicy.QUEUE, 0);
+        AddOnSocketContext first = context(100);
+        AddOnSocketContext second = context(0);
+        group.add(new WebSocketBroadcaster(first));
+        group.add(new WebSocketBroadcaster(second));
+
+        group.broadcast("test");
+
+        assertEquals("test", text(first));
+        assertEquals("test", text(second));
+    }
+
+    @Test
+    public void dropForSlowConsumer() throws Exception {
+        WebSocketGroup group = new WebSocketGroup(WebSocketGroup.SlowConsumerPolicy.DROP, 10);
+        AddOnSocketContext slow = context(11);
+        AddOnSocketContext fast = context(10);
+        group.add(new WebSocketBroadcaster(slow));
+        group.add(new WebSocketBroadcaster(fast));
+
+        group.broadcast("test");
+
+        verify(slow, never()).writeBytes(any());
+        assertEquals("test", text(fast));
+        assertEquals(1, group.getDroppedCount());
+    }
+
+    @Test
+    public void coalesceForSlowConsumer() throws Exception {
+        WebSocketGroup group = new WebSocketGroup(WebSocketGroup.SlowConsumerPolicy.COALESCE, 10);
+        AddOnSocketContext slow = context(11);
+        group.add(new WebSocketBroadcaster(slow));
+
+        group.broadcast("a");
+        group.broadcast("b");
+        group.flushPending();
+        verify(slow, never()).writeBytes(any());
+
+        when(slow.getQueuedBytes()).thenReturn(0L);
+        group.flushPending();
+        assertEquals("b", text(slow));
+        assertEquals(1, group.getDroppedCount());
+    }
+
+    @Test
+    public void removeClosedMembers() throws Exception {
+        WebSocketGroup group = new WebSocketGroup(WebSocketGroup.SlowConsumerPolicy.QUEUE, 0);
+        AddOnSocketContext context = context(0);
+        group.add(new WebSocketBroadcaster(context));
+        channels.get(0).close();
+
+        group.broadcast("test");
+
+        verify(context, never()).writeBytes(any());
+        assertEquals(0, group.size());
+    }
+
+    @Test
+    public void fanOutByPartitions() throws Exception {
+        ExecutorPool pool = mock(ExecutorPool.class);
+        doAnswer(invocation -> {
+            ((BatchingRunnableTask) invocation.getArgument(0)).run();
+            return null;
+        }).when(pool).executeWorkerTask(any());
+        WebSocketGroup group = new WebSocketGroup(WebSocketGroup.SlowConsumerPolicy.QUEUE, 0, pool, 2);
+        AddOnSocketContext[] contexts = new AddOnSocketContext[3];
+        for(int i = 0; i < contexts.length; i++) {
+            contexts[i] = context(0);
+            group.add(new WebSocketBroadcaster(contexts[i]));
+        }
+
+        group.broadcast("test");
+
+        verify(pool, times(2)).executeWorkerTask(any());
+        for(AddOnSocketContext context : contexts)
+            assertEquals("test", text(context));
+    }
+
+    private AddOnSocketContext context(long queued) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channels.add(channel);
+        AddOnSocketContext context = mock(AddOnSocketContext.class);
+        when(context.getChannel()).thenReturn(channel);
+        when(context.getQueuedBytes()).thenReturn(queued);
+        return context;
+    }
+
+    private static String text(AddOnSocketContext context) {
+        ArgumentCaptor<ByteBuffer> captor = ArgumentCaptor.forClass(ByteBuffer.class);
+        verify(context).writeBytes(captor.capture());
+        ByteBuffer frame = captor.getValue();
+        assertEquals((byte) 0x81, frame.get());
+        byte[] data = new byte[frame.get()];
+        frame.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
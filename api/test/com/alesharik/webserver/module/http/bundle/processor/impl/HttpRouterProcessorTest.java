@@ -20,12 +20,15 @@ package com.alesharik.webserver.module.http.bundle.processor.impl;
 
 import com.alesharik.webserver.module.http.bundle.processor.Handler;
 import com.alesharik.webserver.module.http.bundle.processor.HttpErrorHandler;
+import com.alesharik.webserver.module.http.http.HttpStatus;
+import com.alesharik.webserver.module.http.http.Method;
 import com.alesharik.webserver.module.http.http.Request;
 import com.alesharik.webserver.module.http.http.Response;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import static com.alesharik.webserver.module.http.bundle.processor.impl.HttpRouterProcessor.router;
+import static com.alesharik.webserver.test.http.HttpMockUtils.request;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
@@ -258,6 +261,43 @@ public class HttpRouterProcessorTest {
         fail();
     }
 
+    @Test
+    public void goToTemplateWithMethod() throws Exception {
+        HttpRouterProcessor processor = router();
+        Handler get = mock(Handler.class);
+        Handler post = mock(Handler.class);
+        mockHandler(get);
+        mockHandler(post);
+        processor.path(Method.GET, "/users/{id}", get);
+        processor.path(Method.POST, "/users/{id}", post);
+
+        Request request = request().withMethod(Method.POST).withRawUri("/users/5/").build();
+        processor.process(request, Response.getResponse());
+
+        verify(post, times(1)).handle(same(request), any());
+        verify(get, never()).handle(any(), any());
+        assertEquals("5", request.getPathParameter("id"));
+    }
+
+    @Test
+    public void methodNotAllowed() throws Exception {
+        HttpRouterProcessor processor = router();
+        Handler get = mock(Handler.class);
+        Handler def = mock(Handler.class);
+        mockHandler(get);
+        mockHandler(def);
+        processor.path(Method.GET, "/test", get);
+        processor.defaultPath(def);
+
+        Response response = Response.getResponse();
+        processor.process(request().withMethod(Method.DELETE).withRawUri("/test").build(), response);
+
+        assertEquals(HttpStatus.METHOD_NOT_ALLOWED_405, response.getStatus());
+        assertTrue(response.getHeaders().contains("Allow: GET"));
+        verify(get, never()).handle(any(), any());
+        verify(def, never()).handle(any(), any());
+    }
+
     @Test
     public void goToNull() {
         HttpRouterProcessor processor = router();
@@ -0,0 +1,89 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.http;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChunkedDecoderTest {
+    private ChunkedDecoder decoder;
+    private ByteArrayOutputStream out;
+
+    @Before
+    public void setUp() throws Exception {
+        decoder = new ChunkedDecoder(64);
+        out = new ByteArrayOutputStream();
+    }
+
+    @Test
+    public void decodeBody() throws Exception {
+        ByteBuffer buffer = wrap("4\r\nWiki\r\n5;name=value\r\npedia\r\nE\r\n in\r\n\r\nchunks.\r\n0\r\nTrailer: a\r\n\r\nnext");
+        assertEquals(ChunkedDecoder.Result.DONE, decode(buffer));
+        assertEquals("Wikipedia in\r\n\r\nchunks.", new String(out.toByteArray(), StandardCharsets.ISO_8859_1));
+        assertEquals(4, buffer.remaining());
+    }
+
+    @Test
+    public void decodeSplitBody() throws Exception {
+        String data = "3\r\nabc\r\n1\nd\n0\r\n\r\n";
+        for(int i = 0; i < data.length() - 1; i++)
+            assertEquals(ChunkedDecoder.Result.NEED_MORE, decode(wrap(data.substring(i, i + 1))));
+        assertEquals(ChunkedDecoder.Result.DONE, decode(wrap("\n")));
+        assertEquals("abcd", new String(out.toByteArray(), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void decodeMalformedBody() throws Exception {
+        assertEquals(ChunkedDecoder.Result.ERROR, decode(wrap("x\r\n")));
+        decoder.reset();
+        assertEquals(ChunkedDecoder.Result.ERROR, decode(wrap("\r\n")));
+        decoder.reset();
+        assertEquals(ChunkedDecoder.Result.ERROR, decode(wrap("2\r\nabc\r\n")));
+        decoder.reset();
+        assertEquals(ChunkedDecoder.Result.ERROR, decode(wrap("fffffffffffffffff\r\n")));
+    }
+
+    @Test
+    public void decodeTooLongExtension() throws Exception {
+        StringBuilder data = new StringBuilder("1;");
+        for(int i = 0; i < 64; i++)
+            data.append('a');
+        assertEquals(ChunkedDecoder.Result.ERROR, decode(wrap(data.toString())));
+    }
+
+    private ChunkedDecoder.Result decode(ByteBuffer buffer) {
+        while(true) {
+            ChunkedDecoder.Result result = decoder.next(buffer);
+            if(result != ChunkedDecoder.Result.DATA)
+                return result;
+            byte[] data = new byte[decoder.getAvailable()];
+            buffer.get(data);
+            out.write(data, 0, data.length);
+        }
+    }
+
+    private static ByteBuffer wrap(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.alesharik.webserver.module.http.http;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpRequestParserTest {
+    private HttpRequestParser parser;
+    private Request.Builder request;
+
+    @Before
+    public void setUp() throws Exception {
+        parser = new HttpRequestParser(1024);
+        request = Request.Builder.start();
+    }
+
+    @Test
+    public void parseSimpleRequest() throws Exception {
+        ByteBuffer buffer = wrap("GET /test?a=b HTTP/1.1\r\nHost: localhost\r\nContent-Length:  12 \r\n\r\nbody");
+        assertEquals(HttpRequestParser.Result.DONE, parser.parse(buffer, request));
+        assertEquals(Method.GET, request.getMethod());
+        assertEquals("/test?a=b", request.getRawUri());
+        assertEquals(HttpVersion.HTTP_1_1, request.getHttpVersion());
+        assertEquals(12L, (long) request.<Long>getHeader("Content-Length"));
+        assertEquals(4, buffer.remaining());
+    }
+
+    @Test
+    public void parseSplitRequest() throws Exception {
+        String data = "\r\nPOST http://localhost:8080/a HTTP/1.0\r\ncontent-length: 5\r\n\r\n";
+        for(int i = 0; i < data.length() - 1; i++)
+            assertEquals(HttpRequestParser.Result.NEED_MORE, parser.parse(wrap(data.substring(i, i + 1)), request));
+        assertEquals(HttpRequestParser.Result.DONE, parser.parse(wrap("\n"), request));
+
+        assertEquals(Method.POST, request.getMethod());
+        assertEquals("/a", request.getRawUri());
+        assertEquals(HttpVersion.HTTP_1_0, request.getHttpVersion());
+        assertEquals(5L, (long) request.<Long>getHeader("Content-Length"));
+        assertTrue(request.containsHeader("Content-Length: "));
+        assertFalse(request.containsHeader("Host"));
+    }
+
+    @Test
+    public void parsePipelinedRequests() throws Exception {
+        ByteBuffer buffer = wrap("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\n\r\n");
+        assertEquals(HttpRequestParser.Result.DONE, parser.parse(buffer, request));
+        assertEquals("/a", request.getRawUri());
+
+        Request.Builder second = Request.Builder.start();
+        assertEquals(HttpRequestParser.Result.DONE, parser.parse(buffer, second));
+        assertEquals("/b", second.getRawUri());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void parseMalformedRequests() throws Exception {
+        assertEquals(HttpRequestParser.Result.ERROR, parser.parse(wrap("WAT / HTTP/1.1\r\n"), request));
+        parser.reset();
+        assertEquals(HttpRequestParser.Result.ERROR, parser.parse(wrap("GET / HTTP/9\r\n"), request));
+        parser.reset();
+        assertEquals(HttpRequestParser.Result.ERROR, parser.parse(wrap("GET /\r\n"), request));
+        parser.reset();
+        assertEquals(HttpRequestParser.Result.ERROR, parser.parse(wrap("GET / HTTP/1.1\r\nHost : a\r\n"), request));
+        parser.reset();
+        assertEquals(HttpRequestParser.Result.ERROR, parser.parse(wrap("GET / HTTP/1.1\r\nHost: a\r\n folded\r\n"), request));
+    }
+
+    @Test
+    public void parseTooLargeRequest() throws Exception {
+        StringBuilder header = new StringBuilder("GET / HTTP/1.1\r\nX-Big: ");
+        for(int i = 0; i < 1024; i++)
+            header.append('a');
+        assertEquals(HttpRequestParser.Result.TOO_LARGE, parser.parse(wrap(header.toString()), request));
+    }
+
+    private static ByteBuffer wrap(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
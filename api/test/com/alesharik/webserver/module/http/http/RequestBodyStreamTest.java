@@ -0,0 +1,102 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.http;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestBodyStreamTest {
+    private AtomicInteger resumed;
+    private RequestBodyStream stream;
+
+    @Before
+    public void setUp() throws Exception {
+        resumed = new AtomicInteger();
+        stream = new RequestBodyStream(8, resumed::incrementAndGet);
+    }
+
+    @Test
+    public void readWhileReceiving() throws Exception {
+        byte[] read = new byte[6];
+        Thread reader = new Thread(() -> {
+            try {
+                int offset = 0;
+                int count;
+                while(offset < read.length && (count = stream.read(read, offset, read.length - offset)) != -1)
+                    offset += count;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        reader.start();
+        assertTrue(stream.write(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+        Thread.sleep(10);
+        assertTrue(stream.write(ByteBuffer.wrap(new byte[]{4, 5, 6})));
+        stream.finish();
+        reader.join(1000);
+
+        assertFalse(reader.isAlive());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6}, read);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readFromSelectorThreadFails() throws Exception {
+        stream = new RequestBodyStream(8, resumed::incrementAndGet, Thread.currentThread());
+        stream.write(ByteBuffer.wrap(new byte[]{1}));
+        stream.read();
+    }
+
+    @Test
+    public void suspendWhenFull() throws Exception {
+        assertTrue(stream.write(ByteBuffer.wrap(new byte[4])));
+        assertFalse(stream.write(ByteBuffer.wrap(new byte[6])));
+        assertTrue(stream.isSuspended());
+
+        assertEquals(4, stream.read(new byte[4]));
+        assertEquals(0, resumed.get());
+        assertEquals(2, stream.read(new byte[2]));
+        assertEquals(1, resumed.get());
+        assertFalse(stream.isSuspended());
+    }
+
+    @Test
+    public void discardResumesReading() throws Exception {
+        assertFalse(stream.write(ByteBuffer.wrap(new byte[10])));
+        stream.close();
+        assertEquals(1, resumed.get());
+        assertTrue(stream.write(ByteBuffer.wrap(new byte[10])));
+        assertEquals(-1, stream.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void abortFailsReading() throws Exception {
+        stream.write(ByteBuffer.wrap(new byte[]{1}));
+        stream.abort(new IOException("test"));
+        assertEquals(1, stream.read());
+        stream.read();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.http;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseStreamTest {
+    @Test
+    public void writeChunked() throws Exception {
+        TestStream stream = new TestStream(4, true);
+        stream.write("ab".getBytes(StandardCharsets.ISO_8859_1));
+        stream.write('c');
+        assertEquals("", stream.sent());
+        stream.write("defghijklmnopqrstuvwxyz".getBytes(StandardCharsets.ISO_8859_1));
+        stream.write('!');
+        stream.flush();
+        stream.close();
+
+        assertEquals("3\r\nabc\r\n17\r\ndefghijklmnopqrstuvwxyz\r\n1\r\n!\r\n0\r\n\r\n", stream.sent());
+        assertEquals(1, stream.completed);
+    }
+
+    @Test
+    public void writeKnownLength() throws Exception {
+        TestStream stream = new TestStream(4, false);
+        stream.write("abcdef".getBytes(StandardCharsets.ISO_8859_1));
+        stream.write('g');
+        stream.close();
+        stream.close();
+
+        assertEquals("abcdefg", stream.sent());
+        assertEquals(1, stream.completed);
+        assertTrue(stream.isClosed());
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterClose() throws Exception {
+        TestStream stream = new TestStream(4, true);
+        stream.close();
+        stream.write(1);
+    }
+
+    private static final class TestStream extends ResponseStream {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int completed = 0;
+
+        TestStream(int bufferSize, boolean chunked) {
+            super(bufferSize, chunked);
+        }
+
+        @Override
+        public void abort() {
+        }
+
+        @Override
+        protected void send(@Nonnull ByteBuffer[] data) {
+            for(ByteBuffer buffer : data) {
+                while(buffer.hasRemaining())
+                    out.write(buffer.get());
+            }
+        }
+
+        @Override
+        protected void complete() {
+            completed++;
+        }
+
+        String sent() {
+            return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+        }
+    }
+}
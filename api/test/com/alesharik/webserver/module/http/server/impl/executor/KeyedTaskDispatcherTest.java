@@ -0,0 +1,132 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.impl.executor;
+
+import com.alesharik.webserver.module.http.server.BatchingRunnableTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedTaskDispatcherTest {
+    private ExecutorService executor;
+    private KeyedTaskDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        dispatcher = new KeyedTaskDispatcher(executor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void keepOrderPerKey() throws Exception {
+        int keys = 8;
+        int tasks = 10000;
+        List<List<Integer>> results = new ArrayList<>();
+        AtomicInteger[] running = new AtomicInteger[keys];
+        for(int i = 0; i < keys; i++) {
+            results.add(new ArrayList<>());
+            running[i] = new AtomicInteger();
+        }
+        CountDownLatch latch = new CountDownLatch(keys * tasks);
+        AtomicInteger concurrent = new AtomicInteger();
+
+        Thread[] producers = new Thread[keys];
+        for(int k = 0; k < keys; k++) {
+            int key = k;
+            producers[k] = new Thread(() -> {
+                for(int i = 0; i < tasks; i++) {
+                    int value = i;
+                    dispatcher.execute(new Task(key, () -> {
+                        if(running[key].incrementAndGet() != 1)
+                            concurrent.incrementAndGet();
+                        results.get(key).add(value);
+                        running[key].decrementAndGet();
+                        latch.countDown();
+                    }));
+                }
+            });
+            producers[k].start();
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(0, concurrent.get());
+        for(List<Integer> result : results) {
+            assertEquals(tasks, result.size());
+            for(int i = 0; i < tasks; i++)
+                assertEquals(i, (int) result.get(i));
+        }
+        assertTrue(dispatcher.getMaxDepth() >= 1);
+    }
+
+    @Test
+    public void retireIdleKeys() throws Exception {
+        CountDownLatch latch = new CountDownLatch(2);
+        dispatcher.execute(new Task("a", () -> {
+            throw new RuntimeException("Expected");
+        }));
+        dispatcher.execute(new Task("a", latch::countDown));
+        dispatcher.execute(new Task("b", latch::countDown));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while(dispatcher.getKeyCount() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(0, dispatcher.getKeyCount());
+        assertEquals(0, dispatcher.getQueuedTaskCount());
+
+        CountDownLatch again = new CountDownLatch(1);
+        dispatcher.execute(new Task("a", again::countDown));
+        assertTrue(again.await(10, TimeUnit.SECONDS));
+    }
+
+    private static final class Task implements BatchingRunnableTask<Object> {
+        private final Object key;
+        private final Runnable runnable;
+
+        Task(Object key, Runnable runnable) {
+            this.key = key;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+    }
+}
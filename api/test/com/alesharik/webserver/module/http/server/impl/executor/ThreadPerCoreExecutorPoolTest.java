@@ -0,0 +1,108 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.impl.executor;
+
+import com.alesharik.webserver.module.http.server.BatchingRunnableTask;
+import com.alesharik.webserver.module.http.server.SelectorContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class ThreadPerCoreExecutorPoolTest {
+    private ThreadPerCoreExecutorPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new ThreadPerCoreExecutorPool(0, 1, new ThreadGroup("test"));
+        pool.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void selectorPerCore() throws Exception {
+        assertEquals(Runtime.getRuntime().availableProcessors(), pool.getSelectorPoolThreadCount());
+    }
+
+    @Test
+    public void runInSelectorThread() throws Exception {
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        AtomicReference<Thread> selector = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicBoolean submitted = new AtomicBoolean();
+        SelectorContext context = mock(SelectorContext.class);
+        doAnswer(invocation -> {
+            if(submitted.compareAndSet(false, true)) {
+                selector.set(Thread.currentThread());
+                pool.executeNonBlockingTask(task("a", () -> {
+                    thread.set(Thread.currentThread());
+                    latch.countDown();
+                }));
+            }
+            Thread.sleep(1);
+            return null;
+        }).when(context).iteration();
+        pool.setSelectorContexts(() -> context);
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertSame(selector.get(), thread.get());
+        assertEquals(1, pool.getSelectorPoolTaskCount());
+    }
+
+    @Test
+    public void offloadFromOtherThreads() throws Exception {
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        pool.executeNonBlockingTask(task("a", () -> {
+            thread.set(Thread.currentThread());
+            latch.countDown();
+        }));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), thread.get());
+        assertEquals(0, pool.getSelectorPoolTaskCount());
+    }
+
+    private static BatchingRunnableTask<Object> task(Object key, Runnable runnable) {
+        return new BatchingRunnableTask<Object>() {
+            @Override
+            public Object getKey() {
+                return key;
+            }
+
+            @Override
+            public void run() {
+                runnable.run();
+            }
+        };
+    }
+}
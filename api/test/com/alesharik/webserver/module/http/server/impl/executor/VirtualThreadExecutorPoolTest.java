@@ -0,0 +1,104 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.impl.executor;
+
+import com.alesharik.webserver.module.http.server.BatchingRunnableTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualThreadExecutorPoolTest {
+    private VirtualThreadExecutorPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new VirtualThreadExecutorPool(1, 1, new ThreadGroup("test"));
+        pool.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void blockingTaskDoesNotStarveOtherKeys() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        pool.executeWorkerTask(task("a", () -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        pool.executeWorkerTask(task("b", done::countDown));
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(pool.getWorkerPoolAliveThreadCount() >= 1);//Blocked task is still running
+        blocked.countDown();
+    }
+
+    @Test
+    public void keepOrderPerKey() throws Exception {
+        List<Integer> result = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1000);
+        for(int i = 0; i < 1000; i++) {
+            int value = i;
+            pool.executeWorkerTask(task("a", () -> {
+                result.add(value);
+                done.countDown();
+            }));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for(int i = 0; i < 1000; i++)
+            assertEquals(i, (int) result.get(i));
+    }
+
+    @Test
+    public void lifecycle() throws Exception {
+        assertTrue(pool.isRunning());
+        assertEquals("virtual-thread-executor-pool", pool.getName());
+        pool.shutdown();
+        assertFalse(pool.isRunning());
+    }
+
+    private static BatchingRunnableTask<Object> task(Object key, Runnable runnable) {
+        return new BatchingRunnableTask<Object>() {
+            @Override
+            public Object getKey() {
+                return key;
+            }
+
+            @Override
+            public void run() {
+                runnable.run();
+            }
+        };
+    }
+}
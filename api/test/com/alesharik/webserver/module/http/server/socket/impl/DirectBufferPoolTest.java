@@ -0,0 +1,76 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.socket.impl;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DirectBufferPoolTest {
+    private final DirectBufferPool pool = new DirectBufferPool(16, 2);
+
+    @Test
+    public void releasedBufferIsReused() throws Exception {
+        ByteBuffer buffer = pool.acquire();
+        assertEquals(16, pool.getMemory());
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        assertEquals(1, pool.getPooledCount());
+
+        ByteBuffer next = pool.acquire();
+        assertSame(buffer, next);
+        assertEquals(0, next.position());
+        assertEquals(16, pool.getMemory());
+    }
+
+    @Test
+    public void bufferOverLimitIsNotCounted() throws Exception {
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        ByteBuffer third = pool.acquire();
+        assertEquals(48, pool.getMemory());
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(32, pool.getMemory());
+    }
+
+    @Test
+    public void largeBufferIsNotPooled() throws Exception {
+        ByteBuffer buffer = pool.acquire(32);
+        assertEquals(32, buffer.capacity());
+        assertEquals(0, pool.getMemory());
+        pool.release(buffer);
+        assertEquals(0, pool.getPooledCount());
+        assertEquals(0, pool.getMemory());
+
+        assertEquals(16, pool.acquire(8).capacity());
+        assertEquals(16, pool.getMemory());
+    }
+
+    @Test
+    public void detachedBufferIsNotCounted() throws Exception {
+        pool.detach(pool.acquire());
+        assertEquals(0, pool.getMemory());
+        assertEquals(0, pool.getPooledCount());
+    }
+}
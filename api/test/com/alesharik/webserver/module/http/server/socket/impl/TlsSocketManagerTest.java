@@ -0,0 +1,273 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.server.socket.impl;
+
+import com.alesharik.webserver.module.http.server.socket.SocketWriter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class TlsSocketManagerTest {
+    private static final SocketWriter WRITER = new SocketWriter() {
+        @Override
+        public void write(SocketChannel socketChannel, ByteBuffer byteBuffer) {
+            try {
+                while(byteBuffer.hasRemaining())
+                    socketChannel.write(byteBuffer);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SSLContext serverContext;
+    private SSLContext clientContext;
+
+    @Before
+    public void setUp() throws Exception {
+        File keytool = new File(System.getProperty("java.home"), "bin/keytool");
+        assumeTrue(keytool.exists());
+        File store = new File(folder.getRoot(), "test.jks");
+        Process process = new ProcessBuilder(keytool.getAbsolutePath(), "-genkeypair", "-alias", "test", "-keyalg", "RSA", "-keysize", "2048",
+                "-dname", "CN=localhost", "-validity", "1", "-storetype", "JKS", "-keystore", store.getAbsolutePath(),
+                "-storepass", "password", "-keypass", "password")
+                .redirectErrorStream(true)
+                .start();
+        assumeTrue(process.waitFor(1, TimeUnit.MINUTES) && process.exitValue() == 0);
+
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try(FileInputStream stream = new FileInputStream(store)) {
+            keyStore.load(stream, "password".toCharArray());
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
+        keyManagerFactory.init(keyStore, "password".toCharArray());
+        serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] x509Certificates, String s) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] x509Certificates, String s) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+    }
+
+    @Test
+    public void handshakeAndResume() throws Exception {
+        TlsSocketManager manager = new TlsSocketManager(serverContext);
+        exchange(manager, 2, null, WRITER);
+
+        assertEquals(0, manager.getConnectionCount());
+        assertEquals(0, manager.getActiveHandshakeCount());
+        assertEquals(2, manager.getHandshakeCount());
+        assertEquals(1, manager.getResumedHandshakeCount());
+        assertEquals(0, manager.getFailedHandshakeCount());
+        assertTrue(manager.getPooledBufferCount() > 0);
+    }
+
+    @Test
+    public void delegatedTasksInExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicInteger tasks = new AtomicInteger();
+        AtomicInteger readRequests = new AtomicInteger();
+        try {
+            TlsSocketManager manager = new TlsSocketManager(serverContext, command -> {
+                tasks.incrementAndGet();
+                executor.execute(command);
+            });
+            exchange(manager, 1, readRequests::incrementAndGet, null);
+
+            assertTrue(tasks.get() > 0);
+            assertEquals(tasks.get(), readRequests.get());
+            assertEquals(0, manager.getQueuedHandshakeCount());
+            assertEquals(1, manager.getHandshakeCount());
+            assertTrue(manager.getMaxHandshakeTime() > 0);
+            assertTrue(manager.getAverageHandshakeTime() <= manager.getMaxHandshakeTime());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void bufferedDataIsReadWithoutSocketData() throws Exception {
+        TlsSocketManager manager = new TlsSocketManager(serverContext);
+        byte[] request = new byte[1000];
+        for(int i = 0; i < request.length; i++)
+            request[i] = (byte) i;
+        try(ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            CompletableFuture<Integer> client = CompletableFuture.supplyAsync(() -> {
+                try(SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(InetAddress.getLoopbackAddress(), port)) {
+                    socket.setEnabledProtocols(new String[]{"TLSv1.2"});
+                    socket.getOutputStream().write(request);
+                    return socket.getInputStream().read();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            SocketChannel channel = server.accept();
+            channel.configureBlocking(false);
+            manager.init(channel);
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            long deadline = System.currentTimeMillis() + 10000;
+            while(buffer.hasRemaining() && System.currentTimeMillis() < deadline)
+                manager.read(channel, buffer);
+            assertTrue(manager.hasBufferedData(channel));
+
+            ByteBuffer received = ByteBuffer.allocate(request.length);
+            buffer.flip();
+            received.put(buffer);
+            while(manager.hasBufferedData(channel)) {
+                buffer.clear();
+                manager.read(channel, buffer);
+                buffer.flip();
+                received.put(buffer);
+            }
+            assertArrayEquals(request, received.array());
+
+            manager.close(channel);
+            channel.close();
+            assertEquals(-1, (int) client.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void readIsPausedWhileTasksRun() throws Exception {
+        BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+        AtomicInteger readRequests = new AtomicInteger();
+        TlsSocketManager manager = new TlsSocketManager(serverContext, tasks::add);
+        try(ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            CompletableFuture<Void> client = CompletableFuture.runAsync(() -> {
+                try(SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(InetAddress.getLoopbackAddress(), port)) {
+                    socket.setEnabledProtocols(new String[]{"TLSv1.2"});
+                    socket.startHandshake();
+                } catch (IOException e) {
+                    //Ok, server closes the connection
+                }
+            });
+
+            SocketChannel channel = server.accept();
+            channel.configureBlocking(false);
+            manager.init(channel, readRequests::incrementAndGet, WRITER);
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            long deadline = System.currentTimeMillis() + 10000;
+            while(!manager.isReadPaused(channel) && System.currentTimeMillis() < deadline)
+                manager.read(channel, buffer);
+            assertTrue(manager.isReadPaused(channel));
+            assertEquals(0, readRequests.get());
+
+            tasks.take().run();
+            assertFalse(manager.isReadPaused(channel));
+            assertEquals(1, readRequests.get());
+
+            manager.close(channel);
+            channel.close();
+            client.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private void exchange(TlsSocketManager manager, int connections, Runnable readRequest, SocketWriter writer) throws Exception {
+        try(ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+
+            for(int i = 0; i < connections; i++) {
+                CompletableFuture<byte[]> client = CompletableFuture.supplyAsync(() -> {
+                    try(SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(InetAddress.getLoopbackAddress(), port)) {
+                        socket.setEnabledProtocols(new String[]{"TLSv1.2"});
+                        socket.getOutputStream().write("ping".getBytes(StandardCharsets.US_ASCII));
+                        byte[] response = new byte[64 * 1024];
+                        new DataInputStream(socket.getInputStream()).readFully(response);
+                        return response;
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                manager.init(channel, readRequest, writer);
+                assertEquals(1, manager.getActiveHandshakeCount());
+
+                ByteBuffer buffer = ByteBuffer.allocate(16);
+                long deadline = System.currentTimeMillis() + 10000;
+                while(buffer.position() < 4 && System.currentTimeMillis() < deadline)
+                    manager.read(channel, buffer);
+                buffer.flip();
+                assertEquals("ping", StandardCharsets.US_ASCII.decode(buffer).toString());
+
+                byte[] response = new byte[64 * 1024];
+                for(int j = 0; j < response.length; j++)
+                    response[j] = (byte) j;
+                manager.write(channel, ByteBuffer.wrap(response), WRITER);
+                assertArrayEquals(response, client.get(10, TimeUnit.SECONDS));
+
+                manager.close(channel);
+                channel.close();
+            }
+        }
+    }
+}
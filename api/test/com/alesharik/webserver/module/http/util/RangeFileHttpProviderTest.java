@@ -0,0 +1,149 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.util;
+
+import com.alesharik.webserver.module.http.http.HttpStatus;
+import com.alesharik.webserver.module.http.http.Method;
+import com.alesharik.webserver.module.http.http.Request;
+import com.alesharik.webserver.module.http.http.Response;
+import com.alesharik.webserver.module.http.http.ResponseStream;
+import com.alesharik.webserver.module.http.http.data.MimeType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static com.alesharik.webserver.test.http.HttpMockUtils.request;
+import static com.alesharik.webserver.test.http.HttpMockUtils.response;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RangeFileHttpProviderTest {
+    private File file;
+    private RangeFileHttpProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("range-test", ".txt");
+        Files.write(file.toPath(), "0123456789".getBytes(StandardCharsets.ISO_8859_1));
+        provider = new RangeFileHttpProvider(new FileContentProvider() {
+            @Override
+            public boolean hasFile(Request request) {
+                return true;
+            }
+
+            @Override
+            public String getName(Request request) {
+                return file.getName();
+            }
+
+            @Override
+            public long getLength(Request request) {
+                return file.length();
+            }
+
+            @Override
+            public byte[] getRangedData(Request request, long start, long size) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public MimeType getMimeType(Request request) {
+                return new MimeType("text", "plain");
+            }
+
+            @Override
+            public FileChannel openChannel(Request request) throws IOException {
+                return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void singleRangeWithoutStreaming() throws Exception {
+        Response response = response();
+        provider.process(request().withMethod(Method.GET).addHeader("Range: bytes=2-4").build(), response);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT_206, response.getStatus());
+        assertTrue(response.getHeaders().contains("Content-Length: 3"));
+        assertEquals("234", new String(response.getBody(), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void multipleRangesStreamed() throws Exception {
+        Response response = response();
+        TestStream stream = new TestStream();
+        response.setStreamProvider(r -> stream);
+        provider.process(request().withMethod(Method.GET).addHeader("Range: bytes=0-1, 8-").build(), response);
+
+        String body = new String(stream.out.toByteArray(), StandardCharsets.ISO_8859_1);
+        assertEquals(HttpStatus.PARTIAL_CONTENT_206, response.getStatus());
+        assertTrue(response.getHeaders().contains("Content-Length: " + body.length()));
+        assertTrue(body.startsWith("--" + RangeFileHttpProvider.DEFAULT_MULTIPART_BOUNDARY + "\r\n"));
+        assertTrue(body.contains("\r\n\r\n01\r\n"));
+        assertTrue(body.endsWith("\r\n\r\n89\r\n--" + RangeFileHttpProvider.DEFAULT_MULTIPART_BOUNDARY + "--\r\n"));
+        assertTrue(stream.isClosed());
+    }
+
+    @Test
+    public void unsatisfiableRange() throws Exception {
+        Response response = response();
+        provider.process(request().withMethod(Method.GET).addHeader("Range: bytes=20-30").build(), response);
+
+        assertEquals(HttpStatus.REQUEST_RANGE_NOT_SATISFIABLE_416, response.getStatus());
+    }
+
+    private static final class TestStream extends ResponseStream {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        TestStream() {
+            super(16, false);
+        }
+
+        @Override
+        public void abort() {
+        }
+
+        @Override
+        protected void send(@Nonnull ByteBuffer[] data) {
+            for(ByteBuffer buffer : data) {
+                while(buffer.hasRemaining())
+                    out.write(buffer.get());
+            }
+        }
+
+        @Override
+        protected void complete() {
+        }
+    }
+}
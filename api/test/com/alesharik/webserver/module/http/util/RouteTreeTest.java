@@ -0,0 +1,109 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.util;
+
+import com.alesharik.webserver.module.http.http.Method;
+import com.alesharik.webserver.module.http.http.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.alesharik.webserver.test.http.HttpMockUtils.request;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RouteTreeTest {
+    private RouteTree<String> tree;
+
+    @Before
+    public void setUp() throws Exception {
+        tree = new RouteTree<>();
+        tree.add("/", "root");
+        tree.add("/users", "users");
+        tree.add("/users/me", "me");
+        tree.add("/users/{id}", "user");
+        tree.add("/users/{id}/orders/*", "orders");
+        tree.add("/static/*", "static");
+    }
+
+    @Test
+    public void findLiteral() throws Exception {
+        assertEquals("root", find("/"));
+        assertEquals("root", find(""));
+        assertEquals("users", find("/users/"));
+        assertEquals("me", find("/users/me"));
+        assertNull(find("/nope"));
+        assertNull(find("/users/1/nope"));
+    }
+
+    @Test
+    public void captureParameters() throws Exception {
+        Request request = request().build();
+        assertEquals("orders", tree.find("/users/42/orders/a/b", request).get(null));
+        assertEquals("42", request.getPathParameter("id"));
+        assertEquals("a/b", request.getPathParameter("*"));
+        assertNull(request.getPathParameter("nope"));
+
+        assertEquals("user", tree.find("/users/13", request).get(null));
+        assertEquals("13", request.getPathParameter("id"));
+        assertNull(request.getPathParameter("*"));
+    }
+
+    @Test
+    public void wildcardMatchesEmptyRest() throws Exception {
+        Request request = request().build();
+        assertEquals("static", tree.find("/static", request).get(null));
+        assertEquals("", request.getPathParameter("*"));
+        assertEquals("orders", find("/users/1/orders"));
+    }
+
+    @Test
+    public void backtrackToParameter() throws Exception {
+        tree.add("/users/me/settings", "settings");
+        tree.add("/users/{id}/profile", "profile");
+        assertEquals("profile", find("/users/me/profile"));
+        assertEquals("settings", find("/users/me/settings"));
+    }
+
+    @Test
+    public void methodSpecificValues() throws Exception {
+        RouteTree<String> tree = new RouteTree<>();
+        tree.add("/items", Method.GET, "list");
+        tree.add("/items", Method.POST, "create");
+
+        RouteTree.Route<String> route = tree.find("/items", null);
+        assertEquals("list", route.get(Method.GET));
+        assertEquals("create", route.get(Method.POST));
+        assertNull(route.get(Method.DELETE));
+        assertArrayEquals(new Method[]{Method.GET, Method.POST}, route.getMethods());
+
+        tree.add("/items", "any");
+        assertEquals("any", route.get(Method.DELETE));
+        assertEquals("list", route.get(Method.GET));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wildcardMustBeLast() throws Exception {
+        tree.add("/a/*/b", "nope");
+    }
+
+    private String find(String path) {
+        RouteTree.Route<String> route = tree.find(path, null);
+        return route == null ? null : route.get(null);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+    private TimerWheel<String> wheel;
+    private List<String> expired;
+
+    @Before
+    public void setUp() throws Exception {
+        wheel = new TimerWheel<>(8, 10, 0);
+        expired = new ArrayList<>();
+    }
+
+    @Test
+    public void expireAfterDeadline() throws Exception {
+        TimerWheel.Timeout<String> a = new TimerWheel.Timeout<>("a");
+        TimerWheel.Timeout<String> b = new TimerWheel.Timeout<>("b");
+        wheel.schedule(a, 25);
+        wheel.schedule(b, 500);//Several rounds
+        assertEquals(2, wheel.size());
+
+        assertEquals(0, wheel.expire(25, expired::add));
+        assertEquals(1, wheel.expire(30, expired::add));
+        assertEquals("a", expired.get(0));
+        assertFalse(a.isScheduled());
+
+        assertEquals(0, wheel.expire(499, expired::add));
+        assertEquals(1, wheel.expire(510, expired::add));
+        assertEquals("b", expired.get(1));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void moveDeadline() throws Exception {
+        TimerWheel.Timeout<String> a = new TimerWheel.Timeout<>("a");
+        wheel.schedule(a, 20);
+        wheel.schedule(a, 200);
+        assertEquals(0, wheel.expire(100, expired::add));
+        assertTrue(a.isScheduled());
+
+        wheel.schedule(a, 150);//Earlier deadline relinks timeout
+        assertEquals(1, wheel.expire(160, expired::add));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancel() throws Exception {
+        TimerWheel.Timeout<String> a = new TimerWheel.Timeout<>("a");
+        TimerWheel.Timeout<String> b = new TimerWheel.Timeout<>("b");
+        wheel.schedule(a, 20);
+        wheel.schedule(b, 20);
+        wheel.cancel(a);
+        wheel.cancel(a);
+        assertEquals(1, wheel.size());
+        assertEquals(1, wheel.expire(40, expired::add));
+        assertEquals("b", expired.get(0));
+    }
+
+    @Test
+    public void rescheduleFromConsumer() throws Exception {
+        TimerWheel.Timeout<String> a = new TimerWheel.Timeout<>("a");
+        wheel.schedule(a, 10);
+        wheel.expire(20, s -> {
+            expired.add(s);
+            wheel.schedule(a, 50);
+        });
+        assertEquals(1, expired.size());
+        assertTrue(a.isScheduled());
+        wheel.expire(60, expired::add);
+        assertEquals(2, expired.size());
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.logger;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Preallocated multi-producer single-consumer ring of reusable log events. Producers claim slots by CAS and publish them by slot sequence,
+ * so logging doesn't allocate queue nodes and doesn't take locks. Consumer is woken up only if it sleeps, so it processes messages in batches
+ */
+final class LogEventRing {
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final Event[] events;
+    private final int mask;
+    private final Policy policy;
+    /**
+     * Next sequence to claim
+     */
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    /**
+     * Next sequence to consume. Written only by consumer
+     */
+    private volatile long consumed;
+    private volatile Thread consumer;
+    private volatile boolean sleeping;
+
+    /**
+     * @param capacity event count, rounded up to power of two
+     * @param policy   full ring policy
+     */
+    LogEventRing(int capacity, Policy policy) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.events = new Event[size];
+        this.mask = size - 1;
+        this.policy = policy;
+        for(int i = 0; i < size; i++)
+            events[i] = new Event(i - size);
+    }
+
+    /**
+     * Claim event for writing. Claimed event must be published by {@link #publish(Event)}
+     *
+     * @return the event or <code>null</code> if ring is full and message must be dropped
+     */
+    @Nullable
+    Event claim() {
+        while(true) {
+            long sequence = claimed.get();
+            if(sequence - consumed >= events.length) {
+                Thread consumer = this.consumer;
+                if(policy == Policy.DROP || consumer == null || consumer == Thread.currentThread() || !consumer.isAlive()) {
+                    dropped.increment();
+                    return null;
+                }
+                LockSupport.unpark(consumer);
+                LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                continue;
+            }
+            if(claimed.compareAndSet(sequence, sequence + 1)) {
+                Event event = events[(int) sequence & mask];
+                event.claim = sequence;
+                return event;
+            }
+        }
+    }
+
+    /**
+     * Make claimed event visible to consumer
+     */
+    void publish(Event event) {
+        event.sequence = event.claim;
+        if(sleeping)
+            LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Set consumer thread. Only this thread can call {@link #drain(Consumer)} and {@link #await()}
+     */
+    void setConsumer(Thread consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Process all published events. Events are cleared after processing
+     *
+     * @return processed event count
+     */
+    int drain(Consumer<Event> handler) {
+        long sequence = consumed;
+        int count = 0;
+        while(true) {
+            Event event = events[(int) sequence & mask];
+            if(event.sequence != sequence)
+                return count;
+            try {
+                handler.accept(event);
+            } finally {
+                event.clear();
+                consumed = ++sequence;
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Park consumer until some event is published
+     *
+     * @throws InterruptedException if consumer thread is interrupted
+     */
+    void await() throws InterruptedException {
+        sleeping = true;
+        try {
+            while(isEmpty()) {
+                LockSupport.park(this);
+                if(Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        } finally {
+            sleeping = false;
+        }
+    }
+
+    boolean isEmpty() {
+        long sequence = consumed;
+        return events[(int) sequence & mask].sequence != sequence;
+    }
+
+    int capacity() {
+        return events.length;
+    }
+
+    int size() {
+        return (int) Math.max(0, claimed.get() - consumed);
+    }
+
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Full ring policy
+     */
+    enum Policy {
+        /**
+         * Wait until consumer frees some events. Consumer thread never waits and drops messages
+         */
+        BLOCK,
+        /**
+         * Drop new messages
+         */
+        DROP
+    }
+
+    /**
+     * Reusable log event
+     */
+    static final class Event {
+        /**
+         * Sequence of last published value
+         */
+        private volatile long sequence;
+        private long claim;
+
+        String prefixes;
+        String message;
+        Class<?> caller;
+        boolean isSout;
+        boolean isDebug;
+        /**
+         * Resolved caller location
+         */
+        String locationPrefix;
+        /**
+         * Throwable with caller stack, resolved into {@link #locationPrefix} lazily
+         */
+        Throwable location;
+        int locationIndex;
+
+        private Event(long sequence) {
+            this.sequence = sequence;
+        }
+
+        void set(String prefixes, String message, Class<?> caller, boolean isSout, boolean isDebug) {
+            this.prefixes = prefixes;
+            this.message = message;
+            this.caller = caller;
+            this.isSout = isSout;
+            this.isDebug = isDebug;
+        }
+
+        private void clear() {
+            prefixes = null;
+            message = null;
+            caller = null;
+            locationPrefix = null;
+            location = null;
+        }
+    }
+}
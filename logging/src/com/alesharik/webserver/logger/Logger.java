@@ -37,8 +37,6 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
-import org.jctools.queues.MpscLinkedQueue;
-import org.jctools.queues.MpscLinkedQueue8;
 import org.jctools.queues.atomic.MpscAtomicArrayQueue;
 import sun.misc.SharedSecrets;
 
@@ -64,6 +62,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -91,14 +90,30 @@ public final class Logger {
     private static final CopyOnWriteArrayList<Handler> loggerHandlers = new CopyOnWriteArrayList<>();
     private static final AtomicBoolean isConfigured = new AtomicBoolean(false);
     private static final LoggerThread loggerThread = new LoggerThread();
+    private static final int RING_SIZE;
+    private static final LogEventRing.Policy RING_POLICY;
+    /**
+     * Classes which prefixes contain caller location
+     */
+    private static final ClassValue<Boolean> locationRequired = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            Prefixes annotation = type.getAnnotation(Prefixes.class);
+            return annotation == null || annotation.requireDebugPrefix();
+        }
+    };
+
+    static {
+        RING_SIZE = Integer.parseInt(System.getProperty("logger.RING_SIZE", "8192"));
+        RING_POLICY = LogEventRing.Policy.valueOf(System.getProperty("logger.RING_POLICY", "BLOCK"));
+    }
+
+    private static final LogEventRing ring = new LogEventRing(RING_SIZE, RING_POLICY);
     @Getter
     private static final LoggingLevelManager loggingLevelManager = new LoggingLevelManagerImpl();
     private static File logFile;
+    private static volatile FileLoggerHandler fileHandler;
     private static LoggerListenerThread listenerThread;
-    /**
-     * message : caller : location prefix
-     */
-    private static MpscLinkedQueue<Message> messageQueue;
     private static volatile boolean shutdown = false;
     private static File tempLog;
 
@@ -119,32 +134,30 @@ public final class Logger {
     }
 
     /**
-     * WARNING! DON'T WORKS IN JDK 9!<br>
-     * Use {@link sun.misc.SharedSecrets} for {@link StackTraceElement}
+     * Put message into the ring. Caller location is captured only if caller's prefixes contain it and is resolved by logger thread.
+     * WARNING! DON'T WORKS IN JDK 9!
      *
-     * @param j number of {@link StackTraceElement}
-     * @return [ + file name + : + line number + ]
+     * @param minDepth caller class stack depth
      */
-    static String getPrefixLocation(int j) {
+    private static void enqueue(String prefixes, String message, int minDepth, boolean isSout, boolean isDebug) {
         Class[] callingClasses = CallingClass.INSTANCE.getCallingClasses();
-        int idx = j;
-        for(int i = j - 1; i < callingClasses.length; i++) {
-            if(!callingClasses[i].getCanonicalName().startsWith("com.alesharik.webserver.logger")) {
+        int idx = -1;
+        for(int i = minDepth - 1; i < callingClasses.length; i++) {
+            if(!callingClasses[i].getName().startsWith("com.alesharik.webserver.logger")) {
                 idx = i;
                 break;
             }
         }
-        StackTraceElement element = SharedSecrets.getJavaLangAccess().getStackTraceElement(new Exception(), idx - 1);
-        return "[" + element.getFileName() + ":" + element.getLineNumber() + "]";
-    }
+        Class<?> caller = idx == -1 ? Logger.class : callingClasses[idx];
+        Throwable location = locationRequired.get(caller) ? new Exception() : null;
 
-    static Class<?> getCallingClassOutside(int minDepth) {
-        Class[] callingClasses = CallingClass.INSTANCE.getCallingClasses();
-        for(int i = minDepth - 1; i < callingClasses.length; i++) {
-            if(!callingClasses[i].getCanonicalName().startsWith("com.alesharik.webserver.logger"))
-                return callingClasses[i];
-        }
-        return Logger.class;
+        LogEventRing.Event event = ring.claim();
+        if(event == null)
+            return;
+        event.set(prefixes, message, caller, isSout, isDebug);
+        event.location = location;
+        event.locationIndex = (idx == -1 ? minDepth : idx) - 1;
+        ring.publish(event);
     }
 
     /**
@@ -154,19 +167,19 @@ public final class Logger {
      * @param message the message
      * @param depth   caller class stack depth
      */
-    @SuppressWarnings("unchecked")
     static void logMessageUnsafe(String message, int depth, boolean isSout) {
-        messageQueue.add(new Message("", message, getCallingClassOutside(depth + 1), getPrefixLocation(depth + 1), isSout));
-
-        synchronized (loggerThread.synchronizerLock) {
-            loggerThread.synchronizerLock.notifyAll();
-        }
+        enqueue("", message, depth + 1, isSout, false);
     }
 
     private static void logMessageInternal(String message) {
         StackTraceElement element = SharedSecrets.getJavaLangAccess().getStackTraceElement(new Exception(), 3);
-        String prefix = "[" + element.getFileName() + ":" + element.getLineNumber() + "]";
-        messageQueue.add(new Message("", message, CallingClass.INSTANCE.getCallingClasses()[3], prefix, true));
+        Class<?> caller = CallingClass.INSTANCE.getCallingClasses()[3];
+        LogEventRing.Event event = ring.claim();
+        if(event == null)
+            return;
+        event.set("", message, caller, true, false);
+        event.locationPrefix = "[" + element.getFileName() + ":" + element.getLineNumber() + "]";
+        ring.publish(event);
     }
 
     /**
@@ -177,13 +190,8 @@ public final class Logger {
      * @param message  the message
      * @param depth    caller class stack depth
      */
-    @SuppressWarnings("unchecked")
     static void logMessageUnsafe(String prefixes, String message, int depth, boolean isSout) {
-        messageQueue.add(new Message(prefixes, message, getCallingClassOutside(depth + 1), getPrefixLocation(depth + 1), isSout));
-
-        synchronized (loggerThread.synchronizerLock) {
-            loggerThread.synchronizerLock.notifyAll();
-        }
+        enqueue(prefixes, message, depth + 1, isSout, false);
     }
 
     /**
@@ -193,13 +201,8 @@ public final class Logger {
      * @param message the message
      * @param depth   caller class stack depth
      */
-    @SuppressWarnings("unchecked")
     static void logMessageUnsafeDebug(String message, int depth) {
-        messageQueue.add(new Message("", message, getCallingClassOutside(depth + 1), getPrefixLocation(depth + 1), false, true));
-
-        synchronized (loggerThread.synchronizerLock) {
-            loggerThread.synchronizerLock.notifyAll();
-        }
+        enqueue("", message, depth + 1, false, true);
     }
 
     /**
@@ -210,16 +213,10 @@ public final class Logger {
      * @param message  the message
      * @param depth    caller class stack depth
      */
-    @SuppressWarnings("unchecked")
     static void logMessageUnsafeDebug(String prefixes, String message, int depth) {
-        messageQueue.add(new Message(prefixes, message, getCallingClassOutside(depth + 1), getPrefixLocation(depth + 1), false, true));
-
-        synchronized (loggerThread.synchronizerLock) {
-            loggerThread.synchronizerLock.notifyAll();
-        }
+        enqueue(prefixes, message, depth + 1, false, true);
     }
 
-
     /**
      * Add throwable to messageQueue
      *
@@ -410,6 +407,7 @@ public final class Logger {
                 fileHandler.setFormatter(formatter);
                 fileHandler.setErrorManager(errorManager);
                 loggerHandlers.add(fileHandler);
+                Logger.fileHandler = fileHandler;
 
                 PrintStreamLoggerHandler infoHandler = new PrintStreamLoggerHandler();
                 infoHandler.setOutputStream(SYSTEM_OUT);
@@ -427,8 +425,6 @@ public final class Logger {
                 warningHandler.setFormatter(formatter);
                 loggerHandlers.add(warningHandler);
 
-                if(messageQueue == null)
-                    messageQueue = new MpscLinkedQueue8<>();
                 if(!loggerThread.isAlive())
                     loggerThread.start();
 
@@ -462,43 +458,32 @@ public final class Logger {
         if(isConfigured.get() && tempLog != null) {
             logFile = mainFile;
 
-            loggerHandlers.clear();
-            LoggerFormatter formatter = new LoggerFormatter();
-            PrintStreamErrorManager errorManager = new PrintStreamErrorManager(SYSTEM_ERR);
-
             FileLoggerHandler fileHandler = new FileLoggerHandler(mainFile);
-            fileHandler.setFormatter(formatter);
-            fileHandler.setErrorManager(errorManager);
-            loggerHandlers.add(fileHandler);
-
-            PrintStreamLoggerHandler infoHandler = new PrintStreamLoggerHandler();
-            infoHandler.setOutputStream(SYSTEM_OUT);
-            infoHandler.setEncoding("UTF-8");
-            infoHandler.setLevel(Level.INFO);
-            infoHandler.setErrorManager(errorManager);
-            infoHandler.setFormatter(formatter);
-            loggerHandlers.add(infoHandler);
-
-            PrintStreamLoggerHandler warningHandler = new PrintStreamLoggerHandler();
-            warningHandler.setOutputStream(SYSTEM_ERR);
-            warningHandler.setEncoding("UTF-8");
-            warningHandler.setLevel(Level.WARNING);
-            warningHandler.setErrorManager(errorManager);
-            warningHandler.setFormatter(formatter);
-            loggerHandlers.add(warningHandler);
-
-            try {
-                FileInputStream stream1 = new FileInputStream(tempLog);
-                byte[] data = new byte[1024];
-                int nRead;
-                FileOutputStream stream = fileHandler.getOutputStream();
-                while((nRead = stream1.read(data)) == 1024)
-                    stream.write(data);
-                stream.write(data, 0, nRead);
-                stream.flush();
-            } catch (IOException e) {
-                System.err.println("Can't merge temporary log!");
-                e.printStackTrace();
+            fileHandler.setFormatter(new LoggerFormatter());
+            fileHandler.setErrorManager(new PrintStreamErrorManager(SYSTEM_ERR));
+            //Records, published while temporary log is merged, wait for the lock and are written after merged data
+            synchronized (fileHandler) {
+                FileLoggerHandler tempHandler = Logger.fileHandler;
+                int index = loggerHandlers.indexOf(tempHandler);
+                if(index == -1)
+                    loggerHandlers.add(fileHandler);
+                else
+                    loggerHandlers.set(index, fileHandler);
+                Logger.fileHandler = fileHandler;
+                if(tempHandler != null)
+                    tempHandler.close();
+
+                try(FileInputStream stream1 = new FileInputStream(tempLog)) {
+                    byte[] data = new byte[1024];
+                    int nRead;
+                    FileOutputStream stream = fileHandler.getOutputStream();
+                    while((nRead = stream1.read(data)) != -1)
+                        stream.write(data, 0, nRead);
+                    stream.flush();
+                } catch (IOException e) {
+                    System.err.println("Can't merge temporary log!");
+                    e.printStackTrace();
+                }
             }
             logMessageInternal("Temporary log fetched successfully");
 
@@ -669,7 +654,7 @@ public final class Logger {
     }
 
     private static final class LoggerThread extends Thread {
-        private final Object synchronizerLock;
+        private final Consumer<LogEventRing.Event> processor = this::processMessage;
         private final LoggerThreadCache cache;
         private final TimeCountStatistics statistics;
 
@@ -678,33 +663,26 @@ public final class Logger {
             setDaemon(true);
 
             cache = new LoggerThreadCache();
-            synchronizerLock = new Object();
 
             statistics = new FuzzyTimeCountStatistics(1, TimeUnit.SECONDS);
         }
 
         @Override
         public void run() {
+            ring.setConsumer(this);
             try {
-                main:
                 while(!isInterrupted()) {
-                    while(messageQueue.isEmpty()) {
-                        try {
-                            synchronized (synchronizerLock) {
-                                if(messageQueue.isEmpty())
-                                    synchronizerLock.wait();
-                            }
-                        } catch (InterruptedException e) {
-                            if(!shutdown)
-                                Logger.SYSTEM_ERR.println("Logger thread was received interrupt signal! Stopping logging...");
-                            break main;
-                        }
+                    if(ring.drain(processor) > 0) {
+                        flushHandlers();
+                        continue;
+                    }
+                    try {
+                        ring.await();
+                    } catch (InterruptedException e) {
+                        if(!shutdown)
+                            Logger.SYSTEM_ERR.println("Logger thread was received interrupt signal! Stopping logging...");
+                        break;
                     }
-
-                    Message message = messageQueue.poll();
-                    if(message == null) continue;
-
-                    processMessage(message);
                 }
                 dumpLogs();
             } catch (Error e) {
@@ -723,8 +701,8 @@ public final class Logger {
             }
         }
 
-        protected void processMessage(Message message) {
-            Class<?> clazz = message.getCaller();
+        protected void processMessage(LogEventRing.Event message) {
+            Class<?> clazz = message.caller;
             com.alesharik.webserver.logger.level.Level level = (message.isSout || message.isDebug) ? clazz.getAnnotation(com.alesharik.webserver.logger.level.Level.class) : null;
 
             String prefix = cache.get(clazz);
@@ -732,8 +710,9 @@ public final class Logger {
                 prefix = generatePrefixes(clazz);
                 cache.add(clazz, prefix);
             }
-            String prefixes = prefix + message.getPrefixes() + message.getClassPrefix();
-            String msg = prefixes + ": " + message.getMessage();
+            String locationPrefix = resolveLocation(message);
+            String prefixes = prefix + message.prefixes + Message.getClassPrefix(clazz, locationPrefix);
+            String msg = prefixes + ": " + message.message;
 
             if(level != null && (message.isDebug || level.replaceSout())) {
                 LoggingLevel loggingLevel = loggingLevelManager.getLoggingLevel(level.value());
@@ -746,16 +725,29 @@ public final class Logger {
                 loggerHandlers.forEach(handler -> handler.publish(record));
             }
             LoggerListenerThread listenerThread = Logger.listenerThread;
-            if(listenerThread != null)
-                listenerThread.sendMessage(message);
+            if(listenerThread != null && listenerThread.hasListeners())
+                listenerThread.sendMessage(new Message(message.prefixes, message.message, clazz, locationPrefix, message.isSout, message.isDebug));
 
             statistics.measure(1);
         }
 
+        private String resolveLocation(LogEventRing.Event message) {
+            if(message.locationPrefix != null)
+                return message.locationPrefix;
+            if(message.location == null)
+                return "";
+            StackTraceElement element = SharedSecrets.getJavaLangAccess().getStackTraceElement(message.location, message.locationIndex);
+            return "[" + element.getFileName() + ":" + element.getLineNumber() + "]";
+        }
+
         private void dumpLogs() {
-            Message message;
-            while((message = messageQueue.poll()) != null)
-                processMessage(message);
+            ring.drain(processor);
+            flushHandlers();
+        }
+
+        private void flushHandlers() {
+            for(Handler handler : loggerHandlers)
+                handler.flush();
         }
 
         @Nullable
@@ -831,6 +823,10 @@ public final class Logger {
          * @return prefixes or empty string
          */
         public String getClassPrefix() {
+            return getClassPrefix(caller, locationPrefix);
+        }
+
+        static String getClassPrefix(Class<?> caller, String locationPrefix) {
             Prefixes annotation;
             if((annotation = caller.getAnnotation(Prefixes.class)) != null && annotation.requireDebugPrefix())
                 return String.join("", annotation.value()) + locationPrefix;
@@ -890,6 +886,10 @@ public final class Logger {
             loggerListeners.remove(loggerListener);
         }
 
+        public boolean hasListeners() {
+            return enabled.get() && !loggerListeners.isEmpty();
+        }
+
         public void sendMessage(Message message) {
             if(!enabled.get()) {
                 return;
@@ -1460,7 +1460,53 @@ public final class Logger {
 
         @Override
         public int getMessageQueueCapacity() {
-            return Logger.messageQueue.capacity();
+            return Logger.ring.capacity();
+        }
+
+        @Override
+        public int getMessageQueueSize() {
+            return Logger.ring.size();
+        }
+
+        @Override
+        public long getDroppedMessageCount() {
+            return Logger.ring.getDroppedCount();
+        }
+
+        @Override
+        public long getFileBytesWritten() {
+            FileLoggerHandler handler = Logger.fileHandler;
+            return handler == null ? 0 : handler.getBytesWritten();
+        }
+
+        @Override
+        public long getFileRecordsWritten() {
+            FileLoggerHandler handler = Logger.fileHandler;
+            return handler == null ? 0 : handler.getRecordsWritten();
+        }
+
+        @Override
+        public long getFileFlushCount() {
+            FileLoggerHandler handler = Logger.fileHandler;
+            return handler == null ? 0 : handler.getFlushCount();
+        }
+
+        @Override
+        public long getFileAverageFlushTime() {
+            FileLoggerHandler handler = Logger.fileHandler;
+            return handler == null ? 0 : handler.getAverageFlushTime();
+        }
+
+        @Override
+        public long getFileMaxFlushTime() {
+            FileLoggerHandler handler = Logger.fileHandler;
+            return handler == null ? 0 : handler.getMaxFlushTime();
+        }
+
+        @Override
+        public long getFileRotationCount() {
+            FileLoggerHandler handler = Logger.fileHandler;
+            return handler == null ? 0 : handler.getRotationCount();
         }
 
         @Override
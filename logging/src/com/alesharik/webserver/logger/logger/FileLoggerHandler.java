@@ -22,34 +22,84 @@ import lombok.Getter;
 import lombok.SneakyThrows;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.ErrorManager;
 import java.util.logging.Filter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * This console handler log every record into file. Use {@link FileOutputStream} for write to file
+ * This console handler log every record into file. Records are encoded into reusable direct buffer and written
+ * to the file channel in batches: buffer is flushed only when it is full, on {@link #flush()} and on {@link #close()}.
+ * File can be rotated by size and/or by time. Rotated segments are renamed to <code>name.yyyyMMdd-HHmmss</code> and
+ * compressed with gzip in background
  */
 public final class FileLoggerHandler extends LoggerHandler {
+    private static final int BUFFER_SIZE;
+    private static final long MAX_SIZE;
+    private static final long ROTATION_PERIOD;
+    private static final ExecutorService compressor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "FileLoggerHandler-Compressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        BUFFER_SIZE = Integer.parseInt(System.getProperty("logger.FILE_BUFFER_SIZE", "65536"));
+        MAX_SIZE = Long.parseLong(System.getProperty("logger.FILE_MAX_SIZE", "0"));
+        ROTATION_PERIOD = Long.parseLong(System.getProperty("logger.FILE_ROTATION_PERIOD", "0"));
+    }
+
+    private final File file;
+    private final long maxSize;
+    private final long rotationPeriod;
+    private final ByteBuffer buffer;
+
     @Getter
     private FileOutputStream outputStream;
+    private FileChannel channel;
     private AtomicReference<Charset> charset = new AtomicReference<>(StandardCharsets.UTF_8);
+    private CharsetEncoder encoder;
+
+    private long segmentSize;
+    private long segmentStart;
+
+    private volatile long bytesWritten;
+    private volatile long recordsWritten;
+    private volatile long flushCount;
+    private volatile long flushTime;
+    private volatile long maxFlushTime;
+    private volatile long rotationCount;
 
     /**
      * Create new FileConsoleHandler. Use {@link Level#ALL} by default
      *
-     * @param file    file to write records. If file not exists, it will automatically create new one
-     * @param charset file charset
+     * @param file           file to write records. If file not exists, it will automatically create new one
+     * @param charset        file charset
+     * @param maxSize        max file size in bytes before rotation. 0 disables size rotation
+     * @param rotationPeriod file rotation period in milliseconds. 0 disables time rotation
      * @throws IllegalArgumentException if file is folder, can't write to file or can't create new file
      */
     @SneakyThrows
-    public FileLoggerHandler(File file, Charset charset) {
+    public FileLoggerHandler(File file, Charset charset, long maxSize, long rotationPeriod) {
         if(file.isDirectory())
             throw new IllegalArgumentException("File cannot be a directory!");
         else if(!file.exists())
@@ -57,11 +107,28 @@ public final class FileLoggerHandler extends LoggerHandler {
                 throw new IllegalArgumentException("Cannot create new file!");
             else if(!file.canWrite())
                 throw new IllegalArgumentException("Cannot write to file!");
-        this.outputStream = new FileOutputStream(file);
+        this.file = file;
+        this.maxSize = maxSize;
+        this.rotationPeriod = rotationPeriod;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
         this.charset.set(charset);
+        this.encoder = newEncoder(charset);
+        open();
         setLevel(Level.ALL);
     }
 
+    /**
+     * Create new FileConsoleHandler with rotation settings from <code>logger.FILE_MAX_SIZE</code> and
+     * <code>logger.FILE_ROTATION_PERIOD</code> properties. Use {@link Level#ALL} by default
+     *
+     * @param file    file to write records. If file not exists, it will automatically create new one
+     * @param charset file charset
+     * @throws IllegalArgumentException if file is folder, can't write to file or can't create new file
+     */
+    public FileLoggerHandler(File file, Charset charset) {
+        this(file, charset, MAX_SIZE, ROTATION_PERIOD);
+    }
+
     /**
      * Create new FileConsoleHandler with <code>UTF-8</code> charset. Use {@link Level#ALL} by default
      *
@@ -77,13 +144,113 @@ public final class FileLoggerHandler extends LoggerHandler {
         if(!isLoggable(record))
             return;
         String msg = getFormatter().format(record);
-        try {
-            outputStream.write(msg.getBytes(charset.get()));
+        synchronized (this) {
+            if(channel == null)
+                return;
+            try {
+                if(needsRotation())
+                    rotate();
+                encode(msg);
+                recordsWritten++;
+            } catch (IOException e) {
+                reportError(null, e, ErrorManager.WRITE_FAILURE);
+            }
+        }
+    }
+
+    private void encode(String msg) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(msg);
+        encoder.reset();
+        while(true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if(result.isOverflow()) {
+                writeBuffer();
+                continue;
+            }
+            if(result.isError())
+                result.throwException();
+            break;
+        }
+        while(encoder.flush(buffer).isOverflow())
+            writeBuffer();
+    }
+
+    private boolean needsRotation() {
+        if(maxSize > 0 && segmentSize + buffer.position() >= maxSize)
+            return true;
+        return rotationPeriod > 0 && System.currentTimeMillis() - segmentStart >= rotationPeriod;
+    }
+
+    /**
+     * Write buffered data into the file channel
+     */
+    private void writeBuffer() throws IOException {
+        if(buffer.position() == 0)
+            return;
+        long start = System.nanoTime();
+        buffer.flip();
+        int size = buffer.remaining();
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+        long time = System.nanoTime() - start;
+
+        segmentSize += size;
+        bytesWritten += size;
+        flushCount++;
+        flushTime += time;
+        if(time > maxFlushTime)
+            maxFlushTime = time;
+    }
+
+    private void open() throws IOException {
+        this.outputStream = new FileOutputStream(file);
+        this.channel = outputStream.getChannel();
+        this.segmentSize = 0;
+        this.segmentStart = System.currentTimeMillis();
+    }
+
+    private void rotate() throws IOException {
+        writeBuffer();
+        outputStream.close();
+
+        File target = getRotatedFile();
+        if(file.renameTo(target))
+            compressor.execute(() -> compress(target));
+        else
+            reportError("Cannot rename " + file + " to " + target, null, ErrorManager.GENERIC_FAILURE);
+
+        open();
+        rotationCount++;
+    }
+
+    private File getRotatedFile() {
+        String name = file.getName() + '.' + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(segmentStart));
+        File target = new File(file.getAbsoluteFile().getParentFile(), name);
+        for(int i = 1; target.exists() || new File(target.getPath() + ".gz").exists(); i++)
+            target = new File(file.getAbsoluteFile().getParentFile(), name + '-' + i);
+        return target;
+    }
+
+    private void compress(File source) {
+        File gz = new File(source.getPath() + ".gz");
+        try(InputStream in = new FileInputStream(source); OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+            byte[] data = new byte[8192];
+            int nRead;
+            while((nRead = in.read(data)) != -1)
+                out.write(data, 0, nRead);
         } catch (IOException e) {
-            reportError(null, e, ErrorManager.WRITE_FAILURE);
-        } finally {
-            flush();
+            reportError("Cannot compress " + source, e, ErrorManager.GENERIC_FAILURE);
+            return;
         }
+        if(!source.delete())
+            reportError("Cannot delete " + source, null, ErrorManager.GENERIC_FAILURE);
+    }
+
+    private static CharsetEncoder newEncoder(Charset charset) {
+        return charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
     }
 
     @Override
@@ -99,24 +266,31 @@ public final class FileLoggerHandler extends LoggerHandler {
     public synchronized void setEncoding(String encoding) throws SecurityException {
         Charset charset = Charset.forName(encoding);
         this.charset.set(charset);
+        this.encoder = newEncoder(charset);
     }
 
     @Override
     public synchronized void flush() {
+        if(channel == null)
+            return;
         try {
-            outputStream.flush();
+            writeBuffer();
         } catch (IOException e) {
             reportError(null, e, ErrorManager.FLUSH_FAILURE);
         }
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
+        if(channel == null)
+            return;
+        flush();
         try {
             outputStream.close();
         } catch (IOException e) {
             reportError(null, e, ErrorManager.CLOSE_FAILURE);
         }
+        channel = null;
     }
 
     @Override
@@ -136,4 +310,47 @@ public final class FileLoggerHandler extends LoggerHandler {
         Filter filter = getFilter();
         return filter == null || filter.isLoggable(record);
     }
+
+    /**
+     * Return count of bytes, written to files
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Return count of written records
+     */
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    /**
+     * Return count of buffer flushes
+     */
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * Return average buffer flush time in microseconds
+     */
+    public long getAverageFlushTime() {
+        long count = flushCount;
+        return count == 0 ? 0 : flushTime / count / 1000;
+    }
+
+    /**
+     * Return max buffer flush time in microseconds
+     */
+    public long getMaxFlushTime() {
+        return maxFlushTime / 1000;
+    }
+
+    /**
+     * Return count of file rotations
+     */
+    public long getRotationCount() {
+        return rotationCount;
+    }
 }
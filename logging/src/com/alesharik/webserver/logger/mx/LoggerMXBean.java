@@ -23,6 +23,46 @@ public interface LoggerMXBean {
 
     int getMessageQueueCapacity();
 
+    /**
+     * Return count of messages, waiting for logger thread
+     */
+    int getMessageQueueSize();
+
+    /**
+     * Return count of messages, dropped because message queue was full
+     */
+    long getDroppedMessageCount();
+
+    /**
+     * Return count of bytes, written to log files
+     */
+    long getFileBytesWritten();
+
+    /**
+     * Return count of records, written to log files
+     */
+    long getFileRecordsWritten();
+
+    /**
+     * Return count of log file buffer flushes
+     */
+    long getFileFlushCount();
+
+    /**
+     * Return average log file buffer flush time in microseconds
+     */
+    long getFileAverageFlushTime();
+
+    /**
+     * Return max log file buffer flush time in microseconds
+     */
+    long getFileMaxFlushTime();
+
+    /**
+     * Return count of log file rotations
+     */
+    long getFileRotationCount();
+
     int getNamedLoggerCount();
 
     long getMessagesParsedPerSecond();
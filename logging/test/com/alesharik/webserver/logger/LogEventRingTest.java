@@ -0,0 +1,121 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.logger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogEventRingTest {
+    private static void publish(LogEventRing ring, String message) {
+        LogEventRing.Event event = ring.claim();
+        if(event == null)
+            return;
+        event.set("", message, LogEventRingTest.class, false, false);
+        ring.publish(event);
+    }
+
+    @Test
+    public void publishAndDrain() throws Exception {
+        LogEventRing ring = new LogEventRing(4, LogEventRing.Policy.DROP);
+        assertTrue(ring.isEmpty());
+        List<String> messages = new ArrayList<>();
+        for(int round = 0; round < 3; round++) {
+            publish(ring, "a" + round);
+            publish(ring, "b" + round);
+            assertFalse(ring.isEmpty());
+            assertEquals(2, ring.drain(event -> messages.add(event.message)));
+            assertTrue(ring.isEmpty());
+        }
+        assertEquals(6, messages.size());
+        assertEquals("a2", messages.get(4));
+    }
+
+    @Test
+    public void unpublishedEventStopsDrain() throws Exception {
+        LogEventRing ring = new LogEventRing(4, LogEventRing.Policy.DROP);
+        LogEventRing.Event claimed = ring.claim();
+        publish(ring, "b");
+        assertEquals(0, ring.drain(event -> {
+        }));
+        claimed.set("", "a", LogEventRingTest.class, false, false);
+        ring.publish(claimed);
+        assertEquals(2, ring.drain(event -> {
+        }));
+    }
+
+    @Test
+    public void dropWhenFull() throws Exception {
+        LogEventRing ring = new LogEventRing(3, LogEventRing.Policy.DROP);
+        assertEquals(4, ring.capacity());
+        for(int i = 0; i < 6; i++)
+            publish(ring, "m");
+        assertNull(ring.claim());
+        assertEquals(3, ring.getDroppedCount());
+        assertEquals(4, ring.size());
+        assertEquals(4, ring.drain(event -> assertEquals("m", event.message)));
+    }
+
+    @Test
+    public void blockUntilConsumed() throws Exception {
+        LogEventRing ring = new LogEventRing(8, LogEventRing.Policy.BLOCK);
+        int producers = 4;
+        int count = 10_000;
+        CountDownLatch started = new CountDownLatch(1);
+        long[] received = new long[1];
+        Thread consumer = new Thread(() -> {
+            ring.setConsumer(Thread.currentThread());
+            started.countDown();
+            try {
+                while(received[0] < producers * count) {
+                    if(ring.drain(event -> received[0]++) == 0)
+                        ring.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        started.await();
+
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < producers; i++) {
+            Thread thread = new Thread(() -> {
+                for(int j = 0; j < count; j++)
+                    publish(ring, "m");
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for(Thread thread : threads)
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        consumer.join(TimeUnit.SECONDS.toMillis(30));
+
+        assertFalse(consumer.isAlive());
+        assertEquals(producers * count, received[0]);
+        assertEquals(0, ring.getDroppedCount());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.logger.logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class FileLoggerHandlerTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("file-logger-handler").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        if(files != null)
+            for(File file : files)
+                file.delete();
+        dir.delete();
+    }
+
+    private static FileLoggerHandler create(File file, long maxSize, long rotationPeriod) {
+        FileLoggerHandler handler = new FileLoggerHandler(file, StandardCharsets.UTF_8, maxSize, rotationPeriod);
+        handler.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                return record.getMessage() + '\n';
+            }
+        });
+        return handler;
+    }
+
+    private static String read(InputStream stream) throws IOException {
+        try(InputStream in = stream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] data = new byte[1024];
+            int nRead;
+            while((nRead = in.read(data)) != -1)
+                out.write(data, 0, nRead);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private File awaitCompressed() throws InterruptedException {
+        for(int i = 0; i < 500; i++) {
+            File[] files = dir.listFiles((d, name) -> name.endsWith(".gz"));
+            if(files != null && files.length == 1 && dir.listFiles().length == 2)
+                return files[0];
+            Thread.sleep(10);
+        }
+        return null;
+    }
+
+    @Test
+    public void publishIsBatchedUntilFlush() throws Exception {
+        File file = new File(dir, "log");
+        FileLoggerHandler handler = create(file, 0, 0);
+        handler.publish(new LogRecord(Level.INFO, "a"));
+        handler.publish(new LogRecord(Level.INFO, "б"));
+        assertEquals(0, file.length());
+        assertEquals(0, handler.getFlushCount());
+
+        handler.flush();
+        assertEquals("a\nб\n", read(new FileInputStream(file)));
+        assertEquals(2, handler.getRecordsWritten());
+        assertEquals(5, handler.getBytesWritten());
+        assertEquals(1, handler.getFlushCount());
+
+        handler.publish(new LogRecord(Level.INFO, "c"));
+        handler.close();
+        handler.publish(new LogRecord(Level.INFO, "d"));
+        assertEquals("a\nб\nc\n", read(new FileInputStream(file)));
+    }
+
+    @Test
+    public void rotateBySize() throws Exception {
+        File file = new File(dir, "log");
+        FileLoggerHandler handler = create(file, 10, 0);
+        handler.publish(new LogRecord(Level.INFO, "0123456789"));
+        handler.publish(new LogRecord(Level.INFO, "next"));
+        handler.close();
+
+        assertEquals(1, handler.getRotationCount());
+        assertEquals("next\n", read(new FileInputStream(file)));
+
+        File gz = awaitCompressed();
+        assertNotNull(gz);
+        assertTrue(gz.getName().startsWith("log."));
+        assertEquals("0123456789\n", read(new GZIPInputStream(new FileInputStream(gz))));
+    }
+
+    @Test
+    public void rotateByTime() throws Exception {
+        File file = new File(dir, "log");
+        FileLoggerHandler handler = create(file, 0, 200);
+        handler.publish(new LogRecord(Level.INFO, "a"));
+        Thread.sleep(250);
+        handler.publish(new LogRecord(Level.INFO, "b"));
+        handler.close();
+
+        assertEquals(1, handler.getRotationCount());
+        assertEquals("b\n", read(new FileInputStream(file)));
+
+        File gz = awaitCompressed();
+        assertNotNull(gz);
+        assertEquals("a\n", read(new GZIPInputStream(new FileInputStream(gz))));
+    }
+}
@@ -32,9 +32,22 @@ import java.util.Set;
 
 /**
  * Acceptor thread accepts new connections and publish them into {@link ExecutorPool},
- * You is free to use this class in your projects, but it isn't designed as public and it's API can be changed
+ * You is free to use this class in your projects, but it isn't designed as public and it's API can be changed.
+ * Ready server socket is drained in batches. Several acceptor threads can serve the same server sockets
  */
 public final class AcceptorThread extends Thread {
+    /**
+     * Max connections, accepted from one server socket per selection
+     */
+    private static final int ACCEPT_BATCH;
+
+    static {
+        if(System.getProperty("module.http.ACCEPT_BATCH") != null)
+            ACCEPT_BATCH = Integer.parseInt(System.getProperty("module.http.ACCEPT_BATCH"));
+        else
+            ACCEPT_BATCH = 64;
+    }
+
     private final ExecutorPool executorPool;
     private final Selector selector;
     private volatile boolean isRunning;
@@ -82,19 +95,8 @@ public final class AcceptorThread extends Thread {
                         continue;
                     }
 
-                    if(next.isAcceptable()) {
-                        ServerSocketWrapper attachment = (ServerSocketWrapper) next.attachment();
-                        SocketChannel socket = attachment.getChannel().accept();
-                        if(socket == null)
-                            continue;
-                        if(!socket.finishConnect()) {
-                            System.err.println("Socket " + socket + " didn't finish connecting in time!");
-                            continue;
-                        }
-
-                        SelectableChannel socketChannel = socket.configureBlocking(false);
-                        executorPool.selectSocket(socketChannel, socket, attachment.getSocketManager());
-                    }
+                    if(next.isAcceptable())
+                        accept((ServerSocketWrapper) next.attachment());
                 }
                 keys.clear();
             } catch (IOException e) {
@@ -108,6 +110,29 @@ public final class AcceptorThread extends Thread {
         }
     }
 
+    /**
+     * Accept pending connections until backlog is empty or batch is full
+     */
+    private void accept(ServerSocketWrapper wrapper) {
+        for(int i = 0; i < ACCEPT_BATCH; i++) {
+            try {
+                SocketChannel socket = wrapper.getChannel().accept();
+                if(socket == null)
+                    return;
+                if(!socket.finishConnect()) {
+                    System.err.println("Socket " + socket + " didn't finish connecting in time!");
+                    continue;
+                }
+
+                SelectableChannel socketChannel = socket.configureBlocking(false);
+                executorPool.selectSocket(socketChannel, socket, wrapper.getSocketManager());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
     @Override
     public synchronized void start() {
         isRunning = true;
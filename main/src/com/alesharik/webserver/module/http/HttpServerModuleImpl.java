@@ -44,6 +44,7 @@ import com.alesharik.webserver.module.http.server.HttpRequestHandler;
 import com.alesharik.webserver.module.http.server.HttpServer;
 import com.alesharik.webserver.module.http.server.mx.ExecutorPoolMXBean;
 import com.alesharik.webserver.module.http.server.mx.HttpServerStatistics;
+import com.alesharik.webserver.module.http.server.mx.SessionPoolStatistics;
 import com.alesharik.webserver.module.http.server.socket.ServerSocketWrapper;
 import lombok.Getter;
 import org.apache.commons.lang3.tuple.Pair;
@@ -68,6 +69,7 @@ public final class HttpServerModuleImpl implements HttpServer {
     private final List<ServerSocketWrapper> wrappers = new CopyOnWriteArrayList<>();
     private final List<HttpHandlerBundle> bundles = new CopyOnWriteArrayList<>();
     private final HttpServerStatisticsImpl httpServerStatistics = new HttpServerStatisticsImpl();
+    private final SessionPoolStatisticsImpl sessionPoolStatistics = new SessionPoolStatisticsImpl();
     private final List<String> addons = new ArrayList<>();
     private final Map<ServerSocketWrapper, SubModuleAdapter> wrapperSubmodules = new ConcurrentHashMap<>();
 
@@ -78,7 +80,7 @@ public final class HttpServerModuleImpl implements HttpServer {
     @Getter
     private volatile ThreadGroup serverThreadGroup;
 
-    private volatile AcceptorThread acceptorThread;
+    private volatile AcceptorThread[] acceptorThreads;
     private volatile SelectorContextImpl.Factory factory;
 
     @Override
@@ -193,8 +195,14 @@ public final class HttpServerModuleImpl implements HttpServer {
                         .ifPresent(addons::add);
         });
 
-        acceptorThread = new AcceptorThread(serverThreadGroup, this.pool);
-        factory = () -> new SelectorContextImpl(httpServerStatistics, this.handler, this.pool, addons);
+        int acceptorCount = getInteger("acceptors", object.getElement("acceptors"), converter)
+                .orElse(1);
+        if(acceptorCount < 1)
+            throw new ConfigurationError("acceptors must be positive!");
+        acceptorThreads = new AcceptorThread[acceptorCount];
+        for(int i = 0; i < acceptorCount; i++)
+            acceptorThreads[i] = new AcceptorThread(serverThreadGroup, this.pool);
+        factory = () -> new SelectorContextImpl(httpServerStatistics, sessionPoolStatistics, this.handler, this.pool, addons);
     }
 
     @Start
@@ -205,15 +213,18 @@ public final class HttpServerModuleImpl implements HttpServer {
             SubModuleAdapter subModuleAdapter = SubModuleMetaFactory.create(wrapper);
             subModuleAdapter.start();
             wrapperSubmodules.put(wrapper, subModuleAdapter);
-            acceptorThread.handle(wrapper);
+            for(AcceptorThread acceptorThread : acceptorThreads)
+                acceptorThread.handle(wrapper);
         }
-        acceptorThread.start();
+        for(AcceptorThread acceptorThread : acceptorThreads)
+            acceptorThread.start();
         MXBeanManager.registerMXBean(this, "com.alesharik.webserver.module.http.HttpServerModuleImpl:a=1");
     }
 
     @Shutdown
     public void shutdown() {
-        acceptorThread.shutdown();
+        for(AcceptorThread acceptorThread : acceptorThreads)
+            acceptorThread.shutdown();
         for(ServerSocketWrapper wrapper : wrappers) {
             SubModuleAdapter subModuleAdapter = wrapperSubmodules.get(wrapper);
             subModuleAdapter.shutdown();
@@ -223,7 +234,8 @@ public final class HttpServerModuleImpl implements HttpServer {
 
     @ShutdownNow
     public void shutdownNow() {
-        acceptorThread.shutdownNow();
+        for(AcceptorThread acceptorThread : acceptorThreads)
+            acceptorThread.shutdownNow();
         for(ServerSocketWrapper wrapper : wrappers) {
             SubModuleAdapter subModuleAdapter = SubModuleMetaFactory.create(wrapper);
             subModuleAdapter.shutdownNow();
@@ -241,6 +253,11 @@ public final class HttpServerModuleImpl implements HttpServer {
         return httpServerStatistics;
     }
 
+    @Override
+    public SessionPoolStatistics getSessionPoolStatistics() {
+        return sessionPoolStatistics;
+    }
+
     static final class HttpServerStatisticsImpl implements HttpServerStatistics {
         final AtomicLong aliveConnections = new AtomicLong();
         private final Counter connectionCounter = new AtomicCounter();
@@ -308,4 +325,54 @@ public final class HttpServerModuleImpl implements HttpServer {
             return responseTime.getAverage();
         }
     }
+
+    static final class SessionPoolStatisticsImpl implements SessionPoolStatistics {
+        final AtomicLong sessions = new AtomicLong();
+        final AtomicLong readBuffers = new AtomicLong();
+        final AtomicLong readBufferMemory = new AtomicLong();
+        final AtomicLong slabs = new AtomicLong();
+        final AtomicLong usedChunks = new AtomicLong();
+        final AtomicLong freeChunks = new AtomicLong();
+        final AtomicLong droppedChunks = new AtomicLong();
+
+        @Override
+        public long getSessionCount() {
+            return sessions.get();
+        }
+
+        @Override
+        public long getReadBufferCount() {
+            return readBuffers.get();
+        }
+
+        @Override
+        public long getReadBufferMemory() {
+            return readBufferMemory.get();
+        }
+
+        @Override
+        public long getSlabCount() {
+            return slabs.get();
+        }
+
+        @Override
+        public long getSlabMemory() {
+            return (usedChunks.get() + freeChunks.get()) * SessionBufferPool.CHUNK_SIZE;
+        }
+
+        @Override
+        public long getUsedChunkCount() {
+            return usedChunks.get();
+        }
+
+        @Override
+        public long getFreeChunkCount() {
+            return freeChunks.get();
+        }
+
+        @Override
+        public long getDroppedChunkCount() {
+            return droppedChunks.get();
+        }
+    }
 }
@@ -21,13 +21,17 @@ package com.alesharik.webserver.module.http;
 import com.alesharik.webserver.api.cache.object.CachedObjectFactory;
 import com.alesharik.webserver.api.cache.object.Recyclable;
 import com.alesharik.webserver.api.cache.object.SmartCachedObjectFactory;
-import com.alesharik.webserver.api.memory.impl.ByteOffHeapVector;
 import com.alesharik.webserver.module.http.addon.AddOn;
 import com.alesharik.webserver.module.http.addon.AddOnSocketContext;
 import com.alesharik.webserver.module.http.addon.AddOnSocketHandler;
+import com.alesharik.webserver.module.http.http.ChunkedDecoder;
+import com.alesharik.webserver.module.http.http.HttpRequestParser;
 import com.alesharik.webserver.module.http.http.HttpStatus;
+import com.alesharik.webserver.module.http.http.HttpVersion;
 import com.alesharik.webserver.module.http.http.Request;
+import com.alesharik.webserver.module.http.http.RequestBodyStream;
 import com.alesharik.webserver.module.http.http.Response;
+import com.alesharik.webserver.module.http.http.ResponseStream;
 import com.alesharik.webserver.module.http.server.CloseSocketException;
 import com.alesharik.webserver.module.http.server.ExecutorPool;
 import com.alesharik.webserver.module.http.server.HttpRequestHandler;
@@ -35,20 +39,24 @@ import com.alesharik.webserver.module.http.server.SelectorContext;
 import com.alesharik.webserver.module.http.server.Sender;
 import com.alesharik.webserver.module.http.server.socket.ServerSocketWrapper;
 import com.alesharik.webserver.module.http.server.socket.SocketWriter;
+import com.alesharik.webserver.module.http.util.TimerWheel;
 import lombok.Getter;
 import org.jctools.queues.atomic.MpscLinkedAtomicQueue;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -59,6 +67,23 @@ import java.util.concurrent.atomic.AtomicInteger;
 public final class SelectorContextImpl implements SelectorContext {
     private static final int SESSION_BUFFER_SIZE;
     private static final int MAX_MESSAGE_SIZE;
+    private static final int MAX_HEADER_SIZE;
+    private static final int BODY_STREAM_THRESHOLD;
+    private static final int MAX_PIPELINED_REQUESTS;
+    /**
+     * Time to receive request line and headers, in milliseconds
+     */
+    private static final long HEADER_TIMEOUT;
+    /**
+     * Max time between body reads, in milliseconds
+     */
+    private static final long BODY_TIMEOUT;
+    /**
+     * Keep-alive timeout, in milliseconds
+     */
+    private static final long IDLE_TIMEOUT;
+    private static final int TIMER_TICK = 100;
+    private static final int TIMER_SLOTS = 512;
 
     static {
         if(System.getProperty("module.http.SESSION_BUFFER_SIZE") != null)
@@ -69,32 +94,77 @@ public final class SelectorContextImpl implements SelectorContext {
             MAX_MESSAGE_SIZE = Integer.parseInt(System.getProperty("module.http.MAX_MESSAGE_SIZE"));
         else
             MAX_MESSAGE_SIZE = 512 * 1024 * 1024;
+        if(System.getProperty("module.http.MAX_HEADER_SIZE") != null)
+            MAX_HEADER_SIZE = Integer.parseInt(System.getProperty("module.http.MAX_HEADER_SIZE"));
+        else
+            MAX_HEADER_SIZE = 64 * 1024;
+        if(System.getProperty("module.http.BODY_STREAM_THRESHOLD") != null)
+            BODY_STREAM_THRESHOLD = Integer.parseInt(System.getProperty("module.http.BODY_STREAM_THRESHOLD"));
+        else
+            BODY_STREAM_THRESHOLD = 64 * 1024;
+        if(System.getProperty("module.http.MAX_PIPELINED_REQUESTS") != null)
+            MAX_PIPELINED_REQUESTS = Integer.parseInt(System.getProperty("module.http.MAX_PIPELINED_REQUESTS"));
+        else
+            MAX_PIPELINED_REQUESTS = 16;
+        if(System.getProperty("module.http.HEADER_TIMEOUT") != null)
+            HEADER_TIMEOUT = Long.parseLong(System.getProperty("module.http.HEADER_TIMEOUT"));
+        else
+            HEADER_TIMEOUT = 20 * 1000;
+        if(System.getProperty("module.http.BODY_TIMEOUT") != null)
+            BODY_TIMEOUT = Long.parseLong(System.getProperty("module.http.BODY_TIMEOUT"));
+        else
+            BODY_TIMEOUT = 60 * 1000;
+        if(System.getProperty("module.http.IDLE_TIMEOUT") != null)
+            IDLE_TIMEOUT = Long.parseLong(System.getProperty("module.http.IDLE_TIMEOUT"));
+        else
+            IDLE_TIMEOUT = 60 * 1000;
     }
 
     private final HttpServerModuleImpl.HttpServerStatisticsImpl serverStatistics;
+    private final HttpServerModuleImpl.SessionPoolStatisticsImpl poolStatistics;
     private final HttpRequestHandler requestHandler;
     private final ExecutorPool executorPool;
     private final List<String> addons;
 
-    private final Selector readSelector;
-    private final Selector writeSelector;
+    private final Selector selector;
 
     private final AtomicInteger socketCount = new AtomicInteger(0);
     private final MpscLinkedAtomicQueue<Session> init = new MpscLinkedAtomicQueue<>();
+    private final MpscLinkedAtomicQueue<Session> resume = new MpscLinkedAtomicQueue<>();
+    /**
+     * Sessions with new delayed writes, which need write interest
+     */
+    private final MpscLinkedAtomicQueue<Session> flush = new MpscLinkedAtomicQueue<>();
     private final AtomicBoolean writeLock = new AtomicBoolean(false);
+    /**
+     * Read buffer, shared by all sessions of the selector thread. Sessions must consume all read data or copy it into {@link #bufferPool}
+     */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(SESSION_BUFFER_SIZE);
+    private final SessionBufferPool bufferPool;
+    /**
+     * Session timeouts. Used only by selector thread
+     */
+    private final TimerWheel<Session> timers = new TimerWheel<>(TIMER_SLOTS, TIMER_TICK, System.currentTimeMillis());
+    /**
+     * Time of current iteration
+     */
+    private long now;
 
-    public SelectorContextImpl(HttpServerModuleImpl.HttpServerStatisticsImpl serverStatistics, HttpRequestHandler requestHandler, ExecutorPool executorPool, List<String> addons) {
+    public SelectorContextImpl(HttpServerModuleImpl.HttpServerStatisticsImpl serverStatistics, HttpServerModuleImpl.SessionPoolStatisticsImpl poolStatistics, HttpRequestHandler requestHandler, ExecutorPool executorPool, List<String> addons) {
         this.serverStatistics = serverStatistics;
+        this.poolStatistics = poolStatistics;
+        this.bufferPool = new SessionBufferPool(poolStatistics);
         this.requestHandler = requestHandler;
         this.executorPool = executorPool;
         this.addons = addons;
 
         try {
-            readSelector = Selector.open();
-            writeSelector = Selector.open();
+            selector = Selector.open();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        poolStatistics.readBuffers.incrementAndGet();
+        poolStatistics.readBufferMemory.addAndGet(readBuffer.capacity());
     }
 
     @Override
@@ -107,16 +177,19 @@ public final class SelectorContextImpl implements SelectorContext {
     public void registerSocket(SelectableChannel socket, SocketChannel socketChannel, ServerSocketWrapper.SocketManager manager) {
         if(!socket.isOpen())
             return;
-        Session session = Session.create(socketChannel, manager, requestHandler, executorPool, serverStatistics, addons, writeSelector);
+        Session session = Session.create(socketChannel, manager, requestHandler, executorPool, serverStatistics, addons, selector, resume, flush, readBuffer, bufferPool);
 
         while(!writeLock.compareAndSet(false, true))
             while(writeLock.get()) ;
         try {
             init.add(session);
-            readSelector.wakeup();
+            selector.wakeup();
             try {
-                socket.register(readSelector, SelectionKey.OP_READ, session);
+                socket.register(selector, SelectionKey.OP_READ, session);
                 socketCount.incrementAndGet();
+                poolStatistics.sessions.incrementAndGet();
+                serverStatistics.aliveConnections.incrementAndGet();
+                serverStatistics.newConnection();
             } catch (ClosedChannelException e) {
                 init.remove(session);
             }
@@ -129,36 +202,48 @@ public final class SelectorContextImpl implements SelectorContext {
     @Override
     public void iteration() {
         try {
-            int ops = readSelector.select();
+            int ops = selector.select(TIMER_TICK);
             if(writeLock.get())
                 while(writeLock.get()) ;
+            now = System.currentTimeMillis();
 
             Session session;
             while((session = init.poll()) != null) {
-                if(!session.init()) {
-                    session.close();
-                    Session.recycle(session);
+                if(session.init())
+                    timers.schedule(session.timeout, now + IDLE_TIMEOUT);
+                else
+                    closeSession(session);
+            }
+
+            while((session = resume.poll()) != null) {
+                if(!session.resume()) {
+                    session.flushRemainingData();
+                    closeSession(session);
                 }
             }
 
-            if(writeSelector.selectNow() > 0)
-                handleWrite();
+            while((session = flush.poll()) != null)
+                session.updateInterest();
+
+            timers.expire(now, this::expireSession);
 
             if(ops == 0)
                 return;
 
-            Set<SelectionKey> selectionKeys = readSelector.selectedKeys();
+            Set<SelectionKey> selectionKeys = selector.selectedKeys();
             for(SelectionKey selectionKey : selectionKeys) {
                 if(!selectionKey.isValid())
                     continue;
 
-                if(selectionKey.isReadable()) {
-                    Session s = (Session) selectionKey.attachment();
-                    if(!s.read()) {
-                        selectionKey.cancel();
+                Session s = (Session) selectionKey.attachment();
+                if(selectionKey.isWritable() && s.flush())//Client accepts data, so it is alive
+                    s.updateTimeout(timers, now);
+                if(selectionKey.isValid() && selectionKey.isReadable()) {
+                    if(s.read(selectionKey))
+                        s.updateTimeout(timers, now);
+                    else {
                         s.flushRemainingData();
-                        s.close();
-                        Session.recycle(s);
+                        closeSession(s);
                     }
                 }
             }
@@ -168,48 +253,88 @@ public final class SelectorContextImpl implements SelectorContext {
         }
     }
 
-    private void handleWrite() {
-        Set<SelectionKey> selectionKeys = writeSelector.selectedKeys();
-        for(SelectionKey selectionKey : selectionKeys) {
-            if(!selectionKey.isValid())
-                continue;
-            DelayedWrite write = (DelayedWrite) selectionKey.attachment();
-            write.write(writeSelector);
-            DelayedWrite.recycle(write);
+    /**
+     * Close timed out session. Sessions, which wait for the server, are not closed
+     */
+    private void expireSession(Session session) {
+        if(session.socket.isOpen()) {
+            if(session.isBusy()) {
+                timers.schedule(session.timeout, now + IDLE_TIMEOUT);
+                return;
+            }
+            if(!session.closing && (session.state != Session.State.HEADERS || session.request != null) && session.sendError(HttpStatus.REQUEST_TIMEOUT_408)) {
+                session.stopReading();
+                timers.schedule(session.timeout, now + IDLE_TIMEOUT);
+                return;
+            }
         }
-        selectionKeys.clear();
+        closeSession(session);
+    }
+
+    /**
+     * Close and recycle the session. Must be called from selector thread
+     */
+    private void closeSession(Session session) {
+        timers.cancel(session.timeout);
+        SelectionKey key = session.socket.keyFor(selector);
+        if(key != null)
+            key.cancel();
+        if(session.socket.isOpen())
+            session.close();
+        Session.recycle(session);
+        socketCount.decrementAndGet();
+        poolStatistics.sessions.decrementAndGet();
+        serverStatistics.aliveConnections.decrementAndGet();
     }
 
     @Override
     public void wakeup() {
-        readSelector.wakeup();
+        selector.wakeup();
     }
 
     @Override
     public void close() {
+        poolStatistics.readBuffers.decrementAndGet();
+        poolStatistics.readBufferMemory.addAndGet(-readBuffer.capacity());
         try {
-            readSelector.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        try {
-            writeSelector.close();
+            selector.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Data, which can't be written to the socket now. Session's key has write interest while it exists, so it is written by selector thread
+     * with gathering writes when socket becomes writable. All writes of the session go after it until it is finished
+     */
     @Getter
     private static final class DelayedWrite implements Recyclable {
         public static final SmartCachedObjectFactory<DelayedWrite> FACTORY = new SmartCachedObjectFactory<>(DelayedWrite::new);
 
-        private volatile ByteBuffer send;
+        private volatile ByteBuffer[] send;
         private volatile SocketChannel socketChannel;
+        private volatile Session session;
+        /**
+         * File region, sent after {@link #send}
+         */
+        private volatile FileChannel file;
+        private volatile long filePosition;
+        private volatile long fileRemaining;
+        /**
+         * Data, appended after the file region
+         */
+        private volatile ByteBuffer[] tail;
+        /**
+         * Count of bytes to write. Guarded by session's write lock
+         */
+        private long queued;
 
-        public static DelayedWrite create(ByteBuffer send, SocketChannel socket) {
+        public static DelayedWrite create(ByteBuffer[] send, SocketChannel socket, Session session) {
             DelayedWrite write = FACTORY.getInstance();
             write.send = send;
+            write.queued = remaining(send);
             write.socketChannel = socket;
+            write.session = session;
             return write;
         }
 
@@ -217,43 +342,290 @@ public final class SelectorContextImpl implements SelectorContext {
             FACTORY.putInstance(write);
         }
 
-        public void write(Selector writeSelector) {
-            if(!socketChannel.isOpen())
-                return;
+        public static DelayedWrite create(FileChannel file, long position, long count, SocketChannel socket, Session session) {
+            DelayedWrite write = create(new ByteBuffer[0], socket, session);
+            write.file = file;
+            write.filePosition = position;
+            write.fileRemaining = count;
+            write.queued = count;
+            return write;
+        }
 
-            try {
-                while(send.remaining() > 0) {
-                    if(socketChannel.write(send) == 0) {
-                        DelayedWrite write = create(send, socketChannel);
-                        socketChannel.register(writeSelector, SelectionKey.OP_WRITE, write);
+        /**
+         * Add data to the end of the write. Must be called under session's write lock
+         */
+        public void append(ByteBuffer[] data) {
+            queued += remaining(data);
+            if(file == null)
+                send = concat(send, data);
+            else
+                tail = tail == null ? concat(new ByteBuffer[0], data) : concat(tail, data);
+        }
+
+        private static ByteBuffer[] concat(ByteBuffer[] first, ByteBuffer[] second) {
+            ByteBuffer[] ret = new ByteBuffer[first.length + second.length];
+            System.arraycopy(first, 0, ret, 0, first.length);
+            for(int i = 0; i < second.length; i++)
+                ret[first.length + i] = second[i].duplicate();
+            return ret;
+        }
+
+        /**
+         * Write as much data as socket accepts
+         *
+         * @return <code>true</code> - write is finished and can be recycled
+         */
+        public boolean write() {
+            Session session = this.session;
+            synchronized (session.writeLock) {
+                try {
+                    while(socketChannel.isOpen()) {
+                        while(hasRemaining(send)) {
+                            long written = socketChannel.write(send);
+                            if(written == 0)
+                                return false;
+                            queued -= written;
+                        }
+                        if(!transferFile())
+                            return false;
+                        if(tail == null)
+                            break;
+                        send = tail;
+                        tail = null;
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    try {
+                        socketChannel.close();//Response is broken
+                    } catch (IOException e1) {
+                        e1.printStackTrace();
                     }
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+                if(session.pendingWrite == this)
+                    session.pendingWrite = null;
+                session.writeLock.notifyAll();
+                return true;
             }
         }
 
+        /**
+         * Send file region with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+         *
+         * @return <code>false</code> - socket is full
+         */
+        private boolean transferFile() throws IOException {
+            while(file != null && fileRemaining > 0) {
+                if(filePosition >= file.size())
+                    throw new EOFException("File was truncated while sending");
+                long sent = file.transferTo(filePosition, fileRemaining, socketChannel);
+                if(sent == 0)
+                    return false;
+                filePosition += sent;
+                fileRemaining -= sent;
+                queued -= sent;
+            }
+            file = null;
+            return true;
+        }
+
         @Override
         public void recycle() {
             send = null;
             socketChannel = null;
+            session = null;
+            file = null;
+            filePosition = 0;
+            fileRemaining = 0;
+            tail = null;
+            queued = 0;
+        }
+    }
+
+    private static long remaining(ByteBuffer[] buffers) {
+        long remaining = 0;
+        for(ByteBuffer buffer : buffers)
+            remaining += buffer.remaining();
+        return remaining;
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        for(ByteBuffer buffer : buffers) {
+            if(buffer.hasRemaining())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Response slot of dispatched request. Slots are written in request order, so pipelined requests get their responses in order
+     */
+    private static final class PendingResponse implements Recyclable {
+        private static final SmartCachedObjectFactory<PendingResponse> FACTORY = new SmartCachedObjectFactory<>(PendingResponse::new);
+
+        private Request request;
+        /**
+         * Encoded response, <code>null</code> if response is not ready yet
+         */
+        private ByteBuffer[] data;
+        /**
+         * Connection must be closed after this response
+         */
+        private boolean close;
+        /**
+         * Request must be deleted after response is written. Request objects are pooled, so it can't be deleted before,
+         * because slots are found by request
+         */
+        private boolean release;
+
+        public static PendingResponse create(Request request) {
+            PendingResponse response = FACTORY.getInstance();
+            response.request = request;
+            return response;
+        }
+
+        public static void recycle(PendingResponse response) {
+            FACTORY.putInstance(response);
+        }
+
+        @Override
+        public void recycle() {
+            request = null;
+            data = null;
+            close = false;
+            release = false;
+        }
+    }
+
+    /**
+     * Body stream of the response, written directly to session's socket. Writer waits until previous data is accepted by the socket
+     */
+    private static final class SessionResponseStream extends ResponseStream {
+        private static final int BUFFER_SIZE = 8 * 1024;
+
+        private final Session session;
+        private final SocketChannel socket;
+        private final ServerSocketWrapper.SocketManager socketManager;
+        private final Request request;
+        private final Response response;
+        private final boolean closeConnection;
+        /**
+         * Count of {@link Session#send(Request, Response)} calls and stream closings
+         */
+        private final AtomicInteger released = new AtomicInteger();
+
+        SessionResponseStream(Session session, SocketChannel socket, ServerSocketWrapper.SocketManager socketManager, Request request, Response response, boolean chunked, boolean closeConnection) {
+            super(BUFFER_SIZE, chunked);
+            this.session = session;
+            this.socket = socket;
+            this.socketManager = socketManager;
+            this.request = request;
+            this.response = response;
+            this.closeConnection = closeConnection;
+        }
+
+        @Override
+        public void abort() {
+            if(socket.isOpen())
+                session.close();
+            release();
+        }
+
+        @Override
+        protected void send(@Nonnull ByteBuffer[] data) throws IOException {
+            if(!socket.isOpen())
+                throw new IOException("Connection closed");
+            socketManager.write(socket, data, session);
+            session.awaitWrite(socket);
+        }
+
+        @Override
+        protected void sendFile(@Nonnull FileChannel file, long position, long count) throws IOException {
+            if(socketManager.isSecure(socket)) {
+                super.sendFile(file, position, count);
+                return;
+            }
+            if(!socket.isOpen())
+                throw new IOException("Connection closed");
+            session.transferFile(socket, file, position, count);
+            session.awaitWrite(socket);
+        }
+
+        @Override
+        protected void complete() {
+            release();
+        }
+
+        void release() {
+            if(released.incrementAndGet() == 2)
+                session.finishStream(this);
         }
     }
 
     private static final class Session implements Recyclable, Sender, SocketWriter, AddOnSocketContext {
-        private static final ByteOffHeapVector vector = ByteOffHeapVector.instance();
         private static final CachedObjectFactory<Session> FACTORY = new SmartCachedObjectFactory<>(Session::new);
 
-        private final ByteBuffer buffer = ByteBuffer.allocateDirect(SESSION_BUFFER_SIZE);
         private final Map<String, Object> params = new HashMap<>();
+        private final HttpRequestParser parser = new HttpRequestParser(MAX_HEADER_SIZE);
+        private final ChunkedDecoder chunkedDecoder = new ChunkedDecoder(MAX_HEADER_SIZE);
+        private final Runnable resumeTask = this::scheduleResume;
+        private final Runnable readTask = this::scheduleRead;
+        private final TimerWheel.Timeout<Session> timeout = new TimerWheel.Timeout<>(this);
+        private final Object writeLock = new Object();
+        /**
+         * Responses of dispatched requests in request order. Guarded by {@link #responseLock}
+         */
+        private final ArrayDeque<PendingResponse> responses = new ArrayDeque<>();
+        /**
+         * Taken before {@link #writeLock}
+         */
+        private final Object responseLock = new Object();
+        /**
+         * Unfinished write. Guarded by {@link #writeLock}
+         */
+        private DelayedWrite pendingWrite;
         private SocketChannel socket;
+        private SelectionKey key;
+        /**
+         * Thread, which runs the selector of this session. It sends delayed writes and fills body streams, so it must never wait for them
+         */
+        private Thread selectorThread;
         private ServerSocketWrapper.SocketManager socketManager;
-        private int messageSize;
-        private long tempBuffer;
-        private State state = State.EMPTY;
+        private State state = State.HEADERS;
         private Request.Builder request;
-        private int bodyLength = -1;
-        private byte[] buf = new byte[4096];
+        /**
+         * Buffered body of {@link State#BODY} requests
+         */
+        private byte[] body;
+        private int bodyRead;
+        /**
+         * Body of {@link State#STREAM} and {@link State#CHUNKED} requests
+         */
+        private RequestBodyStream bodyStream;
+        /**
+         * Remaining body size for {@link State#STREAM} and received body size for {@link State#CHUNKED}
+         */
+        private long bodyCounter;
+        private volatile boolean suspended;
+        /**
+         * Error response is queued after pending responses. Client data is ignored and connection is closed when the error is sent
+         */
+        private volatile boolean closing;
+        /**
+         * Close connection when {@link #pendingWrite} is finished. Guarded by {@link #writeLock}
+         */
+        private boolean closeAfterWrite;
+        /**
+         * Socket manager asked for read without socket data
+         */
+        private volatile boolean readRequested;
+        /**
+         * Socket manager doesn't read the socket until read request. Used by selector thread only
+         */
+        private boolean readPaused;
+        /**
+         * Deadline of current request's headers, <code>0</code> if request is not started
+         */
+        private long headerDeadline;
 
         private AddOn addOn;
         private AddOnSocketHandler addOnSocketHandler;
@@ -263,18 +635,28 @@ public final class SelectorContextImpl implements SelectorContext {
         private ExecutorPool executorPool;
         private HttpServerModuleImpl.HttpServerStatisticsImpl statistics;
         private List<String> addons;
-        private Selector writeSelector;
+        private Selector selector;
+        private MpscLinkedAtomicQueue<Session> resumeQueue;
+        private MpscLinkedAtomicQueue<Session> flushQueue;
+        /**
+         * Shared read buffer of the selector thread
+         */
+        private ByteBuffer buffer;
+        private SessionBufferPool bufferPool;
 
-        public static Session create(SocketChannel socketChannel, ServerSocketWrapper.SocketManager manager, HttpRequestHandler requestHandler, ExecutorPool executorPool, HttpServerModuleImpl.HttpServerStatisticsImpl statistics, List<String> addons, Selector writeSelector) {
+        public static Session create(SocketChannel socketChannel, ServerSocketWrapper.SocketManager manager, HttpRequestHandler requestHandler, ExecutorPool executorPool, HttpServerModuleImpl.HttpServerStatisticsImpl statistics, List<String> addons, Selector selector, MpscLinkedAtomicQueue<Session> resumeQueue, MpscLinkedAtomicQueue<Session> flushQueue, ByteBuffer buffer, SessionBufferPool bufferPool) {
             Session session = FACTORY.getInstance();
             session.socket = socketChannel;
             session.socketManager = manager;
-            session.tempBuffer = vector.allocate();
             session.requestHandler = requestHandler;
             session.executorPool = executorPool;
             session.statistics = statistics;
-            session.writeSelector = writeSelector;
+            session.selector = selector;
+            session.resumeQueue = resumeQueue;
+            session.flushQueue = flushQueue;
             session.addons = addons;
+            session.buffer = buffer;
+            session.bufferPool = bufferPool;
             return session;
         }
 
@@ -285,19 +667,53 @@ public final class SelectorContextImpl implements SelectorContext {
         @Override
         public void recycle() {
             socket = null;
+            key = null;
+            selectorThread = null;
             socketManager = null;
-            buffer.clear();
-            messageSize = 0;
-            vector.clear(tempBuffer);
-            tempBuffer = 0;
+            buffer = null;
+            bufferPool = null;
             requestHandler = null;
             addOnSocketHandler = null;
             addOn = null;
             executorPool = null;
-            state = State.EMPTY;
-            bodyLength = -1;
+            state = State.HEADERS;
+            parser.reset();
+            chunkedDecoder.reset();
+            if(request != null)
+                Request.Builder.delete(request);
+            request = null;
+            body = null;
+            bodyRead = 0;
+            if(bodyStream != null)
+                bodyStream.abort(new IOException("Connection closed"));
+            bodyStream = null;
+            bodyCounter = 0;
+            suspended = false;
+            closing = false;
+            readRequested = false;
+            readPaused = false;
+            headerDeadline = 0;
+            synchronized (writeLock) {
+                if(pendingWrite != null)
+                    DelayedWrite.recycle(pendingWrite);
+                pendingWrite = null;
+                closeAfterWrite = false;
+                writeLock.notifyAll();
+            }
+            synchronized (responseLock) {
+                PendingResponse response;
+                while((response = responses.poll()) != null) {
+                    if(response.release)
+                        deleteRequest(response.request);
+                    PendingResponse.recycle(response);
+                }
+                responseLock.notifyAll();
+            }
             statistics = null;
             addons = null;
+            selector = null;
+            resumeQueue = null;
+            flushQueue = null;
             params.clear();
             //noinspection PointlessNullCheck
             if(handshakeRequest != null && handshakeRequest instanceof Request.Builder)
@@ -306,10 +722,11 @@ public final class SelectorContextImpl implements SelectorContext {
         }
 
         public boolean init() {
+            selectorThread = Thread.currentThread();
             if(!socket.isOpen())
                 return false;
             try {
-                socketManager.init(socket);
+                socketManager.init(socket, readTask, this);
                 return true;
             } catch (IOException e) {
                 e.printStackTrace();
@@ -354,6 +771,12 @@ public final class SelectorContextImpl implements SelectorContext {
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            synchronized (writeLock) {
+                writeLock.notifyAll();
+            }
+            synchronized (responseLock) {
+                responseLock.notifyAll();
+            }
         }
 
         @Override
@@ -361,164 +784,439 @@ public final class SelectorContextImpl implements SelectorContext {
             return handshakeRequest;
         }
 
-        public boolean read() {
+        @Override
+        public long getQueuedBytes() {
+            synchronized (writeLock) {
+                return pendingWrite == null ? 0 : pendingWrite.queued;
+            }
+        }
+
+        public boolean read(SelectionKey key) {
             if(!socket.isOpen())
                 return false;
+            this.key = key;
+            int read;
             do {
                 buffer.clear();
                 try {
                     socketManager.read(socket, buffer);
                 } catch (CloseSocketException e) {
+                    buffer.flip();
                     return false;
                 } catch (IOException e) {
                     e.printStackTrace();
+                    buffer.flip();
                     return false;
                 }
-                if(!incrementAndCheckMessageSize(buffer.position()))
-                    return false;
-                int size = buffer.position();
-                int off = 0;
-                while(size > 0) {
-                    buffer.position(off);
-                    if(!process(size))
+                read = buffer.position();
+                buffer.flip();
+                while(buffer.hasRemaining()) {
+                    if(!process())
                         return false;
-                    size -= buffer.position();
-                    off += buffer.position();
                 }
-            } while(!buffer.hasRemaining());
+            } while(read == buffer.capacity() && !suspended);
+            if(socketManager.isReadPaused(socket)) {//Ready socket would wake up selector until read request
+                readPaused = true;
+                updateInterest();
+            }
             return true;
         }
 
-        private boolean process(final int size) {
-            if(addOnSocketHandler != null) {
-                requestHandler.handleMessageTask(() -> addOnSocketHandler.handle(buffer.duplicate(), this), executorPool, addOn, this);
+        /**
+         * Move session's deadline after read. Header deadline is not moved by reads, so slow clients can't keep the session forever
+         */
+        public void updateTimeout(TimerWheel<Session> wheel, long now) {
+            long deadline;
+            if(state == State.HEADERS && request == null)
+                deadline = now + IDLE_TIMEOUT;
+            else if(state == State.HEADERS) {
+                if(headerDeadline == 0)
+                    headerDeadline = now + HEADER_TIMEOUT;
+                deadline = headerDeadline;
+            } else
+                deadline = now + BODY_TIMEOUT;
+            wheel.schedule(timeout, deadline);
+        }
+
+        /**
+         * Return <code>true</code> if session waits for the server, not for the client
+         */
+        public boolean isBusy() {
+            if(addOnSocketHandler != null)
                 return true;
+            if(closing) {
+                synchronized (responseLock) {
+                    return !responses.isEmpty();
+                }
+            }
+            if(suspended)
+                return true;
+            if(state != State.HEADERS || request != null)//Request is being received
+                return false;
+            synchronized (responseLock) {
+                return !responses.isEmpty();
             }
+        }
 
-            if(state == State.EMPTY) {
-                while(buffer.position() < size) {//Cut empty lines at start
-                    char c = (char) buffer.get();
-                    if(c != '\n' && c != '\r') {
-                        state = State.FIRST_LINE;
-                        tempBuffer = vector.write(tempBuffer, Character.toString(c).getBytes(StandardCharsets.ISO_8859_1));
-                        break;
-                    }
+        /**
+         * Called by request handler when body stream has free space
+         */
+        private void scheduleResume() {
+            MpscLinkedAtomicQueue<Session> resumeQueue = this.resumeQueue;
+            Selector selector = this.selector;
+            if(resumeQueue == null)
+                return;
+            resumeQueue.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Called by socket manager when it has work for {@link #read(SelectionKey)}
+         */
+        private void scheduleRead() {
+            readRequested = true;
+            scheduleResume();
+        }
+
+        /**
+         * Ask selector thread to add write interest for new delayed write. Must be called under {@link #writeLock}
+         */
+        private void scheduleFlush() {
+            MpscLinkedAtomicQueue<Session> flushQueue = this.flushQueue;
+            Selector selector = this.selector;
+            if(flushQueue == null)
+                return;
+            flushQueue.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Write delayed data. Must be called from selector thread
+         *
+         * @return <code>true</code> - some data was written
+         */
+        public boolean flush() {
+            DelayedWrite write;
+            long queued;
+            boolean close = false;
+            synchronized (writeLock) {
+                write = pendingWrite;
+                if(write == null) {
+                    updateInterest();
+                    return false;
                 }
+                queued = write.queued;
+                if(write.write()) {
+                    DelayedWrite.recycle(write);
+                    close = closeAfterWrite && pendingWrite == null;
+                } else if(write.queued == queued)
+                    return false;
             }
+            if(close)
+                close();
+            else
+                updateInterest();
+            return true;
+        }
 
-            if(state == State.FIRST_LINE) {
-                StringBuilder firstLine = new StringBuilder();
-                if(vector.size(tempBuffer) > 0) {
-                    firstLine.append(new String(vector.toByteArray(tempBuffer), StandardCharsets.ISO_8859_1));
-                    vector.clear(tempBuffer);
-                }
-                if(!firstLine.toString().endsWith("\r")) {
-                    while(buffer.position() < size) {
-                        char c = (char) buffer.get();
-                        firstLine.append(c);
-                        if(c == '\r')
-                            break;
-                    }
-                }
+        /**
+         * Set key interest from session state: read if reading is not suspended or paused by socket manager, write if there is delayed write. Must be called from selector thread
+         */
+        public void updateInterest() {
+            if(key == null && socket != null)//Write before first read
+                key = socket.keyFor(selector);
+            SelectionKey key = this.key;
+            if(key == null || !key.isValid())
+                return;
+            int ops = suspended || readPaused ? 0 : SelectionKey.OP_READ;
+            synchronized (writeLock) {
+                if(pendingWrite != null)
+                    ops |= SelectionKey.OP_WRITE;
+            }
+            if(key.interestOps() != ops)
+                key.interestOps(ops);
+        }
 
-                if(buffer.position() >= size) {
-                    tempBuffer = vector.write(tempBuffer, firstLine.toString().getBytes(StandardCharsets.ISO_8859_1));
-                } else {
-                    char c = (char) buffer.get();
-                    if(c != '\n')
-                        return false;
-                    firstLine.append(c);
-
-                    String first = firstLine.toString();
-                    if(!first.endsWith("\r\n"))
-                        throw new RuntimeException("WAT");
-                    first = first.substring(0, first.length() - 2);//Delete /r/n
-                    request = Request.Builder.start(first)
-                            .withInfo((InetSocketAddress) socket.socket().getRemoteSocketAddress(), socket.socket().getLocalAddress(), socketManager.isSecure(socket));
-                    state = State.HEADERS;
+        /**
+         * Perform requested read and restore read interest. Data, buffered by socket manager while reading was suspended, is read
+         * immediately, because it won't make socket readable. Must be called from selector thread
+         *
+         * @return <code>false</code> - socket must be closed
+         */
+        public boolean resume() {
+            if(socket == null || !socket.isOpen())
+                return true;
+            if(readRequested) {
+                readRequested = false;
+                if(readPaused) {
+                    readPaused = false;
+                    updateInterest();
                 }
+                if(!readBuffered())
+                    return false;
             }
-            if(state == State.HEADERS) {
-                StringBuilder headerBuilder = new StringBuilder();
-                if(vector.size(tempBuffer) > 0) {
-                    headerBuilder.append(new String(vector.toByteArray(tempBuffer), StandardCharsets.ISO_8859_1));
-                    vector.clear(tempBuffer);
-                }
-                while(buffer.position() < size) {
-                    char c = (char) buffer.get();
-                    headerBuilder.append(c);
-                    if(c == '\n' && headerBuilder.charAt(headerBuilder.length() - 2) == '\r') {//End found
-                        String header = headerBuilder.toString();
-                        headerBuilder.setLength(0);
-                        if(header.equals("\r\n")) {//Body start
-                            request.buildHeaders();
-                            state = State.BODY;
-                            break;
-                        } else
-                            request.withHeader(header);
+            resumeReading();
+            if(!suspended && socketManager.hasBufferedData(socket))
+                return readBuffered();
+            return true;
+        }
+
+        /**
+         * Read without socket read event
+         *
+         * @return <code>false</code> - socket must be closed
+         */
+        private boolean readBuffered() {
+            SelectionKey key = this.key == null ? socket.keyFor(selector) : this.key;
+            return key == null || !key.isValid() || read(key);
+        }
+
+        /**
+         * Restore read interest, removed by {@link #suspend()}. Must be called from selector thread
+         */
+        public void resumeReading() {
+            if(!suspended || closing || key == null || !key.isValid())
+                return;
+            if(bodyStream != null && bodyStream.isSuspended())
+                return;
+            synchronized (responseLock) {
+                if(responses.size() >= MAX_PIPELINED_REQUESTS)
+                    return;
+            }
+            suspended = false;
+            updateInterest();
+        }
+
+        private void suspend() {
+            if(suspended || key == null || !key.isValid())
+                return;
+            suspended = true;
+            updateInterest();
+        }
+
+        /**
+         * Ignore client data after queued error. Must be called from selector thread
+         */
+        private void stopReading() {
+            buffer.position(buffer.limit());
+            if(bodyStream != null) {
+                bodyStream.abort(new IOException("Request is broken"));
+                bodyStream = null;
+            }
+            suspend();
+        }
+
+        /**
+         * Consume data from buffer's position
+         *
+         * @return <code>false</code> - socket must be closed
+         */
+        private boolean process() {
+            if(closing) {
+                stopReading();
+                return true;
+            }
+            if(addOnSocketHandler != null) {
+                SessionBufferPool pool = bufferPool;
+                ByteBuffer data = pool.copy(buffer);
+                requestHandler.handleMessageTask(() -> {
+                    try {
+                        addOnSocketHandler.handle(data, this);
+                    } finally {
+                        pool.release(data);
                     }
+                }, executorPool, addOn, this);
+                return true;
+            }
+
+            if(state == State.HEADERS) {
+                if(request == null)
+                    request = Request.Builder.start();
+                HttpRequestParser.Result result = parser.parse(buffer, request);
+                if(result == HttpRequestParser.Result.NEED_MORE)
+                    return true;
+                else if(result == HttpRequestParser.Result.ERROR) {
+                    return sendError(HttpStatus.BAD_REQUEST_400);
+                } else if(result == HttpRequestParser.Result.TOO_LARGE) {
+                    return sendError(HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE_431);
                 }
-                if(headerBuilder.length() > 0)
-                    tempBuffer = vector.write(tempBuffer, headerBuilder.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+                request.withInfo((InetSocketAddress) socket.socket().getRemoteSocketAddress(), socket.socket().getLocalAddress(), socketManager.isSecure(socket));
+                if(!startBody())
+                    return false;
             }
-            if(bodyLength == -1) {
-                Long length = request.getHeader("Content-Length");
-                if(length == null)
+            if(state == State.BODY) {
+                int count = Math.min(body.length - bodyRead, buffer.remaining());
+                buffer.get(body, bodyRead, count);
+                bodyRead += count;
+                if(bodyRead == body.length) {
+                    request.withBody(body);
+                    body = null;
+                    bodyRead = 0;
                     state = State.END;
-                else
-                    bodyLength = length.intValue();
+                }
             }
-            if(state == State.BODY) {
-                int nRead = (int) Math.min(bodyLength - vector.size(tempBuffer), size - buffer.position());
-                while(nRead > 0) {
-                    int read = Math.min(buf.length, nRead);
-                    buffer.get(buf, 0, read);
-                    nRead -= read;
-                    tempBuffer = vector.write(tempBuffer, buf, 0, read);
+            if(state == State.STREAM) {
+                int count = (int) Math.min(bodyCounter, buffer.remaining());
+                bodyCounter -= count;
+                if(!writeBody(count))
+                    suspend();
+                if(bodyCounter == 0)
+                    finishBody();
+                return true;
+            }
+            if(state == State.CHUNKED) {
+                while(state == State.CHUNKED) {
+                    ChunkedDecoder.Result result = chunkedDecoder.next(buffer);
+                    if(result == ChunkedDecoder.Result.NEED_MORE)
+                        return true;
+                    else if(result == ChunkedDecoder.Result.DONE)
+                        finishBody();
+                    else if(result == ChunkedDecoder.Result.ERROR) {
+                        bodyStream.abort(new IOException("Malformed chunked body"));
+                        return false;
+                    } else {
+                        int count = chunkedDecoder.getAvailable();
+                        bodyCounter += count;
+                        if(bodyCounter > MAX_MESSAGE_SIZE) {
+                            bodyStream.abort(new IOException("Request body is too large"));
+                            return false;
+                        }
+                        if(!writeBody(count))
+                            suspend();
+                    }
                 }
-                if(vector.size(tempBuffer) == bodyLength) {
-                    request.withBody(vector.toByteArray(tempBuffer));
-                    vector.clear(tempBuffer);
-                    state = State.END;
-                } else if(vector.size(tempBuffer) > bodyLength)
-                    throw new RuntimeException("WAT");
+                return true;
             }
             if(state == State.END) {
-                statistics.newRequest();
-                try {
-                    requestHandler.handleRequest(request, executorPool, this);
-                } catch (CloseSocketException e) {
-                    return false;
-                } catch (Exception e) {
-                    e.printStackTrace();
+                state = State.HEADERS;
+                return dispatch();
+            }
+            return true;
+        }
+
+        /**
+         * Select body reading strategy by request headers. Bodies larger than {@link #BODY_STREAM_THRESHOLD} and chunked bodies
+         * are streamed to the handler, smaller ones are buffered before dispatch
+         *
+         * @return <code>false</code> - socket must be closed
+         */
+        private boolean startBody() {
+            if(request.containsHeader("Transfer-Encoding")) {
+                String[] codings = request.getHeader("Transfer-Encoding");
+                String last = codings[codings.length - 1];
+                last = last.substring(last.lastIndexOf(',') + 1).trim();
+                if(!"chunked".equalsIgnoreCase(last)) {
+                    return sendError(HttpStatus.BAD_REQUEST_400);
+                } else if(codings.length > 1 || codings[0].indexOf(',') != -1) {
+                    return sendError(HttpStatus.NOT_IMPLEMENTED_501);
                 }
-                request = null;
-                messageSize = 0;
-                state = State.EMPTY;
+                bodyCounter = 0;
+                state = State.CHUNKED;
+                return startStream();
+            }
+
+            Long length;
+            try {
+                length = request.getHeader("Content-Length");
+            } catch (NumberFormatException e) {
+                length = -1L;
+            }
+            if(length != null && length < 0) {
+                return sendError(HttpStatus.BAD_REQUEST_400);
+            }
+            if(length != null && length > MAX_MESSAGE_SIZE) {
+                return sendError(HttpStatus.REQUEST_ENTITY_TOO_LARGE_413);
+            }
+            if(length == null || length == 0) {
+                state = State.END;
+            } else if(length > BODY_STREAM_THRESHOLD) {
+                bodyCounter = length;
+                state = State.STREAM;
+                return startStream();
+            } else {
+                body = new byte[length.intValue()];
+                bodyRead = 0;
+                state = State.BODY;
+            }
+            return true;
+        }
+
+        private boolean startStream() {
+            bodyStream = new RequestBodyStream(BODY_STREAM_THRESHOLD, resumeTask, selectorThread);
+            request.withBodyStream(bodyStream);
+            return dispatch();
+        }
+
+        /**
+         * Pass <code>count</code> bytes from buffer's position to the body stream
+         *
+         * @return <code>false</code> - socket reading must be suspended
+         */
+        private boolean writeBody(int count) {
+            ByteBuffer data = buffer.duplicate();
+            data.limit(data.position() + count);
+            buffer.position(data.limit());
+            return bodyStream.write(data);
+        }
+
+        private void finishBody() {
+            bodyStream.finish();
+            bodyStream = null;
+            bodyCounter = 0;
+            state = State.HEADERS;
+        }
+
+        /**
+         * Pass current request to the handler. Reading is suspended when too many requests wait for their responses.
+         * If handler fails, request gets <code>500</code> response, so following pipelined responses are not blocked by its slot
+         *
+         * @return <code>false</code> - socket must be closed
+         */
+        private boolean dispatch() {
+            statistics.newRequest();
+            Request.Builder request = this.request;
+            this.request = null;
+            headerDeadline = 0;
+            boolean full;
+            synchronized (responseLock) {
+                responses.add(PendingResponse.create(request));
+                full = responses.size() >= MAX_PIPELINED_REQUESTS;
+            }
+            if(full)
+                suspend();
+            try {
+                requestHandler.handleRequest(request, executorPool, this);
+            } catch (CloseSocketException e) {
+                return false;
+            } catch (Exception e) {
+                e.printStackTrace();
+                Response response = Response.getResponse();
+                response.respond(HttpStatus.INTERNAL_SERVER_ERROR_500);
+                send(request, response);
             }
             return true;
         }
 
         public void flushRemainingData() {
-            int size = buffer.position();
-            int off = 0;
-            while(size > 0) {
-                buffer.position(off);
-                if(!process(size))
+            while(buffer.hasRemaining()) {
+                if(!process())
                     return;
-                size -= buffer.position();
-                off += buffer.position();
             }
         }
 
         @Override
         public void send(Request request, Response response) {
+            if(response.isStreamed()) {
+                ((SessionResponseStream) response.getStream()).release();
+                return;
+            }
             if(!socket.isOpen()) {
                 System.err.println("Socket closed! Ignoring response...");
                 return;
             }
 
-            sendInternal(response);
+            complete(request, response.toByteBuffers(), !response.isUpgraded());
 
             if(response.isUpgraded()) {
                 if(!addons.contains(response.getUpgrade())) {
@@ -543,9 +1241,6 @@ public final class SelectorContextImpl implements SelectorContext {
                 this.addOnSocketHandler = handler;
                 this.addOn = addOn;
                 handler.init(this);
-            } else {
-                if(request instanceof Request.Builder)
-                    Request.Builder.delete((Request.Builder) request);
             }
 
             statistics.addResponseTimeAvg(System.currentTimeMillis() - response.getCreationTime());
@@ -555,17 +1250,248 @@ public final class SelectorContextImpl implements SelectorContext {
 
         }
 
+        @Nonnull
+        @Override
+        public ResponseStream stream(Request request, Response response) throws IOException {
+            if(Thread.currentThread() == selectorThread)//Stream waits until selector thread sends its data
+                throw new IllegalStateException("Response can't be streamed from selector thread");
+            SocketChannel socket = this.socket;
+            if(socket == null || !socket.isOpen())
+                throw new IOException("Connection closed");
+
+            boolean chunked = false;
+            boolean closeConnection = false;
+            if(!response.isContentLengthSet()) {
+                if(request.getHttpVersion() == HttpVersion.HTTP_1_1) {
+                    response.setChunked();
+                    chunked = true;
+                } else {
+                    response.setCloseDelimited();
+                    closeConnection = true;
+                }
+            }
+            awaitTurn(request, socket);
+            ByteBuffer[] data = response.toByteBuffers();
+            SessionResponseStream stream = new SessionResponseStream(this, socket, socketManager, request, response, chunked, closeConnection);
+            stream.send(new ByteBuffer[]{data[0]});
+            ByteBuffer body = data[1];
+            if(body.hasRemaining())
+                stream.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            return stream;
+        }
+
+        /**
+         * Finish streamed response after both {@link #send(Request, Response)} call and stream closing
+         */
+        private void finishStream(SessionResponseStream stream) {
+            Response response = stream.response;
+            Request request = stream.request;
+            complete(request, null, false);
+            statistics.addResponseTimeAvg(System.currentTimeMillis() - response.getCreationTime());
+            if(response.getResponseCode() > 499 && response.getResponseCode() < 600)
+                statistics.newError();
+            if(stream.closeConnection && stream.socket.isOpen())
+                close();
+            if(request instanceof Request.Builder)
+                Request.Builder.delete((Request.Builder) request);
+            Response.delete(response);
+        }
+
+        /**
+         * Wait until all previous responses are sent
+         *
+         * @throws IOException if connection is closed
+         */
+        private void awaitTurn(Request request, SocketChannel socket) throws IOException {
+            synchronized (responseLock) {
+                while(socket.isOpen()) {
+                    PendingResponse first = responses.peek();
+                    if(first == null || first.request == request)
+                        return;
+                    boolean found = false;
+                    for(PendingResponse pendingResponse : responses) {
+                        if(pendingResponse.request == request) {
+                            found = true;
+                            break;
+                        }
+                    }
+                    if(!found)//Request was not dispatched by this session
+                        return;
+                    try {
+                        responseLock.wait(1000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                throw new IOException("Connection closed");
+            }
+        }
+
+        /**
+         * Set request's response data and write all ready responses from the head of the queue in one gathering write
+         *
+         * @param data    <code>null</code> - streamed response is finished
+         * @param release delete request after its response is written
+         */
+        private void complete(Request request, @Nullable ByteBuffer[] data, boolean release) {
+            synchronized (responseLock) {
+                if(socket == null) {
+                    if(release)
+                        deleteRequest(request);
+                    return;
+                }
+                PendingResponse pendingResponse = null;
+                for(PendingResponse response : responses) {
+                    if(response.request == request) {
+                        pendingResponse = response;
+                        break;
+                    }
+                }
+                if(pendingResponse == null) {//Request was not dispatched by this session
+                    if(data != null)
+                        writeResponse(data);
+                    if(release)
+                        deleteRequest(request);
+                    return;
+                }
+                if(data == null) {
+                    responses.remove(pendingResponse);
+                    PendingResponse.recycle(pendingResponse);
+                } else {
+                    pendingResponse.data = data;
+                    pendingResponse.release = release;
+                }
+
+                ByteBuffer[] batch = null;
+                boolean close = false;
+                PendingResponse first;
+                while((first = responses.peek()) != null && first.data != null) {
+                    batch = batch == null ? first.data : concat(batch, first.data);
+                    close |= first.close;
+                    responses.poll();
+                    if(first.release)
+                        deleteRequest(first.request);
+                    PendingResponse.recycle(first);
+                }
+                if(batch != null)
+                    writeResponse(batch);
+                if(close)
+                    closeAfterWrite();
+                if(suspended && responses.size() < MAX_PIPELINED_REQUESTS)
+                    scheduleResume();
+                responseLock.notifyAll();
+            }
+        }
+
+        private static ByteBuffer[] concat(ByteBuffer[] first, ByteBuffer[] second) {
+            ByteBuffer[] ret = new ByteBuffer[first.length + second.length];
+            System.arraycopy(first, 0, ret, 0, first.length);
+            System.arraycopy(second, 0, ret, first.length, second.length);
+            return ret;
+        }
+
+        private static void deleteRequest(Request request) {
+            if(request instanceof Request.Builder)
+                Request.Builder.delete((Request.Builder) request);
+        }
+
+        /**
+         * Wait until all data of the session is written to the socket
+         *
+         * @throws IOException if connection is closed
+         */
+        private void awaitWrite(SocketChannel socket) throws IOException {
+            synchronized (writeLock) {
+                waitPendingWrite(socket);
+            }
+        }
+
+        /**
+         * Must be called under {@link #writeLock}
+         */
+        private void waitPendingWrite(SocketChannel socket) throws IOException {
+            while(pendingWrite != null && socket.isOpen()) {
+                try {
+                    writeLock.wait(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if(!socket.isOpen())
+                throw new IOException("Connection closed");
+        }
+
+        /**
+         * Send file region directly from the page cache to the plain socket. Rest of the region, which socket can't accept now,
+         * is sent by selector thread
+         */
+        private void transferFile(SocketChannel socket, FileChannel file, long position, long count) throws IOException {
+            synchronized (writeLock) {
+                waitPendingWrite(socket);
+                while(count > 0) {
+                    long sent = file.transferTo(position, count, socket);
+                    if(sent == 0) {
+                        pendingWrite = DelayedWrite.create(file, position, count, socket, this);
+                        scheduleFlush();
+                        return;
+                    }
+                    position += sent;
+                    count -= sent;
+                }
+            }
+        }
+
         protected void sendInternalServerError() {
+            sendError(HttpStatus.INTERNAL_SERVER_ERROR_500);
+        }
+
+        /**
+         * Send error, which closes the connection. If previous responses are not sent yet, error is queued after them and connection
+         * is closed when it is written
+         *
+         * @return <code>false</code> - error is sent and socket must be closed now, <code>true</code> - error is queued, client data must be ignored
+         */
+        protected boolean sendError(HttpStatus status) {
             Response r = Response.getResponse();
-            r.respond(HttpStatus.INTERNAL_SERVER_ERROR_500);
+            r.respond(status);
+            synchronized (responseLock) {
+                if(!responses.isEmpty()) {
+                    PendingResponse error = PendingResponse.create(null);
+                    error.data = r.toByteBuffers();
+                    error.close = true;
+                    responses.add(error);
+                    closing = true;
+                    Response.delete(r);
+                    return true;
+                }
+            }
             sendInternal(r);
             Response.delete(r);
+            return false;
+        }
+
+        /**
+         * Close the connection after all written data is sent
+         */
+        private void closeAfterWrite() {
+            synchronized (writeLock) {
+                if(pendingWrite != null) {
+                    closeAfterWrite = true;
+                    return;
+                }
+            }
+            close();
         }
 
         protected void sendInternal(Response response) {
-            byte[] data = response.toByteArray();
+            writeResponse(response.toByteBuffers());
+        }
+
+        private void writeResponse(ByteBuffer[] data) {
             try {
-                socketManager.write(socket, ByteBuffer.wrap(data), this);
+                socketManager.write(socket, data, this);
             } catch (CloseSocketException e) {
                 close();
             } catch (IOException e) {
@@ -573,47 +1499,53 @@ public final class SelectorContextImpl implements SelectorContext {
             }
         }
 
-        private boolean incrementAndCheckMessageSize(int delta) {
-            if(addOnSocketHandler != null)
-                return true;
-
-            messageSize += delta;
-            if(messageSize > MAX_MESSAGE_SIZE) {
-                Response response = Response.getResponse();
-                response.respond(HttpStatus.REQUEST_ENTITY_TOO_LARGE_413);
-                sendInternal(response);
-                Response.delete(response);
-                return false;
-            }
-            return true;
+        @Override
+        public void write(SocketChannel socketChannel, ByteBuffer byteBuffer) {
+            write(socketChannel, new ByteBuffer[]{byteBuffer});
         }
 
         @Override
-        public void write(SocketChannel socketChannel, ByteBuffer byteBuffer) {
-            while(byteBuffer.remaining() > 0) {
-                try {
-                    if(socketChannel.write(byteBuffer) == 0) {
-                        socketChannel.register(writeSelector, SelectionKey.OP_WRITE, DelayedWrite.create(byteBuffer.duplicate(), socket));
+        public void write(SocketChannel socketChannel, ByteBuffer[] byteBuffers) {
+            synchronized (writeLock) {
+                if(pendingWrite != null) {
+                    pendingWrite.append(byteBuffers);
+                    return;
+                }
+                while(hasRemaining(byteBuffers)) {
+                    try {
+                        if(socketChannel.write(byteBuffers) == 0) {
+                            ByteBuffer[] remaining = new ByteBuffer[byteBuffers.length];
+                            for(int i = 0; i < byteBuffers.length; i++)
+                                remaining[i] = byteBuffers[i].duplicate();
+                            pendingWrite = DelayedWrite.create(remaining, socketChannel, this);
+                            scheduleFlush();
+                            return;
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
                         return;
                     }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    return;
                 }
             }
         }
 
         enum State {
             /**
-             * Empty lines
+             * Request line and headers, handled by {@link HttpRequestParser}
              */
-            EMPTY,
+            HEADERS,
             /**
-             * First line
+             * Small body with known length, buffered before dispatch
              */
-            FIRST_LINE,
-            HEADERS,
             BODY,
+            /**
+             * Large body with known length, streamed to dispatched request
+             */
+            STREAM,
+            /**
+             * Chunked body, streamed to dispatched request
+             */
+            CHUNKED,
             END
         }
     }
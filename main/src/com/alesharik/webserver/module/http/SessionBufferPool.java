@@ -0,0 +1,113 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http;
+
+import org.jctools.queues.atomic.MpscLinkedAtomicQueue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of heap chunks for session data, which outlives the shared read buffer. Chunks are cut from large slabs, so idle sessions don't hold any memory.
+ * Chunks must be acquired by selector thread and can be released by any thread. Pool keeps at most {@link #MAX_FREE_CHUNKS} free chunks,
+ * other released chunks are dropped, and slab is collected by GC when all its chunks are dropped
+ */
+@ThreadSafe
+final class SessionBufferPool {
+    static final int CHUNK_SIZE = 4 * 1024;
+    static final int CHUNKS_PER_SLAB = 64;
+    static final int MAX_FREE_CHUNKS;
+
+    static {
+        MAX_FREE_CHUNKS = Integer.parseInt(System.getProperty("module.http.SESSION_POOL_MAX_FREE_CHUNKS", String.valueOf(CHUNKS_PER_SLAB * 16)));
+    }
+
+    private final MpscLinkedAtomicQueue<ByteBuffer> free = new MpscLinkedAtomicQueue<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+    private final HttpServerModuleImpl.SessionPoolStatisticsImpl statistics;
+    private final int maxFreeChunks;
+
+    SessionBufferPool(HttpServerModuleImpl.SessionPoolStatisticsImpl statistics) {
+        this(statistics, MAX_FREE_CHUNKS);
+    }
+
+    /**
+     * @param maxFreeChunks max count of free chunks, kept by this pool
+     */
+    SessionBufferPool(HttpServerModuleImpl.SessionPoolStatisticsImpl statistics, int maxFreeChunks) {
+        this.statistics = statistics;
+        this.maxFreeChunks = maxFreeChunks;
+    }
+
+    /**
+     * Copy data from buffer's position to the limit. Data larger than a chunk is copied into not pooled buffer
+     *
+     * @return flipped buffer with data, must be returned with {@link #release(ByteBuffer)}
+     */
+    @Nonnull
+    public ByteBuffer copy(@Nonnull ByteBuffer data) {
+        ByteBuffer chunk;
+        if(data.remaining() > CHUNK_SIZE)
+            chunk = ByteBuffer.allocate(data.remaining());
+        else {
+            chunk = free.poll();
+            if(chunk == null)
+                chunk = allocateSlab();
+            else {
+                freeCount.decrementAndGet();
+                statistics.freeChunks.decrementAndGet();
+            }
+            statistics.usedChunks.incrementAndGet();
+        }
+        chunk.put(data);
+        chunk.flip();
+        return chunk;
+    }
+
+    public void release(@Nonnull ByteBuffer chunk) {
+        if(chunk.capacity() != CHUNK_SIZE)//Not pooled
+            return;
+        statistics.usedChunks.decrementAndGet();
+        if(freeCount.incrementAndGet() > maxFreeChunks) {
+            freeCount.decrementAndGet();
+            statistics.droppedChunks.incrementAndGet();
+            return;
+        }
+        chunk.clear();
+        free.add(chunk);
+        statistics.freeChunks.incrementAndGet();
+    }
+
+    private ByteBuffer allocateSlab() {
+        ByteBuffer slab = ByteBuffer.allocate(CHUNK_SIZE * CHUNKS_PER_SLAB);
+        for(int i = 1; i < CHUNKS_PER_SLAB; i++)
+            free.add(slice(slab, i));
+        freeCount.addAndGet(CHUNKS_PER_SLAB - 1);
+        statistics.freeChunks.addAndGet(CHUNKS_PER_SLAB - 1);
+        statistics.slabs.incrementAndGet();
+        return slice(slab, 0);
+    }
+
+    private static ByteBuffer slice(ByteBuffer slab, int index) {
+        slab.limit((index + 1) * CHUNK_SIZE);
+        slab.position(index * CHUNK_SIZE);
+        return slab.slice();
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http;
+
+import com.alesharik.webserver.module.http.bundle.ErrorHandler;
+import com.alesharik.webserver.module.http.bundle.HttpHandlerBundle;
+import com.alesharik.webserver.module.http.bundle.Validator;
+import com.alesharik.webserver.module.http.bundle.processor.HttpProcessor;
+import com.alesharik.webserver.module.http.http.HttpStatus;
+import com.alesharik.webserver.module.http.http.Request;
+import com.alesharik.webserver.module.http.http.Response;
+import com.alesharik.webserver.module.http.http.ResponseStream;
+import com.alesharik.webserver.module.http.server.BatchingRunnableTask;
+import com.alesharik.webserver.module.http.server.CloseSocketException;
+import com.alesharik.webserver.module.http.server.ExecutorPool;
+import com.alesharik.webserver.module.http.server.impl.handler.DefaultHttpRequestHandler;
+import com.alesharik.webserver.module.http.server.socket.ServerSocketWrapper;
+import com.alesharik.webserver.module.http.server.socket.SocketWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class SelectorContextImplTest {
+    /**
+     * Default <code>module.http.MAX_PIPELINED_REQUESTS</code>
+     */
+    private static final int MAX_PIPELINED_REQUESTS = 16;
+    /**
+     * Streamed body size, larger than socket buffers
+     */
+    private static final int STREAM_SIZE = 8 * 1024 * 1024;
+
+    private final List<HttpHandlerBundle> bundles = new CopyOnWriteArrayList<>();
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private ServerSocketChannel server;
+    private ExecutorService workers;
+    private SelectorContextImpl context;
+    private Thread selectorThread;
+    private volatile boolean running = true;
+    private Socket client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        workers = Executors.newCachedThreadPool();
+
+        ExecutorPool executorPool = mock(ExecutorPool.class);
+        doAnswer(invocation -> {
+            workers.execute(invocation.<BatchingRunnableTask>getArgument(0));
+            return null;
+        }).when(executorPool).executeWorkerTask(any());
+        doAnswer(invocation -> {//Inline, like thread-per-core pool
+            invocation.<BatchingRunnableTask>getArgument(0).run();
+            return null;
+        }).when(executorPool).executeNonBlockingTask(any());
+
+        bundles.add(bundle(request -> request.getContextPath().startsWith("/slow"), (request, response) -> {
+            sleep(300);
+            reply(request.getContextPath(), response);
+        }));
+        bundles.add(bundle(request -> request.getContextPath().startsWith("/fast"), (request, response) -> reply(request.getContextPath(), response)));
+        bundles.add(bundle(request -> request.getContextPath().startsWith("/gate"), (request, response) -> {
+            handled.add(request.getContextPath());
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            reply(request.getContextPath(), response);
+        }));
+        bundles.add(bundle(request -> request.getContextPath().startsWith("/stream"), SelectorContextImplTest::stream));
+        bundles.add(new NonBlockingBundle(request -> request.getContextPath().startsWith("/inline/stream"), SelectorContextImplTest::stream));
+        bundles.add(new NonBlockingBundle(request -> request.getContextPath().startsWith("/inline/echo"), (request, response) -> reply(new String(request.getRawBody(), StandardCharsets.ISO_8859_1), response)));
+        bundles.add(new NonBlockingBundle(request -> request.getContextPath().startsWith("/inline"), (request, response) -> reply(request.getContextPath(), response)));
+        bundles.add(bundle(request -> {
+            if(request.getContextPath().startsWith("/broken"))
+                throw new IllegalStateException("Test");
+            return false;
+        }, (request, response) -> reply("never", response)));
+
+        context = new SelectorContextImpl(new HttpServerModuleImpl.HttpServerStatisticsImpl(), new HttpServerModuleImpl.SessionPoolStatisticsImpl(),
+                new DefaultHttpRequestHandler(bundles), executorPool, Collections.emptyList());
+        selectorThread = new Thread(() -> {
+            while(running)
+                context.iteration();
+        });
+        selectorThread.start();
+
+        client = new Socket(InetAddress.getLoopbackAddress(), server.socket().getLocalPort());
+        client.setSoTimeout(5000);
+        SocketChannel channel = server.accept();
+        channel.configureBlocking(false);
+        channel.socket().setSendBufferSize(16 * 1024);
+        context.registerSocket(channel, channel, new PlainSocketManager());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        gate.countDown();
+        running = false;
+        context.wakeup();
+        selectorThread.join(5000);
+        context.close();
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void pipelinedResponsesKeepRequestOrder() throws Exception {
+        send(get("/slow/1") + get("/fast/2") + get("/fast/3"));
+        assertEquals("200 /slow/1", readResponse());
+        assertEquals("200 /fast/2", readResponse());
+        assertEquals("200 /fast/3", readResponse());
+    }
+
+    @Test
+    public void requestAfterCompletedPendingResponse() throws Exception {
+        send(get("/slow/1") + get("/fast/2"));
+        Thread.sleep(100);//Response 2 is ready, but waits for response 1
+        send(get("/fast/3"));
+        assertEquals("200 /slow/1", readResponse());
+        assertEquals("200 /fast/2", readResponse());
+        assertEquals("200 /fast/3", readResponse());
+    }
+
+    @Test
+    public void unknownRouteDoesNotBlockPipeline() throws Exception {
+        send(get("/slow/1") + get("/missing") + get("/fast/2"));
+        assertEquals("200 /slow/1", readResponse());
+        assertEquals("404 ", readResponse());
+        assertEquals("200 /fast/2", readResponse());
+    }
+
+    @Test
+    public void failedDispatchDoesNotBlockPipeline() throws Exception {
+        send(get("/fast/1") + get("/broken") + get("/fast/2"));
+        assertEquals("200 /fast/1", readResponse());
+        assertEquals("500 ", readResponse());
+        assertEquals("200 /fast/2", readResponse());
+    }
+
+    @Test
+    public void readingIsSuspendedUntilResponsesAreSent() throws Exception {
+        StringBuilder requests = new StringBuilder();
+        for(int i = 0; i < MAX_PIPELINED_REQUESTS; i++)
+            requests.append(get("/gate/" + i));
+        send(requests.toString());
+        awaitHandled(MAX_PIPELINED_REQUESTS);
+
+        send(get("/gate/" + MAX_PIPELINED_REQUESTS));
+        Thread.sleep(300);
+        assertEquals(MAX_PIPELINED_REQUESTS, handled.size());
+
+        gate.countDown();
+        for(int i = 0; i <= MAX_PIPELINED_REQUESTS; i++)
+            assertEquals("200 /gate/" + i, readResponse());
+        assertEquals(MAX_PIPELINED_REQUESTS + 1, handled.size());
+    }
+
+    @Test
+    public void errorIsQueuedAfterPendingResponses() throws Exception {
+        send(get("/gate/1") + get("/fast/2") + "BROKEN\r\n\r\n" + get("/fast/3"));
+        awaitHandled(1);
+        Thread.sleep(100);
+
+        gate.countDown();
+        assertEquals("200 /gate/1", readResponse());
+        assertEquals("200 /fast/2", readResponse());
+        assertEquals("400 ", readResponse());
+        assertEquals(-1, client.getInputStream().read());
+    }
+
+    @Test
+    public void streamLargerThanSocketBuffer() throws Exception {
+        send(get("/stream") + get("/fast/1"));
+        String response = readResponse();
+        assertEquals(4 + STREAM_SIZE, response.length());
+        assertTrue(response.startsWith("200 aaaa"));
+        assertEquals("200 /fast/1", readResponse());
+    }
+
+    @Test
+    public void streamFromSelectorThreadFails() throws Exception {
+        send(get("/inline/stream") + get("/inline/1") + get("/fast/2"));
+        assertEquals("500 ", readResponse());
+        assertEquals("200 /inline/1", readResponse());
+        assertEquals("200 /fast/2", readResponse());
+    }
+
+    @Test
+    public void streamedBodyOfNonBlockingBundleIsReadInWorker() throws Exception {
+        send("POST /inline/echo HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n");
+        Thread.sleep(100);//Request is dispatched before its body is received
+        send("6\r\n world\r\n0\r\n\r\n" + get("/inline/1"));
+        assertEquals("200 hello world", readResponse());
+        assertEquals("200 /inline/1", readResponse());
+    }
+
+    private void awaitHandled(int count) throws InterruptedException {
+        for(int i = 0; i < 500 && handled.size() < count; i++)
+            Thread.sleep(10);
+        assertEquals(count, handled.size());
+    }
+
+    private static String get(String path) {
+        return "GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n";
+    }
+
+    private void send(String data) throws IOException {
+        client.getOutputStream().write(data.getBytes(StandardCharsets.ISO_8859_1));
+        client.getOutputStream().flush();
+    }
+
+    /**
+     * Read one response with Content-Length body
+     *
+     * @return status code and body, separated by space
+     */
+    private String readResponse() throws IOException {
+        InputStream in = client.getInputStream();
+        String statusLine = readLine(in);
+        int length = 0;
+        String line;
+        while(!(line = readLine(in)).isEmpty()) {
+            if(line.toLowerCase().startsWith("content-length:"))
+                length = Integer.parseInt(line.substring("content-length:".length()).trim());
+        }
+        byte[] body = new byte[length];
+        int read = 0;
+        while(read < length) {
+            int count = in.read(body, read, length - read);
+            if(count == -1)
+                throw new IOException("Connection closed");
+            read += count;
+        }
+        return statusLine.split(" ")[1] + ' ' + new String(body, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while((b = in.read()) != '\n') {
+            if(b == -1)
+                throw new IOException("Connection closed");
+            if(b != '\r')
+                line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static void reply(String body, Response response) {
+        response.respond(HttpStatus.OK_200);
+        response.getOutputBuffer().write(body.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void stream(Request request, Response response) {
+        response.respond(HttpStatus.OK_200);
+        response.setContentLength(STREAM_SIZE);
+        byte[] chunk = new byte[64 * 1024];
+        Arrays.fill(chunk, (byte) 'a');
+        try(ResponseStream stream = response.stream()) {
+            for(int i = 0; i < STREAM_SIZE / chunk.length; i++)
+                stream.write(chunk);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static HttpHandlerBundle bundle(Validator validator, HttpProcessor processor) {
+        return new TestBundle(validator, processor);
+    }
+
+    private static class TestBundle implements HttpHandlerBundle {
+        private final Validator validator;
+        private final HttpProcessor processor;
+
+        TestBundle(Validator validator, HttpProcessor processor) {
+            this.validator = validator;
+            this.processor = processor;
+        }
+
+        @Nonnull
+        @Override
+        public Validator getValidator() {
+            return validator;
+        }
+
+        @Nonnull
+        @Override
+        public ErrorHandler getErrorHandler() {
+            return (e, request, response, pool) -> response.respond(HttpStatus.INTERNAL_SERVER_ERROR_500);
+        }
+
+        @Nonnull
+        @Override
+        public HttpProcessor getProcessor() {
+            return processor;
+        }
+    }
+
+    private static final class NonBlockingBundle extends TestBundle {
+        NonBlockingBundle(Validator validator, HttpProcessor processor) {
+            super(validator, processor);
+        }
+
+        @Override
+        public boolean isNonBlocking() {
+            return true;
+        }
+    }
+
+    private static final class PlainSocketManager implements ServerSocketWrapper.SocketManager {
+        @Override
+        public void init(SocketChannel socketChannel) {
+        }
+
+        @Override
+        public void close(SocketChannel socketChannel) {
+        }
+
+        @Override
+        public void read(SocketChannel socketChannel, ByteBuffer byteBuffer) throws IOException {
+            if(socketChannel.read(byteBuffer) == -1)
+                throw new CloseSocketException();
+        }
+
+        @Override
+        public void write(SocketChannel socketChannel, ByteBuffer data, SocketWriter writer) {
+            writer.write(socketChannel, data);
+        }
+
+        @Override
+        public void write(SocketChannel socketChannel, ByteBuffer[] data, SocketWriter writer) {
+            writer.write(socketChannel, data);
+        }
+    }
+}
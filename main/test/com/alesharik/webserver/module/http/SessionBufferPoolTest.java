@@ -0,0 +1,93 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.module.http;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SessionBufferPoolTest {
+    private HttpServerModuleImpl.SessionPoolStatisticsImpl statistics;
+    private SessionBufferPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        statistics = new HttpServerModuleImpl.SessionPoolStatisticsImpl();
+        pool = new SessionBufferPool(statistics);
+    }
+
+    @Test
+    public void copyConsumesData() throws Exception {
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{1, 2, 3, 4});
+        data.position(1);
+        ByteBuffer copy = pool.copy(data);
+        assertEquals(0, data.remaining());
+        assertEquals(3, copy.remaining());
+        assertEquals(2, copy.get());
+
+        assertEquals(1, statistics.getSlabCount());
+        assertEquals(1, statistics.getUsedChunkCount());
+        assertEquals(SessionBufferPool.CHUNKS_PER_SLAB - 1, statistics.getFreeChunkCount());
+    }
+
+    @Test
+    public void releasedChunkIsReused() throws Exception {
+        ByteBuffer first = pool.copy(ByteBuffer.wrap(new byte[10]));
+        pool.release(first);
+        assertEquals(0, statistics.getUsedChunkCount());
+        for(int i = 0; i < SessionBufferPool.CHUNKS_PER_SLAB - 1; i++)
+            pool.copy(ByteBuffer.wrap(new byte[1]));
+        assertSame(first, pool.copy(ByteBuffer.wrap(new byte[1])));
+        assertEquals(1, statistics.getSlabCount());
+    }
+
+    @Test
+    public void largeDataIsNotPooled() throws Exception {
+        ByteBuffer copy = pool.copy(ByteBuffer.wrap(new byte[SessionBufferPool.CHUNK_SIZE + 1]));
+        assertEquals(SessionBufferPool.CHUNK_SIZE + 1, copy.remaining());
+        pool.release(copy);
+        assertEquals(0, statistics.getSlabCount());
+        assertEquals(0, statistics.getUsedChunkCount());
+    }
+
+    @Test
+    public void extraFreeChunksAreDropped() throws Exception {
+        pool = new SessionBufferPool(statistics, SessionBufferPool.CHUNKS_PER_SLAB);
+        ByteBuffer[] chunks = new ByteBuffer[SessionBufferPool.CHUNKS_PER_SLAB * 2];
+        for(int i = 0; i < chunks.length; i++)
+            chunks[i] = pool.copy(ByteBuffer.wrap(new byte[1]));
+        assertEquals(2, statistics.getSlabCount());
+        assertEquals(0, statistics.getFreeChunkCount());
+
+        for(ByteBuffer chunk : chunks)
+            pool.release(chunk);
+        assertEquals(0, statistics.getUsedChunkCount());
+        assertEquals(SessionBufferPool.CHUNKS_PER_SLAB, statistics.getFreeChunkCount());
+        assertEquals(SessionBufferPool.CHUNKS_PER_SLAB, statistics.getDroppedChunkCount());
+        assertEquals(SessionBufferPool.CHUNKS_PER_SLAB * SessionBufferPool.CHUNK_SIZE, statistics.getSlabMemory());
+
+        for(int i = 0; i < SessionBufferPool.CHUNKS_PER_SLAB; i++)
+            pool.copy(ByteBuffer.wrap(new byte[1]));
+        assertEquals(2, statistics.getSlabCount());
+        assertEquals(0, statistics.getFreeChunkCount());
+    }
+}
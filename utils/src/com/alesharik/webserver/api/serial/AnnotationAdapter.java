@@ -62,6 +62,17 @@ public @interface AnnotationAdapter {
          */
         double getVersion(@Nonnull Class<?> clazz);
 
+        /**
+         * Check if class should be serialized using {@link SerialFormat#COMPACT} by default
+         * @param clazz the class
+         * @return <code>true</code> - class prefers compact format, otherwise <code>false</code>
+         * @see Version#compact()
+         */
+        default boolean isCompact(@Nonnull Class<?> clazz) {
+            Version version = clazz.getAnnotation(Version.class);
+            return version != null && version.compact();
+        }
+
         /**
          * Check if field has 'version when it was created' meta
          * @param field the field
@@ -0,0 +1,400 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.api.serial;
+
+import com.alesharik.webserver.api.cache.object.CachedObjectFactory;
+import com.alesharik.webserver.api.cache.object.SmartCachedObjectFactory;
+import com.alesharik.webserver.internals.UnsafeAccess;
+
+import javax.annotation.Nonnull;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@link IOStream} over {@link ByteBuffer}. It uses byte order of {@link IOStream.Factory} streams, so data is compatible with them.
+ * Wrapped buffers are never reallocated, allocated buffers grow on demand
+ */
+final class ByteBufferIOStream implements IOStream {
+    static final ByteOrder ORDER = UnsafeAccess.INSTANCE != null ? ByteOrder.nativeOrder() : ByteOrder.BIG_ENDIAN;
+    private static final int INITIAL_CAPACITY = 256;
+    /**
+     * Bigger own buffers are not kept by pooled streams
+     */
+    private static final int MAX_KEPT_CAPACITY = 64 * 1024;
+    private static final CachedObjectFactory<ByteBufferIOStream> factory = new SmartCachedObjectFactory<>(ByteBufferIOStream::new);
+
+    private ByteBuffer buffer;
+    private ByteBuffer own;
+    private boolean growable;
+    /**
+     * Buffer position, which is used as zero for read and write positions
+     */
+    private int start;
+
+    /**
+     * Create stream over buffer's data from position to limit. Buffer's position is not changed
+     */
+    @Nonnull
+    static ByteBufferIOStream wrap(@Nonnull ByteBuffer buffer) {
+        ByteBufferIOStream stream = factory.getInstance();
+        stream.buffer = buffer.duplicate().order(ORDER);
+        stream.start = buffer.position();
+        stream.growable = false;
+        return stream;
+    }
+
+    /**
+     * Create stream over own heap buffer with at least given capacity
+     */
+    @Nonnull
+    static ByteBufferIOStream allocate(int capacity) {
+        ByteBufferIOStream stream = factory.getInstance();
+        if(stream.own == null || stream.own.capacity() < capacity)
+            stream.own = ByteBuffer.allocate(Math.max(capacity, INITIAL_CAPACITY)).order(ORDER);
+        stream.own.clear();
+        stream.buffer = stream.own;
+        stream.start = 0;
+        stream.growable = true;
+        return stream;
+    }
+
+    static void release(@Nonnull ByteBufferIOStream stream) {
+        factory.putInstance(stream);
+    }
+
+    /**
+     * Return underlying buffer. Own buffer can be replaced by writes
+     */
+    @Nonnull
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public void recycle() {
+        buffer = null;
+        if(own != null && own.capacity() > MAX_KEPT_CAPACITY)
+            own = null;
+    }
+
+    private void ensureWrite(int size) {
+        if(buffer.remaining() >= size)
+            return;
+        if(!growable)
+            throw new BufferOverflowException();
+        ByteBuffer next = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size)).order(ORDER);
+        buffer.flip();
+        next.put(buffer);
+        own = buffer = next;
+    }
+
+    private void ensureRead(int size) {
+        if(buffer.remaining() < size)
+            throw new DataUnderflowException("Cannot read " + size + " bytes!");
+    }
+
+    @Override
+    public void write(byte[] data) {
+        ensureWrite(data.length);
+        buffer.put(data);
+    }
+
+    @Override
+    public void write(int i) {
+        ensureWrite(4);
+        buffer.putInt(i);
+    }
+
+    @Override
+    public void write(Integer i) {
+        write(i.intValue());
+    }
+
+    @Override
+    public void write(long l) {
+        ensureWrite(8);
+        buffer.putLong(l);
+    }
+
+    @Override
+    public void write(Long l) {
+        write(l.longValue());
+    }
+
+    @Override
+    public void write(short s) {
+        ensureWrite(2);
+        buffer.putShort(s);
+    }
+
+    @Override
+    public void write(Short s) {
+        write(s.shortValue());
+    }
+
+    @Override
+    public void write(byte b) {
+        ensureWrite(1);
+        buffer.put(b);
+    }
+
+    @Override
+    public void write(Byte b) {
+        write(b.byteValue());
+    }
+
+    @Override
+    public void write(float f) {
+        ensureWrite(4);
+        buffer.putFloat(f);
+    }
+
+    @Override
+    public void write(Float f) {
+        write(f.floatValue());
+    }
+
+    @Override
+    public void write(double d) {
+        ensureWrite(8);
+        buffer.putDouble(d);
+    }
+
+    @Override
+    public void write(Double d) {
+        write(d.doubleValue());
+    }
+
+    @Override
+    public void write(char c) {
+        ensureWrite(2);
+        buffer.putChar(c);
+    }
+
+    @Override
+    public void write(Character c) {
+        write(c.charValue());
+    }
+
+    @Override
+    public void write(boolean b) {
+        ensureWrite(1);
+        buffer.put((byte) (b ? 1 : 0));
+    }
+
+    @Override
+    public void write(Boolean b) {
+        write(b.booleanValue());
+    }
+
+    @Override
+    public void writeBigEndian(long l) {
+        write(ORDER == ByteOrder.BIG_ENDIAN ? l : Long.reverseBytes(l));
+    }
+
+    @Override
+    public void writeBigEndian(int i) {
+        write(ORDER == ByteOrder.BIG_ENDIAN ? i : Integer.reverseBytes(i));
+    }
+
+    @Override
+    public byte[] read(int size) {
+        ensureRead(size);
+        byte[] ret = new byte[size];
+        buffer.get(ret);
+        return ret;
+    }
+
+    @Override
+    public int readint() {
+        ensureRead(4);
+        return buffer.getInt();
+    }
+
+    @Override
+    public Integer readInteger() {
+        return readint();
+    }
+
+    @Override
+    public long readlong() {
+        ensureRead(8);
+        return buffer.getLong();
+    }
+
+    @Override
+    public Long readLong() {
+        return readlong();
+    }
+
+    @Override
+    public short readshort() {
+        ensureRead(2);
+        return buffer.getShort();
+    }
+
+    @Override
+    public Short readShort() {
+        return readshort();
+    }
+
+    @Override
+    public byte readbyte() {
+        ensureRead(1);
+        return buffer.get();
+    }
+
+    @Override
+    public Byte readByte() {
+        return readbyte();
+    }
+
+    @Override
+    public float readfloat() {
+        ensureRead(4);
+        return buffer.getFloat();
+    }
+
+    @Override
+    public Float readFloat() {
+        return readfloat();
+    }
+
+    @Override
+    public double readdouble() {
+        ensureRead(8);
+        return buffer.getDouble();
+    }
+
+    @Override
+    public Double readDouble() {
+        return readdouble();
+    }
+
+    @Override
+    public char readchar() {
+        ensureRead(2);
+        return buffer.getChar();
+    }
+
+    @Override
+    public Character readCharacter() {
+        return readchar();
+    }
+
+    @Override
+    public boolean readboolean() {
+        ensureRead(1);
+        return buffer.get() != 0;
+    }
+
+    @Override
+    public Boolean readBoolean() {
+        return readboolean();
+    }
+
+    @Override
+    public long readBigEndianLong() {
+        long l = readlong();
+        return ORDER == ByteOrder.BIG_ENDIAN ? l : Long.reverseBytes(l);
+    }
+
+    @Override
+    public int readBigEndianInt() {
+        int i = readint();
+        return ORDER == ByteOrder.BIG_ENDIAN ? i : Integer.reverseBytes(i);
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        byte[] ret = new byte[buffer.position() - start];
+        ByteBuffer data = buffer.duplicate();
+        data.flip();
+        data.position(start);
+        data.get(ret);
+        return ret;
+    }
+
+    @Override
+    public void reset() {
+        buffer.position(start);
+    }
+
+    @Override
+    public void reset(byte[] array) {
+        buffer = ByteBuffer.wrap(array).order(ORDER);
+        start = 0;
+        growable = false;
+    }
+
+    @Override
+    public int length() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public void resetRead() {
+        buffer.position(start);
+    }
+
+    @Override
+    public int writePosition() {
+        return buffer.position() - start;
+    }
+
+    @Override
+    public void writeAt(int position, int i) {
+        buffer.putInt(start + position, i);
+    }
+
+    /**
+     * Write one byte at given write position
+     */
+    void writeByteAt(int position, byte b) {
+        buffer.put(start + position, b);
+    }
+
+    /**
+     * Move data between given write position and current write position by <code>count</code> bytes forward
+     */
+    void shift(int position, int count) {
+        ensureWrite(count);
+        int from = start + position;
+        int length = buffer.position() - from;
+        if(buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset();
+            System.arraycopy(array, offset + from, array, offset + from + count, length);
+        } else {
+            for(int i = length - 1; i >= 0; i--)
+                buffer.put(from + count + i, buffer.get(from + i));
+        }
+        buffer.position(buffer.position() + count);
+    }
+
+    @Override
+    public int readPosition() {
+        return buffer.position() - start;
+    }
+
+    @Override
+    public void readPosition(int position) {
+        buffer.position(start + position);
+    }
+}
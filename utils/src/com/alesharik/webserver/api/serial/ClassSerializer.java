@@ -49,6 +49,14 @@ final class ClassSerializer implements Serializer {
         };
     }
 
+    @Override
+    public void serialize(Object o, IOStream stream) {
+        if(stream instanceof CompactIOStream)
+            ((CompactIOStream) stream).writeVarLong(Serial.getConversionMap().getOrCreateConversionFor((Class<?>) o));
+        else
+            stream.write(serializeDefault(o));
+    }
+
     @Override
     public Object deserialize(byte[] data) {
         return deserializeDefault(data);
@@ -73,6 +81,17 @@ final class ClassSerializer implements Serializer {
 
     }
 
+    @Override
+    public Object deserialize(IOStream stream, int length) {
+        if(!(stream instanceof CompactIOStream))
+            return deserializeDefault(stream.read(length));
+        long id = ((CompactIOStream) stream).readVarLong();
+        Class<?> conversion = Serial.getConversionMap().resolveConversion(id);
+        if(conversion == null)
+            throw new SerializationMappingNotFoundException(id);
+        return conversion;
+    }
+
     @Override
     public void deserializeDefaultIntoObject(IOStream data, Object o) {
         throw new UnsupportedOperationException("Cannot interact with Class object!");
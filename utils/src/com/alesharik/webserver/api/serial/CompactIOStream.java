@@ -0,0 +1,449 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.api.serial;
+
+import com.alesharik.webserver.api.cache.object.CachedObjectFactory;
+import com.alesharik.webserver.api.cache.object.SmartCachedObjectFactory;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link IOStream} which writes {@link SerialFormat#COMPACT} data into {@link ByteBufferIOStream}. Integers are written as LEB128
+ * varints(signed ones are zigzag-encoded), other primitives and byte arrays are written as-is. Stream holds per-message state(enum name table),
+ * so one instance must be used for whole message
+ */
+final class CompactIOStream implements IOStream {
+    private static final CachedObjectFactory<CompactIOStream> factory = new SmartCachedObjectFactory<>(CompactIOStream::new);
+
+    private ByteBufferIOStream stream;
+    /**
+     * Enum constants, which names are already written
+     */
+    private Set<Enum<?>> namedEnums;
+    /**
+     * Sender ordinal to local constant table of read enums
+     */
+    private Map<Class<?>, Enum<?>[]> enumTables;
+
+    @Nonnull
+    static CompactIOStream wrap(@Nonnull ByteBufferIOStream stream) {
+        CompactIOStream ret = factory.getInstance();
+        ret.stream = stream;
+        return ret;
+    }
+
+    /**
+     * Release this stream. Underlying stream is not released
+     */
+    static void release(@Nonnull CompactIOStream stream) {
+        factory.putInstance(stream);
+    }
+
+    @Override
+    public void recycle() {
+        stream = null;
+        if(namedEnums != null)
+            namedEnums.clear();
+        if(enumTables != null)
+            enumTables.clear();
+    }
+
+    static int varIntSize(long l) {
+        int size = 1;
+        while((l & ~0x7FL) != 0) {
+            l >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    void writeVarInt(int i) {
+        while((i & ~0x7F) != 0) {
+            stream.write((byte) ((i & 0x7F) | 0x80));
+            i >>>= 7;
+        }
+        stream.write((byte) i);
+    }
+
+    void writeVarLong(long l) {
+        while((l & ~0x7FL) != 0) {
+            stream.write((byte) ((l & 0x7F) | 0x80));
+            l >>>= 7;
+        }
+        stream.write((byte) l);
+    }
+
+    int readVarInt() {
+        int ret = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            byte b = stream.readbyte();
+            ret |= (b & 0x7F) << shift;
+            if(b >= 0)
+                return ret;
+        }
+        throw new DataOverflowException("Varint is longer than 5 bytes!");
+    }
+
+    long readVarLong() {
+        long ret = 0;
+        for(int shift = 0; shift < 70; shift += 7) {
+            byte b = stream.readbyte();
+            ret |= (b & 0x7FL) << shift;
+            if(b >= 0)
+                return ret;
+        }
+        throw new DataOverflowException("Varlong is longer than 10 bytes!");
+    }
+
+    /**
+     * Write varint length and UTF-8 string
+     */
+    void writeString(@Nonnull String s) {
+        byte[] data = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(data.length);
+        stream.write(data);
+    }
+
+    @Nonnull
+    String readString() {
+        int length = readVarInt();
+        if(length < 0 || length > stream.length())
+            throw new DataUnderflowException("Cannot read string of " + length + " bytes from " + stream.length() + " bytes!");
+        return new String(stream.read(length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write enum ordinal. Constant name is written only once per message
+     */
+    void writeEnum(@Nonnull Enum<?> e) {
+        if(namedEnums == null)
+            namedEnums = Collections.newSetFromMap(new IdentityHashMap<>());
+        if(namedEnums.add(e)) {
+            writeVarInt(e.ordinal() << 1 | 1);
+            writeString(e.name());
+        } else
+            writeVarInt(e.ordinal() << 1);
+    }
+
+    /**
+     * Read enum, written by {@link #writeEnum(Enum)}. Constants are resolved by their names, so sender can have different constant order,
+     * but sender ordinals must be less than local constant count
+     *
+     * @throws DataOverflowException if ordinal is out of local constants
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    Enum<?> readEnum(@Nonnull Class<?> clazz) {
+        int header = readVarInt();
+        int ordinal = header >>> 1;
+        if(enumTables == null)
+            enumTables = new HashMap<>();
+        Enum<?>[] table = enumTables.get(clazz);
+        int constants = table == null ? clazz.getEnumConstants().length : table.length;
+        if(ordinal >= constants)//Table size must not depend on received data
+            throw new DataOverflowException(clazz.getCanonicalName() + " constant #" + ordinal + " is out of " + constants + " constants!");
+        if((header & 1) == 1) {
+            Enum<?> e = Enum.valueOf((Class<Enum>) clazz, readString());
+            if(table == null) {
+                table = new Enum<?>[constants];
+                enumTables.put(clazz, table);
+            }
+            table[ordinal] = e;
+            return e;
+        }
+        if(table == null || table[ordinal] == null)
+            throw new DataUnderflowException("Name of " + clazz.getCanonicalName() + " constant #" + ordinal + " was not written before!");
+        return table[ordinal];
+    }
+
+    /**
+     * Write nested object as size(varint) + data chunk. Size is reserved as 1 byte, bigger sizes shift the data
+     */
+    void writeNested(Object o) {
+        int sizePosition = stream.writePosition();
+        stream.write((byte) 0);
+        Serial.write(o, this);
+        int size = stream.writePosition() - sizePosition - 1;
+        int sizeLength = varIntSize(size);
+        if(sizeLength > 1)
+            stream.shift(sizePosition + 1, sizeLength - 1);
+        for(int i = 0; i < sizeLength - 1; i++) {
+            stream.writeByteAt(sizePosition + i, (byte) ((size & 0x7F) | 0x80));
+            size >>>= 7;
+        }
+        stream.writeByteAt(sizePosition + sizeLength - 1, (byte) size);
+    }
+
+    /**
+     * Read nested object, written by {@link #writeNested(Object)}
+     */
+    Object readNested() {
+        int size = readVarInt();
+        if(size < 0 || size > stream.length())
+            throw new DataUnderflowException("Cannot read nested object of " + size + " bytes from " + stream.length() + " bytes!");
+        int end = stream.readPosition() + size;
+        Object o = Serial.read(this, size);
+        if(stream.readPosition() > end)
+            throw new DataUnderflowException("Nested object has read " + (stream.readPosition() - end) + " bytes more than its size!");
+        stream.readPosition(end);
+        return o;
+    }
+
+    @Override
+    public void write(byte[] data) {
+        stream.write(data);
+    }
+
+    @Override
+    public void write(int i) {
+        writeVarInt((i << 1) ^ (i >> 31));
+    }
+
+    @Override
+    public void write(Integer i) {
+        write(i.intValue());
+    }
+
+    @Override
+    public void write(long l) {
+        writeVarLong((l << 1) ^ (l >> 63));
+    }
+
+    @Override
+    public void write(Long l) {
+        write(l.longValue());
+    }
+
+    @Override
+    public void write(short s) {
+        write((int) s);
+    }
+
+    @Override
+    public void write(Short s) {
+        write(s.shortValue());
+    }
+
+    @Override
+    public void write(byte b) {
+        stream.write(b);
+    }
+
+    @Override
+    public void write(Byte b) {
+        stream.write(b.byteValue());
+    }
+
+    @Override
+    public void write(float f) {
+        stream.write(f);
+    }
+
+    @Override
+    public void write(Float f) {
+        stream.write(f.floatValue());
+    }
+
+    @Override
+    public void write(double d) {
+        stream.write(d);
+    }
+
+    @Override
+    public void write(Double d) {
+        stream.write(d.doubleValue());
+    }
+
+    @Override
+    public void write(char c) {
+        writeVarInt(c);
+    }
+
+    @Override
+    public void write(Character c) {
+        write(c.charValue());
+    }
+
+    @Override
+    public void write(boolean b) {
+        stream.write(b);
+    }
+
+    @Override
+    public void write(Boolean b) {
+        stream.write(b.booleanValue());
+    }
+
+    @Override
+    public void writeBigEndian(long l) {
+        stream.writeBigEndian(l);
+    }
+
+    @Override
+    public void writeBigEndian(int i) {
+        stream.writeBigEndian(i);
+    }
+
+    @Override
+    public byte[] read(int size) {
+        return stream.read(size);
+    }
+
+    @Override
+    public int readint() {
+        int i = readVarInt();
+        return (i >>> 1) ^ -(i & 1);
+    }
+
+    @Override
+    public Integer readInteger() {
+        return readint();
+    }
+
+    @Override
+    public long readlong() {
+        long l = readVarLong();
+        return (l >>> 1) ^ -(l & 1);
+    }
+
+    @Override
+    public Long readLong() {
+        return readlong();
+    }
+
+    @Override
+    public short readshort() {
+        return (short) readint();
+    }
+
+    @Override
+    public Short readShort() {
+        return readshort();
+    }
+
+    @Override
+    public byte readbyte() {
+        return stream.readbyte();
+    }
+
+    @Override
+    public Byte readByte() {
+        return stream.readbyte();
+    }
+
+    @Override
+    public float readfloat() {
+        return stream.readfloat();
+    }
+
+    @Override
+    public Float readFloat() {
+        return stream.readfloat();
+    }
+
+    @Override
+    public double readdouble() {
+        return stream.readdouble();
+    }
+
+    @Override
+    public Double readDouble() {
+        return stream.readdouble();
+    }
+
+    @Override
+    public char readchar() {
+        return (char) readVarInt();
+    }
+
+    @Override
+    public Character readCharacter() {
+        return readchar();
+    }
+
+    @Override
+    public boolean readboolean() {
+        return stream.readboolean();
+    }
+
+    @Override
+    public Boolean readBoolean() {
+        return stream.readboolean();
+    }
+
+    @Override
+    public long readBigEndianLong() {
+        return stream.readBigEndianLong();
+    }
+
+    @Override
+    public int readBigEndianInt() {
+        return stream.readBigEndianInt();
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        return stream.toByteArray();
+    }
+
+    @Override
+    public void reset() {
+        stream.reset();
+    }
+
+    @Override
+    public void reset(byte[] array) {
+        stream.reset(array);
+    }
+
+    @Override
+    public int length() {
+        return stream.length();
+    }
+
+    @Override
+    public void resetRead() {
+        stream.resetRead();
+    }
+
+    @Override
+    public int writePosition() {
+        return stream.writePosition();
+    }
+
+    @Override
+    public void writeAt(int position, int i) {
+        stream.writeAt(position, i);
+    }
+
+    @Override
+    public int readPosition() {
+        return stream.readPosition();
+    }
+
+    @Override
+    public void readPosition(int position) {
+        stream.readPosition(position);
+    }
+}
@@ -139,6 +139,47 @@ interface IOStream extends Recyclable {
 
     void resetRead();
 
+    /**
+     * Return count of written bytes
+     */
+    int writePosition();
+
+    /**
+     * Overwrite int at given write position. Used to write size before nested object data
+     */
+    void writeAt(int position, int i);
+
+    int readPosition();
+
+    void readPosition(int position);
+
+    /**
+     * Write chunk header value. Headers are always big-endian
+     */
+    default void writeBigEndian(long l) {
+        for(int shift = 56; shift >= 0; shift -= 8)
+            write((byte) (l >>> shift));
+    }
+
+    default void writeBigEndian(int i) {
+        for(int shift = 24; shift >= 0; shift -= 8)
+            write((byte) (i >>> shift));
+    }
+
+    default long readBigEndianLong() {
+        long l = 0;
+        for(int i = 0; i < 8; i++)
+            l = (l << 8) | (readbyte() & 0xFF);
+        return l;
+    }
+
+    default int readBigEndianInt() {
+        int ret = 0;
+        for(int i = 0; i < 4; i++)
+            ret = (ret << 8) | (readbyte() & 0xFF);
+        return ret;
+    }
+
     default ObjectOutputImpl objectOutput(Serializer serializer, Object current) {
         try {
             return new ObjectOutputImpl(this, serializer, current);
@@ -171,8 +212,7 @@ interface IOStream extends Recyclable {
         protected final void writeObjectOverride(Object obj) {
             if(!(obj instanceof Serializable))
                 throw new IllegalArgumentException("Object is not serializable!");
-            byte[] serialize = Serial.serialize((Serializable) obj);
-            stream.writeByteArray(serialize);
+            SerializerFactory.writeObject(stream, obj);
         }
 
         @Override
@@ -182,8 +222,7 @@ interface IOStream extends Recyclable {
 
         @Override
         public void defaultWriteObject() {
-            byte[] bytes = serializer.serializeDefault(object);
-            write(bytes);
+            serializer.serializeDefault(object, stream);
         }
 
         @Override
@@ -377,7 +416,7 @@ interface IOStream extends Recyclable {
 
         @Override
         protected Object readObjectOverride() {
-            return Serial.deserialize(stream.readByteArray());
+            return SerializerFactory.readObject(stream);
         }
 
         @Override
@@ -895,6 +934,29 @@ interface IOStream extends Recyclable {
                 return Arrays.copyOf(buffer, writePos + 1);
             }
 
+            @Override
+            public int writePosition() {
+                return writePos + 1;
+            }
+
+            @Override
+            public void writeAt(int position, int i) {
+                buffer[position] = (byte) (i >> 24);
+                buffer[position + 1] = (byte) (i >> 16);
+                buffer[position + 2] = (byte) (i >> 8);
+                buffer[position + 3] = (byte) i;
+            }
+
+            @Override
+            public int readPosition() {
+                return pos;
+            }
+
+            @Override
+            public void readPosition(int position) {
+                pos = position;
+            }
+
             private void checkRead(int size) {
                 if(buffer.length - pos - size < 0)
                     throw new IndexOutOfBoundsException("Cannot read " + size + " bytes!");
@@ -1213,6 +1275,26 @@ interface IOStream extends Recyclable {
                 pos = 0;
             }
 
+            @Override
+            public int writePosition() {
+                return size;
+            }
+
+            @Override
+            public void writeAt(int position, int i) {
+                U.putInt(pointer + position, i);
+            }
+
+            @Override
+            public int readPosition() {
+                return pos;
+            }
+
+            @Override
+            public void readPosition(int position) {
+                pos = position;
+            }
+
             private void ensureCapacity(int cap) {
                 int s = pointerSize - size - cap;
                 if(s < 0) {
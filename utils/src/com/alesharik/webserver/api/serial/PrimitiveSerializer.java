@@ -67,6 +67,19 @@ abstract class PrimitiveSerializer implements Serializer {
                     ((data[1] & 0xFF) << 16) +
                     ((data[0]) << 24);
         }
+
+        @Override
+        public void serialize(Object o, IOStream stream) {
+            if(stream instanceof CompactIOStream)
+                stream.write((Integer) o);
+            else
+                stream.write(serializeDefault(o));
+        }
+
+        @Override
+        public Object deserialize(IOStream stream, int length) {
+            return stream instanceof CompactIOStream ? stream.readInteger() : deserializeDefault(stream.read(length));
+        }
     }
 
     static final class BooleanSerializer extends PrimitiveSerializer {
@@ -115,6 +128,19 @@ abstract class PrimitiveSerializer implements Serializer {
             return (char) ((data[1] & 0xFF) +
                     (data[0] << 8));
         }
+
+        @Override
+        public void serialize(Object o, IOStream stream) {
+            if(stream instanceof CompactIOStream)
+                stream.write((Character) o);
+            else
+                stream.write(serializeDefault(o));
+        }
+
+        @Override
+        public Object deserialize(IOStream stream, int length) {
+            return stream instanceof CompactIOStream ? stream.readCharacter() : deserializeDefault(stream.read(length));
+        }
     }
 
     static final class ShortSerializer extends PrimitiveSerializer {
@@ -140,6 +166,19 @@ abstract class PrimitiveSerializer implements Serializer {
             //noinspection UnnecessaryBoxing
             return Short.valueOf((short) ((data[1] & 0xFF) + (data[0] << 8)));
         }
+
+        @Override
+        public void serialize(Object o, IOStream stream) {
+            if(stream instanceof CompactIOStream)
+                stream.write((Short) o);
+            else
+                stream.write(serializeDefault(o));
+        }
+
+        @Override
+        public Object deserialize(IOStream stream, int length) {
+            return stream instanceof CompactIOStream ? stream.readShort() : deserializeDefault(stream.read(length));
+        }
     }
 
     static final class FloatSerializer extends PrimitiveSerializer {
@@ -207,6 +246,19 @@ abstract class PrimitiveSerializer implements Serializer {
                     ((data[1] & 0xFFL) << 48) +
                     (((long) data[0]) << 56);
         }
+
+        @Override
+        public void serialize(Object o, IOStream stream) {
+            if(stream instanceof CompactIOStream)
+                stream.write((Long) o);
+            else
+                stream.write(serializeDefault(o));
+        }
+
+        @Override
+        public Object deserialize(IOStream stream, int length) {
+            return stream instanceof CompactIOStream ? stream.readLong() : deserializeDefault(stream.read(length));
+        }
     }
 
     static final class DoubleSerializer extends PrimitiveSerializer {
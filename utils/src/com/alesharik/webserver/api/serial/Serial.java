@@ -22,15 +22,21 @@ import com.alesharik.webserver.api.mx.bean.MXBeanManager;
 import com.alesharik.webserver.exception.error.UnexpectedBehaviorError;
 import com.alesharik.webserver.internals.instance.ClassInstantiator;
 import lombok.experimental.UtilityClass;
-import org.apache.commons.lang3.tuple.Pair;
 import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -45,6 +51,7 @@ import java.util.TreeSet;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import static com.alesharik.webserver.api.serial.PrimitiveSerializer.*;
 
@@ -75,13 +82,34 @@ import static com.alesharik.webserver.api.serial.PrimitiveSerializer.*;
  *       | enum        | enum data chunk(see Serialization API data chunk graph)        |
  *       \------------------------------------------------------------------------------/
  *   </pre>
+ * {@link SerialFormat#COMPACT} message starts with {@link #COMPACT_MAGIC} byte and uses compact data chunks: <pre>
+ *       /------------------------------------------------------------------------------------------\
+ *       | header(varint)       | id &lt;&lt; 2 | kind. Kind 0 - null(id is 0), 1 - enum, 2 - object, 3 - object with version |
+ *       | version(double)      | only for kind 3                                                   |
+ *       | enum(varint)         | ordinal &lt;&lt; 1 | has name. Name(varint length + UTF-8) is written once per message |
+ *       | objdata              | integers are varints(zigzag for signed), strings are UTF-8,      |
+ *       |                      | nested objects are size(varint) + compact data chunk              |
+ *       \------------------------------------------------------------------------------------------/
+ *   </pre>
+ * Standard ids are big-endian longs with 0x00 or 0xFF first byte, so formats are distinguished by first byte
  */
 @UtilityClass
 public class Serial {
+    static final byte COMPACT_MAGIC = (byte) 0xC5;
     private static final SerializationClassConversionMapImpl conversionMap = new SerializationClassConversionMapImpl();
-    private static final Map<Pair<Class<?>, Double>, Serializer> serializers = new ConcurrentHashMap<>();
-    private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(20));
     private static final SerialMXBeanImpl bean = new SerialMXBeanImpl();
+    /**
+     * All computed class entries. Used for class loader unloading
+     */
+    private static final Map<Class<?>, ClassEntry> entries = new ConcurrentHashMap<>();
+    private static final ClassValue<ClassEntry> classes = new ClassValue<ClassEntry>() {
+        @Override
+        protected ClassEntry computeValue(Class<?> type) {
+            ClassEntry entry = new ClassEntry(type);
+            entries.put(type, entry);
+            return entry;
+        }
+    };
 
     static {
         try {
@@ -117,7 +145,7 @@ public class Serial {
     }
 
     /**
-     * Deserialize object from stream
+     * Deserialize object from byte array
      *
      * @param data serialized object
      * @param <T>  object type
@@ -127,53 +155,150 @@ public class Serial {
      * @throws DataUnderflowException if the serializer cannot read enough data for deserialization
      */
     public static <T> T deserialize(@Nonnull byte[] data) {
-        if(data.length < 8) {
+        return deserialize(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Deserialize object from buffer's data between position and limit without copying it. Buffer's position is moved to the limit
+     *
+     * @param buffer serialized object, heap or direct
+     * @param <T>    object type
+     * @return deserialized object
+     * @throws SerializationMappingNotFoundException if there is object with unknown id in the data
+     * @throws DataOverflowException if some serializer has too much data to deserialize
+     * @throws DataUnderflowException if the serializer cannot read enough data for deserialization
+     */
+    public static <T> T deserialize(@Nonnull ByteBuffer buffer) {
+        ByteBufferIOStream stream = ByteBufferIOStream.wrap(buffer);
+        try {
+            T ret = readMessage(stream, buffer.remaining());
+            buffer.position(buffer.limit());
+            return ret;
+        } finally {
+            ByteBufferIOStream.release(stream);
+        }
+    }
+
+    /**
+     * Read one object, written by {@link #serialize(Object, OutputStream)}
+     *
+     * @param in  the stream
+     * @param <T> object type
+     * @return deserialized object
+     * @throws EOFException if stream ends before object end
+     * @throws IOException  if stream throws it
+     */
+    public static <T> T deserialize(@Nonnull InputStream in) throws IOException {
+        int size = 0;
+        for(int i = 0; i < 4; i++) {
+            int b = in.read();
+            if(b == -1)
+                throw new EOFException();
+            size = (size << 8) | b;
+        }
+        if(size < 0) {
+            bean.newOverflow();
+            throw new DataOverflowException("Object size is " + size + "!");
+        }
+
+        ByteBufferIOStream stream = ByteBufferIOStream.allocate(size);
+        try {
+            ByteBuffer buffer = stream.getBuffer();
+            byte[] array = buffer.array();
+            int read = 0;
+            while(read < size) {
+                int r = in.read(array, read, size - read);
+                if(r == -1)
+                    throw new EOFException();
+                read += r;
+            }
+            buffer.limit(size);
+            return readMessage(stream, size);
+        } finally {
+            ByteBufferIOStream.release(stream);
+        }
+    }
+
+    private static <T> T readMessage(@Nonnull ByteBufferIOStream stream, int length) {
+        if(length < 1 || stream.getBuffer().get(stream.getBuffer().position()) != COMPACT_MAGIC)
+            return read(stream, length);
+
+        stream.readbyte();
+        CompactIOStream compact = CompactIOStream.wrap(stream);
+        try {
+            return read(compact, length - 1);
+        } finally {
+            CompactIOStream.release(compact);
+        }
+    }
+
+    /**
+     * Read data chunk from stream's read position
+     *
+     * @param length data chunk size
+     */
+    static <T> T read(@Nonnull IOStream stream, int length) {
+        if(stream instanceof CompactIOStream)
+            return readCompact((CompactIOStream) stream, length);
+        if(length < 8) {
             bean.newUnderflow();
             throw new DataUnderflowException("Cannot read id from less than 8 bytes!");
         }
 
-        ByteBuffer byteBuffer = buffers.get();
-        byteBuffer.rewind();
-        byteBuffer.put(data, 0, 8);
-        byteBuffer.rewind();
-        long id = byteBuffer.getLong();
+        long id = stream.readBigEndianLong();
         if(id == -1)
             return null;
         if(id == -2)
-            return deserializeEnum(data, byteBuffer);
+            return readEnum(stream, length);
         else
-            return deserializeObject(data, byteBuffer, id);
+            return readObject(stream, length, id);
     }
 
-    private static <T> T deserializeObject(@Nonnull byte[] data, ByteBuffer byteBuffer, long id) {
-        if(data.length < 16) {
+    private static <T> T readObject(@Nonnull IOStream stream, int length, long id) {
+        if(length < 16) {
             bean.newUnderflow();
             throw new DataUnderflowException("Cannot read id and version from less than 16 bytes!");
         }
 
-        byteBuffer.rewind();
-        byteBuffer.put(data, 8, 8);
-        byteBuffer.rewind();
+        double version = Double.longBitsToDouble(stream.readBigEndianLong());
+        return deserializeObject(stream, length - 16, id, version);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T readCompact(@Nonnull CompactIOStream stream, int length) {
+        int start = stream.readPosition();
+        long header = stream.readVarLong();
+        if(header == 0)
+            return null;
 
-        double version = byteBuffer.getDouble();
+        long id = header >>> 2;
+        int kind = (int) (header & 3);
+        if(kind == 1) {
+            Class<?> clazz = conversionMap.resolveConversion(id);
+            if(clazz == null || !clazz.isEnum()) {
+                bean.newMappingMismatch();
+                throw new SerializationMappingNotFoundException(id);
+            }
+            return (T) stream.readEnum(clazz);
+        }
+        double version = kind == 3 ? stream.readdouble() : -1;
+        return deserializeObject(stream, length - (stream.readPosition() - start), id, version);
+    }
+
+    private static <T> T deserializeObject(@Nonnull IOStream stream, int length, long id, double version) {
         Class<?> clazz = conversionMap.resolveConversion(id);
         if(clazz == null) {
             bean.newMappingMismatch();
             throw new SerializationMappingNotFoundException(id);
         }
 
-        Serializer serializer = serializers.computeIfAbsent(Pair.of(clazz, version), classDoublePair -> {
-            AnnotationAdapter.Adapter adapter = getAnnotationAdapter(classDoublePair.getKey());
-            return SerializerFactory.create(classDoublePair.getKey(), adapter, classDoublePair.getValue());
-        });
-        byte[] dat = new byte[data.length - 16];
-        System.arraycopy(data, 16, dat, 0, data.length - 16);
+        Serializer serializer = classes.get(clazz).getSerializer(version);
         try {
             //noinspection unchecked
-            return (T) serializer.deserialize(dat);
-        } catch (ArrayIndexOutOfBoundsException e) {
+            return (T) serializer.deserialize(stream, length);
+        } catch (IndexOutOfBoundsException e) {
             bean.newUnderflow();
-            throw new DataUnderflowException("Serializer threw ArrayIndexOutOfBoundException: " + e.getMessage(), e);
+            throw new DataUnderflowException("Serializer threw IndexOutOfBoundsException: " + e.getMessage(), e);
         } catch (DataUnderflowException e) {
             bean.newUnderflow();
             throw e;
@@ -187,29 +312,24 @@ public class Serial {
     }
 
     @Nonnull
-    private static <T> T deserializeEnum(@Nonnull byte[] data, ByteBuffer byteBuffer) {
-        if(data.length < 20) {
+    private static <T> T readEnum(@Nonnull IOStream stream, int length) {
+        if(length < 20) {
             bean.newUnderflow();
             throw new DataUnderflowException("Cannot read id, enum id and name string length from less than 20 bytes!");
         }
-        byteBuffer.rewind();
-        byteBuffer.put(data, 8, 12);
-        byteBuffer.rewind();
 
-        long id = byteBuffer.getLong();
+        long id = stream.readBigEndianLong();
         Class<?> clazz = conversionMap.resolveConversion(id);
         if(clazz == null)
             throw new SerializationMappingNotFoundException(id);
 
-        int size = byteBuffer.getInt();
-        if(data.length < 20 + size) {
+        int size = stream.readBigEndianInt();
+        if(length < 20 + size) {
             bean.newUnderflow();
             throw new DataUnderflowException("Cannot read name string from less than 20(header) + " + size + " bytes, but first 20 bytes is present!");
         }
 
-        byte[] nameData = new byte[size];
-        System.arraycopy(data, 20, nameData, 0, size);
-        String name = new String(nameData, StandardCharsets.UTF_16LE);
+        String name = new String(stream.read(size), StandardCharsets.UTF_16LE);
         //noinspection unchecked
         return (T) Enum.valueOf((Class<Enum>) clazz, name);
     }
@@ -235,11 +355,19 @@ public class Serial {
      * @return serialized object
      */
     public static <T extends Object & Serializable> byte[] serialize(@Nullable T object) {
-        if(object == null)
-            return serialize(null, -1);
-        AnnotationAdapter.Adapter annotationAdapter = getAnnotationAdapter(object.getClass());
-        double version = annotationAdapter.hasVersionAnnotation(object.getClass()) ? annotationAdapter.getVersion(object.getClass()) : -1;
-        return serialize(object, version);
+        return serialize(object, getVersion(object));
+    }
+
+    /**
+     * Serialize given object into byte array using given format
+     *
+     * @param object the object to serialize
+     * @param format wire format
+     * @param <T>    object type
+     * @return serialized object
+     */
+    public static <T extends Object & Serializable> byte[] serialize(@Nullable T object, @Nonnull SerialFormat format) {
+        return serialize(object, getVersion(object), format);
     }
 
     /**
@@ -251,51 +379,169 @@ public class Serial {
      * @return serialized object
      */
     public static <T extends Object & Serializable> byte[] serialize(@Nullable T object, double version) {
-        if(object == null)
-            return serializeNull();
+        return serialize(object, version, getFormat(object));
+    }
+
+    /**
+     * Serialize given object using given version and format
+     *
+     * @param object  the object to serialize
+     * @param version object's version
+     * @param format  wire format
+     * @param <T>     object type
+     * @return serialized object
+     */
+    public static <T extends Object & Serializable> byte[] serialize(@Nullable T object, double version, @Nonnull SerialFormat format) {
+        ByteBufferIOStream stream = ByteBufferIOStream.allocate(0);
+        try {
+            writeMessage(object, version, format, stream);
+            return stream.toByteArray();
+        } finally {
+            ByteBufferIOStream.release(stream);
+        }
+    }
+
+    /**
+     * Serialize given object into the buffer from its position. Generated serializers write directly into the buffer, so direct buffers
+     * can be passed to channels without copying
+     *
+     * @param object the object to serialize
+     * @param buffer the buffer. It's position is moved to the end of the data
+     * @param <T>    object type
+     * @throws BufferOverflowException if buffer doesn't have enough space. Buffer's position is not changed in this case
+     */
+    public static <T extends Object & Serializable> void serialize(@Nullable T object, @Nonnull ByteBuffer buffer) {
+        serialize(object, buffer, getFormat(object));
+    }
+
+    /**
+     * Serialize given object into the buffer from its position using given format
+     *
+     * @param object the object to serialize
+     * @param buffer the buffer. It's position is moved to the end of the data
+     * @param format wire format
+     * @param <T>    object type
+     * @throws BufferOverflowException if buffer doesn't have enough space. Buffer's position is not changed in this case
+     */
+    public static <T extends Object & Serializable> void serialize(@Nullable T object, @Nonnull ByteBuffer buffer, @Nonnull SerialFormat format) {
+        ByteBufferIOStream stream = ByteBufferIOStream.wrap(buffer);
+        try {
+            writeMessage(object, getVersion(object), format, stream);
+            buffer.position(buffer.position() + stream.writePosition());
+        } finally {
+            ByteBufferIOStream.release(stream);
+        }
+    }
+
+    /**
+     * Write object size(big-endian int) and serialized object into the stream. Use {@link #deserialize(InputStream)} to read it
+     *
+     * @param object the object to serialize
+     * @param out    the stream
+     * @param <T>    object type
+     * @throws IOException if stream throws it
+     */
+    public static <T extends Object & Serializable> void serialize(@Nullable T object, @Nonnull OutputStream out) throws IOException {
+        serialize(object, out, getFormat(object));
+    }
+
+    /**
+     * Write object size(big-endian int) and object, serialized using given format, into the stream. Use {@link #deserialize(InputStream)} to read it
+     *
+     * @param object the object to serialize
+     * @param out    the stream
+     * @param format wire format
+     * @param <T>    object type
+     * @throws IOException if stream throws it
+     */
+    public static <T extends Object & Serializable> void serialize(@Nullable T object, @Nonnull OutputStream out, @Nonnull SerialFormat format) throws IOException {
+        ByteBufferIOStream stream = ByteBufferIOStream.allocate(0);
+        try {
+            stream.write(0);
+            writeMessage(object, getVersion(object), format, stream);
+            int size = stream.writePosition() - 4;
+            stream.writeAt(0, ByteBufferIOStream.ORDER == ByteOrder.BIG_ENDIAN ? size : Integer.reverseBytes(size));
+            ByteBuffer buffer = stream.getBuffer();
+            out.write(buffer.array(), 0, buffer.position());
+        } finally {
+            ByteBufferIOStream.release(stream);
+        }
+    }
+
+    private static void writeMessage(@Nullable Object object, double version, @Nonnull SerialFormat format, @Nonnull ByteBufferIOStream stream) {
+        if(format == SerialFormat.STANDARD) {
+            write(object, version, stream);
+            return;
+        }
+
+        stream.write(COMPACT_MAGIC);
+        CompactIOStream compact = CompactIOStream.wrap(stream);
+        try {
+            write(object, version, compact);
+        } finally {
+            CompactIOStream.release(compact);
+        }
+    }
+
+    /**
+     * Write data chunk of given object into the stream
+     */
+    static void write(@Nullable Object object, @Nonnull IOStream stream) {
+        write(object, getVersion(object), stream);
+    }
+
+    private static void write(@Nullable Object object, double version, @Nonnull IOStream stream) {
+        if(stream instanceof CompactIOStream)
+            writeCompact(object, version, (CompactIOStream) stream);
+        else if(object == null)
+            stream.writeBigEndian(-1L);
         else if(object.getClass().isEnum())
-            return serializeEnum(object);
+            writeEnum(object, stream);
         else
-            return serializeObject(object, version);
-    }
-
-    private static byte[] serializeObject(@NotNull Object object, double version) {
-        ByteBuffer byteBuffer = buffers.get();
-        byteBuffer.rewind();
-        AnnotationAdapter.Adapter annotationAdapter = getAnnotationAdapter(object.getClass());
-        Serializer serializer = serializers.computeIfAbsent(Pair.of(object.getClass(), version), classDoublePair -> SerializerFactory.create(classDoublePair.getKey(), annotationAdapter, classDoublePair.getValue()));
-        byte[] ser = serializer.serialize(object);
-        byte[] ret = new byte[ser.length + 16];
-        byteBuffer.putLong(conversionMap.getOrCreateConversionFor(object.getClass()));
-        byteBuffer.putDouble(version);
-        byteBuffer.rewind();
-        System.arraycopy(byteBuffer.array(), 0, ret, 0, 16);
-        System.arraycopy(ser, 0, ret, 16, ser.length);
-        return ret;
-    }
-
-    private static byte[] serializeEnum(@Nonnull Object object) {
-        ByteBuffer byteBuffer = buffers.get();
-        byteBuffer.rewind();
-        byteBuffer.putLong(-2);
-        byteBuffer.putLong(conversionMap.getOrCreateConversionFor(object.getClass()));
-        byte[] string = ((Enum) object).name().getBytes(StandardCharsets.UTF_16LE);
-        byteBuffer.putInt(string.length);
-        byte[] ret = new byte[20 + string.length];
-        byteBuffer.rewind();
-        System.arraycopy(byteBuffer.array(), 0, ret, 0, 20);
-        System.arraycopy(string, 0, ret, 20, string.length);
-        return ret;
+            writeObject(object, version, stream);
+    }
+
+    private static double getVersion(@Nullable Object object) {
+        return object == null ? -1 : classes.get(object.getClass()).version;
+    }
+
+    private static SerialFormat getFormat(@Nullable Object object) {
+        return object == null ? SerialFormat.STANDARD : classes.get(object.getClass()).format;
+    }
+
+    private static void writeObject(@NotNull Object object, double version, @Nonnull IOStream stream) {
+        Serializer serializer = classes.get(object.getClass()).getSerializer(version);
+        stream.writeBigEndian(conversionMap.getOrCreateConversionFor(object.getClass()));
+        stream.writeBigEndian(Double.doubleToRawLongBits(version));
+        serializer.serialize(object, stream);
+    }
+
+    private static void writeCompact(@Nullable Object object, double version, @Nonnull CompactIOStream stream) {
+        if(object == null) {
+            stream.writeVarLong(0);
+            return;
+        }
+
+        long id = conversionMap.getOrCreateConversionFor(object.getClass());
+        if(object.getClass().isEnum()) {
+            stream.writeVarLong(id << 2 | 1);
+            stream.writeEnum((Enum<?>) object);
+        } else if(version == -1) {
+            stream.writeVarLong(id << 2 | 2);
+            classes.get(object.getClass()).getSerializer(version).serialize(object, stream);
+        } else {
+            stream.writeVarLong(id << 2 | 3);
+            stream.write(version);
+            classes.get(object.getClass()).getSerializer(version).serialize(object, stream);
+        }
     }
 
-    private static byte[] serializeNull() {
-        ByteBuffer byteBuffer = buffers.get();
-        byteBuffer.rewind();
-        byteBuffer.putLong(-1);
-        byte[] ret = new byte[8];
-        byteBuffer.rewind();
-        System.arraycopy(byteBuffer.array(), 0, ret, 0, 8);
-        return ret;
+    private static void writeEnum(@Nonnull Object object, @Nonnull IOStream stream) {
+        stream.writeBigEndian(-2L);
+        stream.writeBigEndian(conversionMap.getOrCreateConversionFor(object.getClass()));
+        byte[] string = ((Enum) object).name().getBytes(StandardCharsets.UTF_16LE);
+        stream.writeBigEndian(string.length);
+        stream.write(string);
     }
 
     /**
@@ -309,9 +555,11 @@ public class Serial {
     }
 
     public static void unloadClassLoader(@Nonnull ClassLoader classLoader) {
-        serializers.forEach((classDoublePair, serializer) -> {
-            if(classDoublePair.getKey().getClassLoader() == classLoader)
-                serializers.remove(classDoublePair);
+        entries.keySet().removeIf(clazz -> {
+            if(clazz.getClassLoader() != classLoader)
+                return false;
+            classes.remove(clazz);
+            return true;
         });
         SerializerFactory.unloadClassLoader(classLoader);
         conversionMap.cleanClassesFromClassLoader(classLoader);
@@ -320,14 +568,13 @@ public class Serial {
     static Serializer getSerializer(Class<?> clazz) {
         if(!Serializable.class.isAssignableFrom(clazz))
             throw new IllegalArgumentException("Class " + clazz + " is not Serializable!");
-        AnnotationAdapter.Adapter annotationAdapter = getAnnotationAdapter(clazz);
-        double version = annotationAdapter.hasVersionAnnotation(clazz) ? annotationAdapter.getVersion(clazz) : -1;
-        return serializers.computeIfAbsent(Pair.of(clazz, version), classDoublePair -> SerializerFactory.create(classDoublePair.getKey(), annotationAdapter, classDoublePair.getValue()));
+        ClassEntry entry = classes.get(clazz);
+        return entry.getSerializer(entry.version);
     }
 
     private static void putSerializer(Class<?> clazz, long id, Serializer serializer) {
         conversionMap.addConversion(id, clazz);
-        serializers.put(Pair.of(clazz, -1D), serializer);
+        classes.get(clazz).putSerializer(serializer);
     }
 
     private static void preGenerateSerializer(Class<?> clazz, long id) {
@@ -344,14 +591,86 @@ public class Serial {
         return adapter;
     }
 
+    /**
+     * Cached class meta and serializers of all class versions
+     */
+    private static final class ClassEntry {
+        private static final Serializer[] EMPTY = new Serializer[0];
+
+        private final Class<?> clazz;
+        private final AnnotationAdapter.Adapter adapter;
+        private final double version;
+        private final SerialFormat format;
+        /**
+         * Copy-on-write array, new versions are appended
+         */
+        private volatile Serializer[] serializers = EMPTY;
+
+        ClassEntry(Class<?> clazz) {
+            this.clazz = clazz;
+            this.adapter = getAnnotationAdapter(clazz);
+            this.version = adapter.hasVersionAnnotation(clazz) ? adapter.getVersion(clazz) : -1;
+            this.format = adapter.isCompact(clazz) ? SerialFormat.COMPACT : SerialFormat.STANDARD;
+        }
+
+        Serializer getSerializer(double version) {
+            for(Serializer serializer : serializers) {
+                if(serializer.getVersion() == version) {
+                    bean.cacheHit();
+                    return serializer;
+                }
+            }
+            return createSerializer(version);
+        }
+
+        private synchronized Serializer createSerializer(double version) {
+            for(Serializer serializer : serializers) {
+                if(serializer.getVersion() == version) {
+                    bean.cacheHit();
+                    return serializer;
+                }
+            }
+            bean.cacheMiss();
+            Serializer serializer = SerializerFactory.create(clazz, adapter, version);
+            putSerializer(serializer);
+            return serializer;
+        }
+
+        synchronized void putSerializer(Serializer serializer) {
+            Serializer[] old = serializers;
+            Serializer[] next = Arrays.copyOf(old, old.length + 1);
+            next[old.length] = serializer;
+            serializers = next;
+        }
+
+        int size() {
+            return serializers.length;
+        }
+    }
+
     private static final class SerialMXBeanImpl implements SerialMXBean {
         private final AtomicLong failedMappingCount = new AtomicLong();
         private final AtomicLong underflowCount = new AtomicLong();
         private final AtomicLong overflowCount = new AtomicLong();
+        private final LongAdder cacheHitCount = new LongAdder();
+        private final LongAdder cacheMissCount = new LongAdder();
 
         @Override
         public long getSerializerCount() {
-            return Serial.serializers.size();
+            long count = 0;
+            for(ClassEntry entry : entries.values())
+                count += entry.size();
+            return count;
+        }
+
+        @Override
+        public long getCacheHitCount() {
+            return cacheHitCount.sum();
+        }
+
+        @Override
+        public long getCacheMissCount() {
+            return cacheMissCount.sum();
         }
 
         @Override
@@ -396,5 +715,13 @@ public class Serial {
         void newMappingMismatch() {
             failedMappingCount.incrementAndGet();
         }
+
+        void cacheHit() {
+            cacheHitCount.increment();
+        }
+
+        void cacheMiss() {
+            cacheMissCount.increment();
+        }
     }
 }
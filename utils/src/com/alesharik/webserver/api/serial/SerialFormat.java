@@ -0,0 +1,33 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.api.serial;
+
+/**
+ * Wire format of {@link Serial} data. Deserialization detects the format automatically
+ */
+public enum SerialFormat {
+    /**
+     * Fixed-width big-endian headers and fixed-width primitives
+     */
+    STANDARD,
+    /**
+     * Small-integer class ids, LEB128 varints for integers(zigzag-encoded if signed), UTF-8 strings and enum ordinals with
+     * per-message name table. Message starts with 0xC5 magic byte
+     */
+    COMPACT
+}
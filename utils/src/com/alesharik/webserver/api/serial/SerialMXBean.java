@@ -67,4 +67,16 @@ public interface SerialMXBean {
      * @return total overflow count
      */
     long getOverflowCount();
+
+    /**
+     * Return count of serializer lookups, which found already created serializer
+     * @return serializer cache hit count
+     */
+    long getCacheHitCount();
+
+    /**
+     * Return count of serializer lookups, which created new serializer
+     * @return serializer cache miss count
+     */
+    long getCacheMissCount();
 }
@@ -25,10 +25,33 @@ public interface Serializer {
 
     byte[] serialize(Object o);
 
+    /**
+     * Write object data into the stream
+     */
+    default void serialize(Object o, IOStream stream) {
+        stream.write(serialize(o));
+    }
+
     byte[] serializeDefault(Object o);
 
+    /**
+     * Write object fields into the stream
+     */
+    default void serializeDefault(Object o, IOStream stream) {
+        stream.write(serializeDefault(o));
+    }
+
     Object deserialize(byte[] data);
 
+    /**
+     * Read object from the stream
+     *
+     * @param length size of object data in the stream
+     */
+    default Object deserialize(IOStream stream, int length) {
+        return deserialize(stream.read(length));
+    }
+
     Object deserializeDefault(byte[] data);
 
     void deserializeDefaultIntoObject(IOStream data, Object o);
@@ -68,11 +68,11 @@ class SerializerFactory {
         visitGetNameMethod(classWriter, name);
         visitGetVersionMethod(classWriter, version);
         visitInit(classWriter);
-        visitSerializeDefault(classWriter, fields);
+        visitSerializeDefault(classWriter, name, fields);
         visitDeserializeDefaultIntoObject(classWriter, fields);
-        visitDeserializeDefault(classWriter, clazz);
-        visitSerialize(classWriter, clazz);
-        visitDeserialize(classWriter, clazz);
+        visitDeserializeDefault(classWriter, name, clazz);
+        visitSerialize(classWriter, name, clazz);
+        visitDeserialize(classWriter, name, clazz);
 
         classWriter.visitEnd();
         String canonicalName = name.replace("/", ".");
@@ -137,12 +137,13 @@ class SerializerFactory {
         m.visitEnd();
     }
 
-    private static void visitSerializeDefault(ClassWriter writer, List<Field> fields) {
-        MethodVisitor m = writer.visitMethod(ACC_PUBLIC, "serializeDefault", Type.getMethodDescriptor(Type.getType(byte[].class), Type.getType(Object.class)), null, null);
+    /**
+     * Generate <code>serializeDefault(Object, IOStream)</code>, which writes fields into given stream, and <code>serializeDefault(Object)</code>
+     */
+    private static void visitSerializeDefault(ClassWriter writer, String name, List<Field> fields) {
+        MethodVisitor m = writer.visitMethod(ACC_PUBLIC, "serializeDefault", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object.class), Type.getType(IOStream.class)), null, null);
         m.visitCode();
-        m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "create", Type.getMethodDescriptor(Type.getType(IOStream.class)), false);
-        m.visitInsn(DUP);
-        m.visitVarInsn(ASTORE, 2);
+        m.visitVarInsn(ALOAD, 2);
         //stream
 
         for(Field field : fields) {
@@ -162,22 +163,56 @@ class SerializerFactory {
                 m.visitVarInsn(ALOAD, 1);
                 m.visitTypeInsn(CHECKCAST, Type.getInternalName(field.getDeclaringClass()));
                 m.visitFieldInsn(GETFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(), Type.getDescriptor(type));
-                //stream, obj
-                m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Serial.class), "serialize", Type.getMethodDescriptor(Type.getType(byte[].class), Type.getType(Object.class)), false);
-                m.visitInsn(DUP2);
-                m.visitInsn(ARRAYLENGTH);
-                m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "write", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(int.class)), true);
-                m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "write", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(byte[].class)), true);
+                //stream, stream, obj
+                visitWriteObject(m);
             }
         }
 
-        m.visitInsn(DUP);
+        m.visitInsn(POP);
+        m.visitInsn(RETURN);
+        m.visitMaxs(-1, -1);
+        m.visitEnd();
+
+        m = writer.visitMethod(ACC_PUBLIC, "serializeDefault", Type.getMethodDescriptor(Type.getType(byte[].class), Type.getType(Object.class)), null, null);
+        m.visitCode();
+        m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "create", Type.getMethodDescriptor(Type.getType(IOStream.class)), false);
+        m.visitVarInsn(ASTORE, 2);
+        m.visitVarInsn(ALOAD, 0);
+        m.visitVarInsn(ALOAD, 1);
+        m.visitVarInsn(ALOAD, 2);
+        m.visitMethodInsn(INVOKEVIRTUAL, name, "serializeDefault", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object.class), Type.getType(IOStream.class)), false);
+        visitToByteArray(m);
+        m.visitMaxs(-1, -1);
+        m.visitEnd();
+    }
+
+    /**
+     * Locals: 2 - IOStream
+     * Return byte array from the stream and recycle it
+     */
+    private static void visitToByteArray(MethodVisitor m) {
+        m.visitVarInsn(ALOAD, 2);
         m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "toByteArray", Type.getMethodDescriptor(Type.getType(byte[].class)), true);
-        m.visitInsn(SWAP);
+        m.visitVarInsn(ALOAD, 2);
         m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "recycle", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(IOStream.class)), false);
         m.visitInsn(ARETURN);
-        m.visitMaxs(-1, -1);
-        m.visitEnd();
+    }
+
+    /**
+     * Stack: IOStream, object
+     * Awaiting: nothing
+     */
+    private static void visitWriteObject(MethodVisitor m) {
+        m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(SerializerFactory.class), "writeObject", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(IOStream.class), Type.getType(Object.class)), false);
+    }
+
+    /**
+     * Stack: IOStream
+     * Awaiting: object
+     */
+    private static void visitReadObject(MethodVisitor m, Class<?> type) {
+        m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(SerializerFactory.class), "readObject", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(IOStream.class)), false);
+        m.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
     }
 
     /**
@@ -252,11 +287,7 @@ class SerializerFactory {
             writeArrayIntoStream(m, component);
         } else {//Object
             //stream, array, index, stream, object
-            m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Serial.class), "serialize", Type.getMethodDescriptor(Type.getType(byte[].class), Type.getType(Object.class)), false);
-            m.visitInsn(DUP2);
-            m.visitInsn(ARRAYLENGTH);
-            m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "write", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(int.class)), true);
-            m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "write", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(byte[].class)), true);
+            visitWriteObject(m);
             //stream, array, index
         }
 
@@ -270,14 +301,14 @@ class SerializerFactory {
         m.visitLabel(end);
     }
 
-    private static void visitDeserializeDefault(ClassWriter writer, Class<?> clazz) {
-        MethodVisitor m = writer.visitMethod(ACC_PUBLIC, "deserializeDefault", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(byte[].class)), null, null);
+    /**
+     * Generate <code>deserializeDefault(IOStream)</code> and <code>deserializeDefault(byte[])</code>
+     */
+    private static void visitDeserializeDefault(ClassWriter writer, String name, Class<?> clazz) {
+        MethodVisitor m = writer.visitMethod(ACC_PUBLIC, "deserializeDefault", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(IOStream.class)), null, null);
         m.visitCode();
         m.visitVarInsn(ALOAD, 0);
         m.visitVarInsn(ALOAD, 1);
-        m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "create", Type.getMethodDescriptor(Type.getType(IOStream.class), Type.getType(byte[].class)), false);
-        m.visitInsn(DUP);
-        m.visitVarInsn(ASTORE, 3);
         m.visitTypeInsn(NEW, Type.getInternalName(clazz));
         try {
             clazz.getConstructor();
@@ -286,14 +317,35 @@ class SerializerFactory {
         } catch (NoSuchMethodException ignored) {
         }
         m.visitInsn(DUP);
-        m.visitVarInsn(ASTORE, 4);
+        m.visitVarInsn(ASTORE, 2);
         m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(Serializer.class), "deserializeDefaultIntoObject", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(IOStream.class), Type.getType(Object.class)), true);
-        m.visitVarInsn(ALOAD, 3);
-        m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "recycle", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(IOStream.class)), false);
-        m.visitVarInsn(ALOAD, 4);
+        m.visitVarInsn(ALOAD, 2);
         m.visitInsn(ARETURN);
         m.visitMaxs(-1, -1);
         m.visitEnd();
+
+        m = writer.visitMethod(ACC_PUBLIC, "deserializeDefault", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(byte[].class)), null, null);
+        m.visitCode();
+        m.visitVarInsn(ALOAD, 1);
+        m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "create", Type.getMethodDescriptor(Type.getType(IOStream.class), Type.getType(byte[].class)), false);
+        m.visitVarInsn(ASTORE, 2);
+        m.visitVarInsn(ALOAD, 0);
+        m.visitVarInsn(ALOAD, 2);
+        m.visitMethodInsn(INVOKEVIRTUAL, name, "deserializeDefault", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(IOStream.class)), false);
+        visitRecycleAndReturn(m);
+        m.visitMaxs(-1, -1);
+        m.visitEnd();
+    }
+
+    /**
+     * Stack: object
+     * Locals: 2 - IOStream
+     * Recycle the stream and return the object
+     */
+    private static void visitRecycleAndReturn(MethodVisitor m) {
+        m.visitVarInsn(ALOAD, 2);
+        m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "recycle", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(IOStream.class)), false);
+        m.visitInsn(ARETURN);
     }
 
     private static void visitDeserializeDefaultIntoObject(ClassWriter writer, List<Field> fields) {
@@ -318,14 +370,7 @@ class SerializerFactory {
             } else {
                 m.visitInsn(DUP2);
                 //Instance, stream, Instance, stream
-                m.visitInsn(DUP);
-                m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "readint", Type.getMethodDescriptor(Type.getType(int.class)), true);
-                //instance, stream, Instance, stream, size
-
-                m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "read", Type.getMethodDescriptor(Type.getType(byte[].class), Type.getType(int.class)), true);
-                //instance, stream, Instance, b]
-                m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Serial.class), "deserialize", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(byte[].class)), false);
-                m.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+                visitReadObject(m, type);
 
                 //instance, stream, instance, obj
                 m.visitLdcInsn(UnsafeAccess.INSTANCE.objectFieldOffset(field));
@@ -402,13 +447,7 @@ class SerializerFactory {
             m.visitInsn(SWAP);
             m.visitInsn(POP);
         } else {
-            m.visitInsn(DUP);
-            m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "readint", Type.getMethodDescriptor(Type.getType(int.class)), true);
-
-            m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "read", Type.getMethodDescriptor(Type.getType(byte[].class), Type.getType(int.class)), true);
-            //instance, stream, Instance, b]
-            m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Serial.class), "deserialize", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(byte[].class)), false);
-            m.visitTypeInsn(CHECKCAST, Type.getInternalName(clazz.getComponentType()));
+            visitReadObject(m, clazz.getComponentType());
         }
         //Ins, Str, arr, idx, arr, idx, obj
         m.visitInsn(getArrayStoreInstruction(clazz.getComponentType()));
@@ -423,7 +462,10 @@ class SerializerFactory {
         m.visitLabel(end);
     }
 
-    private static void visitSerialize(ClassWriter writer, Class<?> clazz) {
+    /**
+     * Generate <code>serialize(Object, IOStream)</code> and <code>serialize(Object)</code>
+     */
+    private static void visitSerialize(ClassWriter writer, String name, Class<?> clazz) {
         boolean hasWriteReplace = false;
         boolean hasWriteObject = false;
         for(Method method : ReflectUtils.getAllDeclaredMethods(clazz)) {
@@ -433,47 +475,57 @@ class SerializerFactory {
                 hasWriteObject = true;
         }
 
-        MethodVisitor m = writer.visitMethod(ACC_PUBLIC, "serialize", Type.getMethodDescriptor(Type.getType(byte[].class), Type.getType(Object.class)), null, null);
+        MethodVisitor m = writer.visitMethod(ACC_PUBLIC, "serialize", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object.class), Type.getType(IOStream.class)), null, null);
         m.visitCode();
         if(hasWriteReplace) {
+            m.visitVarInsn(ALOAD, 2);
             m.visitVarInsn(ALOAD, 1);
             m.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(clazz), "writeReplace", Type.getMethodDescriptor(Type.getType(Object.class)), false);
-            m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Serial.class), "serialize", Type.getMethodDescriptor(Type.getType(byte[].class), Type.getType(Object.class)), false);
+            m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(SerializerFactory.class), "writeReplacement", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(IOStream.class), Type.getType(Object.class)), false);
+        } else if(Externalizable.class.isAssignableFrom(clazz)) {
+            m.visitVarInsn(ALOAD, 2);
+            m.visitVarInsn(ALOAD, 0);
+            m.visitVarInsn(ALOAD, 1);
+            m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "objectOutput", Type.getMethodDescriptor(Type.getType(IOStream.ObjectOutputImpl.class), Type.getType(Serializer.class), Type.getType(Object.class)), true);
+            m.visitVarInsn(ALOAD, 1);
+            m.visitTypeInsn(CHECKCAST, Type.getInternalName(Externalizable.class));
+            m.visitInsn(SWAP);
+            m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(Externalizable.class), "writeExternal", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(ObjectOutput.class)), true);
+        } else if(hasWriteObject) {//Serializable
+            m.visitVarInsn(ALOAD, 2);
+            m.visitVarInsn(ALOAD, 0);
+            m.visitVarInsn(ALOAD, 1);
+            m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "objectOutput", Type.getMethodDescriptor(Type.getType(IOStream.ObjectOutputImpl.class), Type.getType(Serializer.class), Type.getType(Object.class)), true);
+            m.visitVarInsn(ALOAD, 1);
+            m.visitInsn(SWAP);
+            m.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(clazz), "writeObject", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(ObjectOutputStream.class)), false);
         } else {
-            if(Externalizable.class.isAssignableFrom(clazz)) {
-                m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "create", Type.getMethodDescriptor(Type.getType(IOStream.class)), false);
-                m.visitInsn(DUP);
-                m.visitVarInsn(ALOAD, 0);
-                m.visitVarInsn(ALOAD, 1);
-                m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "objectOutput", Type.getMethodDescriptor(Type.getType(IOStream.ObjectOutputImpl.class), Type.getType(Serializer.class), Type.getType(Object.class)), true);
-                m.visitVarInsn(ALOAD, 1);
-                m.visitTypeInsn(CHECKCAST, Type.getInternalName(Externalizable.class));
-                m.visitInsn(SWAP);
-                m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(Externalizable.class), "writeExternal", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(ObjectOutput.class)), true);
-                m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "toByteArray", Type.getMethodDescriptor(Type.getType(byte[].class)), true);
-            } else if(hasWriteObject) {//Serializable
-                m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "create", Type.getMethodDescriptor(Type.getType(IOStream.class)), false);
-                m.visitInsn(DUP);
-                m.visitVarInsn(ALOAD, 0);
-                m.visitVarInsn(ALOAD, 1);
-                m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "objectOutput", Type.getMethodDescriptor(Type.getType(IOStream.ObjectOutputImpl.class), Type.getType(Serializer.class), Type.getType(Object.class)), true);
-                m.visitVarInsn(ALOAD, 1);
-                m.visitInsn(SWAP);
-                m.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(clazz), "writeObject", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(ObjectOutputStream.class)), false);
-                m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "toByteArray", Type.getMethodDescriptor(Type.getType(byte[].class)), true);
-            } else {
-                m.visitVarInsn(ALOAD, 1);
-                m.visitVarInsn(ALOAD, 0);
-                m.visitInsn(SWAP);
-                m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(Serializer.class), "serializeDefault", Type.getMethodDescriptor(Type.getType(byte[].class), Type.getType(Object.class)), true);
-            }
+            m.visitVarInsn(ALOAD, 0);
+            m.visitVarInsn(ALOAD, 1);
+            m.visitVarInsn(ALOAD, 2);
+            m.visitMethodInsn(INVOKEVIRTUAL, name, "serializeDefault", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object.class), Type.getType(IOStream.class)), false);
         }
-        m.visitInsn(ARETURN);
+        m.visitInsn(RETURN);
+        m.visitMaxs(-1, -1);
+        m.visitEnd();
+
+        m = writer.visitMethod(ACC_PUBLIC, "serialize", Type.getMethodDescriptor(Type.getType(byte[].class), Type.getType(Object.class)), null, null);
+        m.visitCode();
+        m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "create", Type.getMethodDescriptor(Type.getType(IOStream.class)), false);
+        m.visitVarInsn(ASTORE, 2);
+        m.visitVarInsn(ALOAD, 0);
+        m.visitVarInsn(ALOAD, 1);
+        m.visitVarInsn(ALOAD, 2);
+        m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(Serializer.class), "serialize", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object.class), Type.getType(IOStream.class)), true);
+        visitToByteArray(m);
         m.visitMaxs(-1, -1);
         m.visitEnd();
     }
 
-    private static void visitDeserialize(ClassWriter writer, Class<?> clazz) {
+    /**
+     * Generate <code>deserialize(IOStream, int)</code> and <code>deserialize(byte[])</code>
+     */
+    private static void visitDeserialize(ClassWriter writer, String name, Class<?> clazz) {
         boolean hasReadResolve = false;
         boolean hasReadObject = false;
         boolean hasReadObjectNoData = false;
@@ -486,16 +538,11 @@ class SerializerFactory {
                 hasReadObjectNoData = true;
         }
 
-        MethodVisitor m = writer.visitMethod(ACC_PUBLIC, "deserialize", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(byte[].class)), null, null);
+        //Locals: 1 - IOStream, 2 - length
+        MethodVisitor m = writer.visitMethod(ACC_PUBLIC, "deserialize", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(IOStream.class), Type.INT_TYPE), null, null);
         m.visitCode();
         if(hasReadResolve) {
-            m.visitTypeInsn(NEW, Type.getInternalName(clazz));
-            try {
-                clazz.getConstructor();
-                m.visitInsn(DUP);
-                m.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(clazz), "<init>", Type.getMethodDescriptor(Type.VOID_TYPE), false);
-            } catch (NoSuchMethodException ignored) {
-            }
+            visitNewInstance(m, clazz);
             m.visitInsn(DUP);
             m.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(clazz), "readResolve", Type.getMethodDescriptor(Type.getType(Object.class)), false);
         } else {
@@ -503,17 +550,9 @@ class SerializerFactory {
 
             if(hasReadObjectNoData) {
                 Label readObjectNoDataEnd = new Label();
-                m.visitVarInsn(ALOAD, 1);
-                m.visitInsn(ARRAYLENGTH);
-                m.visitLdcInsn(0);
-                m.visitJumpInsn(IF_ICMPNE, readObjectNoDataEnd);
-                m.visitTypeInsn(NEW, Type.getInternalName(clazz));
-                try {
-                    clazz.getConstructor();
-                    m.visitInsn(DUP);
-                    m.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(clazz), "<init>", Type.getMethodDescriptor(Type.VOID_TYPE), false);
-                } catch (NoSuchMethodException ignored) {
-                }
+                m.visitVarInsn(ILOAD, 2);
+                m.visitJumpInsn(IFNE, readObjectNoDataEnd);
+                visitNewInstance(m, clazz);
                 m.visitInsn(DUP);
                 m.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(clazz), "readObjectNoData", Type.getMethodDescriptor(Type.getType(void.class)), false);
                 m.visitJumpInsn(GOTO, end);
@@ -521,26 +560,19 @@ class SerializerFactory {
             }
 
             if(hasReadObject) {
-                m.visitTypeInsn(NEW, Type.getInternalName(clazz));
-                try {
-                    clazz.getConstructor();
-                    m.visitInsn(DUP);
-                    m.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(clazz), "<init>", Type.getMethodDescriptor(Type.VOID_TYPE), false);
-                } catch (NoSuchMethodException ignored) {
-                }
+                visitNewInstance(m, clazz);
                 m.visitInsn(DUP);
-                m.visitVarInsn(ASTORE, 2);
+                m.visitVarInsn(ASTORE, 3);
                 m.visitInsn(DUP);
                 m.visitVarInsn(ALOAD, 1);
-                m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "create", Type.getMethodDescriptor(Type.getType(IOStream.class), Type.getType(byte[].class)), false);
                 m.visitVarInsn(ALOAD, 0);
-                m.visitVarInsn(ALOAD, 2);
+                m.visitVarInsn(ALOAD, 3);
                 m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(IOStream.class), "objectInput", Type.getMethodDescriptor(Type.getType(ObjectInputStream.class), Type.getType(Serializer.class), Type.getType(Object.class)), true);
                 m.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(clazz), "readObject", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(ObjectInputStream.class)), false);
             } else {
                 m.visitVarInsn(ALOAD, 0);
                 m.visitVarInsn(ALOAD, 1);
-                m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(Serializer.class), "deserializeDefault", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(byte[].class)), true);
+                m.visitMethodInsn(INVOKEVIRTUAL, name, "deserializeDefault", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(IOStream.class)), false);
             }
 
             m.visitLabel(end);
@@ -548,6 +580,33 @@ class SerializerFactory {
         m.visitInsn(ARETURN);
         m.visitMaxs(-1, -1);
         m.visitEnd();
+
+        m = writer.visitMethod(ACC_PUBLIC, "deserialize", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(byte[].class)), null, null);
+        m.visitCode();
+        m.visitVarInsn(ALOAD, 1);
+        m.visitMethodInsn(INVOKESTATIC, Type.getInternalName(IOStream.Factory.class), "create", Type.getMethodDescriptor(Type.getType(IOStream.class), Type.getType(byte[].class)), false);
+        m.visitVarInsn(ASTORE, 2);
+        m.visitVarInsn(ALOAD, 0);
+        m.visitVarInsn(ALOAD, 2);
+        m.visitVarInsn(ALOAD, 1);
+        m.visitInsn(ARRAYLENGTH);
+        m.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(Serializer.class), "deserialize", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(IOStream.class), Type.INT_TYPE), true);
+        visitRecycleAndReturn(m);
+        m.visitMaxs(-1, -1);
+        m.visitEnd();
+    }
+
+    /**
+     * Awaiting: new instance, constructed by no-args constructor, if it exists
+     */
+    private static void visitNewInstance(MethodVisitor m, Class<?> clazz) {
+        m.visitTypeInsn(NEW, Type.getInternalName(clazz));
+        try {
+            clazz.getConstructor();
+            m.visitInsn(DUP);
+            m.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(clazz), "<init>", Type.getMethodDescriptor(Type.VOID_TYPE), false);
+        } catch (NoSuchMethodException ignored) {
+        }
     }
 
     private static int getPrimitiveType(Class<?> clazz) {
@@ -711,6 +770,40 @@ class SerializerFactory {
         UnsafeAccess.INSTANCE.putObject(o, offset, l);
     }
 
+    /**
+     * Write nested object as size(int) + data chunk
+     */
+    static void writeObject(IOStream stream, Object o) {
+        if(stream instanceof CompactIOStream) {
+            ((CompactIOStream) stream).writeNested(o);
+            return;
+        }
+        int sizePosition = stream.writePosition();
+        stream.write(0);
+        Serial.write(o, stream);
+        stream.writeAt(sizePosition, stream.writePosition() - sizePosition - 4);
+    }
+
+    /**
+     * Read nested object, written by {@link #writeObject(IOStream, Object)}
+     */
+    static Object readObject(IOStream stream) {
+        if(stream instanceof CompactIOStream)
+            return ((CompactIOStream) stream).readNested();
+        int size = stream.readint();
+        int end = stream.readPosition() + size;
+        Object o = Serial.read(stream, size);
+        if(stream.readPosition() > end)
+            throw new DataUnderflowException("Nested object has read " + (stream.readPosition() - end) + " bytes more than its size!");
+        stream.readPosition(end);
+        return o;
+    }
+
+    @SuppressWarnings("unused")
+    private static void writeReplacement(IOStream stream, Object replacement) {
+        Serial.write(replacement, stream);
+    }
+
     public static void unloadClassLoader(ClassLoader classLoader) {
         classLoaders.remove(classLoader);
     }
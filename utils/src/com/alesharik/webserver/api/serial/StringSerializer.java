@@ -42,6 +42,11 @@ final class StringSerializer implements Serializer {
         return ((String) o).getBytes(StandardCharsets.UTF_16LE);
     }
 
+    @Override
+    public void serialize(Object o, IOStream stream) {
+        stream.write(((String) o).getBytes(stream instanceof CompactIOStream ? StandardCharsets.UTF_8 : StandardCharsets.UTF_16LE));
+    }
+
     @Override
     public Object deserialize(byte[] data) {
         return deserializeDefault(data);
@@ -52,6 +57,11 @@ final class StringSerializer implements Serializer {
         return new String(data, StandardCharsets.UTF_16LE);
     }
 
+    @Override
+    public Object deserialize(IOStream stream, int length) {
+        return new String(stream.read(length), stream instanceof CompactIOStream ? StandardCharsets.UTF_8 : StandardCharsets.UTF_16LE);
+    }
+
     @Override
     public void deserializeDefaultIntoObject(IOStream data, Object o) {
         throw new UnsupportedOperationException("Cannot write into string!");
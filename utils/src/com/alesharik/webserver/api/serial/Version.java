@@ -34,4 +34,10 @@ public @interface Version {
      * @return class version
      */
     double value();
+
+    /**
+     * Serialize objects of this class using {@link SerialFormat#COMPACT} by default
+     * @return <code>true</code> - use compact format, otherwise <code>false</code>
+     */
+    boolean compact() default false;
 }
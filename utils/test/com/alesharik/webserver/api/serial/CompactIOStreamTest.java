@@ -0,0 +1,114 @@
+/*
+ *  This file is part of AlesharikWebServer.
+ *
+ *     AlesharikWebServer is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     AlesharikWebServer is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with AlesharikWebServer.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.alesharik.webserver.api.serial;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CompactIOStreamTest {
+    private ByteBufferIOStream buffer;
+    private CompactIOStream stream;
+
+    @Before
+    public void setUp() {
+        buffer = ByteBufferIOStream.allocate(0);
+        stream = CompactIOStream.wrap(buffer);
+    }
+
+    @After
+    public void tearDown() {
+        CompactIOStream.release(stream);
+        ByteBufferIOStream.release(buffer);
+    }
+
+    @Test
+    public void varIntSizes() {
+        stream.write(0);
+        stream.write(-1);
+        stream.write(63);
+        stream.write(-64);
+        stream.write(64);
+        assertArrayEquals(new byte[]{0, 1, 126, 127, (byte) 0x80, 1}, stream.toByteArray());
+    }
+
+    @Test
+    public void zigzagRoundTrip() {
+        int[] ints = {0, 1, -1, 300, -300, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        long[] longs = {0, 1, -1, 1L << 40, -(1L << 40), Long.MAX_VALUE, Long.MIN_VALUE};
+        for(int i : ints)
+            stream.write(i);
+        for(long l : longs)
+            stream.write(l);
+        stream.write((short) -2);
+        stream.write('￿');
+
+        buffer.getBuffer().flip();
+        for(int i : ints)
+            assertEquals(i, stream.readint());
+        for(long l : longs)
+            assertEquals(l, stream.readlong());
+        assertEquals(-2, stream.readshort());
+        assertEquals('￿', stream.readchar());
+        assertEquals(0, stream.length());
+    }
+
+    @Test
+    public void enumNameWrittenOnce() {
+        stream.writeEnum(SerialFormat.COMPACT);
+        int first = stream.writePosition();
+        stream.writeEnum(SerialFormat.COMPACT);
+        assertEquals(1, stream.writePosition() - first);
+
+        buffer.getBuffer().flip();
+        assertEquals(SerialFormat.COMPACT, stream.readEnum(SerialFormat.class));
+        assertEquals(SerialFormat.COMPACT, stream.readEnum(SerialFormat.class));
+    }
+
+    @Test(expected = DataUnderflowException.class)
+    public void enumWithoutName() {
+        stream.writeVarInt(1 << 1);
+        buffer.getBuffer().flip();
+        stream.readEnum(SerialFormat.class);
+    }
+
+    @Test(expected = DataOverflowException.class)
+    public void enumOrdinalOutOfConstants() {
+        stream.writeVarInt((Integer.MAX_VALUE - 1) << 1 | 1);
+        stream.writeString(SerialFormat.COMPACT.name());
+        buffer.getBuffer().flip();
+        stream.readEnum(SerialFormat.class);
+    }
+
+    @Test(expected = DataOverflowException.class)
+    public void malformedVarInt() {
+        ByteBufferIOStream data = ByteBufferIOStream.wrap(ByteBuffer.wrap(new byte[]{-1, -1, -1, -1, -1, -1}));
+        CompactIOStream compact = CompactIOStream.wrap(data);
+        try {
+            compact.readint();
+        } finally {
+            CompactIOStream.release(compact);
+            ByteBufferIOStream.release(data);
+        }
+    }
+}
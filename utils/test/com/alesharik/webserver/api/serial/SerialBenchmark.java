@@ -67,6 +67,14 @@ public class SerialBenchmark {
         return Serial.deserialize(serialize);
     }
 
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Group("SerialCompact")
+    public TestClass serialCompact() {
+        byte[] serialize = Serial.serialize(testClass, SerialFormat.COMPACT);
+        return Serial.deserialize(serialize);
+    }
+
     @Benchmark
     @BenchmarkMode(Mode.AverageTime)
     @Group("JavaSerial")
@@ -26,7 +26,18 @@ import lombok.ToString;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Test;
 
+import javax.management.JMX;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -200,6 +211,141 @@ public class SerialTest {
         assertEquals(TypeNotPresentException.class, Serial.deserialize(serialize));
     }
 
+    @Test
+    public void serializeToDirectBuffer() {
+        G o = new G(new A(2, 245L));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        Serial.serialize(o, buffer);
+        assertTrue(buffer.position() > 0);
+        buffer.flip();
+        G deser = Serial.deserialize(buffer);
+        assertEquals(o, deser);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void serializeToSmallBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.put((byte) 1);
+        try {
+            Serial.serialize(new T(new byte[128], 1, new A(1, 2L)), buffer);
+            fail();
+        } catch (BufferOverflowException e) {
+            assertEquals(1, buffer.position());
+        }
+    }
+
+    @Test
+    public void serializeToStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        A a = new A(3, 42L);
+        G g = new G(new A(5, 64L));
+        Serial.serialize(a, out);
+        Serial.serialize(g, out);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals(a, Serial.deserialize(in));
+        assertEquals(g, Serial.deserialize(in));
+        assertEquals(-1, in.read());
+    }
+
+    @Test(expected = EOFException.class)
+    public void deserializeFromTruncatedStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Serial.serialize(new A(3, 42L), out);
+        byte[] bytes = out.toByteArray();
+        Serial.deserialize(new ByteArrayInputStream(bytes, 0, bytes.length - 1));
+    }
+
+    @Test
+    public void serializeCompact() {
+        M m = new M(-5, Long.MIN_VALUE, (short) -1, 'ы', "строка", E.SECOND, E.SECOND, new ArrayList<>(), new int[]{1, -1, Integer.MAX_VALUE}, new byte[300]);
+        m.list.add(E.FIRST);
+        m.list.add(E.SECOND);
+        m.list.add(E.FIRST);
+        byte[] compact = Serial.serialize(m, SerialFormat.COMPACT);
+        assertEquals(m, Serial.deserialize(compact));
+        assertTrue(compact.length < Serial.serialize(m, SerialFormat.STANDARD).length);
+    }
+
+    @Test
+    public void serializeCompactSmallMessage() {
+        G g = new G(new A(2, 245L));
+        byte[] compact = Serial.serialize(g, SerialFormat.COMPACT);
+        byte[] standard = Serial.serialize(g, SerialFormat.STANDARD);
+        assertEquals(g, Serial.deserialize(compact));
+        assertTrue(compact.length * 2 < standard.length);
+    }
+
+    @Test
+    public void serializeCompactByVersion() {
+        V v = new V(-1);
+        byte[] serialize = Serial.serialize(v);
+        assertEquals(Serial.COMPACT_MAGIC, serialize[0]);
+        assertEquals(v, Serial.deserialize(serialize));
+    }
+
+    @Test
+    public void serializeCompactPrimitivesAndNull() {
+        assertEquals(-300, (int) Serial.deserialize(Serial.serialize(-300, SerialFormat.COMPACT)));
+        assertEquals("test", Serial.deserialize(Serial.serialize("test", SerialFormat.COMPACT)));
+        assertEquals(E.SECOND, Serial.deserialize(Serial.serialize(E.SECOND, SerialFormat.COMPACT)));
+        assertNull(Serial.deserialize(Serial.serialize(null, SerialFormat.COMPACT)));
+    }
+
+    @Test
+    public void serializeCompactToDirectBuffer() {
+        T t = new T(new byte[1000], -7, new A(1, 2L));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(2048);
+        Serial.serialize(t, buffer, SerialFormat.COMPACT);
+        buffer.flip();
+        assertEquals(t, Serial.deserialize(buffer));
+    }
+
+    @Test
+    public void serializerCacheCounters() throws Exception {
+        Serial.getConversionMap();
+        SerialMXBean bean = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), new ObjectName("com.alesharik.webserver.api.serial.Serial:ready=true"), SerialMXBean.class);
+        long misses = bean.getCacheMissCount();
+        long hits = bean.getCacheHitCount();
+
+        CacheTest o = new CacheTest(1);
+        byte[] serialize = Serial.serialize(o);
+        assertEquals(misses + 1, bean.getCacheMissCount());
+        assertEquals(o, Serial.deserialize(serialize));
+        Serial.serialize(o);
+        assertEquals(misses + 1, bean.getCacheMissCount());
+        assertTrue(bean.getCacheHitCount() >= hits + 2);
+    }
+
+    @Test
+    public void unloadClassLoader() throws Exception {
+        URL location = SerialTest.class.getProtectionDomain().getCodeSource().getLocation();
+        URLClassLoader loader = new URLClassLoader(new URL[]{location}, SerialTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if(!A.class.getName().equals(name))
+                    return super.loadClass(name, resolve);
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> loaded = findLoadedClass(name);
+                    return loaded == null ? findClass(name) : loaded;
+                }
+            }
+        };
+        Class<?> clazz = loader.loadClass(A.class.getName());
+        assertNotEquals(A.class, clazz);
+        Serializable o = (Serializable) clazz.getConstructor(int.class, long.class).newInstance(1, 2L);
+
+        SerialMXBean bean = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), new ObjectName("com.alesharik.webserver.api.serial.Serial:ready=true"), SerialMXBean.class);
+        long count = bean.getSerializerCount();
+        assertEquals(o, Serial.deserialize(Serial.serialize(o)));
+        assertEquals(count + 1, bean.getSerializerCount());
+
+        Serial.unloadClassLoader(loader);
+        assertEquals(count, bean.getSerializerCount());
+        assertEquals(-1, Serial.getConversionMap().getConversionFor(clazz));
+    }
+
     @Getter
     @EqualsAndHashCode
     @ToString
@@ -285,4 +431,40 @@ public class SerialTest {
         private final int a;
         private final long b;
     }
-}
\ No newline at end of file
+
+    public enum E {
+        FIRST,
+        SECOND
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    @ToString
+    public static class M implements Serializable {
+        private final int a;
+        private final long b;
+        private final short c;
+        private final char d;
+        private final String s;
+        private final E e;
+        private final E e2;
+        private final ArrayList<E> list;
+        private final int[] ints;
+        private final byte[] big;
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    @ToString
+    public static class CacheTest implements Serializable {
+        private final int a;
+    }
+
+    @Version(value = 2, compact = true)
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    @ToString
+    public static class V implements Serializable {
+        private final int a;
+    }
+}